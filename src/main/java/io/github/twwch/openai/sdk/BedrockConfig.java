@@ -1,5 +1,10 @@
 package io.github.twwch.openai.sdk;
 
+import io.github.twwch.openai.sdk.limit.Timeouts;
+import io.github.twwch.openai.sdk.service.bedrock.CacheWarmingCoordinator;
+import io.github.twwch.openai.sdk.service.bedrock.MaxTokensPredictor;
+import io.github.twwch.openai.sdk.service.bedrock.ModelCapabilityRegistry;
+
 /**
  * AWS Bedrock API配置类
  */
@@ -9,6 +14,25 @@ public class BedrockConfig extends OpenAIConfig {
     private String secretAccessKey;
     private String sessionToken;
     private String modelId;
+    private long clientDrainTimeoutMillis = 120_000L;
+    private long minClientRebuildIntervalMillis = 30_000L;
+    private boolean useConverseApi = false;
+    private ModelCapabilityRegistry capabilityRegistry = ModelCapabilityRegistry.getDefault();
+    private boolean autoCacheBreakpoints = false;
+    private CacheWarmingCoordinator cacheWarmingCoordinator = CacheWarmingCoordinator.disabled();
+    private MaxTokensPredictor maxTokensPredictor = MaxTokensPredictor.disabled();
+
+    // 异步HTTP客户端连接池配置，默认值可通过 bedrock.http.* / bedrock.api.* 系统属性覆盖（兼容旧配置方式）
+    private int maxConcurrency = Integer.getInteger("bedrock.http.maxConcurrency", 5000);
+    private int maxPendingAcquires = Integer.getInteger("bedrock.http.maxPendingAcquires", 2000);
+    private int connectionTimeoutSeconds = Integer.getInteger("bedrock.http.connectionTimeoutSeconds", 60);
+    private int acquireTimeoutSeconds = Integer.getInteger("bedrock.http.acquireTimeoutSeconds", 60);
+    private int readTimeoutMinutes = Integer.getInteger("bedrock.http.readTimeoutMinutes", 15);
+    private int writeTimeoutSeconds = Integer.getInteger("bedrock.http.writeTimeoutSeconds", 30);
+    private int connectionTtlMinutes = Integer.getInteger("bedrock.http.ttlMinutes", 3);
+    private int maxIdleSeconds = Integer.getInteger("bedrock.http.maxIdleSeconds", 20);
+    private int apiCallAttemptTimeoutMinutes = Integer.getInteger("bedrock.api.attemptTimeoutMinutes", 5);
+    private int apiCallTimeoutMinutes = Integer.getInteger("bedrock.api.callTimeoutMinutes", 10);
 
     /**
      * 创建Bedrock配置（使用默认凭证）
@@ -79,6 +103,281 @@ public class BedrockConfig extends OpenAIConfig {
         return sessionToken;
     }
 
+    /**
+     * 获取重建客户端后旧客户端等待进行中请求结束的最长时间（默认120秒，与流式请求超时一致）
+     * @return 排空期限（毫秒）
+     */
+    public long getClientDrainTimeoutMillis() {
+        return clientDrainTimeoutMillis;
+    }
+
+    /**
+     * 设置重建客户端后旧客户端等待进行中请求结束的最长时间，超时后强制关闭
+     * @param clientDrainTimeoutMillis 排空期限（毫秒）
+     */
+    public void setClientDrainTimeoutMillis(long clientDrainTimeoutMillis) {
+        this.clientDrainTimeoutMillis = clientDrainTimeoutMillis;
+    }
+
+    /**
+     * 获取两次重建客户端之间的最小间隔（默认30秒）
+     * @return 最小间隔（毫秒）
+     */
+    public long getMinClientRebuildIntervalMillis() {
+        return minClientRebuildIntervalMillis;
+    }
+
+    /**
+     * 设置两次重建客户端之间的最小间隔，间隔内的连接错误不再触发重建
+     * @param minClientRebuildIntervalMillis 最小间隔（毫秒）
+     */
+    public void setMinClientRebuildIntervalMillis(long minClientRebuildIntervalMillis) {
+        this.minClientRebuildIntervalMillis = minClientRebuildIntervalMillis;
+    }
+
+    /**
+     * 是否使用Converse/ConverseStream API（默认false，使用InvokeModel和各模型自己的请求格式）
+     */
+    public boolean isUseConverseApi() {
+        return useConverseApi;
+    }
+
+    /**
+     * 设置是否使用Converse/ConverseStream API
+     * 开启后所有模型系列共用一套类型化的请求转换，工具调用、图片和prompt缓存行为一致
+     * @param useConverseApi 是否使用Converse API
+     */
+    public void setUseConverseApi(boolean useConverseApi) {
+        this.useConverseApi = useConverseApi;
+    }
+
+    /**
+     * 获取模型能力注册表（默认为随包发布的模型能力表）
+     */
+    public ModelCapabilityRegistry getCapabilityRegistry() {
+        return capabilityRegistry;
+    }
+
+    /**
+     * 设置模型能力注册表，用于登记新模型或覆盖模型限制，传入null时恢复为默认注册表
+     * @param capabilityRegistry 模型能力注册表
+     */
+    public void setCapabilityRegistry(ModelCapabilityRegistry capabilityRegistry) {
+        this.capabilityRegistry = capabilityRegistry != null ? capabilityRegistry : ModelCapabilityRegistry.getDefault();
+    }
+
+    /**
+     * 是否自动放置Claude prompt缓存断点（默认false，只使用请求中手动设置的断点）
+     */
+    public boolean isAutoCacheBreakpoints() {
+        return autoCacheBreakpoints;
+    }
+
+    /**
+     * 设置是否自动放置Claude prompt缓存断点
+     * 开启后按最近请求的前缀在多次出现的最长前缀上放置断点，手动设置的断点保留并计入上限
+     * @param autoCacheBreakpoints 是否自动放置缓存断点
+     */
+    public void setAutoCacheBreakpoints(boolean autoCacheBreakpoints) {
+        this.autoCacheBreakpoints = autoCacheBreakpoints;
+    }
+
+    /**
+     * 获取prompt缓存预热协调器（默认关闭）
+     */
+    public CacheWarmingCoordinator getCacheWarmingCoordinator() {
+        return cacheWarmingCoordinator;
+    }
+
+    /**
+     * 设置prompt缓存预热协调器，同一缓存前缀的并发请求等待第一个请求写入缓存后再发出，
+     * 通常使用 {@link CacheWarmingCoordinator#getDefault()}；传入null时恢复为关闭状态
+     * @param cacheWarmingCoordinator 缓存预热协调器
+     */
+    public void setCacheWarmingCoordinator(CacheWarmingCoordinator cacheWarmingCoordinator) {
+        this.cacheWarmingCoordinator = cacheWarmingCoordinator != null
+                ? cacheWarmingCoordinator : CacheWarmingCoordinator.disabled();
+    }
+
+    /**
+     * 获取max_tokens预测器（默认关闭）
+     */
+    public MaxTokensPredictor getMaxTokensPredictor() {
+        return maxTokensPredictor;
+    }
+
+    /**
+     * 设置max_tokens预测器，Claude请求未设置max_tokens时按历史输出长度设置较小的值以减少配额预占，
+     * 输出被截断时自动继续生成，通常使用 {@link MaxTokensPredictor#getDefault()}；传入null时恢复为关闭状态
+     * @param maxTokensPredictor max_tokens预测器
+     */
+    public void setMaxTokensPredictor(MaxTokensPredictor maxTokensPredictor) {
+        this.maxTokensPredictor = maxTokensPredictor != null ? maxTokensPredictor : MaxTokensPredictor.disabled();
+    }
+
+    /**
+     * 获取最大并发连接数（默认5000）
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * 设置最大并发连接数，相同区域、凭证和连接池配置的服务共享同一个客户端
+     * @param maxConcurrency 最大并发连接数
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * 获取等待获取连接的最大请求数（默认2000）
+     */
+    public int getMaxPendingAcquires() {
+        return maxPendingAcquires;
+    }
+
+    /**
+     * 设置等待获取连接的最大请求数，相同区域、凭证和连接池配置的服务共享同一个客户端
+     * @param maxPendingAcquires 等待获取连接的最大请求数
+     */
+    public void setMaxPendingAcquires(int maxPendingAcquires) {
+        this.maxPendingAcquires = maxPendingAcquires;
+    }
+
+    /**
+     * 获取建立连接超时（秒，默认60）
+     */
+    public int getConnectionTimeoutSeconds() {
+        return connectionTimeoutSeconds;
+    }
+
+    /**
+     * 设置建立连接超时（秒），相同区域、凭证和连接池配置的服务共享同一个客户端
+     * @param connectionTimeoutSeconds 建立连接超时（秒）
+     */
+    public void setConnectionTimeoutSeconds(int connectionTimeoutSeconds) {
+        this.connectionTimeoutSeconds = connectionTimeoutSeconds;
+    }
+
+    /**
+     * 获取从连接池获取连接的超时（秒，默认60）
+     */
+    public int getAcquireTimeoutSeconds() {
+        return acquireTimeoutSeconds;
+    }
+
+    /**
+     * 设置从连接池获取连接的超时（秒），相同区域、凭证和连接池配置的服务共享同一个客户端
+     * @param acquireTimeoutSeconds 从连接池获取连接的超时（秒）
+     */
+    public void setAcquireTimeoutSeconds(int acquireTimeoutSeconds) {
+        this.acquireTimeoutSeconds = acquireTimeoutSeconds;
+    }
+
+    /**
+     * 获取读取超时（分钟，默认15，需覆盖最长的流式响应）
+     */
+    public int getReadTimeoutMinutes() {
+        return readTimeoutMinutes;
+    }
+
+    /**
+     * 设置读取超时（分钟），相同区域、凭证和连接池配置的服务共享同一个客户端
+     * @param readTimeoutMinutes 读取超时（分钟）
+     */
+    public void setReadTimeoutMinutes(int readTimeoutMinutes) {
+        this.readTimeoutMinutes = readTimeoutMinutes;
+    }
+
+    /**
+     * 获取写入超时（秒，默认30）
+     */
+    public int getWriteTimeoutSeconds() {
+        return writeTimeoutSeconds;
+    }
+
+    /**
+     * 设置写入超时（秒），相同区域、凭证和连接池配置的服务共享同一个客户端
+     * @param writeTimeoutSeconds 写入超时（秒）
+     */
+    public void setWriteTimeoutSeconds(int writeTimeoutSeconds) {
+        this.writeTimeoutSeconds = writeTimeoutSeconds;
+    }
+
+    /**
+     * 获取连接生存时间（分钟，默认3）
+     */
+    public int getConnectionTtlMinutes() {
+        return connectionTtlMinutes;
+    }
+
+    /**
+     * 设置连接生存时间（分钟），相同区域、凭证和连接池配置的服务共享同一个客户端
+     * @param connectionTtlMinutes 连接生存时间（分钟）
+     */
+    public void setConnectionTtlMinutes(int connectionTtlMinutes) {
+        this.connectionTtlMinutes = connectionTtlMinutes;
+    }
+
+    /**
+     * 获取空闲连接保持时间（秒，默认20）
+     */
+    public int getMaxIdleSeconds() {
+        return maxIdleSeconds;
+    }
+
+    /**
+     * 设置空闲连接保持时间（秒），相同区域、凭证和连接池配置的服务共享同一个客户端
+     * @param maxIdleSeconds 空闲连接保持时间（秒）
+     */
+    public void setMaxIdleSeconds(int maxIdleSeconds) {
+        this.maxIdleSeconds = maxIdleSeconds;
+    }
+
+    /**
+     * 获取单次API调用尝试超时（分钟，默认5）
+     */
+    public int getApiCallAttemptTimeoutMinutes() {
+        return apiCallAttemptTimeoutMinutes;
+    }
+
+    /**
+     * 设置单次API调用尝试超时（分钟），相同区域、凭证和连接池配置的服务共享同一个客户端
+     * @param apiCallAttemptTimeoutMinutes 单次API调用尝试超时（分钟）
+     */
+    public void setApiCallAttemptTimeoutMinutes(int apiCallAttemptTimeoutMinutes) {
+        this.apiCallAttemptTimeoutMinutes = apiCallAttemptTimeoutMinutes;
+    }
+
+    /**
+     * 获取API调用总超时（分钟，默认10）
+     */
+    public int getApiCallTimeoutMinutes() {
+        return apiCallTimeoutMinutes;
+    }
+
+    /**
+     * 设置API调用总超时（分钟），相同区域、凭证和连接池配置的服务共享同一个客户端
+     * @param apiCallTimeoutMinutes API调用总超时（分钟）
+     */
+    public void setApiCallTimeoutMinutes(int apiCallTimeoutMinutes) {
+        this.apiCallTimeoutMinutes = apiCallTimeoutMinutes;
+    }
+
+    /**
+     * 未设置分段超时时沿用客户端的超时配置：连接超时、单次调用尝试超时作为首字节超时、读取超时作为空闲超时，
+     * 不限制总时间。连接和读取超时作用在共享的客户端上，单次请求只能缩短首字节超时和总超时
+     */
+    @Override
+    protected Timeouts defaultTimeouts() {
+        Timeouts timeouts = new Timeouts();
+        timeouts.setConnectTimeoutMillis(connectionTimeoutSeconds * 1000L);
+        timeouts.setFirstByteTimeoutMillis(apiCallAttemptTimeoutMinutes * 60_000L);
+        timeouts.setIdleTimeoutMillis(readTimeoutMinutes * 60_000L);
+        return timeouts;
+    }
+
     public String getModelId() {
         return modelId;
     }
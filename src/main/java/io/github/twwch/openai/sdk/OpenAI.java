@@ -8,10 +8,12 @@ import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
 import io.github.twwch.openai.sdk.model.chat.ChatMessage;
 import io.github.twwch.openai.sdk.service.GeminiService;
 import io.github.twwch.openai.sdk.service.OpenAIService;
+import io.github.twwch.openai.sdk.service.StreamHandle;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.function.Consumer;
 
@@ -173,6 +175,19 @@ public class OpenAI implements AutoCloseable {
         return service.createChatCompletion(request);
     }
 
+    /**
+     * 异步创建聊天完成，不阻塞调用线程
+     * @param request 聊天完成请求
+     * @return 完成时包含聊天响应，失败时以 {@link OpenAIException} 异常完成；取消该Future会取消底层请求
+     */
+    public CompletableFuture<ChatCompletionResponse> createChatCompletionAsync(ChatCompletionRequest request) {
+        if (geminiService != null) {
+            return geminiService.createChatCompletionAsync(request);
+        }
+        assert service != null;
+        return service.createChatCompletionAsync(request);
+    }
+
     /**
      * 创建聊天完成（简化版）
      * @param model 模型ID
@@ -256,17 +271,49 @@ public class OpenAI implements AutoCloseable {
      * @param onComplete 完成时的回调
      * @param onError 错误时的回调
      * @throws OpenAIException 如果请求失败
+     * @see #streamChatCompletion(ChatCompletionRequest, Consumer, Runnable, Consumer)
      */
     public void createChatCompletionStream(ChatCompletionRequest request,
                                           Consumer<ChatCompletionChunk> onChunk,
                                           Runnable onComplete,
                                           Consumer<Throwable> onError) throws OpenAIException {
+        streamChatCompletion(request, onChunk, onComplete, onError);
+    }
+
+    /**
+     * 创建聊天完成（流式），返回流式请求句柄
+     * @param request 聊天完成请求
+     * @param onChunk 处理每个数据块的回调
+     * @param onComplete 完成时的回调
+     * @param onError 错误时的回调
+     * @return 流式请求句柄，可获取响应元数据（请求ID、服务端处理耗时、限流信息）或等待流结束
+     * @throws OpenAIException 如果请求失败
+     */
+    public StreamHandle streamChatCompletion(ChatCompletionRequest request,
+                                             Consumer<ChatCompletionChunk> onChunk,
+                                             Runnable onComplete,
+                                             Consumer<Throwable> onError) throws OpenAIException {
         if (geminiService != null) {
-            geminiService.createChatCompletionStream(request, onChunk, onComplete, onError);
+            return geminiService.streamChatCompletion(request, onChunk, onComplete, onError);
         } else {
             assert service != null;
-            service.createChatCompletionStream(request, onChunk, onComplete, onError);
+            return service.streamChatCompletion(request, onChunk, onComplete, onError);
+        }
+    }
+
+    /**
+     * 预热prompt缓存（仅Bedrock Claude）：用给定的前缀发送一个只输出1个token的请求，在流量到来前写入缓存
+     * @param prefix 要缓存的前缀（system、tools和消息）
+     * @return 完成时包含预热请求的用量，非Bedrock配置以 {@link OpenAIException} 异常完成
+     */
+    public CompletableFuture<ChatCompletionResponse.Usage> prewarmCache(ChatCompletionRequest prefix) {
+        if (geminiService != null) {
+            CompletableFuture<ChatCompletionResponse.Usage> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new OpenAIException("只有Bedrock支持缓存预热"));
+            return failed;
         }
+        assert service != null;
+        return service.prewarmCache(prefix);
     }
 
     /**
@@ -341,7 +388,7 @@ public class OpenAI implements AutoCloseable {
                 service.close();
             }
             if (geminiService != null) {
-                // Gemini service 可能也需要关闭，但目前没有实现
+                geminiService.close();
             }
         } catch (Exception e) {
             // 记录错误但不抛出，避免影响其他资源释放
@@ -1,5 +1,14 @@
 package io.github.twwch.openai.sdk;
 
+import io.github.twwch.openai.sdk.leak.LeakDetector;
+import io.github.twwch.openai.sdk.limit.ConcurrencyLimiter;
+import io.github.twwch.openai.sdk.limit.Timeouts;
+import io.github.twwch.openai.sdk.metrics.MetricsRegistry;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import io.github.twwch.openai.sdk.tracing.Tracer;
+import io.github.twwch.openai.sdk.usage.PromptCacheLedger;
+import io.github.twwch.openai.sdk.usage.UsageLedger;
+
 /**
  * OpenAI API配置类
  */
@@ -8,7 +17,19 @@ public class OpenAIConfig {
     private String apiKey;
     private String baseUrl;
     private int timeout;
+    private Timeouts timeouts;
     private String organization;
+    private MetricsRegistry metricsRegistry = MetricsRegistry.getDefault();
+    private Tracer tracer = Tracer.noop();
+    private boolean traceContextPropagation = false;
+    private LeakDetector leakDetector = LeakDetector.disabled();
+    private UsageLedger usageLedger = UsageLedger.getDefault();
+    private PromptCacheLedger promptCacheLedger = PromptCacheLedger.getDefault();
+    private ConcurrencyLimiter concurrencyLimiter = ConcurrencyLimiter.disabled();
+    private RetryScheduler retryScheduler = RetryScheduler.getDefault();
+    private boolean autoPromptCacheKey = false;
+    private int promptCacheKeyLeadingTurns = 0;
+    private String batchServiceTier;
 
     /**
      * 创建默认配置
@@ -55,10 +76,38 @@ public class OpenAIConfig {
         return baseUrl;
     }
 
+    /**
+     * 获取单一超时（秒），未设置分段超时时作为连接、首字节和空闲超时
+     */
     public int getTimeout() {
         return timeout;
     }
 
+    /**
+     * 获取分段超时，未设置时由 {@link #defaultTimeouts()} 得出
+     * @return 分段超时
+     */
+    public Timeouts getTimeouts() {
+        return timeouts != null ? timeouts : defaultTimeouts();
+    }
+
+    /**
+     * 未设置分段超时时使用的超时：由 {@link #getTimeout()} 得出，连接、首字节和空闲超时相同，不限制总时间
+     */
+    protected Timeouts defaultTimeouts() {
+        return Timeouts.ofSeconds(timeout);
+    }
+
+    /**
+     * 设置分段超时，作为所有调用的默认值，请求可以通过
+     * {@link io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest#setTimeouts} 覆盖；
+     * 传入null时恢复为默认值
+     * @param timeouts 分段超时
+     */
+    public void setTimeouts(Timeouts timeouts) {
+        this.timeouts = timeouts;
+    }
+
     public String getOrganization() {
         return organization;
     }
@@ -84,7 +133,187 @@ public class OpenAIConfig {
     public void setOrganization(String organization) {
         this.organization = organization;
     }
-    
+
+    /**
+     * 获取指标注册表（默认为进程内共享的注册表）
+     * @return 指标注册表
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * 设置指标注册表，传入null时恢复为默认注册表
+     * @param metricsRegistry 指标注册表
+     */
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry != null ? metricsRegistry : MetricsRegistry.getDefault();
+    }
+
+    /**
+     * 获取追踪器（默认为no-op）
+     * @return 追踪器
+     */
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * 设置追踪器，传入null时恢复为no-op追踪器
+     * @param tracer 追踪器
+     */
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer != null ? tracer : Tracer.noop();
+    }
+
+    /**
+     * 是否在HTTP请求中传播W3C traceparent请求头
+     * @return 是否传播
+     */
+    public boolean isTraceContextPropagation() {
+        return traceContextPropagation;
+    }
+
+    /**
+     * 设置是否在HTTP请求中传播W3C traceparent请求头
+     * 默认关闭：部分网关会拒绝未知请求头；Bedrock请求由AWS SDK签名，不添加该请求头
+     * @param traceContextPropagation 是否传播
+     */
+    public void setTraceContextPropagation(boolean traceContextPropagation) {
+        this.traceContextPropagation = traceContextPropagation;
+    }
+
+    /**
+     * 获取泄漏检测器（默认关闭）
+     * @return 泄漏检测器
+     */
+    public LeakDetector getLeakDetector() {
+        return leakDetector;
+    }
+
+    /**
+     * 设置泄漏检测器，用于跟踪未关闭的客户端、流和响应，传入null时恢复为关闭状态
+     * @param leakDetector 泄漏检测器
+     */
+    public void setLeakDetector(LeakDetector leakDetector) {
+        this.leakDetector = leakDetector != null ? leakDetector : LeakDetector.disabled();
+    }
+
+    /**
+     * 获取用量账本（默认为进程内共享的账本）
+     * @return 用量账本
+     */
+    public UsageLedger getUsageLedger() {
+        return usageLedger;
+    }
+
+    /**
+     * 设置用量账本，传入null时恢复为默认账本
+     * @param usageLedger 用量账本
+     */
+    public void setUsageLedger(UsageLedger usageLedger) {
+        this.usageLedger = usageLedger != null ? usageLedger : UsageLedger.getDefault();
+    }
+
+    /**
+     * 获取Prompt缓存效果账本（默认为进程内共享的账本）
+     * @return Prompt缓存效果账本
+     */
+    public PromptCacheLedger getPromptCacheLedger() {
+        return promptCacheLedger;
+    }
+
+    /**
+     * 设置Prompt缓存效果账本，传入null时恢复为默认账本
+     * @param promptCacheLedger Prompt缓存效果账本
+     */
+    public void setPromptCacheLedger(PromptCacheLedger promptCacheLedger) {
+        this.promptCacheLedger = promptCacheLedger != null ? promptCacheLedger : PromptCacheLedger.getDefault();
+    }
+
+    /**
+     * 获取自适应并发限制器（默认关闭）
+     * @return 并发限制器
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * 设置自适应并发限制器，按端点根据延迟和限流信号调整允许的并发请求数，多个客户端可以共享同一个限制器；
+     * 传入null时恢复为关闭状态
+     * @param concurrencyLimiter 并发限制器
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter != null ? concurrencyLimiter : ConcurrencyLimiter.disabled();
+    }
+
+    /**
+     * 获取重试调度器（默认为进程内共享的调度器）
+     * @return 重试调度器
+     */
+    public RetryScheduler getRetryScheduler() {
+        return retryScheduler;
+    }
+
+    /**
+     * 设置重试调度器，退避等待在调度器上进行而不占用调用线程，传入null时恢复为默认调度器
+     * @param retryScheduler 重试调度器
+     */
+    public void setRetryScheduler(RetryScheduler retryScheduler) {
+        this.retryScheduler = retryScheduler != null ? retryScheduler : RetryScheduler.getDefault();
+    }
+
+    /**
+     * 是否为未设置prompt_cache_key的请求自动推导key（默认false，仅OpenAI/Azure）
+     * @return 是否自动推导
+     */
+    public boolean isAutoPromptCacheKey() {
+        return autoPromptCacheKey;
+    }
+
+    /**
+     * 设置是否自动推导prompt_cache_key
+     * 开启后相同system prompt和tools的请求使用相同的key，被路由到同一个缓存分片；请求中已设置的key不会被覆盖
+     * @param autoPromptCacheKey 是否自动推导
+     */
+    public void setAutoPromptCacheKey(boolean autoPromptCacheKey) {
+        this.autoPromptCacheKey = autoPromptCacheKey;
+    }
+
+    /**
+     * 获取推导prompt_cache_key时计入的非system消息条数（默认0，只看system和tools）
+     * @return 消息条数
+     */
+    public int getPromptCacheKeyLeadingTurns() {
+        return promptCacheKeyLeadingTurns;
+    }
+
+    /**
+     * 设置推导prompt_cache_key时计入的非system消息条数，多轮对话中按会话开头区分缓存分片
+     * @param promptCacheKeyLeadingTurns 消息条数，小于0按0处理
+     */
+    public void setPromptCacheKeyLeadingTurns(int promptCacheKeyLeadingTurns) {
+        this.promptCacheKeyLeadingTurns = Math.max(0, promptCacheKeyLeadingTurns);
+    }
+
+    /**
+     * 获取批处理优先级请求使用的service_tier（默认null，不设置）
+     * @return 服务层级
+     */
+    public String getBatchServiceTier() {
+        return batchServiceTier;
+    }
+
+    /**
+     * 设置批处理优先级（{@link io.github.twwch.openai.sdk.limit.RequestPriority#BATCH}）请求使用的service_tier，
+     * 如"flex"：以更长的延迟换取更低的价格。仅OpenAI，请求中已设置的service_tier不会被覆盖
+     * @param batchServiceTier 服务层级，为null时不设置
+     */
+    public void setBatchServiceTier(String batchServiceTier) {
+        this.batchServiceTier = batchServiceTier;
+    }
+
     /**
      * 是否为Azure OpenAI配置
      * @return 是否为Azure OpenAI配置
@@ -4,7 +4,8 @@ import org.slf4j.Logger;
 
 /**
  * 统一的错误日志工具类
- * 提供统一的错误日志格式和异常创建方式
+ * 提供统一的错误日志格式和异常创建方式；日志经过 {@link LogThrottler} 去重限流，
+ * 同一类错误在时间窗口内只输出一次并报告被抑制的次数
  */
 public class ErrorLogger {
 
@@ -26,7 +27,7 @@ public class ErrorLogger {
                 .cause(cause)
                 .build();
 
-        logger.error("{}", exception.getFormattedMessage(), cause);
+        logError(logger, exception, message, cause);
         return exception;
     }
 
@@ -42,7 +43,7 @@ public class ErrorLogger {
                 .cause(cause)
                 .build();
 
-        logger.error("{}", exception.getFormattedMessage(), cause);
+        logError(logger, exception, message, cause);
         return exception;
     }
 
@@ -56,7 +57,7 @@ public class ErrorLogger {
                 .model(model)
                 .build();
 
-        logger.error("{}", exception.getFormattedMessage());
+        logError(logger, exception, message, null);
         return exception;
     }
 
@@ -72,7 +73,7 @@ public class ErrorLogger {
                 .cause(cause)
                 .build();
 
-        logger.error("{}", exception.getFormattedMessage(), cause);
+        logError(logger, exception, message, cause);
         return exception;
     }
 
@@ -81,7 +82,12 @@ public class ErrorLogger {
      */
     public static void logWarn(Logger logger, OpenAIException.Provider provider,
                                String model, String message, Throwable cause) {
-        String formattedMessage = formatMessage(provider, model, message, cause != null ? cause.getMessage() : null);
+        long suppressed = LogThrottler.getDefault().tryAcquire(throttleKey(provider, model, 0, message, cause));
+        if (suppressed < 0) {
+            return;
+        }
+        String formattedMessage = formatMessage(provider, model, message, cause != null ? cause.getMessage() : null)
+                + LogThrottler.suppressedSuffix(suppressed);
         if (cause != null) {
             logger.warn("{}", formattedMessage, cause);
         } else {
@@ -97,6 +103,33 @@ public class ErrorLogger {
         logWarn(logger, provider, model, message, null);
     }
 
+    /**
+     * 经过限流输出错误日志
+     */
+    private static void logError(Logger logger, OpenAIException exception, String message, Throwable cause) {
+        long suppressed = LogThrottler.getDefault().tryAcquire(throttleKey(exception.getProvider(),
+                exception.getModel(), exception.getStatusCode(), message, cause));
+        if (suppressed < 0) {
+            return;
+        }
+        String formattedMessage = exception.getFormattedMessage() + LogThrottler.suppressedSuffix(suppressed);
+        if (cause != null) {
+            logger.error("{}", formattedMessage, cause);
+        } else {
+            logger.error("{}", formattedMessage);
+        }
+    }
+
+    /**
+     * 日志去重键：相同服务商、模型、状态码、消息和异常类型视为同一类错误
+     * （不含异常消息，其中常带有请求ID等变化的内容）
+     */
+    static String throttleKey(OpenAIException.Provider provider, String model, int statusCode, String message,
+                              Throwable cause) {
+        return provider + "|" + model + "|" + statusCode + "|" + message + "|"
+                + (cause != null ? cause.getClass().getName() : "");
+    }
+
     /**
      * 格式化错误消息
      * 格式: [Provider] message | model: xxx | rawError: xxx
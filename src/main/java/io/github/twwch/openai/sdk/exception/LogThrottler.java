@@ -0,0 +1,104 @@
+package io.github.twwch.openai.sdk.exception;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 错误日志限流与去重
+ * 同一类错误（相同的键）在一个时间窗口内只输出一次，其余被抑制并计数，
+ * 窗口结束后下一次输出时带上被抑制的次数，避免429/5xx高峰期间日志成为瓶颈。
+ */
+public class LogThrottler {
+    private static final LogThrottler DEFAULT = new LogThrottler();
+    private static final int MAX_KEYS = 1024;
+
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+    private volatile long windowNanos = TimeUnit.SECONDS.toNanos(10);
+    private volatile boolean enabled = true;
+
+    /**
+     * 获取进程内共享的默认限流器（{@link ErrorLogger} 和HTTP客户端使用）
+     */
+    public static LogThrottler getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 尝试输出一条日志
+     *
+     * @param key 错误的去重键（如 服务商|状态码|错误类型）
+     * @return 允许输出时返回自上次输出以来被抑制的次数（&gt;=0），需要抑制时返回-1
+     */
+    public long tryAcquire(String key) {
+        if (!enabled) {
+            return 0;
+        }
+        if (windows.size() >= MAX_KEYS && !windows.containsKey(key)) {
+            // 键过多时（例如消息中带有请求ID）清空，宁可多输出也不无限增长
+            windows.clear();
+        }
+        Window window = windows.computeIfAbsent(key, k -> new Window());
+        long now = System.nanoTime();
+        long last = window.lastLoggedNanos.get();
+        if (last != 0 && now - last < windowNanos) {
+            window.suppressed.incrementAndGet();
+            return -1;
+        }
+        if (!window.lastLoggedNanos.compareAndSet(last, now)) {
+            // 其他线程刚输出了同一错误
+            window.suppressed.incrementAndGet();
+            return -1;
+        }
+        return window.suppressed.getAndSet(0);
+    }
+
+    /**
+     * 当前被抑制、尚未报告的日志总数
+     */
+    public long getSuppressedCount() {
+        long total = 0;
+        for (Window window : windows.values()) {
+            total += window.suppressed.get();
+        }
+        return total;
+    }
+
+    public void reset() {
+        windows.clear();
+    }
+
+    public long getWindowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(windowNanos);
+    }
+
+    /**
+     * 设置去重时间窗口（默认10秒）
+     */
+    public void setWindowMillis(long windowMillis) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 设置是否启用限流，关闭后每条错误都会输出
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * 被抑制次数的日志后缀
+     */
+    public static String suppressedSuffix(long suppressed) {
+        return suppressed > 0 ? " (期间抑制了 " + suppressed + " 条相同错误)" : "";
+    }
+
+    private static final class Window {
+        private final AtomicLong lastLoggedNanos = new AtomicLong();
+        private final AtomicLong suppressed = new AtomicLong();
+    }
+}
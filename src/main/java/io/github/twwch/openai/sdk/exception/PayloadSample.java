@@ -0,0 +1,65 @@
+package io.github.twwch.openai.sdk.exception;
+
+/**
+ * 错误现场采样的请求/响应内容
+ */
+public class PayloadSample {
+    private final long timestampMillis;
+    private final OpenAIException.Provider provider;
+    private final String model;
+    private final int statusCode;
+    private final String message;
+    private final String request;
+    private final String response;
+
+    PayloadSample(long timestampMillis, OpenAIException.Provider provider, String model, int statusCode,
+                  String message, String request, String response) {
+        this.timestampMillis = timestampMillis;
+        this.provider = provider;
+        this.model = model;
+        this.statusCode = statusCode;
+        this.message = message;
+        this.request = request;
+        this.response = response;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public OpenAIException.Provider getProvider() {
+        return provider;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * 请求体（可能被截断，未采集时为null）
+     */
+    public String getRequest() {
+        return request;
+    }
+
+    /**
+     * 响应体（可能被截断，未采集时为null）
+     */
+    public String getResponse() {
+        return response;
+    }
+
+    @Override
+    public String toString() {
+        return "PayloadSample{" + ErrorLogger.formatMessage(provider, model, message, null)
+                + ", statusCode=" + statusCode + ", timestamp=" + timestampMillis + "}";
+    }
+}
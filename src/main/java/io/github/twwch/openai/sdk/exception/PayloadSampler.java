@@ -0,0 +1,162 @@
+package io.github.twwch.openai.sdk.exception;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * 错误现场的请求/响应采样
+ * 出错时不再把完整请求体和响应体输出到日志，而是按采样率和最小间隔采样后保存在内存环形缓冲区中，
+ * 事后通过 {@link #getSamples()} 排查。请求体通过 {@link Supplier} 延迟序列化，未被采样时没有序列化开销。
+ */
+public class PayloadSampler {
+    private static final PayloadSampler DEFAULT = new PayloadSampler(64);
+
+    private final AtomicReferenceArray<PayloadSample> ring;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong lastSampleNanos = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile double sampleRate = 1.0;
+    private volatile long minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private volatile int maxPayloadChars = 16 * 1024;
+
+    /**
+     * @param capacity 环形缓冲区容量
+     */
+    public PayloadSampler(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity必须大于0");
+        }
+        this.ring = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * 获取进程内共享的默认采样器
+     */
+    public static PayloadSampler getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 记录一次错误的请求/响应
+     *
+     * @param provider   服务提供商
+     * @param model      模型
+     * @param statusCode HTTP状态码（未知时为0）
+     * @param message    错误消息
+     * @param request    请求体（仅在被采样时调用，可为null）
+     * @param response   响应体（可为null）
+     * @return 是否被采样
+     */
+    public boolean record(OpenAIException.Provider provider, String model, int statusCode, String message,
+                          Supplier<String> request, String response) {
+        if (!shouldSample()) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        String requestBody = null;
+        if (request != null) {
+            try {
+                requestBody = request.get();
+            } catch (RuntimeException e) {
+                requestBody = "[无法序列化: " + e.getMessage() + "]";
+            }
+        }
+        PayloadSample sample = new PayloadSample(System.currentTimeMillis(), provider, model, statusCode, message,
+                truncate(requestBody), truncate(response));
+        int index = (int) (next.getAndIncrement() % ring.length());
+        ring.set(index, sample);
+        return true;
+    }
+
+    /**
+     * 获取缓冲区中的样本，按时间从旧到新排列
+     */
+    public List<PayloadSample> getSamples() {
+        long end = next.get();
+        long start = Math.max(0, end - ring.length());
+        List<PayloadSample> samples = new ArrayList<>();
+        for (long i = start; i < end; i++) {
+            PayloadSample sample = ring.get((int) (i % ring.length()));
+            if (sample != null) {
+                samples.add(sample);
+            }
+        }
+        samples.sort((a, b) -> Long.compare(a.getTimestampMillis(), b.getTimestampMillis()));
+        return samples;
+    }
+
+    /**
+     * 未被采样的错误次数
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public void clear() {
+        for (int i = 0; i < ring.length(); i++) {
+            ring.set(i, null);
+        }
+        next.set(0);
+        dropped.set(0);
+        lastSampleNanos.set(0);
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * 设置采样率（0~1，默认1）
+     */
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public long getMinIntervalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(minIntervalNanos);
+    }
+
+    /**
+     * 设置两次采样之间的最小间隔（默认100毫秒），错误高峰期间限制序列化开销
+     */
+    public void setMinIntervalMillis(long minIntervalMillis) {
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+    }
+
+    public int getMaxPayloadChars() {
+        return maxPayloadChars;
+    }
+
+    /**
+     * 设置单个请求/响应保存的最大字符数（默认16K），超出部分截断
+     */
+    public void setMaxPayloadChars(int maxPayloadChars) {
+        this.maxPayloadChars = maxPayloadChars;
+    }
+
+    private boolean shouldSample() {
+        double rate = sampleRate;
+        if (rate <= 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            return false;
+        }
+        long now = System.nanoTime();
+        long last = lastSampleNanos.get();
+        if (last != 0 && now - last < minIntervalNanos) {
+            return false;
+        }
+        return lastSampleNanos.compareAndSet(last, now);
+    }
+
+    private String truncate(String payload) {
+        int max = maxPayloadChars;
+        if (payload == null || payload.length() <= max) {
+            return payload;
+        }
+        return payload.substring(0, max) + "...[已截断，共 " + payload.length() + " 字符]";
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.twwch.openai.sdk.http;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.jfr.ConnectionAcquireEvent;
+import io.github.twwch.openai.sdk.jfr.FirstByteEvent;
+import io.github.twwch.openai.sdk.jfr.UpstreamWaitEvent;
+import io.github.twwch.openai.sdk.metrics.MetricKey;
+import io.github.twwch.openai.sdk.metrics.MetricsRegistry;
+import io.github.twwch.openai.sdk.metrics.SdkMetrics;
+import io.github.twwch.openai.sdk.tracing.Span;
+import io.github.twwch.openai.sdk.tracing.TraceAttributes;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Request;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OkHttp事件监听器
+ * 记录从调用开始到拿到连接之间的等待时间（调度器排队 + 连接池获取/建连），
+ * 并发出连接获取、等待上游和首字节的JFR事件；请求关联了Span时同时记录为Span事件
+ */
+class HttpMetricsEventListener extends EventListener {
+    private final MetricsRegistry registry;
+    private final OpenAIException.Provider provider;
+    private final MetricKey baseKey;
+    private final Span span;
+    private long callStartNanos;
+    private boolean acquired;
+    private boolean newConnection;
+    private ConnectionAcquireEvent acquireEvent;
+    private UpstreamWaitEvent upstreamEvent;
+    private FirstByteEvent firstByteEvent;
+
+    HttpMetricsEventListener(MetricsRegistry registry, OpenAIException.Provider provider, MetricKey baseKey,
+                             Span span) {
+        this.registry = registry;
+        this.provider = provider;
+        this.baseKey = baseKey;
+        this.span = span != null ? span : Span.noop();
+    }
+
+    /**
+     * 创建监听器工厂，指标标签从请求的 {@link MetricKey} tag 中读取
+     */
+    static EventListener.Factory factory(MetricsRegistry registry, OpenAIException.Provider provider) {
+        return call -> {
+            MetricKey key = call.request().tag(MetricKey.class);
+            if (key == null) {
+                return EventListener.NONE;
+            }
+            return new HttpMetricsEventListener(registry, provider, key, call.request().tag(Span.class));
+        };
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStartNanos = System.nanoTime();
+        acquireEvent = new ConnectionAcquireEvent();
+        acquireEvent.begin();
+        firstByteEvent = new FirstByteEvent();
+        firstByteEvent.begin();
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        newConnection = true;
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        // 重定向或重试时会多次获取连接，只记录第一次
+        if (!acquired && callStartNanos > 0) {
+            acquired = true;
+            if (registry.isEnabled()) {
+                registry.record(baseKey.withName(SdkMetrics.QUEUE_WAIT),
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - callStartNanos));
+            }
+            acquireEvent.complete(provider, model(), call.request().url().host(), newConnection);
+            if (span.isRecording()) {
+                span.addEvent(TraceAttributes.EVENT_CONNECTION_ACQUIRED,
+                        Collections.singletonMap(TraceAttributes.NETWORK_NEW_CONNECTION, newConnection));
+            }
+        }
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+        upstreamEvent = new UpstreamWaitEvent();
+        upstreamEvent.begin();
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        // 有请求体时从请求体发送完毕开始计时
+        upstreamEvent = new UpstreamWaitEvent();
+        upstreamEvent.begin();
+        span.addEvent(TraceAttributes.EVENT_REQUEST_SENT);
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        span.addEvent(TraceAttributes.EVENT_RESPONSE_HEADERS);
+        if (upstreamEvent != null) {
+            upstreamEvent.complete(provider, model(), endpoint());
+            upstreamEvent = null;
+        }
+        if (firstByteEvent != null) {
+            boolean stream = "text/event-stream".equals(call.request().header("Accept"));
+            firstByteEvent.complete(provider, model(), endpoint(), stream);
+            firstByteEvent = null;
+        }
+    }
+
+    private String model() {
+        return baseKey.getTag(MetricKey.TAG_MODEL);
+    }
+
+    private String endpoint() {
+        return baseKey.getTag(MetricKey.TAG_ENDPOINT);
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.twwch.openai.sdk.http;
+
+import io.github.twwch.openai.sdk.model.ResponseMetadata;
+
+/**
+ * HTTP请求结果，包含响应体和从响应头解析出的元数据
+ */
+public class HttpResult {
+    private final String body;
+    private final ResponseMetadata metadata;
+
+    public HttpResult(String body, ResponseMetadata metadata) {
+        this.body = body;
+        this.metadata = metadata;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public ResponseMetadata getMetadata() {
+        return metadata;
+    }
+}
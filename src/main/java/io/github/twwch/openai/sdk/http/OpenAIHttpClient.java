@@ -5,7 +5,27 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.twwch.openai.sdk.AzureOpenAIConfig;
 import io.github.twwch.openai.sdk.OpenAIConfig;
+import io.github.twwch.openai.sdk.exception.LogThrottler;
 import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.exception.PayloadSampler;
+import io.github.twwch.openai.sdk.jfr.RequestSerializationEvent;
+import io.github.twwch.openai.sdk.leak.LeakDetector;
+import io.github.twwch.openai.sdk.leak.ResourceType;
+import io.github.twwch.openai.sdk.leak.TrackedResource;
+import io.github.twwch.openai.sdk.limit.Admission;
+import io.github.twwch.openai.sdk.limit.ConcurrencyLimiter;
+import io.github.twwch.openai.sdk.limit.StreamWatchdog;
+import io.github.twwch.openai.sdk.limit.Timeouts;
+import io.github.twwch.openai.sdk.metrics.MetricKey;
+import io.github.twwch.openai.sdk.metrics.MetricsRegistry;
+import io.github.twwch.openai.sdk.metrics.SdkMetrics;
+import io.github.twwch.openai.sdk.model.ResponseMetadata;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.tracing.Span;
+import io.github.twwch.openai.sdk.tracing.SpanKind;
+import io.github.twwch.openai.sdk.tracing.SpanStatus;
+import io.github.twwch.openai.sdk.tracing.TraceAttributes;
+import io.github.twwch.openai.sdk.tracing.Tracing;
 import okhttp3.*;
 import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSourceListener;
@@ -14,21 +34,43 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 /**
  * OpenAI HTTP客户端
  */
 public class OpenAIHttpClient implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(OpenAIHttpClient.class);
+    private static final int MAX_CONCURRENT_REQUESTS = 64;
     
     private final OkHttpClient client;
     private final OpenAIConfig config;
     private final ObjectMapper objectMapper;
+    private final MetricsRegistry metrics;
+    private final OpenAIException.Provider provider;
+    private final LeakDetector leakDetector;
+    private final TrackedResource clientResource;
+    private final ConcurrencyLimiter limiter;
+    private final String host;
+    // 已注册仪表的并发限制端点
+    private final Set<String> limitGauges = ConcurrentHashMap.newKeySet();
+    // 本客户端注册的仪表，关闭时只移除自己注册的，同一主机的其他客户端不受影响
+    private final Map<MetricKey, LongSupplier> ownedGauges = new ConcurrentHashMap<>();
 
     public OpenAIHttpClient(OpenAIConfig config) {
         this.config = config;
         this.objectMapper = new ObjectMapper();
+        this.metrics = config.getMetricsRegistry();
+        this.provider = SdkMetrics.providerOf(config);
         
         // 创建自定义的线程池，使用守护线程
         java.util.concurrent.ThreadFactory threadFactory = new java.util.concurrent.ThreadFactory() {
@@ -41,14 +83,33 @@ public class OpenAIHttpClient implements AutoCloseable {
             }
         };
         
-        // 为流式请求创建一个带有较短保持时间的OkHttpClient
+        // 同步、异步和流式请求都经过调度器，默认每个主机5个并发请求太少，放宽到与连接池匹配
+        Dispatcher dispatcher = new Dispatcher(java.util.concurrent.Executors.newCachedThreadPool(threadFactory));
+        dispatcher.setMaxRequests(MAX_CONCURRENT_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_CONCURRENT_REQUESTS);
+
+        // 默认超时取自配置的分段超时：非流式请求的读取超时即首字节超时
+        Timeouts timeouts = config.getTimeouts();
         this.client = new OkHttpClient.Builder()
-                .connectTimeout(config.getTimeout(), TimeUnit.SECONDS)
-                .readTimeout(config.getTimeout(), TimeUnit.SECONDS)
-                .writeTimeout(config.getTimeout(), TimeUnit.SECONDS)
+                .connectTimeout(timeouts.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(timeouts.getFirstByteTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .writeTimeout(timeouts.getIdleTimeoutMillis(), TimeUnit.MILLISECONDS)
                 .connectionPool(new ConnectionPool(50, 5, TimeUnit.MINUTES)) // 增加连接池大小，支持更多并发
-                .dispatcher(new Dispatcher(java.util.concurrent.Executors.newCachedThreadPool(threadFactory)))
+                .dispatcher(dispatcher)
+                .eventListenerFactory(HttpMetricsEventListener.factory(metrics, provider))
                 .build();
+
+        // 连接池使用情况，按服务主机区分
+        HttpUrl baseUrl = HttpUrl.parse(config.getBaseUrl());
+        this.host = baseUrl != null ? baseUrl.host() : config.getBaseUrl();
+        MetricKey poolConnectionsKey = MetricKey.of(SdkMetrics.POOL_CONNECTIONS, provider, null, host);
+        ConnectionPool pool = client.connectionPool();
+        registerGauge(poolConnectionsKey, pool::connectionCount);
+        registerGauge(poolConnectionsKey.withName(SdkMetrics.POOL_IDLE_CONNECTIONS), pool::idleConnectionCount);
+
+        this.leakDetector = config.getLeakDetector();
+        this.clientResource = leakDetector.track(ResourceType.CLIENT, this, provider + " HTTP客户端 " + host);
+        this.limiter = config.getConcurrencyLimiter();
     }
 
     /**
@@ -63,7 +124,7 @@ public class OpenAIHttpClient implements AutoCloseable {
         return execute(new Request.Builder()
                 .url(url)
                 .get()
-                .build(), null);
+                .build(), null, metricKey(endpoint, null), Admission.DEFAULT).getBody();
     }
 
     /**
@@ -75,20 +136,83 @@ public class OpenAIHttpClient implements AutoCloseable {
      * @throws OpenAIException 如果请求失败
      */
     public String post(String endpoint, Object body) throws OpenAIException {
+        return postForResult(endpoint, body).getBody();
+    }
+
+    /**
+     * 执行POST请求，同时返回响应元数据（请求ID、服务端处理耗时、限流信息）
+     *
+     * @param endpoint API端点
+     * @param body     请求体
+     * @return 响应体和元数据
+     * @throws OpenAIException 如果请求失败
+     */
+    public HttpResult postForResult(String endpoint, Object body) throws OpenAIException {
+        return postForResult(endpoint, body, admission(body));
+    }
+
+    /**
+     * 执行POST请求，按调用的截止时间和分段超时发出
+     *
+     * @param endpoint  API端点
+     * @param body      请求体
+     * @param admission 调用开始时确定的优先级、截止时间和超时，重试之间共用
+     * @return 响应体和元数据
+     * @throws OpenAIException 如果请求失败；超过截止时间时错误类型为 {@link Admission#ERROR_TYPE_DEADLINE_EXCEEDED}
+     */
+    public HttpResult postForResult(String endpoint, Object body, Admission admission) throws OpenAIException {
         try {
             String url = buildUrl(endpoint);
-            String jsonBody = objectMapper.writeValueAsString(body);
+            MetricKey metricKey = metricKey(endpoint, body);
+            String jsonBody = serialize(body, metricKey);
             RequestBody requestBody = RequestBody.create(jsonBody, MediaType.parse("application/json"));
             return execute(new Request.Builder()
                     .url(url)
                     .post(requestBody)
-                    .build(), jsonBody);
+                    .build(), jsonBody, metricKey, admission);
         } catch (JsonProcessingException e) {
             logger.error("序列化请求体失败: {}", endpoint, e);
             throw new OpenAIException("无法序列化请求体", e);
         }
     }
 
+    /**
+     * 异步执行POST请求，不阻塞调用线程
+     *
+     * @param endpoint API端点
+     * @param body     请求体
+     * @return 完成时包含响应体和元数据，失败时以 {@link OpenAIException} 异常完成
+     */
+    public CompletableFuture<HttpResult> postForResultAsync(String endpoint, Object body) {
+        return postForResultAsync(endpoint, body, admission(body));
+    }
+
+    /**
+     * 异步执行POST请求，按调用的截止时间和分段超时发出
+     *
+     * @param endpoint  API端点
+     * @param body      请求体
+     * @param admission 调用开始时确定的优先级、截止时间和超时，重试之间共用
+     * @return 完成时包含响应体和元数据，失败时以 {@link OpenAIException} 异常完成
+     */
+    public CompletableFuture<HttpResult> postForResultAsync(String endpoint, Object body, Admission admission) {
+        try {
+            String url = buildUrl(endpoint);
+            MetricKey metricKey = metricKey(endpoint, body);
+            String jsonBody = serialize(body, metricKey);
+            RequestBody requestBody = RequestBody.create(jsonBody, MediaType.parse("application/json"));
+            return executeAsync(new Request.Builder()
+                    .url(url)
+                    .post(requestBody)
+                    .build(), jsonBody, metricKey, admission);
+        } catch (JsonProcessingException e) {
+            logger.error("序列化请求体失败: {}", endpoint, e);
+            CompletableFuture<HttpResult> future = new CompletableFuture<>();
+            future.completeExceptionally(new OpenAIException("无法序列化请求体", e));
+            return future;
+        }
+    }
+
     /**
      * 执行DELETE请求
      *
@@ -101,7 +225,7 @@ public class OpenAIHttpClient implements AutoCloseable {
         return execute(new Request.Builder()
                 .url(url)
                 .delete()
-                .build(), null);
+                .build(), null, metricKey(endpoint, null), Admission.DEFAULT).getBody();
     }
     
     /**
@@ -135,78 +259,403 @@ public class OpenAIHttpClient implements AutoCloseable {
         }
     }
 
+    /**
+     * 构建请求的指标键，端点去掉路径参数以控制标签基数
+     *
+     * @param endpoint API端点
+     * @param body 请求体（用于提取模型）
+     * @return 指标键
+     */
+    private MetricKey metricKey(String endpoint, Object body) {
+        String model = body instanceof ChatCompletionRequest ? ((ChatCompletionRequest) body).getModel() : null;
+        String metricEndpoint = endpoint.startsWith("/models/") ? "/models/{id}" : endpoint;
+        return MetricKey.of(SdkMetrics.REQUEST_LATENCY, provider, model, metricEndpoint);
+    }
+
+    /**
+     * 请求的优先级、截止时间和超时，非聊天请求使用默认值
+     */
+    private Admission admission(Object body) {
+        return body instanceof ChatCompletionRequest
+                ? Admission.of((ChatCompletionRequest) body, config.getTimeouts()) : Admission.DEFAULT;
+    }
+
+    /**
+     * 按调用的超时和剩余时间获取OkHttp客户端，与默认客户端相同时直接复用，否则派生一个共享连接池和调度器的客户端
+     * 非流式请求的读取超时即首字节超时；流式请求的读取超时取首字节和空闲超时中较大者，精确的计时由看门狗完成
+     *
+     * @param stream 是否为流式请求
+     */
+    private OkHttpClient clientFor(Admission admission, boolean stream) {
+        Timeouts timeouts = admission.getTimeouts() != null ? admission.getTimeouts() : config.getTimeouts();
+        long readTimeout = timeouts.getFirstByteTimeoutMillis();
+        if (stream) {
+            readTimeout = readTimeout == 0 || timeouts.getIdleTimeoutMillis() == 0 ? 0
+                    : Math.max(readTimeout, timeouts.getIdleTimeoutMillis());
+        }
+        long callTimeout = admission.hasDeadline() ? Math.max(1, admission.remainingMillis()) : 0;
+        if (timeouts.getConnectTimeoutMillis() == client.connectTimeoutMillis()
+                && readTimeout == client.readTimeoutMillis()
+                && timeouts.getIdleTimeoutMillis() == client.writeTimeoutMillis()
+                && callTimeout == 0) {
+            return client;
+        }
+        return client.newBuilder()
+                .connectTimeout(timeouts.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeout, TimeUnit.MILLISECONDS)
+                .writeTimeout(timeouts.getIdleTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .callTimeout(callTimeout, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 序列化请求体，并记录JFR序列化事件
+     */
+    private String serialize(Object body, MetricKey metricKey) throws JsonProcessingException {
+        RequestSerializationEvent event = new RequestSerializationEvent();
+        event.begin();
+        String jsonBody = objectMapper.writeValueAsString(body);
+        event.complete(provider, metricKey.getTag(MetricKey.TAG_MODEL), metricKey.getTag(MetricKey.TAG_ENDPOINT),
+                jsonBody.length());
+        return jsonBody;
+    }
+
     /**
      * 执行HTTP请求
      *
      * @param request HTTP请求
      * @param requestBody 请求体内容（用于错误日志）
-     * @return 响应体
+     * @param metricKey 指标键
+     * @param admission 优先级和截止时间
+     * @return 响应体和元数据
      * @throws OpenAIException 如果请求失败
      */
-    private String execute(Request request, String requestBody) throws OpenAIException {
-        // 构建带有认证头的请求
-        Request.Builder requestBuilder = request.newBuilder()
-                .addHeader("Content-Type", "application/json");
-        
-        // 根据配置类型添加不同的认证头
-        if (config.isAzure()) {
-            // Azure OpenAI使用api-key头
-            requestBuilder.addHeader("api-key", config.getApiKey());
-        } else {
-            // 标准OpenAI使用Bearer认证
-            requestBuilder.addHeader("Authorization", "Bearer " + config.getApiKey());
-            
-            // 如果提供了组织ID，添加相应的头部
-            if (config.getOrganization() != null && !config.getOrganization().isEmpty()) {
-                requestBuilder.addHeader("OpenAI-Organization", config.getOrganization());
+    private HttpResult execute(Request request, String requestBody, MetricKey metricKey, Admission admission)
+            throws OpenAIException {
+        ConcurrencyLimiter.Permit permit = acquirePermit(metricKey, admission);
+        Exchange exchange = new Exchange(request, requestBody, metricKey, admission);
+        exchange.permit = permit;
+        Response response;
+        try {
+            response = clientFor(admission, false).newCall(exchange.request).execute();
+        } catch (IOException e) {
+            throw exchange.fail(e);
+        }
+        try (Response closeable = response) {
+            return exchange.complete(closeable);
+        }
+    }
+
+    /**
+     * 异步执行HTTP请求，响应在OkHttp的调度线程上处理，不阻塞调用线程
+     * 取消返回的Future会取消底层调用
+     */
+    private CompletableFuture<HttpResult> executeAsync(Request request, String requestBody, MetricKey metricKey,
+                                                       Admission admission) {
+        Exchange exchange = new Exchange(request, requestBody, metricKey, admission);
+        CompletableFuture<HttpResult> future = new CompletableFuture<>();
+        CompletableFuture<ConcurrencyLimiter.Permit> permit = limiter.acquire(limitKey(metricKey), admission,
+                config.getRetryScheduler());
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                // 排队中被取消则退出排队
+                permit.cancel(true);
+            }
+        });
+        permit.whenComplete((granted, throwable) -> {
+            if (throwable != null) {
+                if (!permit.isCancelled()) {
+                    OpenAIException rejected = exchange.reject(throwable);
+                    SdkMetrics.recordConcurrencyRejection(metrics, provider, metricKey.getTag(MetricKey.TAG_MODEL),
+                            metricKey.getTag(MetricKey.TAG_ENDPOINT), rejected);
+                    future.completeExceptionally(rejected);
+                } else {
+                    exchange.reject(throwable);
+                }
+                return;
             }
+            recordPermit(metricKey, granted);
+            exchange.permit = granted;
+            if (future.isDone()) {
+                exchange.reject(new OpenAIException("请求已取消"));
+                return;
+            }
+            enqueue(exchange, future);
+        });
+        return future;
+    }
+
+    /**
+     * 把调用交给OkHttp调度器
+     */
+    private void enqueue(Exchange exchange, CompletableFuture<HttpResult> future) {
+        Call call = clientFor(exchange.admission, false).newCall(exchange.request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response closeable = response) {
+                    future.complete(exchange.complete(closeable));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(exchange.fail(e));
+            }
+        });
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+    }
+
+    /**
+     * 同步获取端点的并发许可，排队时阻塞调用线程
+     *
+     * @throws OpenAIException 被限制器拒绝（状态码429）、超过截止时间或等待被中断
+     */
+    private ConcurrencyLimiter.Permit acquirePermit(MetricKey metricKey, Admission admission) throws OpenAIException {
+        CompletableFuture<ConcurrencyLimiter.Permit> future = limiter.acquire(limitKey(metricKey), admission,
+                config.getRetryScheduler());
+        ConcurrencyLimiter.Permit permit;
+        try {
+            permit = future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new OpenAIException("等待并发许可被中断", e);
+        } catch (ExecutionException e) {
+            SdkMetrics.recordConcurrencyRejection(metrics, provider, metricKey.getTag(MetricKey.TAG_MODEL),
+                    metricKey.getTag(MetricKey.TAG_ENDPOINT), e.getCause());
+            throw e.getCause() instanceof OpenAIException ? (OpenAIException) e.getCause()
+                    : new OpenAIException("获取并发许可失败", e.getCause());
         }
-        
-        request = requestBuilder.build();
+        recordPermit(metricKey, permit);
+        return permit;
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            String responseBody = response.body() != null ? response.body().string() : "";
-            
-            if (!response.isSuccessful()) {
-                handleErrorResponse(response.code(), responseBody, request.url().toString(), requestBody);
+    /**
+     * 记录等待许可的耗时，并在端点第一次使用时注册上限和进行中请求数的仪表
+     */
+    private void recordPermit(MetricKey metricKey, ConcurrencyLimiter.Permit permit) {
+        if (!limiter.isEnabled()) {
+            return;
+        }
+        String endpoint = metricKey.getTag(MetricKey.TAG_ENDPOINT);
+        SdkMetrics.recordConcurrencyWait(metrics, provider, metricKey.getTag(MetricKey.TAG_MODEL), endpoint, permit);
+        String key = limitKey(metricKey);
+        if (limitGauges.add(key)) {
+            MetricKey gaugeKey = MetricKey.of(SdkMetrics.CONCURRENCY_LIMIT, provider, null, endpoint)
+                    .withTag("host", host);
+            registerGauge(gaugeKey, () -> limiter.getLimit(key));
+            registerGauge(gaugeKey.withName(SdkMetrics.CONCURRENCY_IN_FLIGHT), () -> limiter.getInFlight(key));
+        }
+    }
+
+    private void registerGauge(MetricKey key, LongSupplier supplier) {
+        ownedGauges.put(key, supplier);
+        metrics.gauge(key, supplier);
+    }
+
+    /**
+     * 并发限制的端点：服务主机和接口
+     */
+    private String limitKey(MetricKey metricKey) {
+        return host + metricKey.getTag(MetricKey.TAG_ENDPOINT);
+    }
+
+    /**
+     * 一次HTTP调用的状态：认证头、Span、泄漏跟踪和指标，同步和异步调用共用
+     */
+    private final class Exchange {
+        private final Request request;
+        private final String requestBody;
+        private final MetricKey metricKey;
+        private final Admission admission;
+        private final Span span;
+        private final long startNanos;
+        private final TrackedResource responseResource;
+        private volatile ConcurrencyLimiter.Permit permit;
+        private volatile int statusCode;
+
+        Exchange(Request request, String requestBody, MetricKey metricKey, Admission admission) {
+            // 构建带有认证头的请求
+            Request.Builder requestBuilder = request.newBuilder()
+                    .tag(MetricKey.class, metricKey)
+                    .addHeader("Content-Type", "application/json");
+
+            // 根据配置类型添加不同的认证头
+            if (config.isAzure()) {
+                // Azure OpenAI使用api-key头
+                requestBuilder.addHeader("api-key", config.getApiKey());
+            } else {
+                // 标准OpenAI使用Bearer认证
+                requestBuilder.addHeader("Authorization", "Bearer " + config.getApiKey());
+
+                // 如果提供了组织ID，添加相应的头部
+                if (config.getOrganization() != null && !config.getOrganization().isEmpty()) {
+                    requestBuilder.addHeader("OpenAI-Organization", config.getOrganization());
+                }
             }
-            
-            return responseBody;
-        } catch (IOException e) {
+
+            this.span = Tracing.current().startChild(TraceAttributes.SPAN_HTTP_REQUEST, SpanKind.CLIENT);
+            applyTraceContext(requestBuilder, span, request);
+            this.request = requestBuilder.build();
+            this.requestBody = requestBody;
+            this.metricKey = metricKey;
+            this.admission = admission;
+            this.startNanos = System.nanoTime();
+            this.responseResource = leakDetector.track(ResourceType.RESPONSE, this.request,
+                    this.request.method() + " " + this.request.url().encodedPath());
+        }
+
+        /**
+         * 读取并处理响应，结束本次调用
+         */
+        HttpResult complete(Response response) throws OpenAIException {
+            boolean success = false;
+            try {
+                statusCode = response.code();
+                span.setAttribute(TraceAttributes.HTTP_STATUS_CODE, response.code());
+                String responseBody = response.body() != null ? response.body().string() : "";
+                ResponseMetadata metadata = responseMetadata(response, startNanos);
+                if (metadata.getRequestId() != null) {
+                    span.setAttribute(TraceAttributes.PROVIDER_REQUEST_ID, metadata.getRequestId());
+                }
+                if (metadata.getProcessingMs() != null) {
+                    span.setAttribute(TraceAttributes.PROVIDER_PROCESSING_MS, metadata.getProcessingMs());
+                }
+
+                if (!response.isSuccessful()) {
+                    handleErrorResponse(response.code(), responseBody, request.url(), requestBody,
+                            metricKey.getTag(MetricKey.TAG_MODEL));
+                }
+
+                success = true;
+                span.setStatus(SpanStatus.OK);
+                return new HttpResult(responseBody, metadata);
+            } catch (IOException e) {
+                throw failure(e);
+            } catch (OpenAIException e) {
+                span.recordException(e);
+                throw e;
+            } finally {
+                finish(success);
+            }
+        }
+
+        /**
+         * 请求未能完成（连接失败、超时、被取消），结束本次调用
+         * 调用超时说明到了截止时间，读取超时说明没有等到首字节，分别转换为对应的错误类型
+         */
+        OpenAIException fail(IOException e) {
+            OpenAIException exception;
+            if (admission.hasDeadline() && (admission.isExpired() || isCallTimeout(e))) {
+                exception = admission.deadlineExceeded("HTTP请求超过截止时间: " + request.url().encodedPath());
+                span.recordException(exception);
+            } else if (isReadTimeout(e)) {
+                Timeouts timeouts = admission.getTimeouts() != null ? admission.getTimeouts() : config.getTimeouts();
+                exception = timeouts.firstByteTimeout(request.url().encodedPath(), e);
+                span.recordException(exception);
+                logger.warn("{}", exception.getMessage());
+            } else {
+                exception = failure(e);
+            }
+            finish(false);
+            return exception;
+        }
+
+        /**
+         * 未能获得并发许可或在发出前被取消，结束本次调用
+         */
+        OpenAIException reject(Throwable throwable) {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+            OpenAIException exception = cause instanceof OpenAIException ? (OpenAIException) cause
+                    : new OpenAIException("获取并发许可失败", cause);
+            span.recordException(exception);
+            finish(false);
+            return exception;
+        }
+
+        private OpenAIException failure(IOException e) {
+            span.recordException(e);
             logger.error("HTTP请求执行失败 - URL: {}, 错误: {}", request.url().toString(), e.getMessage(), e);
-            throw new OpenAIException("HTTP请求执行失败: " + e.getMessage(), e);
+            return new OpenAIException("HTTP请求执行失败: " + e.getMessage(), e);
+        }
+
+        private void finish(boolean success) {
+            ConcurrencyLimiter.Permit granted = permit;
+            if (granted != null) {
+                if (success) {
+                    granted.success();
+                } else if (statusCode == 429) {
+                    granted.throttled();
+                } else {
+                    granted.ignore();
+                }
+            }
+            responseResource.close();
+            span.end();
+            SdkMetrics.recordRequest(metrics, provider, metricKey.getTag(MetricKey.TAG_MODEL),
+                    metricKey.getTag(MetricKey.TAG_ENDPOINT), startNanos, success);
+        }
+    }
+
+    /**
+     * 从响应头解析元数据，耗时按请求发出到此刻计算
+     *
+     * @param response HTTP响应
+     * @param startNanos 请求开始时间
+     * @return 响应元数据
+     */
+    public ResponseMetadata responseMetadata(Response response, long startNanos) {
+        return ResponseMetadata.fromHeaders(provider, response.code(), response.headers().toMultimap(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * 关联Span：写入HTTP属性，让事件监听器可以添加连接事件，并在开启传播时添加traceparent请求头
+     */
+    private void applyTraceContext(Request.Builder requestBuilder, Span span, Request request) {
+        if (!span.isRecording()) {
+            return;
+        }
+        span.setAttribute(TraceAttributes.HTTP_METHOD, request.method());
+        span.setAttribute(TraceAttributes.SERVER_ADDRESS, request.url().host());
+        span.setAttribute(TraceAttributes.URL_PATH, request.url().encodedPath());
+        requestBuilder.tag(Span.class, span);
+        if (config.isTraceContextPropagation() && span.getContext().isValid()) {
+            requestBuilder.header("traceparent", span.getContext().toTraceparent());
         }
     }
 
     /**
      * 处理错误响应
+     * 错误日志按状态码和路径去重限流，请求体和响应体不再直接输出，而是交给 {@link PayloadSampler} 采样保存
      *
      * @param statusCode  HTTP状态码
      * @param responseBody 响应体
      * @param url 请求URL
      * @param requestBody 请求体
+     * @param model 模型
      * @throws OpenAIException 包含错误详情的异常
      */
-    private void handleErrorResponse(int statusCode, String responseBody, String url, String requestBody) throws OpenAIException {
+    private void handleErrorResponse(int statusCode, String responseBody, HttpUrl url, String requestBody,
+                                     String model) throws OpenAIException {
         String message = "请求失败，状态码: " + statusCode;
         String errorType = null;
         String errorCode = null;
-        String fullErrorJson = null;
-
-        // 记录详细的错误信息
-        logger.error("OpenAI API 错误 - 状态码: {}, URL: {}", statusCode, url);
-        if (requestBody != null) {
-            logger.debug("请求参数: {}", requestBody);
-        }
-        logger.error("错误响应: {}", responseBody);
+        // 直接使用原始响应体，不再解析后重新序列化
+        String fullErrorJson = responseBody;
 
         try {
             JsonNode errorJson = objectMapper.readTree(responseBody);
-            // 保存完整的错误JSON字符串
-            fullErrorJson = objectMapper.writeValueAsString(errorJson);
-            
-            if (errorJson.has("error")) {
-                JsonNode error = errorJson.get("error");
+            JsonNode error = errorJson != null ? errorJson.get("error") : null;
+            if (error != null) {
                 if (error.has("message")) {
                     message = error.get("message").asText();
                 }
@@ -218,14 +667,21 @@ public class OpenAIHttpClient implements AutoCloseable {
                 }
             }
         } catch (Exception e) {
-            // 如果解析失败，使用原始响应体作为错误JSON
-            logger.debug("解析错误响应失败: {}", responseBody, e);
-            fullErrorJson = responseBody;
+            logger.debug("解析错误响应失败: {}", e.getMessage());
+        }
+
+        // 记录错误信息，同一状态码和路径的错误在时间窗口内只输出一次
+        long suppressed = LogThrottler.getDefault().tryAcquire(
+                "http|" + provider + "|" + statusCode + "|" + url.encodedPath());
+        if (suppressed >= 0) {
+            logger.error("OpenAI API 错误 - 状态码: {}, URL: {}, 错误响应: {}{}", statusCode, url, responseBody,
+                    LogThrottler.suppressedSuffix(suppressed));
         }
+        PayloadSampler.getDefault().record(provider, model, statusCode, message, () -> requestBody, responseBody);
 
         // 如果是400错误且涉及tools，添加特殊提示
         if (statusCode == 400 && requestBody != null && requestBody.contains("\"tools\"")) {
-            message += " (可能是tools参数格式错误，请检查控制台输出的请求参数)";
+            message += " (可能是tools参数格式错误，请检查PayloadSampler中采样的请求参数)";
         }
         
         // 将完整的错误JSON附加到消息中
@@ -246,14 +702,48 @@ public class OpenAIHttpClient implements AutoCloseable {
      * @throws OpenAIException 如果请求失败
      */
     public EventSource postStream(String endpoint, Object body, EventSourceListener listener) throws OpenAIException {
+        return postStream(endpoint, body, listener, Tracing.current());
+    }
+
+    /**
+     * 执行流式POST请求，并把连接事件记录到指定的流Span
+     *
+     * @param endpoint API端点
+     * @param body     请求体
+     * @param listener 事件监听器
+     * @param span     流Span
+     * @return EventSource 对象，用于关闭连接
+     * @throws OpenAIException 如果请求失败
+     */
+    public EventSource postStream(String endpoint, Object body, EventSourceListener listener, Span span)
+            throws OpenAIException {
+        return postStream(endpoint, body, listener, span, admission(body));
+    }
+
+    /**
+     * 执行流式POST请求，按调用的截止时间和分段超时读取
+     * 首字节、事件间隔超时和截止时间由看门狗计时，超时时关闭流，监听器的onFailure收到对应错误类型的 {@link OpenAIException}
+     *
+     * @param endpoint  API端点
+     * @param body      请求体
+     * @param listener  事件监听器
+     * @param span      流Span
+     * @param admission 调用开始时确定的优先级、截止时间和超时，重试之间共用
+     * @return EventSource 对象，用于关闭连接
+     * @throws OpenAIException 如果请求失败
+     */
+    public EventSource postStream(String endpoint, Object body, EventSourceListener listener, Span span,
+                                  Admission admission) throws OpenAIException {
         try {
             String url = buildUrl(endpoint);
-            String jsonBody = objectMapper.writeValueAsString(body);
+            MetricKey metricKey = metricKey(endpoint, body);
+            String jsonBody = serialize(body, metricKey);
             RequestBody requestBody = RequestBody.create(jsonBody, MediaType.parse("application/json"));
             
             Request.Builder requestBuilder = new Request.Builder()
                     .url(url)
                     .post(requestBody)
+                    .tag(MetricKey.class, metricKey)
                     .addHeader("Content-Type", "application/json")
                     .addHeader("Accept", "text/event-stream")
                     .addHeader("Cache-Control", "no-cache");
@@ -272,11 +762,29 @@ public class OpenAIHttpClient implements AutoCloseable {
                 }
             }
             
+            // 流式请求的连接事件记录在调用方的流Span上
+            applyTraceContext(requestBuilder, span, requestBuilder.build());
             Request request = requestBuilder.build();
             
+            // 流在整个生命周期内占用并发许可，延迟样本为收到响应头的时间
+            // 许可监听器在超时监听器内侧，超时关闭的流收到的是超时错误而不是取消
+            ConcurrencyLimiter.Permit permit = acquirePermit(metricKey, admission);
+            if (limiter.isEnabled()) {
+                listener = new PermitEventSourceListener(listener, permit);
+            }
+            TimeoutEventSourceListener timeouts = new TimeoutEventSourceListener(listener);
+            listener = timeouts;
+
+            // 开启泄漏检测时跟踪流，在流关闭或失败时释放
+            if (leakDetector.isEnabled()) {
+                listener = new TrackingEventSourceListener(listener, leakDetector, request);
+            }
+            
             // 创建EventSource
-            EventSource.Factory factory = EventSources.createFactory(client);
-            return factory.newEventSource(request, listener);
+            EventSource.Factory factory = EventSources.createFactory(clientFor(admission, true));
+            EventSource eventSource = factory.newEventSource(request, listener);
+            timeouts.start(eventSource, admission, request.url().encodedPath());
+            return eventSource;
             
         } catch (JsonProcessingException e) {
             logger.error("序列化流式请求体失败: {}", endpoint, e);
@@ -289,6 +797,8 @@ public class OpenAIHttpClient implements AutoCloseable {
      */
     @Override
     public void close() {
+        clientResource.close();
+        ownedGauges.forEach(metrics::removeGauge);
         try {
             if (client != null) {
                 // 关闭连接池
@@ -311,4 +821,188 @@ public class OpenAIHttpClient implements AutoCloseable {
             logger.error("关闭 HTTP 客户端时发生错误", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * OkHttp的调用超时（callTimeout）触发时抛出消息为timeout的InterruptedIOException
+     */
+    private static boolean isCallTimeout(IOException e) {
+        return e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)
+                && "timeout".equals(e.getMessage());
+    }
+
+    /**
+     * 等待响应时socket读取超时；连接超时不算
+     */
+    private static boolean isReadTimeout(IOException e) {
+        String message = e.getMessage() != null ? e.getMessage().toLowerCase() : "";
+        return e instanceof SocketTimeoutException && !message.contains("connect");
+    }
+
+    /**
+     * 按首字节、事件间隔超时和截止时间关闭流的监听器
+     * 超时后关闭流，OkHttp回调的取消错误替换为超时错误，避免被当作主动取消忽略
+     */
+    private final class TimeoutEventSourceListener extends EventSourceListener {
+        private final EventSourceListener delegate;
+        private volatile StreamWatchdog watchdog;
+        private volatile OpenAIException timeout;
+        private volatile boolean received;
+        private volatile boolean closed;
+
+        TimeoutEventSourceListener(EventSourceListener delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * 流创建后开始计时；创建期间已经收到的数据和已经结束的流在这里补上
+         */
+        void start(EventSource eventSource, Admission admission, String target) {
+            StreamWatchdog started = StreamWatchdog.start(admission, config.getRetryScheduler(), target,
+                    exception -> {
+                        timeout = exception;
+                        logger.warn("{}", exception.getMessage());
+                        eventSource.cancel();
+                    });
+            watchdog = started;
+            if (received) {
+                started.onData();
+            }
+            if (closed) {
+                started.stop();
+            }
+        }
+
+        @Override
+        public void onOpen(EventSource eventSource, Response response) {
+            delegate.onOpen(eventSource, response);
+        }
+
+        @Override
+        public void onEvent(EventSource eventSource, String id, String type, String data) {
+            received = true;
+            StreamWatchdog current = watchdog;
+            if (current != null) {
+                current.onData();
+            }
+            delegate.onEvent(eventSource, id, type, data);
+        }
+
+        @Override
+        public void onClosed(EventSource eventSource) {
+            stop();
+            if (timeout != null) {
+                delegate.onFailure(eventSource, timeout, null);
+                return;
+            }
+            delegate.onClosed(eventSource);
+        }
+
+        @Override
+        public void onFailure(EventSource eventSource, Throwable t, Response response) {
+            stop();
+            delegate.onFailure(eventSource, timeout != null ? timeout : t, response);
+        }
+
+        private void stop() {
+            closed = true;
+            StreamWatchdog current = watchdog;
+            if (current != null) {
+                current.stop();
+            }
+        }
+    }
+
+    /**
+     * 在流结束时释放并发许可的监听器
+     * 调用方收到 [DONE] 后主动取消流，OkHttp以取消错误回调onFailure；流已经正常结束或在打开后被调用方取消时
+     * 仍按成功记录，否则正常结束的流不会为限制器提供延迟样本
+     */
+    private static class PermitEventSourceListener extends EventSourceListener {
+        private final EventSourceListener delegate;
+        private final ConcurrencyLimiter.Permit permit;
+        private final long startNanos = System.nanoTime();
+        private volatile long openNanos;
+        private volatile boolean opened;
+        private volatile boolean completed;
+
+        PermitEventSourceListener(EventSourceListener delegate, ConcurrencyLimiter.Permit permit) {
+            this.delegate = delegate;
+            this.permit = permit;
+        }
+
+        @Override
+        public void onOpen(EventSource eventSource, Response response) {
+            openNanos = System.nanoTime() - startNanos;
+            opened = response.isSuccessful();
+            delegate.onOpen(eventSource, response);
+        }
+
+        @Override
+        public void onEvent(EventSource eventSource, String id, String type, String data) {
+            if ("[DONE]".equals(data)) {
+                completed = true;
+            }
+            delegate.onEvent(eventSource, id, type, data);
+        }
+
+        @Override
+        public void onClosed(EventSource eventSource) {
+            permit.success(openNanos);
+            delegate.onClosed(eventSource);
+        }
+
+        @Override
+        public void onFailure(EventSource eventSource, Throwable t, Response response) {
+            if (response != null && response.code() == 429) {
+                permit.throttled();
+            } else if (completed || (opened && isCanceled(t))) {
+                permit.success(openNanos);
+            } else {
+                permit.ignore();
+            }
+            delegate.onFailure(eventSource, t, response);
+        }
+
+        /**
+         * 调用方取消流时OkHttp抛出消息为Canceled的IOException
+         */
+        private static boolean isCanceled(Throwable t) {
+            return t instanceof IOException && "canceled".equalsIgnoreCase(t.getMessage());
+        }
+    }
+
+    /**
+     * 跟踪流生命周期的监听器，OkHttp在流结束时一定会回调onClosed或onFailure
+     */
+    private static class TrackingEventSourceListener extends EventSourceListener {
+        private final EventSourceListener delegate;
+        private final TrackedResource resource;
+
+        TrackingEventSourceListener(EventSourceListener delegate, LeakDetector leakDetector, Request request) {
+            this.delegate = delegate;
+            this.resource = leakDetector.track(ResourceType.STREAM, this, "SSE " + request.url().encodedPath());
+        }
+
+        @Override
+        public void onOpen(EventSource eventSource, Response response) {
+            delegate.onOpen(eventSource, response);
+        }
+
+        @Override
+        public void onEvent(EventSource eventSource, String id, String type, String data) {
+            delegate.onEvent(eventSource, id, type, data);
+        }
+
+        @Override
+        public void onClosed(EventSource eventSource) {
+            resource.close();
+            delegate.onClosed(eventSource);
+        }
+
+        @Override
+        public void onFailure(EventSource eventSource, Throwable t, Response response) {
+            resource.close();
+            delegate.onFailure(eventSource, t, response);
+        }
+    }
+}
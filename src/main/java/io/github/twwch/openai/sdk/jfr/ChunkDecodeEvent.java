@@ -0,0 +1,40 @@
+package io.github.twwch.openai.sdk.jfr;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 流式数据块解码事件（每个SSE事件或Bedrock PayloadPart一次，默认不采集堆栈以降低录制开销）
+ */
+@Name("io.github.twwch.openai.sdk.ChunkDecode")
+@Label("Chunk Decode")
+@Description("将上游流式数据解码为ChatCompletionChunk")
+@StackTrace(false)
+public class ChunkDecodeEvent extends SdkEvent {
+    @Label("Payload Size")
+    @DataAmount
+    long size;
+
+    @Label("Chunk Count")
+    int chunkCount;
+
+    /**
+     * 结束计时，录制开启时写入字段并提交
+     *
+     * @param size 原始数据长度（字符数）
+     * @param chunkCount 解码出的数据块数量
+     */
+    public void complete(OpenAIException.Provider provider, String model, long size, int chunkCount) {
+        end();
+        if (shouldCommit()) {
+            setSource(provider, model);
+            this.size = size;
+            this.chunkCount = chunkCount;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.twwch.openai.sdk.jfr;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 获取连接事件：从调用开始到拿到连接（包括调度排队、连接池等待以及新建连接的握手）
+ */
+@Name("io.github.twwch.openai.sdk.ConnectionAcquire")
+@Label("Connection Acquire")
+@Description("从调用开始到获取到HTTP连接")
+public class ConnectionAcquireEvent extends SdkEvent {
+    @Label("Host")
+    String host;
+
+    @Label("New Connection")
+    boolean newConnection;
+
+    /**
+     * 结束计时，录制开启时写入字段并提交
+     *
+     * @param newConnection 是否新建了连接（false表示复用连接池中的连接）
+     */
+    public void complete(OpenAIException.Provider provider, String model, String host, boolean newConnection) {
+        end();
+        if (shouldCommit()) {
+            setSource(provider, model);
+            this.host = host;
+            this.newConnection = newConnection;
+            commit();
+        }
+    }
+}
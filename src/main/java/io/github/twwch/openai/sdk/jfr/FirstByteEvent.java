@@ -0,0 +1,33 @@
+package io.github.twwch.openai.sdk.jfr;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 首字节事件：从调用开始到收到第一个响应字节（流式请求为第一个数据块）
+ */
+@Name("io.github.twwch.openai.sdk.FirstByte")
+@Label("First Byte")
+@Description("从调用开始到收到第一个响应字节")
+public class FirstByteEvent extends SdkEvent {
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Stream")
+    boolean stream;
+
+    /**
+     * 结束计时，录制开启时写入字段并提交
+     */
+    public void complete(OpenAIException.Provider provider, String model, String endpoint, boolean stream) {
+        end();
+        if (shouldCommit()) {
+            setSource(provider, model);
+            this.endpoint = endpoint;
+            this.stream = stream;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.twwch.openai.sdk.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 图片处理事件（批量下载、压缩）
+ */
+@Name("io.github.twwch.openai.sdk.ImageProcessing")
+@Label("Image Processing")
+@Category({"OpenAI SDK"})
+@Description("图片下载、转换base64和压缩")
+public class ImageProcessingEvent extends Event {
+    /** 批量下载并转换为base64 */
+    public static final String DOWNLOAD = "download";
+    /** 压缩图片 */
+    public static final String COMPRESS = "compress";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Image Count")
+    int imageCount;
+
+    @Label("Input Size")
+    @DataAmount
+    long inputSize;
+
+    @Label("Output Size")
+    @DataAmount
+    long outputSize;
+
+    /**
+     * 结束计时，录制开启时写入字段并提交
+     */
+    public void complete(String operation, int imageCount, long inputSize, long outputSize) {
+        end();
+        if (shouldCommit()) {
+            this.operation = operation;
+            this.imageCount = imageCount;
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package io.github.twwch.openai.sdk.jfr;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 请求体序列化事件（OpenAI/Azure/Gemini的JSON序列化，Bedrock适配器的请求转换）
+ */
+@Name("io.github.twwch.openai.sdk.RequestSerialization")
+@Label("Request Serialization")
+@Description("将ChatCompletionRequest序列化为上游请求体")
+public class RequestSerializationEvent extends SdkEvent {
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Body Size")
+    @DataAmount
+    long size;
+
+    /**
+     * 结束计时，录制开启时写入字段并提交
+     *
+     * @param size 请求体长度（字符数）
+     */
+    public void complete(OpenAIException.Provider provider, String model, String endpoint, long size) {
+        end();
+        if (shouldCommit()) {
+            setSource(provider, model);
+            this.endpoint = endpoint;
+            this.size = size;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.twwch.openai.sdk.jfr;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 响应转换事件：将上游响应体解析/转换为ChatCompletionResponse
+ */
+@Name("io.github.twwch.openai.sdk.ResponseConversion")
+@Label("Response Conversion")
+@Description("将上游响应体转换为ChatCompletionResponse")
+public class ResponseConversionEvent extends SdkEvent {
+    @Label("Body Size")
+    @DataAmount
+    long size;
+
+    /**
+     * 结束计时，录制开启时写入字段并提交
+     *
+     * @param size 响应体长度（字符数）
+     */
+    public void complete(OpenAIException.Provider provider, String model, long size) {
+        end();
+        if (shouldCommit()) {
+            setSource(provider, model);
+            this.size = size;
+            commit();
+        }
+    }
+}
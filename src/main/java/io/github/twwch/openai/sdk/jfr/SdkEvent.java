@@ -0,0 +1,25 @@
+package io.github.twwch.openai.sdk.jfr;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * SDK JFR事件基类
+ * 所有事件使用 begin() / complete(...) 的方式记录：未开启录制时 shouldCommit() 直接返回false，
+ * 字段不会被赋值，开销只有一次对象分配（通常会被JIT消除）。
+ */
+@Category({"OpenAI SDK"})
+abstract class SdkEvent extends Event {
+    @Label("Provider")
+    String provider;
+
+    @Label("Model")
+    String model;
+
+    void setSource(OpenAIException.Provider provider, String model) {
+        this.provider = provider != null ? provider.getDisplayName() : null;
+        this.model = model;
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.twwch.openai.sdk.jfr;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 等待上游事件：请求发送完毕到收到响应头，即服务端处理时间加网络往返
+ */
+@Name("io.github.twwch.openai.sdk.UpstreamWait")
+@Label("Upstream Wait")
+@Description("请求发送完毕到收到响应头")
+public class UpstreamWaitEvent extends SdkEvent {
+    @Label("Endpoint")
+    String endpoint;
+
+    /**
+     * 结束计时，录制开启时写入字段并提交
+     */
+    public void complete(OpenAIException.Provider provider, String model, String endpoint) {
+        end();
+        if (shouldCommit()) {
+            setSource(provider, model);
+            this.endpoint = endpoint;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package io.github.twwch.openai.sdk.leak;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 连接和流泄漏检测器
+ * 跟踪打开的客户端、流和同步响应，记录分配位置的调用栈；持有者被GC回收但资源从未关闭时报告为泄漏，
+ * 存活超过阈值的资源报告为长期存活。默认关闭（{@link #disabled()}），用于压测/浸泡测试中发现缓慢的连接池耗尽。
+ */
+public class LeakDetector {
+    private static final Logger logger = LoggerFactory.getLogger(LeakDetector.class);
+
+    private static final LeakDetector DISABLED = new LeakDetector(false);
+    private static final int MAX_RECORDED_LEAKS = 100;
+
+    private final boolean enabled;
+    private final Set<Entry> live = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    private final Deque<LeakRecord> leaks = new ArrayDeque<>();
+    private final AtomicLong leakedCount = new AtomicLong();
+    private volatile boolean captureStackTraces = true;
+    private volatile long maxLifetimeMillis = 10 * 60 * 1000L;
+
+    /**
+     * 创建开启的检测器
+     */
+    public LeakDetector() {
+        this(true);
+    }
+
+    private LeakDetector(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * 获取关闭状态的检测器，跟踪调用不产生任何开销
+     */
+    public static LeakDetector disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 跟踪一个资源
+     *
+     * @param type 资源类型
+     * @param owner 资源持有者，持有者被回收而资源未关闭时视为泄漏（弱引用，不影响回收）
+     * @param description 资源描述（如模型、主机）
+     * @return 资源句柄，资源释放时关闭
+     */
+    public TrackedResource track(ResourceType type, Object owner, String description) {
+        if (!enabled) {
+            return TrackedResource.NOOP;
+        }
+        pollLeaks();
+        Throwable site = captureStackTraces ? new Throwable("资源分配位置: " + type + " " + description) : null;
+        Entry entry = new Entry(this, type, owner, description, site);
+        live.add(entry);
+        return entry;
+    }
+
+    /**
+     * 当前未关闭的资源数量
+     */
+    public int getLiveCount() {
+        pollLeaks();
+        return live.size();
+    }
+
+    /**
+     * 指定类型未关闭的资源数量
+     */
+    public int getLiveCount(ResourceType type) {
+        pollLeaks();
+        int count = 0;
+        for (Entry entry : live) {
+            if (entry.type == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 当前未关闭资源的快照
+     */
+    public List<LeakRecord> getLiveResources() {
+        pollLeaks();
+        long now = System.currentTimeMillis();
+        List<LeakRecord> records = new ArrayList<>();
+        for (Entry entry : live) {
+            records.add(entry.toRecord(now, false));
+        }
+        return records;
+    }
+
+    /**
+     * 已检测到的泄漏数量
+     */
+    public long getLeakedCount() {
+        pollLeaks();
+        return leakedCount.get();
+    }
+
+    /**
+     * 最近检测到的泄漏（最多保留100条）
+     */
+    public List<LeakRecord> getLeaks() {
+        pollLeaks();
+        synchronized (leaks) {
+            return new ArrayList<>(leaks);
+        }
+    }
+
+    /**
+     * 查找存活时长超过阈值的资源，每个资源只告警一次
+     *
+     * @return 超过阈值的资源
+     */
+    public List<LeakRecord> findLongLived() {
+        pollLeaks();
+        long now = System.currentTimeMillis();
+        long threshold = maxLifetimeMillis;
+        List<LeakRecord> records = new ArrayList<>();
+        for (Entry entry : live) {
+            if (now - entry.allocatedAtMillis > threshold) {
+                LeakRecord record = entry.toRecord(now, false);
+                records.add(record);
+                if (entry.reported.compareAndSet(false, true)) {
+                    logger.warn("资源存活时间过长: {}", record, entry.site);
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 输出检测报告：回收已泄漏的资源并查找长期存活的资源
+     *
+     * @return 是否没有发现泄漏和长期存活的资源
+     */
+    public boolean report() {
+        List<LeakRecord> longLived = findLongLived();
+        logger.info("泄漏检测 - 存活资源: {} (客户端: {}, 流: {}, 响应: {}), 已泄漏: {}, 长期存活: {}",
+                live.size(), getLiveCount(ResourceType.CLIENT), getLiveCount(ResourceType.STREAM),
+                getLiveCount(ResourceType.RESPONSE), leakedCount.get(), longLived.size());
+        return leakedCount.get() == 0 && longLived.isEmpty();
+    }
+
+    /**
+     * 清空跟踪状态（用于测试之间复位）
+     */
+    public void reset() {
+        live.clear();
+        synchronized (leaks) {
+            leaks.clear();
+        }
+        leakedCount.set(0);
+    }
+
+    public boolean isCaptureStackTraces() {
+        return captureStackTraces;
+    }
+
+    /**
+     * 设置是否采集分配位置的调用栈（默认开启，高并发下有一定开销）
+     */
+    public void setCaptureStackTraces(boolean captureStackTraces) {
+        this.captureStackTraces = captureStackTraces;
+    }
+
+    public long getMaxLifetimeMillis() {
+        return maxLifetimeMillis;
+    }
+
+    /**
+     * 设置资源存活时长阈值（默认10分钟）
+     */
+    public void setMaxLifetimeMillis(long maxLifetimeMillis) {
+        this.maxLifetimeMillis = maxLifetimeMillis;
+    }
+
+    /**
+     * 处理持有者已被回收的资源，未关闭的记为泄漏
+     */
+    private void pollLeaks() {
+        Object ref;
+        while ((ref = queue.poll()) != null) {
+            Entry entry = (Entry) ref;
+            if (live.remove(entry)) {
+                LeakRecord record = entry.toRecord(System.currentTimeMillis(), true);
+                leakedCount.incrementAndGet();
+                synchronized (leaks) {
+                    if (leaks.size() >= MAX_RECORDED_LEAKS) {
+                        leaks.removeFirst();
+                    }
+                    leaks.addLast(record);
+                }
+                logger.error("检测到资源泄漏，持有者已被回收但资源未关闭: {}", record, entry.site);
+            }
+        }
+    }
+
+    private static final class Entry extends WeakReference<Object> implements TrackedResource {
+        private final LeakDetector detector;
+        private final ResourceType type;
+        private final String description;
+        private final Throwable site;
+        private final long allocatedAtMillis = System.currentTimeMillis();
+        private final AtomicBoolean reported = new AtomicBoolean();
+
+        Entry(LeakDetector detector, ResourceType type, Object owner, String description, Throwable site) {
+            super(owner, detector.queue);
+            this.detector = detector;
+            this.type = type;
+            this.description = description;
+            this.site = site;
+        }
+
+        @Override
+        public void close() {
+            if (detector.live.remove(this)) {
+                clear();
+            }
+        }
+
+        LeakRecord toRecord(long now, boolean leaked) {
+            return new LeakRecord(type, description, allocatedAtMillis, now - allocatedAtMillis, leaked, site);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.twwch.openai.sdk.leak;
+
+/**
+ * 被跟踪资源的快照
+ */
+public class LeakRecord {
+    private final ResourceType type;
+    private final String description;
+    private final long allocatedAtMillis;
+    private final long ageMillis;
+    private final boolean leaked;
+    private final Throwable allocationSite;
+
+    LeakRecord(ResourceType type, String description, long allocatedAtMillis, long ageMillis, boolean leaked,
+               Throwable allocationSite) {
+        this.type = type;
+        this.description = description;
+        this.allocatedAtMillis = allocatedAtMillis;
+        this.ageMillis = ageMillis;
+        this.leaked = leaked;
+        this.allocationSite = allocationSite;
+    }
+
+    public ResourceType getType() {
+        return type;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * 分配时间（epoch毫秒）
+     */
+    public long getAllocatedAtMillis() {
+        return allocatedAtMillis;
+    }
+
+    /**
+     * 存活时长（毫秒），已泄漏的资源为被回收时的存活时长
+     */
+    public long getAgeMillis() {
+        return ageMillis;
+    }
+
+    /**
+     * 是否已泄漏：持有者已被GC回收，但资源从未关闭
+     */
+    public boolean isLeaked() {
+        return leaked;
+    }
+
+    /**
+     * 分配位置的调用栈，未开启调用栈采集时为null
+     */
+    public Throwable getAllocationSite() {
+        return allocationSite;
+    }
+
+    @Override
+    public String toString() {
+        return type + "{" + description + ", ageMs=" + ageMillis + (leaked ? ", leaked" : "") + "}";
+    }
+}
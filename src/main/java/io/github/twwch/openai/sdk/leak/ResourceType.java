@@ -0,0 +1,13 @@
+package io.github.twwch.openai.sdk.leak;
+
+/**
+ * 泄漏检测跟踪的资源类型
+ */
+public enum ResourceType {
+    /** HTTP客户端或Bedrock客户端（持有连接池和线程池） */
+    CLIENT,
+    /** 流式请求（SSE连接或Bedrock事件流） */
+    STREAM,
+    /** 正在读取的同步响应 */
+    RESPONSE
+}
@@ -0,0 +1,16 @@
+package io.github.twwch.openai.sdk.leak;
+
+/**
+ * 被跟踪资源的句柄，资源释放时调用 {@link #close()}，重复调用会被忽略
+ */
+public interface TrackedResource extends AutoCloseable {
+
+    /**
+     * 未开启检测时返回的空句柄
+     */
+    TrackedResource NOOP = () -> {
+    };
+
+    @Override
+    void close();
+}
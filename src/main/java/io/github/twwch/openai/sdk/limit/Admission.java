@@ -0,0 +1,163 @@
+package io.github.twwch.openai.sdk.limit;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.usage.UsageLedger;
+
+/**
+ * 一次调用的准入参数：优先级、绝对截止时间、租户和分段超时
+ * 已经超过截止时间的请求在发出前丢弃（错误类型 {@link #ERROR_TYPE_DEADLINE_EXCEEDED}），不再占用并发和配额。
+ * 租户取请求metadata中的 {@link #TENANT_METADATA_KEY}，未设置时取user字段，在调用开始时确定，
+ * 用于并发限制器的公平排队和每分钟token额度；用量账本按user字段记账，只设置user时两者一致。
+ * 同一次调用的重试、图片下载和流的读取共用一个准入参数，截止时间在调用开始时确定。
+ */
+public final class Admission {
+    /** 超过截止时间被丢弃时异常的错误类型 */
+    public static final String ERROR_TYPE_DEADLINE_EXCEEDED = "deadline_exceeded";
+    /** 请求metadata中指定租户的键 */
+    public static final String TENANT_METADATA_KEY = "tenant";
+
+    /** 默认租户、普通优先级、没有截止时间 */
+    public static final Admission DEFAULT = new Admission(RequestPriority.NORMAL, 0);
+
+    private final RequestPriority priority;
+    private final long deadlineMillis;
+    private final String tenant;
+    private final Timeouts timeouts;
+
+    /**
+     * 默认租户
+     *
+     * @param priority       优先级，为null时为 {@link RequestPriority#NORMAL}
+     * @param deadlineMillis 截止时间（epoch毫秒），小于等于0表示没有截止时间
+     */
+    public Admission(RequestPriority priority, long deadlineMillis) {
+        this(priority, deadlineMillis, null);
+    }
+
+    /**
+     * @param priority       优先级，为null时为 {@link RequestPriority#NORMAL}
+     * @param deadlineMillis 截止时间（epoch毫秒），小于等于0表示没有截止时间
+     * @param tenant         租户，为null或空时为 {@link UsageLedger#DEFAULT_TENANT}
+     */
+    public Admission(RequestPriority priority, long deadlineMillis, String tenant) {
+        this(priority, deadlineMillis, tenant, null);
+    }
+
+    /**
+     * @param priority       优先级，为null时为 {@link RequestPriority#NORMAL}
+     * @param deadlineMillis 截止时间（epoch毫秒），小于等于0表示没有截止时间
+     * @param tenant         租户，为null或空时为 {@link UsageLedger#DEFAULT_TENANT}
+     * @param timeouts       分段超时，为null时使用客户端的默认超时
+     */
+    public Admission(RequestPriority priority, long deadlineMillis, String tenant, Timeouts timeouts) {
+        this.priority = priority != null ? priority : RequestPriority.NORMAL;
+        this.deadlineMillis = Math.max(0, deadlineMillis);
+        this.tenant = tenant != null && !tenant.isEmpty() ? tenant : UsageLedger.DEFAULT_TENANT;
+        this.timeouts = timeouts;
+    }
+
+    /**
+     * 从聊天请求中读取优先级、截止时间和租户
+     */
+    public static Admission of(ChatCompletionRequest request) {
+        if (request == null) {
+            return DEFAULT;
+        }
+        String tenant = tenantOf(request);
+        if (request.getPriority() == null && request.getDeadline() == null && tenant == null
+                && request.getTimeouts() == null) {
+            return DEFAULT;
+        }
+        return new Admission(request.getPriority(), request.getDeadline() != null ? request.getDeadline() : 0, tenant,
+                request.getTimeouts());
+    }
+
+    /**
+     * 在调用开始时确定准入参数：请求上的超时覆盖配置的超时，总超时从此刻起计算，与请求的截止时间取较早者
+     *
+     * @param request  聊天请求，可以为null
+     * @param defaults 配置的超时，可以为null
+     */
+    public static Admission of(ChatCompletionRequest request, Timeouts defaults) {
+        Timeouts timeouts = defaults != null ? defaults.merge(request != null ? request.getTimeouts() : null)
+                : request != null ? request.getTimeouts() : null;
+        long deadline = request != null && request.getDeadline() != null ? request.getDeadline() : 0;
+        if (timeouts != null && timeouts.getTotalTimeoutMillis() > 0) {
+            long total = System.currentTimeMillis() + timeouts.getTotalTimeoutMillis();
+            deadline = deadline > 0 ? Math.min(deadline, total) : total;
+        }
+        return new Admission(request != null ? request.getPriority() : null, deadline,
+                request != null ? tenantOf(request) : null, timeouts);
+    }
+
+    /**
+     * 请求的租户：metadata中的 {@link #TENANT_METADATA_KEY}，其次是user字段
+     *
+     * @return 都未设置时返回null
+     */
+    public static String tenantOf(ChatCompletionRequest request) {
+        String tenant = request.getMetadata() != null ? request.getMetadata().get(TENANT_METADATA_KEY) : null;
+        if (tenant != null && !tenant.isEmpty()) {
+            return tenant;
+        }
+        return request.getUser() != null && !request.getUser().isEmpty() ? request.getUser() : null;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * 分段超时，未指定时为null（使用客户端的默认超时）
+     */
+    public Timeouts getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * 截止时间（epoch毫秒），没有截止时间时为0
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public boolean hasDeadline() {
+        return deadlineMillis > 0;
+    }
+
+    /**
+     * 距截止时间的剩余毫秒数，没有截止时间时为 {@link Long#MAX_VALUE}
+     */
+    public long remainingMillis() {
+        return hasDeadline() ? deadlineMillis - System.currentTimeMillis() : Long.MAX_VALUE;
+    }
+
+    /**
+     * 是否已经超过截止时间
+     */
+    public boolean isExpired() {
+        return remainingMillis() <= 0;
+    }
+
+    /**
+     * 创建超过截止时间的异常
+     *
+     * @param message 丢弃的阶段
+     */
+    public OpenAIException deadlineExceeded(String message) {
+        return OpenAIException.builder(message + "（截止时间已过 " + Math.max(0, -remainingMillis()) + " ms）")
+                .errorType(ERROR_TYPE_DEADLINE_EXCEEDED)
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return "Admission{tenant=" + tenant + ", priority=" + priority + ", deadline=" + deadlineMillis
+                + (timeouts != null ? ", " + timeouts : "") + "}";
+    }
+}
@@ -0,0 +1,834 @@
+package io.github.twwch.openai.sdk.limit;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 自适应并发限制器
+ * 按端点（OpenAI/Azure为主机和接口，Bedrock为区域和模型）限制进行中的请求数，并根据请求结果调整上限：
+ * <ul>
+ *     <li>{@link Algorithm#AIMD}：成功时线性增加，收到限流（429/ThrottlingException）时按比例减小</li>
+ *     <li>{@link Algorithm#VEGAS}：比较最小延迟和当前延迟估算排队长度，排队增加时减小，同时对限流按比例减小</li>
+ * </ul>
+ * 超过上限的请求排队等待，不占用线程；队列已满或等待超时的请求以429拒绝
+ * （错误类型 {@link #ERROR_TYPE_CONCURRENCY_LIMITED}）。同一窗口内的多次限流只减小一次。
+ * <p>
+ * 排队按 {@link Admission} 调度：优先级高的先放行；同一优先级内在租户之间按 {@link TenantPolicy} 的权重公平放行，
+ * 租户内部截止时间早的先放行（EDF），其余按到达顺序。租户可以设置每个端点的并发上限和每分钟token额度，
+ * 达到上限的租户的请求留在队列中，不影响其他租户。队列已满时更高优先级的请求挤掉排在最后的低优先级请求。
+ * 已超过截止时间的请求不会被放行，以 {@link Admission#ERROR_TYPE_DEADLINE_EXCEEDED} 失败。
+ * <p>
+ * 限制器还可以设置所有端点合计的每分钟请求数和token数（上游的组织或账号额度）。设置
+ * {@link #setQuotaCoordination} 后，这些额度和租户的每分钟额度由共享同一个协调器的所有进程分批租用，
+ * 协调器不可用时退回本地限制。
+ */
+public class ConcurrencyLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    /** 被限制器拒绝时异常的错误类型 */
+    public static final String ERROR_TYPE_CONCURRENCY_LIMITED = "concurrency_limited";
+
+    /** 默认初始上限 */
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    /** 默认最小上限 */
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    /** 默认最大上限 */
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+    /** 默认每个端点最多排队的请求数 */
+    public static final int DEFAULT_MAX_QUEUE = 1000;
+    /** 默认最长排队时间 */
+    public static final long DEFAULT_MAX_QUEUE_WAIT_MILLIS = 30_000L;
+
+    private static final double BACKOFF_RATIO = 0.75;
+    /** Vegas每隔多少个样本重新探测最小延迟 */
+    private static final int VEGAS_PROBE_INTERVAL = 1000;
+
+    private static final ConcurrencyLimiter DISABLED = new ConcurrencyLimiter();
+
+    /**
+     * 上限调整算法
+     */
+    public enum Algorithm {
+        AIMD,
+        VEGAS
+    }
+
+    private final boolean enabled;
+    private final Algorithm algorithm;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxQueueWaitMillis;
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, TenantPolicy> tenantPolicies = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Tenant> tenants = new ConcurrentHashMap<>();
+    private volatile TenantPolicy defaultTenantPolicy = TenantPolicy.defaults();
+    private volatile QuotaCoordination quotaCoordination;
+    private volatile long requestsPerMinute;
+    private volatile long tokensPerMinute;
+    private volatile SharedQuota requestQuota;
+    private volatile SharedQuota tokenQuota;
+    /** 额度租用完成后重新放行使用的调度器 */
+    private volatile RetryScheduler scheduler;
+
+    /**
+     * 使用默认参数
+     */
+    public ConcurrencyLimiter(Algorithm algorithm) {
+        this(algorithm, DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_MAX_QUEUE,
+                DEFAULT_MAX_QUEUE_WAIT_MILLIS);
+    }
+
+    /**
+     * @param algorithm          上限调整算法
+     * @param initialLimit       每个端点的初始上限
+     * @param minLimit           最小上限
+     * @param maxLimit           最大上限
+     * @param maxQueue           每个端点最多排队的请求数，为0时超过上限直接拒绝
+     * @param maxQueueWaitMillis 最长排队时间（毫秒）
+     */
+    public ConcurrencyLimiter(Algorithm algorithm, int initialLimit, int minLimit, int maxLimit, int maxQueue,
+                              long maxQueueWaitMillis) {
+        if (algorithm == null) {
+            throw new IllegalArgumentException("algorithm不能为null");
+        }
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("上限范围无效: [" + minLimit + ", " + maxLimit + "]");
+        }
+        this.enabled = true;
+        this.algorithm = algorithm;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.initialLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxQueueWaitMillis = maxQueueWaitMillis;
+    }
+
+    private ConcurrencyLimiter() {
+        this.enabled = false;
+        this.algorithm = Algorithm.AIMD;
+        this.initialLimit = Integer.MAX_VALUE;
+        this.minLimit = Integer.MAX_VALUE;
+        this.maxLimit = Integer.MAX_VALUE;
+        this.maxQueue = 0;
+        this.maxQueueWaitMillis = 0;
+    }
+
+    /**
+     * 获取关闭状态的限制器，所有请求直接放行
+     */
+    public static ConcurrencyLimiter disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * 以默认优先级为端点申请一个许可
+     *
+     * @see #acquire(String, Admission, RetryScheduler)
+     */
+    public CompletableFuture<Permit> acquire(String key, RetryScheduler scheduler) {
+        return acquire(key, Admission.DEFAULT, scheduler);
+    }
+
+    /**
+     * 为端点申请一个许可
+     *
+     * @param key       端点
+     * @param admission 优先级和截止时间
+     * @param scheduler 排队超时使用的调度器
+     * @return 获得许可时完成；被拒绝时以 {@link OpenAIException}（状态码429）异常完成，
+     * 超过截止时间时以错误类型 {@link Admission#ERROR_TYPE_DEADLINE_EXCEEDED} 异常完成（限制器关闭时同样检查）；
+     * 取消返回的Future会退出排队。许可用完后必须调用 {@link Permit#success()}、{@link Permit#throttled()}
+     * 或 {@link Permit#ignore()} 之一
+     */
+    public CompletableFuture<Permit> acquire(String key, Admission admission, RetryScheduler scheduler) {
+        if (admission.isExpired()) {
+            CompletableFuture<Permit> future = new CompletableFuture<>();
+            future.completeExceptionally(admission.deadlineExceeded("请求在发出前已超过截止时间: " + key));
+            return future;
+        }
+        if (!enabled) {
+            return CompletableFuture.completedFuture(Permit.NOOP);
+        }
+        Endpoint endpoint = endpoints.computeIfAbsent(key, k -> new Endpoint(k, initialLimit));
+        Tenant tenant = tenant(admission.getTenant());
+        endpoint.scheduler = scheduler;
+        this.scheduler = scheduler;
+        FairQueue.Waiter waiter;
+        FairQueue.Waiter evicted = null;
+        List<FairQueue.Waiter> granted = new ArrayList<>();
+        List<FairQueue.Waiter> expired = new ArrayList<>();
+        long now = System.nanoTime();
+        synchronized (endpoint) {
+            FairQueue.Flow flow = endpoint.queue.flow(admission.getTenant());
+            boolean admits = admits(flow, now);
+            if (endpoint.inFlight < endpoint.limit() && endpoint.queue.isEmpty() && admits) {
+                endpoint.inFlight++;
+                flow.inFlight++;
+                endpoint.queue.charge(flow, policy(flow.tenant).getWeight());
+                consumeRequest(tenant);
+                tenant.granted.increment();
+                return CompletableFuture.completedFuture(new Permit(this, endpoint, flow, admission.getPriority(),
+                        endpoint.inFlight, 0));
+            }
+            waiter = new FairQueue.Waiter(admission, flow, endpoint.sequence++);
+            if (endpoint.queue.size() >= maxQueue && (endpoint.inFlight >= endpoint.limit() || !admits)) {
+                FairQueue.Waiter last = endpoint.queue.last();
+                if (last == null || last.admission.getPriority().compareTo(admission.getPriority()) <= 0) {
+                    endpoint.queue.purge(flow);
+                    endpoint.rejections.increment();
+                    tenant.rejections.increment();
+                    return rejected(endpoint, "并发请求数已达上限 " + endpoint.limit() + " 且排队已满");
+                }
+                // 挤掉排在最后的低优先级请求
+                endpoint.queue.remove(last);
+                evicted = last;
+                endpoint.rejections.increment();
+            }
+            endpoint.queue.add(waiter);
+            // 端点有空闲但队列中的请求都被租户上限挡住时，新请求可以直接放行
+            drain(endpoint, granted, expired);
+        }
+        if (evicted != null) {
+            tenant(evicted.admission.getTenant()).rejections.increment();
+            evicted.future.completeExceptionally(rejectedException(endpoint,
+                    "排队已满，被更高优先级的请求挤出队列"));
+        }
+        complete(endpoint, granted, expired);
+        if (waiter.future.isDone()) {
+            return waiter.future;
+        }
+
+        waiter.future.whenComplete((permit, throwable) -> {
+            if (waiter.future.isCancelled()) {
+                synchronized (endpoint) {
+                    endpoint.queue.remove(waiter);
+                }
+            }
+        });
+        // 最多排队到截止时间
+        long waitMillis = Math.max(0, Math.min(maxQueueWaitMillis, admission.remainingMillis()));
+        try {
+            scheduler.schedule(() -> {
+                boolean removed;
+                synchronized (endpoint) {
+                    removed = endpoint.queue.remove(waiter);
+                }
+                if (!removed) {
+                    return;
+                }
+                if (admission.isExpired()) {
+                    waiter.future.completeExceptionally(admission.deadlineExceeded(
+                            "排队等待并发许可时超过截止时间: " + endpoint.key));
+                } else {
+                    endpoint.rejections.increment();
+                    tenant.rejections.increment();
+                    waiter.future.completeExceptionally(rejectedException(endpoint,
+                            "排队等待并发许可超时 (" + maxQueueWaitMillis + " ms)"));
+                }
+            }, waitMillis);
+        } catch (RuntimeException e) {
+            logger.warn("无法调度排队超时: {}", e.getMessage());
+        }
+        return waiter.future;
+    }
+
+    /**
+     * 设置租户的排队策略，同一租户的策略会被替换；策略为null租户时替换默认策略
+     */
+    public void setTenantPolicy(TenantPolicy policy) {
+        if (policy.getTenant() == null) {
+            defaultTenantPolicy = policy;
+        } else {
+            tenantPolicies.put(policy.getTenant(), policy);
+        }
+    }
+
+    /**
+     * 移除租户的排队策略，之后使用默认策略
+     */
+    public void removeTenantPolicy(String tenant) {
+        tenantPolicies.remove(tenant);
+    }
+
+    /**
+     * 租户生效的排队策略
+     */
+    public TenantPolicy getTenantPolicy(String tenant) {
+        return policy(tenant);
+    }
+
+    /**
+     * 记录租户消耗的token，从租户的每分钟额度中扣除
+     * 额度按实际用量在调用结束后扣除，允许透支；透支的租户在额度恢复前不再放行新的请求
+     *
+     * @param tenant 租户（{@link Admission#getTenant()}），为null时为默认租户
+     * @param tokens 消耗的token数（输入加输出）
+     */
+    public void recordTokens(String tenant, long tokens) {
+        if (!enabled || tokens <= 0) {
+            return;
+        }
+        Tenant state = tenant(tenant != null && !tenant.isEmpty() ? tenant : Admission.DEFAULT.getTenant());
+        state.tokens.add(tokens);
+        SharedQuota tenantTokens = tenantTokenQuota(state);
+        if (tenantTokens != null) {
+            tenantTokens.consume(tokens);
+        }
+        SharedQuota globalTokens = globalTokenQuota();
+        if (globalTokens != null) {
+            globalTokens.consume(tokens);
+        }
+    }
+
+    /**
+     * 设置所有端点合计的每分钟请求数，为0时不限制
+     * 有协调器时为共享同一个命名空间的所有进程合计，达到上限后请求留在队列中，直到额度恢复
+     */
+    public void setRequestsPerMinute(long requestsPerMinute) {
+        this.requestsPerMinute = Math.max(0, requestsPerMinute);
+    }
+
+    public long getRequestsPerMinute() {
+        return requestsPerMinute;
+    }
+
+    /**
+     * 设置所有端点合计的每分钟token数（输入加输出，调用结束后按实际用量扣除），为0时不限制
+     */
+    public void setTokensPerMinute(long tokensPerMinute) {
+        this.tokensPerMinute = Math.max(0, tokensPerMinute);
+    }
+
+    public long getTokensPerMinute() {
+        return tokensPerMinute;
+    }
+
+    /**
+     * 设置集群额度协调，每分钟请求数、token数和租户的每分钟额度改为从协调器分批租用；
+     * 为null时只在本地限制。设置后额度重新开始计算
+     */
+    public void setQuotaCoordination(QuotaCoordination quotaCoordination) {
+        this.quotaCoordination = quotaCoordination;
+    }
+
+    public QuotaCoordination getQuotaCoordination() {
+        return quotaCoordination;
+    }
+
+    /**
+     * 租户的统计快照（所有端点合计），按放行数从高到低排列
+     */
+    public List<TenantStats> getTenantStats() {
+        Map<String, int[]> counts = new HashMap<>();
+        for (Endpoint endpoint : endpoints.values()) {
+            synchronized (endpoint) {
+                for (FairQueue.Flow flow : endpoint.queue.flows()) {
+                    int[] count = counts.computeIfAbsent(flow.tenant, k -> new int[2]);
+                    count[0] += flow.waiters.size();
+                    count[1] += flow.inFlight;
+                }
+            }
+        }
+        List<TenantStats> stats = new ArrayList<>();
+        for (Tenant tenant : tenants.values()) {
+            int[] count = counts.getOrDefault(tenant.name, new int[2]);
+            stats.add(new TenantStats(tenant.name, count[0], count[1], tenant.granted.sum(), tenant.rejections.sum(),
+                    tenant.queueWaitNanos.sum(), tenant.tokens.sum()));
+        }
+        stats.sort(Comparator.comparingLong(TenantStats::getGranted).reversed());
+        return stats;
+    }
+
+    /**
+     * 端点当前的上限，端点还没有请求时为初始上限
+     */
+    public int getLimit(String key) {
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            return enabled ? initialLimit : Integer.MAX_VALUE;
+        }
+        synchronized (endpoint) {
+            return endpoint.limit();
+        }
+    }
+
+    /**
+     * 端点进行中的请求数
+     */
+    public int getInFlight(String key) {
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            return 0;
+        }
+        synchronized (endpoint) {
+            return endpoint.inFlight;
+        }
+    }
+
+    /**
+     * 端点排队中的请求数
+     */
+    public int getQueued(String key) {
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            return 0;
+        }
+        synchronized (endpoint) {
+            return endpoint.queue.size();
+        }
+    }
+
+    /**
+     * 端点累计被拒绝的请求数
+     */
+    public long getRejections(String key) {
+        Endpoint endpoint = endpoints.get(key);
+        return endpoint != null ? endpoint.rejections.sum() : 0;
+    }
+
+    /**
+     * 已有请求的端点
+     */
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(endpoints.keySet());
+    }
+
+    private void release(Permit permit, Outcome outcome, long rttNanos) {
+        Endpoint endpoint = permit.endpoint;
+        List<FairQueue.Waiter> granted = new ArrayList<>();
+        List<FairQueue.Waiter> expired = new ArrayList<>();
+        synchronized (endpoint) {
+            endpoint.inFlight--;
+            permit.flow.inFlight--;
+            if (outcome == Outcome.THROTTLED) {
+                decrease(endpoint, permit);
+            } else if (outcome == Outcome.SUCCESS) {
+                increase(endpoint, permit, rttNanos);
+            }
+            endpoint.queue.purge(permit.flow);
+            drain(endpoint, granted, expired);
+        }
+        complete(endpoint, granted, expired);
+    }
+
+    /**
+     * 在端点的上限内放行排队的请求（调用方持有端点的锁）
+     * 有租户因额度用完而被挡住时，安排在额度恢复后再次放行
+     */
+    private void drain(Endpoint endpoint, List<FairQueue.Waiter> granted, List<FairQueue.Waiter> expired) {
+        long now = System.nanoTime();
+        long[] refillNanos = {Long.MAX_VALUE};
+        while (endpoint.inFlight < endpoint.limit() && !endpoint.queue.isEmpty()) {
+            FairQueue.Waiter waiter = endpoint.queue.poll(flow -> {
+                if (admits(flow, now)) {
+                    return true;
+                }
+                refillNanos[0] = Math.min(refillNanos[0], refillDelayNanos(flow.tenant, now));
+                return false;
+            }, flow -> policy(flow.tenant).getWeight(), expired);
+            if (waiter == null) {
+                break;
+            }
+            endpoint.inFlight++;
+            waiter.flow.inFlight++;
+            consumeRequest(tenant(waiter.flow.tenant));
+            granted.add(waiter);
+        }
+        if (refillNanos[0] != Long.MAX_VALUE && !endpoint.drainScheduled && endpoint.scheduler != null) {
+            endpoint.drainScheduled = true;
+            long delayMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(refillNanos[0]) + 1);
+            try {
+                endpoint.scheduler.schedule(() -> {
+                    List<FairQueue.Waiter> next = new ArrayList<>();
+                    List<FairQueue.Waiter> late = new ArrayList<>();
+                    synchronized (endpoint) {
+                        endpoint.drainScheduled = false;
+                        drain(endpoint, next, late);
+                    }
+                    complete(endpoint, next, late);
+                }, delayMillis);
+            } catch (RuntimeException e) {
+                endpoint.drainScheduled = false;
+                logger.warn("无法调度租户额度恢复后的放行: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 额度租用完成后在调度器上重新放行所有端点的排队请求（租用可能在持有端点锁的线程上完成，不能同步放行）
+     */
+    private void drainAll() {
+        RetryScheduler current = scheduler;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.schedule(() -> {
+                for (Endpoint endpoint : endpoints.values()) {
+                    List<FairQueue.Waiter> granted = new ArrayList<>();
+                    List<FairQueue.Waiter> expired = new ArrayList<>();
+                    synchronized (endpoint) {
+                        if (endpoint.queue.isEmpty()) {
+                            continue;
+                        }
+                        drain(endpoint, granted, expired);
+                    }
+                    complete(endpoint, granted, expired);
+                }
+            }, 0);
+        } catch (RuntimeException e) {
+            logger.warn("无法调度额度租用后的放行: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 在锁外完成放行和过期的请求
+     */
+    private void complete(Endpoint endpoint, List<FairQueue.Waiter> granted, List<FairQueue.Waiter> expired) {
+        for (FairQueue.Waiter waiter : expired) {
+            waiter.future.completeExceptionally(waiter.admission.deadlineExceeded(
+                    "排队等待并发许可时超过截止时间: " + endpoint.key));
+        }
+        if (granted.isEmpty()) {
+            return;
+        }
+        int inFlight;
+        synchronized (endpoint) {
+            inFlight = endpoint.inFlight;
+        }
+        long now = System.nanoTime();
+        for (FairQueue.Waiter waiter : granted) {
+            long waitNanos = now - waiter.enqueuedNanos;
+            Permit next = new Permit(this, endpoint, waiter.flow, waiter.admission.getPriority(), inFlight, waitNanos);
+            if (waiter.future.complete(next)) {
+                Tenant tenant = tenant(waiter.admission.getTenant());
+                tenant.granted.increment();
+                tenant.queueWaitNanos.add(waitNanos);
+            } else {
+                // 等待者已取消或超时，许可交还
+                next.ignore();
+            }
+        }
+    }
+
+    /**
+     * 租户当前能否在端点上放行：未达到每个端点的并发上限，租户和限制器的每分钟额度都有剩余
+     */
+    private boolean admits(FairQueue.Flow flow, long now) {
+        TenantPolicy policy = policy(flow.tenant);
+        if (policy.getMaxConcurrency() > 0 && flow.inFlight >= policy.getMaxConcurrency()) {
+            return false;
+        }
+        for (SharedQuota quota : quotas(tenant(flow.tenant))) {
+            if (!quota.admits(now)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 租户的额度恢复还需要的时间（纳秒），额度不是瓶颈或租用完成后会主动放行时为 {@link Long#MAX_VALUE}
+     */
+    private long refillDelayNanos(String name, long now) {
+        long delay = 0;
+        for (SharedQuota quota : quotas(tenant(name))) {
+            delay = Math.max(delay, quota.waitNanos(now));
+        }
+        return delay > 0 ? delay : Long.MAX_VALUE;
+    }
+
+    /**
+     * 放行一个请求时扣除租户和限制器的请求额度
+     */
+    private void consumeRequest(Tenant tenant) {
+        SharedQuota tenantRequests = tenantRequestQuota(tenant);
+        if (tenantRequests != null) {
+            tenantRequests.consume(1);
+        }
+        SharedQuota globalRequests = globalRequestQuota();
+        if (globalRequests != null) {
+            globalRequests.consume(1);
+        }
+    }
+
+    /**
+     * 对租户生效的所有每分钟额度
+     */
+    private List<SharedQuota> quotas(Tenant tenant) {
+        List<SharedQuota> quotas = new ArrayList<>(4);
+        addIfPresent(quotas, tenantTokenQuota(tenant));
+        addIfPresent(quotas, tenantRequestQuota(tenant));
+        addIfPresent(quotas, globalTokenQuota());
+        addIfPresent(quotas, globalRequestQuota());
+        return quotas;
+    }
+
+    private static void addIfPresent(List<SharedQuota> quotas, SharedQuota quota) {
+        if (quota != null) {
+            quotas.add(quota);
+        }
+    }
+
+    private SharedQuota tenantTokenQuota(Tenant tenant) {
+        synchronized (tenant) {
+            tenant.tokenQuota = quota(tenant.tokenQuota, "tenant:" + tenant.name + ":tokens",
+                    policy(tenant.name).getTokensPerMinute());
+            return tenant.tokenQuota;
+        }
+    }
+
+    private SharedQuota tenantRequestQuota(Tenant tenant) {
+        synchronized (tenant) {
+            tenant.requestQuota = quota(tenant.requestQuota, "tenant:" + tenant.name + ":requests",
+                    policy(tenant.name).getRequestsPerMinute());
+            return tenant.requestQuota;
+        }
+    }
+
+    private synchronized SharedQuota globalTokenQuota() {
+        tokenQuota = quota(tokenQuota, "tokens", tokensPerMinute);
+        return tokenQuota;
+    }
+
+    private synchronized SharedQuota globalRequestQuota() {
+        requestQuota = quota(requestQuota, "requests", requestsPerMinute);
+        return requestQuota;
+    }
+
+    /**
+     * 上限或协调设置变化时重新创建额度
+     *
+     * @return 上限为0时返回null
+     */
+    private SharedQuota quota(SharedQuota current, String key, long limit) {
+        if (limit <= 0) {
+            return null;
+        }
+        QuotaCoordination coordination = quotaCoordination;
+        if (current != null && current.getLimit() == limit && current.getCoordination() == coordination) {
+            return current;
+        }
+        return new SharedQuota(key, limit, coordination, this::drainAll);
+    }
+
+    private TenantPolicy policy(String tenant) {
+        TenantPolicy policy = tenantPolicies.get(tenant);
+        return policy != null ? policy : defaultTenantPolicy;
+    }
+
+    private Tenant tenant(String name) {
+        return tenants.computeIfAbsent(name, Tenant::new);
+    }
+
+    /**
+     * 收到限流时按比例减小上限；许可在上次减小之前发出的，说明是同一拥塞窗口内的请求，不重复减小
+     */
+    private void decrease(Endpoint endpoint, Permit permit) {
+        if (permit.grantedNanos - endpoint.lastDecreaseNanos < 0) {
+            return;
+        }
+        double before = endpoint.limit;
+        endpoint.limit = Math.max(minLimit, endpoint.limit * BACKOFF_RATIO);
+        endpoint.lastDecreaseNanos = System.nanoTime();
+        if ((int) before != endpoint.limit()) {
+            logger.info("端点 {} 被限流，并发上限 {} -> {}", endpoint.key, (int) before, endpoint.limit());
+        }
+    }
+
+    private void increase(Endpoint endpoint, Permit permit, long rttNanos) {
+        // 只有请求数接近上限时才说明上限是瓶颈，避免空闲时上限无限增长
+        boolean saturated = permit.inFlightAtGrant * 2 >= endpoint.limit();
+        if (algorithm == Algorithm.AIMD) {
+            if (saturated) {
+                endpoint.limit = Math.min(maxLimit, endpoint.limit + 1.0 / endpoint.limit);
+            }
+            return;
+        }
+        if (rttNanos <= 0) {
+            return;
+        }
+        endpoint.samples++;
+        if (endpoint.minRttNanos == 0 || rttNanos < endpoint.minRttNanos
+                || endpoint.samples % VEGAS_PROBE_INTERVAL == 0) {
+            endpoint.minRttNanos = rttNanos;
+        }
+        double limit = endpoint.limit;
+        double queue = limit * (1 - endpoint.minRttNanos / (double) rttNanos);
+        double log = Math.max(1, Math.log10(limit));
+        double alpha = 3 * log;
+        double beta = 6 * log;
+        if (queue <= log && saturated) {
+            limit += beta;
+        } else if (queue < alpha && saturated) {
+            limit += log;
+        } else if (queue > beta) {
+            limit -= log;
+        }
+        endpoint.limit = Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+
+    private CompletableFuture<Permit> rejected(Endpoint endpoint, String message) {
+        CompletableFuture<Permit> future = new CompletableFuture<>();
+        future.completeExceptionally(rejectedException(endpoint, message));
+        return future;
+    }
+
+    private static OpenAIException rejectedException(Endpoint endpoint, String message) {
+        logger.debug("端点 {} 拒绝请求: {}", endpoint.key, message);
+        return OpenAIException.builder(message + ": " + endpoint.key)
+                .statusCode(429)
+                .errorType(ERROR_TYPE_CONCURRENCY_LIMITED)
+                .build();
+    }
+
+    private enum Outcome {
+        SUCCESS,
+        THROTTLED,
+        IGNORED
+    }
+
+    /**
+     * 一次请求的并发许可，只有第一次释放有效
+     */
+    public static final class Permit {
+        static final Permit NOOP = new Permit(null, null, null, RequestPriority.NORMAL, 0, 0);
+
+        private final ConcurrencyLimiter limiter;
+        private final Endpoint endpoint;
+        private final FairQueue.Flow flow;
+        private final RequestPriority priority;
+        private final int inFlightAtGrant;
+        private final long queueWaitNanos;
+        private final long grantedNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(ConcurrencyLimiter limiter, Endpoint endpoint, FairQueue.Flow flow, RequestPriority priority,
+                       int inFlightAtGrant, long queueWaitNanos) {
+            this.limiter = limiter;
+            this.endpoint = endpoint;
+            this.flow = flow;
+            this.priority = priority;
+            this.inFlightAtGrant = inFlightAtGrant;
+            this.queueWaitNanos = queueWaitNanos;
+        }
+
+        /**
+         * 申请许可时的优先级
+         */
+        public RequestPriority getPriority() {
+            return priority;
+        }
+
+        /**
+         * 排队等待的时间（纳秒）
+         */
+        public long getQueueWaitNanos() {
+            return queueWaitNanos;
+        }
+
+        /**
+         * 请求成功，延迟按获得许可到现在计算
+         */
+        public void success() {
+            success(System.nanoTime() - grantedNanos);
+        }
+
+        /**
+         * 请求成功
+         *
+         * @param rttNanos 用于调整上限的延迟样本（流式请求为收到响应头的时间）
+         */
+        public void success(long rttNanos) {
+            release(Outcome.SUCCESS, rttNanos);
+        }
+
+        /**
+         * 请求被服务端限流（429/ThrottlingException）
+         */
+        public void throttled() {
+            release(Outcome.THROTTLED, 0);
+        }
+
+        /**
+         * 请求因其他原因失败或被取消，不调整上限
+         */
+        public void ignore() {
+            release(Outcome.IGNORED, 0);
+        }
+
+        private void release(Outcome outcome, long rttNanos) {
+            if (limiter != null && released.compareAndSet(false, true)) {
+                limiter.release(this, outcome, rttNanos);
+            }
+        }
+    }
+
+    /**
+     * 端点状态，所有字段在端点对象的锁内读写
+     */
+    private static final class Endpoint {
+        private final String key;
+        private final FairQueue queue = new FairQueue();
+        private final LongAdder rejections = new LongAdder();
+        private double limit;
+        private int inFlight;
+        private long lastDecreaseNanos = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+        private long minRttNanos;
+        private long samples;
+        private long sequence;
+        private boolean drainScheduled;
+        private volatile RetryScheduler scheduler;
+
+        Endpoint(String key, int initialLimit) {
+            this.key = key;
+            this.limit = initialLimit;
+        }
+
+        int limit() {
+            return (int) limit;
+        }
+    }
+
+    /**
+     * 租户的累计统计和每分钟额度，额度字段在租户对象的锁内读写
+     */
+    private static final class Tenant {
+        private final String name;
+        private final LongAdder granted = new LongAdder();
+        private final LongAdder rejections = new LongAdder();
+        private final LongAdder queueWaitNanos = new LongAdder();
+        private final LongAdder tokens = new LongAdder();
+        private SharedQuota tokenQuota;
+        private SharedQuota requestQuota;
+
+        Tenant(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package io.github.twwch.openai.sdk.limit;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 端点的排队队列：按租户分成子队列，租户之间做加权公平排队（start-time fair queuing）
+ * 选择下一个放行的请求时先比较各租户队首请求的优先级，同一优先级内选择虚拟开始时间最小的租户；
+ * 租户内部按优先级、截止时间和到达顺序排列。每放行一个请求，租户的虚拟完成时间增加 1/权重，
+ * 因此持续排队的租户按权重比例分享放行机会，突发大量请求的租户只会排在自己的队列后面。
+ * 非线程安全，由端点的锁保护。
+ */
+final class FairQueue {
+    private final Map<String, Flow> flows = new HashMap<>();
+    private double virtualTime;
+    private int size;
+
+    /**
+     * 获取租户的子队列，不存在时创建
+     */
+    Flow flow(String tenant) {
+        return flows.computeIfAbsent(tenant, Flow::new);
+    }
+
+    Iterable<Flow> flows() {
+        return flows.values();
+    }
+
+    void add(Waiter waiter) {
+        waiter.flow.waiters.add(waiter);
+        size++;
+    }
+
+    boolean remove(Waiter waiter) {
+        if (!waiter.flow.waiters.remove(waiter)) {
+            return false;
+        }
+        size--;
+        purge(waiter.flow);
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 队列中最后放行的请求：优先级最低的请求中最晚到达的
+     */
+    Waiter last() {
+        Waiter last = null;
+        for (Flow flow : flows.values()) {
+            for (Waiter waiter : flow.waiters) {
+                if (last == null || waiter.admission.getPriority().compareTo(last.admission.getPriority()) > 0
+                        || waiter.admission.getPriority() == last.admission.getPriority()
+                        && waiter.sequence > last.sequence) {
+                    last = waiter;
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * 取出下一个放行的请求
+     *
+     * @param admits  租户当前是否可以放行（并发上限和token额度）
+     * @param weights 租户的权重
+     * @param expired 收集队首已超过截止时间的请求
+     * @return 没有可以放行的请求时返回null
+     */
+    Waiter poll(Predicate<Flow> admits, ToDoubleFunction<Flow> weights, List<Waiter> expired) {
+        Flow best = null;
+        double bestStart = 0;
+        for (Flow flow : flows.values()) {
+            Waiter head;
+            while ((head = flow.waiters.peek()) != null && head.admission.isExpired()) {
+                flow.waiters.poll();
+                size--;
+                expired.add(head);
+            }
+            if (head == null || !admits.test(flow)) {
+                continue;
+            }
+            double start = Math.max(virtualTime, flow.finish);
+            if (best == null || before(head, start, best.waiters.peek(), bestStart)) {
+                best = flow;
+                bestStart = start;
+            }
+        }
+        if (best == null) {
+            flows.values().removeIf(this::idle);
+            return null;
+        }
+        Waiter waiter = best.waiters.poll();
+        size--;
+        charge(best, weights.applyAsDouble(best));
+        return waiter;
+    }
+
+    /**
+     * 放行一个没有排队的请求时同样推进租户的虚拟时间
+     */
+    void charge(Flow flow, double weight) {
+        double start = Math.max(virtualTime, flow.finish);
+        virtualTime = start;
+        flow.finish = start + 1 / weight;
+    }
+
+    /**
+     * 租户没有排队和进行中的请求后移除子队列
+     */
+    void purge(Flow flow) {
+        if (idle(flow)) {
+            flows.remove(flow.tenant);
+        }
+    }
+
+    private boolean idle(Flow flow) {
+        // 虚拟完成时间超前的租户保留记录，避免通过频繁进出队列重置额度
+        return flow.waiters.isEmpty() && flow.inFlight == 0 && flow.finish <= virtualTime;
+    }
+
+    private static boolean before(Waiter head, double start, Waiter other, double otherStart) {
+        int priority = head.admission.getPriority().compareTo(other.admission.getPriority());
+        if (priority != 0) {
+            return priority < 0;
+        }
+        if (start != otherStart) {
+            return start < otherStart;
+        }
+        return Waiter.ORDER.compare(head, other) < 0;
+    }
+
+    /**
+     * 租户在端点上的子队列
+     */
+    static final class Flow {
+        final String tenant;
+        final PriorityQueue<Waiter> waiters = new PriorityQueue<>(Waiter.ORDER);
+        /** 进行中的请求数 */
+        int inFlight;
+        /** 虚拟完成时间 */
+        double finish;
+
+        Flow(String tenant) {
+            this.tenant = tenant;
+        }
+    }
+
+    /**
+     * 排队中的请求
+     */
+    static final class Waiter {
+        /** 优先级高的在前，同一优先级内截止时间早的在前，其余按到达顺序 */
+        static final Comparator<Waiter> ORDER = Comparator
+                .comparing((Waiter w) -> w.admission.getPriority())
+                .thenComparingLong(w -> w.admission.hasDeadline() ? w.admission.getDeadlineMillis() : Long.MAX_VALUE)
+                .thenComparingLong(w -> w.sequence);
+
+        final CompletableFuture<ConcurrencyLimiter.Permit> future = new CompletableFuture<>();
+        final long enqueuedNanos = System.nanoTime();
+        final Admission admission;
+        final Flow flow;
+        final long sequence;
+
+        Waiter(Admission admission, Flow flow, long sequence) {
+            this.admission = admission;
+            this.flow = flow;
+            this.sequence = sequence;
+        }
+    }
+}
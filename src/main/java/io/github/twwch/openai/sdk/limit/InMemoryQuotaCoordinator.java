@@ -0,0 +1,57 @@
+package io.github.twwch.openai.sdk.limit;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的额度协调器，{@link QuotaCoordinator} 的参考实现
+ * 按固定窗口（窗口起点对齐到窗口长度的整数倍）累加每个额度已租出的数量，窗口切换时清零。
+ * 多个客户端共用一个实例时额度在它们之间共享，可用于测试，或在单进程内多个配置共用一个上游额度。
+ * 分布式部署时用相同的语义实现基于共享存储的协调器。
+ */
+public class InMemoryQuotaCoordinator implements QuotaCoordinator {
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletionStage<QuotaLease> lease(String key, long limit, long windowMillis, long requested) {
+        long now = System.currentTimeMillis();
+        long start = windowMillis > 0 ? now - now % windowMillis : 0;
+        long end = windowMillis > 0 ? start + windowMillis : Long.MAX_VALUE;
+        Window window = windows.computeIfAbsent(key, k -> new Window());
+        synchronized (window) {
+            if (window.start != start) {
+                window.start = start;
+                window.used = 0;
+            }
+            long granted = Math.max(0, Math.min(requested, limit - window.used));
+            window.used += granted;
+            return CompletableFuture.completedFuture(new QuotaLease(granted, window.used, end));
+        }
+    }
+
+    /**
+     * 额度在当前窗口内已租出的数量
+     */
+    public long getUsed(String key) {
+        Window window = windows.get(key);
+        if (window == null) {
+            return 0;
+        }
+        synchronized (window) {
+            return window.used;
+        }
+    }
+
+    /**
+     * 清空所有额度的计数
+     */
+    public void reset() {
+        windows.clear();
+    }
+
+    private static final class Window {
+        private long start = -1;
+        private long used;
+    }
+}
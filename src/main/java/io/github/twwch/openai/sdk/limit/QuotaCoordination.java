@@ -0,0 +1,131 @@
+package io.github.twwch.openai.sdk.limit;
+
+/**
+ * 集群额度协调的设置
+ * 设置在 {@link ConcurrencyLimiter#setQuotaCoordination} 和
+ * {@link io.github.twwch.openai.sdk.usage.UsageLedger#setQuotaCoordination} 上，
+ * 限制器的每分钟请求数和token数、账本的预算改为集群共享，每次从协调器租用上限的一小部分。
+ * 批次越小各进程之间分配越均匀，批次越大访问协调器越少。
+ * 协调器不可用时退回本地限制，本地上限为集群上限乘以 {@link #getFallbackShare()}。
+ */
+public class QuotaCoordination {
+    /** 默认每批租用上限的比例 */
+    public static final double DEFAULT_BATCH_FRACTION = 0.05;
+    /** 默认等待协调器的时间 */
+    public static final long DEFAULT_LEASE_TIMEOUT_MILLIS = 1000;
+    /** 默认协调器不可用后重新尝试的间隔 */
+    public static final long DEFAULT_RETRY_MILLIS = 10_000;
+
+    private final QuotaCoordinator coordinator;
+    private final String namespace;
+    private double batchFraction = DEFAULT_BATCH_FRACTION;
+    private double fallbackShare = 1;
+    private long leaseTimeoutMillis = DEFAULT_LEASE_TIMEOUT_MILLIS;
+    private long retryMillis = DEFAULT_RETRY_MILLIS;
+
+    /**
+     * @param coordinator 协调器
+     * @param namespace   额度名称的前缀，共享同一个上游额度的进程使用相同的命名空间，
+     *                    同一个协调器上的不同上游额度（如OpenAI组织和Bedrock账号）使用不同的命名空间
+     */
+    public QuotaCoordination(QuotaCoordinator coordinator, String namespace) {
+        if (coordinator == null) {
+            throw new IllegalArgumentException("coordinator不能为null");
+        }
+        if (namespace == null || namespace.isEmpty()) {
+            throw new IllegalArgumentException("namespace不能为空");
+        }
+        this.coordinator = coordinator;
+        this.namespace = namespace;
+    }
+
+    public QuotaCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * 带命名空间的额度名称
+     */
+    public String key(String name) {
+        return namespace + ":" + name;
+    }
+
+    /**
+     * 每批租用的数量，至少为1
+     *
+     * @param limit 集群上限
+     */
+    public long batchSize(long limit) {
+        return Math.max(1, (long) Math.ceil(limit * batchFraction));
+    }
+
+    /**
+     * 协调器不可用时本地使用的上限，至少为1
+     *
+     * @param limit 集群上限
+     */
+    public long fallbackLimit(long limit) {
+        return Math.max(1, (long) Math.ceil(limit * fallbackShare));
+    }
+
+    public double getBatchFraction() {
+        return batchFraction;
+    }
+
+    /**
+     * 设置每批租用上限的比例（0~1]
+     */
+    public void setBatchFraction(double batchFraction) {
+        if (!(batchFraction > 0 && batchFraction <= 1)) {
+            throw new IllegalArgumentException("批次比例必须在(0, 1]之间: " + batchFraction);
+        }
+        this.batchFraction = batchFraction;
+    }
+
+    public double getFallbackShare() {
+        return fallbackShare;
+    }
+
+    /**
+     * 设置协调器不可用时本地上限占集群上限的比例（0~1]，默认1即每个进程按完整的上限限制，
+     * 与不使用协调器时相同；已知进程数时可以设置为 1/进程数，避免协调器故障期间超出上游额度
+     */
+    public void setFallbackShare(double fallbackShare) {
+        if (!(fallbackShare > 0 && fallbackShare <= 1)) {
+            throw new IllegalArgumentException("本地比例必须在(0, 1]之间: " + fallbackShare);
+        }
+        this.fallbackShare = fallbackShare;
+    }
+
+    public long getLeaseTimeoutMillis() {
+        return leaseTimeoutMillis;
+    }
+
+    /**
+     * 设置等待协调器的时间，超时视为协调器不可用
+     */
+    public void setLeaseTimeoutMillis(long leaseTimeoutMillis) {
+        this.leaseTimeoutMillis = Math.max(1, leaseTimeoutMillis);
+    }
+
+    public long getRetryMillis() {
+        return retryMillis;
+    }
+
+    /**
+     * 设置协调器不可用后重新尝试的间隔，期间使用本地限制
+     */
+    public void setRetryMillis(long retryMillis) {
+        this.retryMillis = Math.max(0, retryMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "QuotaCoordination{namespace=" + namespace + ", batchFraction=" + batchFraction
+                + ", fallbackShare=" + fallbackShare + "}";
+    }
+}
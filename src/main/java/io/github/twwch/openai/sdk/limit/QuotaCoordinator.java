@@ -0,0 +1,27 @@
+package io.github.twwch.openai.sdk.limit;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 集群额度协调器（SPI）
+ * 多个进程共用同一个上游额度（如OpenAI组织的每分钟请求数和token数、Bedrock账号的配额、费用预算）时，
+ * 各进程不再各自按完整的上限限制，而是分批从协调器租用额度，在本地消耗完后再租用下一批。
+ * 协调器只需要按窗口累加每个额度已租出的数量，例如Redis中带过期时间的计数器。
+ * <p>
+ * 实现不能阻塞调用线程（调用方可能持有限制器的锁），需要远程调用时应返回异步完成的结果。
+ * 失败或超时（{@link QuotaCoordination#getLeaseTimeoutMillis()}）时调用方退回本地限制。
+ * 参考实现为 {@link InMemoryQuotaCoordinator}。
+ */
+public interface QuotaCoordinator {
+
+    /**
+     * 从共享额度中租用一批
+     *
+     * @param key          额度名称（已带命名空间）
+     * @param limit        每个窗口的集群上限
+     * @param windowMillis 窗口长度（毫秒），为0时额度不按窗口恢复（如累计的费用预算）
+     * @param requested    希望租用的数量
+     * @return 授予的额度，共享额度不足时授予的数量少于申请的数量（可以为0）
+     */
+    CompletionStage<QuotaLease> lease(String key, long limit, long windowMillis, long requested);
+}
@@ -0,0 +1,38 @@
+package io.github.twwch.openai.sdk.limit;
+
+/**
+ * 从 {@link QuotaCoordinator} 租到的一批额度，在窗口结束时作废
+ */
+public final class QuotaLease {
+    private final long granted;
+    private final long used;
+    private final long windowEndMillis;
+
+    /**
+     * @param granted         授予的数量
+     * @param used            本次租用后窗口内集群已租出的总量
+     * @param windowEndMillis 窗口结束时间（epoch毫秒），不按窗口恢复的额度为 {@link Long#MAX_VALUE}
+     */
+    public QuotaLease(long granted, long used, long windowEndMillis) {
+        this.granted = Math.max(0, granted);
+        this.used = Math.max(0, used);
+        this.windowEndMillis = windowEndMillis;
+    }
+
+    public long getGranted() {
+        return granted;
+    }
+
+    public long getUsed() {
+        return used;
+    }
+
+    public long getWindowEndMillis() {
+        return windowEndMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "QuotaLease{granted=" + granted + ", used=" + used + ", windowEnd=" + windowEndMillis + "}";
+    }
+}
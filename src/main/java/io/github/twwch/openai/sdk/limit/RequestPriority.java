@@ -0,0 +1,15 @@
+package io.github.twwch.openai.sdk.limit;
+
+/**
+ * 请求优先级
+ * 并发受限排队时优先级高的请求先放行，同一优先级内截止时间早的先放行；
+ * 队列已满时优先级高的请求可以挤掉排在最后的低优先级请求。
+ */
+public enum RequestPriority {
+    /** 交互式请求（用户在等待结果） */
+    INTERACTIVE,
+    /** 默认优先级 */
+    NORMAL,
+    /** 后台批处理，资源紧张时最后放行，可以映射到低价的服务层级 */
+    BATCH
+}
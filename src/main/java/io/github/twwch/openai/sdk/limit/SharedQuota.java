@@ -0,0 +1,205 @@
+package io.github.twwch.openai.sdk.limit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每分钟额度（请求数或token数）
+ * 没有协调器时是本地令牌桶，按经过的时间恢复，最多累积一分钟的额度。
+ * 有协调器时额度由集群共享：每次从协调器租用一批，剩余不到半批时提前租用下一批，
+ * 租到的额度在协调器的窗口结束时作废，透支的部分在下一次租用时一并申请，计入集群的用量。
+ * 协调器失败或超时时退回本地令牌桶（{@link QuotaCoordination#fallbackLimit}），间隔一段时间后再尝试协调器。
+ * 租用完成（包括失败）后调用onLease，由调用方重新放行排队的请求；onLease可能在持有调用方锁的线程上执行，
+ * 调用方不能在其中同步获取其他锁。
+ */
+final class SharedQuota {
+    private static final Logger logger = LoggerFactory.getLogger(SharedQuota.class);
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final String key;
+    private final long limit;
+    private final QuotaCoordination coordination;
+    private final Runnable onLease;
+    /** 剩余额度，负数为透支；NaN表示还没有额度 */
+    private double available = Double.NaN;
+    private long refillNanos;
+    /** 是否使用本地令牌桶（没有协调器或协调器不可用） */
+    private boolean local;
+    private boolean leasing;
+    private long windowEndMillis;
+    private long retryAtMillis;
+
+    /**
+     * @param key          额度名称（不带命名空间）
+     * @param limit        每分钟上限，有协调器时为集群合计
+     * @param coordination 协调设置，为null时只在本地限制
+     */
+    SharedQuota(String key, long limit, QuotaCoordination coordination, Runnable onLease) {
+        this.key = key;
+        this.limit = limit;
+        this.coordination = coordination;
+        this.onLease = onLease;
+        this.local = coordination == null;
+    }
+
+    long getLimit() {
+        return limit;
+    }
+
+    QuotaCoordination getCoordination() {
+        return coordination;
+    }
+
+    /**
+     * 是否还有额度（至少为1）；额度不足时按需向协调器租用
+     */
+    boolean admits(long now) {
+        lease();
+        synchronized (this) {
+            refresh(now);
+            return available >= 1;
+        }
+    }
+
+    /**
+     * 扣除额度，允许透支
+     */
+    void consume(long amount) {
+        synchronized (this) {
+            refresh(System.nanoTime());
+            available -= amount;
+        }
+        lease();
+    }
+
+    /**
+     * 额度恢复到至少为1还需要的时间（纳秒）
+     *
+     * @return 已有额度时为0；正在向协调器租用时为 {@link Long#MAX_VALUE}，租用完成后由onLease通知
+     */
+    synchronized long waitNanos(long now) {
+        refresh(now);
+        if (available >= 1) {
+            return 0;
+        }
+        if (local) {
+            long localLimit = localLimit();
+            long refill = (long) ((1 - available) / localLimit * TimeUnit.MINUTES.toNanos(1));
+            if (coordination != null) {
+                // 到了重试时间再次尝试协调器
+                refill = Math.min(refill, remainingNanos(retryAtMillis));
+            }
+            return Math.max(1, refill);
+        }
+        if (leasing) {
+            return Long.MAX_VALUE;
+        }
+        // 集群额度已用完时等到下一个窗口
+        return Math.max(1, remainingNanos(retryAtMillis));
+    }
+
+    private static long remainingNanos(long atMillis) {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, atMillis - System.currentTimeMillis()));
+    }
+
+    private long localLimit() {
+        return coordination != null ? coordination.fallbackLimit(limit) : limit;
+    }
+
+    private void refresh(long now) {
+        if (local) {
+            long localLimit = localLimit();
+            if (Double.isNaN(available)) {
+                available = localLimit;
+            } else if (available < localLimit) {
+                double elapsedMinutes = (now - refillNanos) / (double) TimeUnit.MINUTES.toNanos(1);
+                available = Math.min(localLimit, available + elapsedMinutes * localLimit);
+            }
+            refillNanos = now;
+            return;
+        }
+        if (Double.isNaN(available)) {
+            available = 0;
+        }
+        if (windowEndMillis != 0 && System.currentTimeMillis() >= windowEndMillis) {
+            // 窗口结束，剩余的额度作废，透支保留
+            available = Math.min(available, 0);
+            windowEndMillis = 0;
+        }
+    }
+
+    /**
+     * 剩余不到半批时（本地模式下到了重试时间）向协调器租用下一批
+     */
+    private void lease() {
+        long requested;
+        synchronized (this) {
+            if (coordination == null || leasing || System.currentTimeMillis() < retryAtMillis) {
+                return;
+            }
+            refresh(System.nanoTime());
+            long batch = coordination.batchSize(limit);
+            if (!local && available >= batch / 2.0) {
+                return;
+            }
+            // 本地模式下的透支没有计入集群，不再补申请
+            requested = batch + (local ? 0 : (long) Math.ceil(Math.max(0, -available)));
+            leasing = true;
+        }
+        CompletableFuture<QuotaLease> future;
+        try {
+            future = coordination.getCoordinator()
+                    .lease(coordination.key(key), limit, WINDOW_MILLIS, requested)
+                    .toCompletableFuture();
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.orTimeout(coordination.getLeaseTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((lease, throwable) -> onLease(lease, throwable, requested));
+    }
+
+    private void onLease(QuotaLease lease, Throwable throwable, long requested) {
+        synchronized (this) {
+            leasing = false;
+            long now = System.currentTimeMillis();
+            if (throwable != null || lease == null) {
+                if (!local) {
+                    logger.warn("额度协调器不可用，{} 暂时按本地上限 {}/分钟 限制: {}", key, localLimit(),
+                            throwable != null ? throwable.toString() : "没有返回租约");
+                    local = true;
+                    // 本地令牌桶从满额开始（与不使用协调器时相同），透支保留
+                    available = available < 0 ? available : Double.NaN;
+                    refillNanos = System.nanoTime();
+                }
+                retryAtMillis = now + coordination.getRetryMillis();
+            } else {
+                if (local) {
+                    if (!Double.isNaN(available)) {
+                        logger.info("额度协调器已恢复: {}", key);
+                    }
+                    // 本地恢复的额度没有计入集群，切回时作废
+                    available = Double.isNaN(available) ? 0 : Math.min(available, 0);
+                    local = false;
+                }
+                if (lease.getWindowEndMillis() != windowEndMillis) {
+                    available = Math.min(available, 0);
+                    windowEndMillis = lease.getWindowEndMillis();
+                }
+                available += lease.getGranted();
+                // 集群额度不足时当前窗口内不再申请
+                retryAtMillis = lease.getGranted() < requested ? windowEndMillis : 0;
+            }
+        }
+        onLease.run();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SharedQuota{key=" + key + ", limit=" + limit + ", available=" + available
+                + (local ? ", local" : "") + "}";
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.twwch.openai.sdk.limit;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 流式请求的超时看门狗：首字节超时、事件间隔（空闲）超时和截止时间
+ * 同一时刻只挂一个定时任务，收到数据只更新时间戳，到期时检查实际的空闲时间再决定超时或顺延，
+ * 数据块很多的流不会为每个数据块重新调度。超时只通知一次，由调用方关闭流。
+ */
+public final class StreamWatchdog {
+    private static final Logger logger = LoggerFactory.getLogger(StreamWatchdog.class);
+
+    private final Admission admission;
+    private final Timeouts timeouts;
+    private final RetryScheduler scheduler;
+    private final String target;
+    private final Consumer<OpenAIException> onTimeout;
+    private final long startNanos = System.nanoTime();
+    private final long deadlineNanos;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private volatile long lastDataNanos;
+    private volatile boolean received;
+    private volatile ScheduledFuture<?> timer;
+
+    private StreamWatchdog(Admission admission, RetryScheduler scheduler, String target,
+                           Consumer<OpenAIException> onTimeout) {
+        this.admission = admission;
+        this.timeouts = admission.getTimeouts() != null ? admission.getTimeouts() : new Timeouts();
+        this.scheduler = scheduler;
+        this.target = target;
+        this.onTimeout = onTimeout;
+        this.deadlineNanos = admission.hasDeadline()
+                ? startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, admission.remainingMillis()))
+                : Long.MAX_VALUE;
+    }
+
+    /**
+     * 开始计时
+     *
+     * @param admission 调用的截止时间和超时
+     * @param scheduler 计时使用的调度器
+     * @param target    请求的目标，用于错误消息
+     * @param onTimeout 超时时接收异常（首字节、空闲超时或超过截止时间），只调用一次
+     */
+    public static StreamWatchdog start(Admission admission, RetryScheduler scheduler, String target,
+                                       Consumer<OpenAIException> onTimeout) {
+        StreamWatchdog watchdog = new StreamWatchdog(admission, scheduler, target, onTimeout);
+        watchdog.check();
+        return watchdog;
+    }
+
+    /**
+     * 收到数据（事件或数据块）
+     */
+    public void onData() {
+        lastDataNanos = System.nanoTime();
+        if (!received) {
+            received = true;
+            // 首字节到达后改为按空闲超时计时
+            reschedule();
+        }
+    }
+
+    /**
+     * 流结束，取消计时
+     */
+    public void stop() {
+        if (done.compareAndSet(false, true)) {
+            ScheduledFuture<?> current = timer;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+    }
+
+    public boolean isStopped() {
+        return done.get();
+    }
+
+    private void reschedule() {
+        ScheduledFuture<?> current = timer;
+        if (current != null) {
+            current.cancel(false);
+        }
+        check();
+    }
+
+    private synchronized void check() {
+        if (done.get()) {
+            return;
+        }
+        long now = System.nanoTime();
+        OpenAIException timeout = null;
+        long next = deadlineNanos;
+        if (now >= deadlineNanos) {
+            timeout = admission.deadlineExceeded("读取流式响应时超过截止时间: " + target);
+        } else if (!received && timeouts.getFirstByteTimeoutMillis() > 0) {
+            long expiry = startNanos + TimeUnit.MILLISECONDS.toNanos(timeouts.getFirstByteTimeoutMillis());
+            if (now >= expiry) {
+                timeout = timeouts.firstByteTimeout(target, null);
+            }
+            next = Math.min(next, expiry);
+        } else if (received && timeouts.getIdleTimeoutMillis() > 0) {
+            long expiry = lastDataNanos + TimeUnit.MILLISECONDS.toNanos(timeouts.getIdleTimeoutMillis());
+            if (now >= expiry) {
+                timeout = timeouts.idleTimeout(target);
+            }
+            next = Math.min(next, expiry);
+        }
+        if (timeout != null) {
+            if (done.compareAndSet(false, true)) {
+                onTimeout.accept(timeout);
+            }
+            return;
+        }
+        if (next == Long.MAX_VALUE) {
+            return;
+        }
+        try {
+            // 向上取整，避免在到期前一刻反复唤醒
+            timer = scheduler.schedule(this::check, TimeUnit.NANOSECONDS.toMillis(next - now) + 1);
+        } catch (RuntimeException e) {
+            logger.warn("无法调度流式超时检查: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.twwch.openai.sdk.limit;
+
+/**
+ * 租户的排队策略
+ * 并发受限时按权重在租户之间公平放行：两个都有请求排队的租户，放行数之比等于权重之比。
+ * 并发上限限制租户在每个端点同时进行的请求数；每分钟请求数和token数限制租户所有端点合计的速率，
+ * 超出后租户的请求留在队列中，直到额度恢复。上限为0时表示不限制。
+ * 限制器设置了 {@link ConcurrencyLimiter#setQuotaCoordination} 时，每分钟额度为集群合计。
+ */
+public class TenantPolicy {
+    private final String tenant;
+    private double weight = 1;
+    private int maxConcurrency;
+    private long tokensPerMinute;
+    private long requestsPerMinute;
+
+    /**
+     * @param tenant 租户（请求的user字段或metadata中的tenant），为null时表示没有单独策略的租户使用的默认策略
+     */
+    public TenantPolicy(String tenant) {
+        this.tenant = tenant;
+    }
+
+    /**
+     * 创建默认策略（权重1，不限制）
+     */
+    public static TenantPolicy defaults() {
+        return new TenantPolicy(null);
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    /**
+     * 设置权重，必须大于0
+     */
+    public void setWeight(double weight) {
+        if (!(weight > 0)) {
+            throw new IllegalArgumentException("权重必须大于0: " + weight);
+        }
+        this.weight = weight;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * 设置租户在每个端点的并发上限，为0时不限制
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = Math.max(0, maxConcurrency);
+    }
+
+    public long getTokensPerMinute() {
+        return tokensPerMinute;
+    }
+
+    /**
+     * 设置租户每分钟的token额度（输入加输出），为0时不限制；额度最多累积一分钟
+     */
+    public void setTokensPerMinute(long tokensPerMinute) {
+        this.tokensPerMinute = Math.max(0, tokensPerMinute);
+    }
+
+    public long getRequestsPerMinute() {
+        return requestsPerMinute;
+    }
+
+    /**
+     * 设置租户每分钟的请求数，为0时不限制；额度最多累积一分钟
+     */
+    public void setRequestsPerMinute(long requestsPerMinute) {
+        this.requestsPerMinute = Math.max(0, requestsPerMinute);
+    }
+
+    @Override
+    public String toString() {
+        return "TenantPolicy{tenant=" + (tenant != null ? tenant : "*") + ", weight=" + weight
+                + ", maxConcurrency=" + maxConcurrency + ", tokensPerMinute=" + tokensPerMinute
+                + ", requestsPerMinute=" + requestsPerMinute + "}";
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.twwch.openai.sdk.limit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 租户在并发限制器中的统计快照（所有端点合计）
+ */
+public final class TenantStats {
+    private final String tenant;
+    private final int queued;
+    private final int inFlight;
+    private final long granted;
+    private final long rejections;
+    private final long queueWaitNanos;
+    private final long tokens;
+
+    TenantStats(String tenant, int queued, int inFlight, long granted, long rejections, long queueWaitNanos,
+                long tokens) {
+        this.tenant = tenant;
+        this.queued = queued;
+        this.inFlight = inFlight;
+        this.granted = granted;
+        this.rejections = rejections;
+        this.queueWaitNanos = queueWaitNanos;
+        this.tokens = tokens;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * 排队中的请求数
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * 进行中的请求数
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * 累计放行的请求数，两次快照之差除以间隔即为吞吐
+     */
+    public long getGranted() {
+        return granted;
+    }
+
+    /**
+     * 累计被拒绝（排队已满、被挤出或排队超时）的请求数
+     */
+    public long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * 累计排队时间（纳秒）
+     */
+    public long getQueueWaitNanos() {
+        return queueWaitNanos;
+    }
+
+    /**
+     * 平均排队时间（毫秒）
+     */
+    public double getAverageQueueWaitMillis() {
+        return granted > 0 ? queueWaitNanos / (double) granted / TimeUnit.MILLISECONDS.toNanos(1) : 0;
+    }
+
+    /**
+     * 累计消耗的token数（输入加输出）
+     */
+    public long getTokens() {
+        return tokens;
+    }
+
+    @Override
+    public String toString() {
+        return "TenantStats{tenant=" + tenant + ", queued=" + queued + ", inFlight=" + inFlight
+                + ", granted=" + granted + ", rejections=" + rejections
+                + ", avgQueueWaitMs=" + String.format("%.2f", getAverageQueueWaitMillis())
+                + ", tokens=" + tokens + "}";
+    }
+}
@@ -0,0 +1,158 @@
+package io.github.twwch.openai.sdk.limit;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+
+/**
+ * 一次调用的分段超时（毫秒），为0时表示不限制
+ * <ul>
+ *   <li>连接超时：建立TCP/TLS连接</li>
+ *   <li>首字节超时：请求发出后等待第一份数据；流式请求为第一个事件，非流式请求即完整响应</li>
+ *   <li>空闲超时：流式请求两个事件之间的最长间隔，也是读写socket的最长阻塞时间</li>
+ *   <li>总超时：从调用开始计时，覆盖排队、重试和流的读取，与请求的截止时间取较早者</li>
+ * </ul>
+ * 配置在 {@link io.github.twwch.openai.sdk.OpenAIConfig#setTimeouts} 上作为默认值，
+ * 请求可以通过 {@link io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest#setTimeouts} 覆盖其中的部分值，
+ * 请求中为0的字段沿用配置。首字节和空闲超时可以重试，总超时以 {@link Admission#ERROR_TYPE_DEADLINE_EXCEEDED} 失败。
+ */
+public class Timeouts {
+    /** 等待首字节超时的错误类型 */
+    public static final String ERROR_TYPE_FIRST_BYTE_TIMEOUT = "first_byte_timeout";
+    /** 流式请求两个事件之间间隔超时的错误类型 */
+    public static final String ERROR_TYPE_IDLE_TIMEOUT = "idle_timeout";
+
+    private long connectTimeoutMillis;
+    private long firstByteTimeoutMillis;
+    private long idleTimeoutMillis;
+    private long totalTimeoutMillis;
+
+    /**
+     * 创建不限制的超时，通常用于在请求上覆盖部分值
+     */
+    public Timeouts() {
+    }
+
+    /**
+     * 兼容单一超时：连接、首字节和空闲超时都为给定值，不限制总时间
+     *
+     * @param seconds 超时（秒）
+     */
+    public static Timeouts ofSeconds(long seconds) {
+        long millis = Math.max(0, seconds) * 1000;
+        Timeouts timeouts = new Timeouts();
+        timeouts.setConnectTimeoutMillis(millis);
+        timeouts.setFirstByteTimeoutMillis(millis);
+        timeouts.setIdleTimeoutMillis(millis);
+        return timeouts;
+    }
+
+    /**
+     * 用请求上的超时覆盖当前超时，覆盖中大于0的字段生效
+     *
+     * @param override 请求上的超时，可以为null
+     * @return 新的超时，不修改当前对象
+     */
+    public Timeouts merge(Timeouts override) {
+        Timeouts merged = new Timeouts();
+        merged.connectTimeoutMillis = pick(connectTimeoutMillis, override != null ? override.connectTimeoutMillis : 0);
+        merged.firstByteTimeoutMillis = pick(firstByteTimeoutMillis,
+                override != null ? override.firstByteTimeoutMillis : 0);
+        merged.idleTimeoutMillis = pick(idleTimeoutMillis, override != null ? override.idleTimeoutMillis : 0);
+        merged.totalTimeoutMillis = pick(totalTimeoutMillis, override != null ? override.totalTimeoutMillis : 0);
+        return merged;
+    }
+
+    private static long pick(long base, long override) {
+        return override > 0 ? override : base;
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(long connectTimeoutMillis) {
+        this.connectTimeoutMillis = Math.max(0, connectTimeoutMillis);
+    }
+
+    public long getFirstByteTimeoutMillis() {
+        return firstByteTimeoutMillis;
+    }
+
+    public void setFirstByteTimeoutMillis(long firstByteTimeoutMillis) {
+        this.firstByteTimeoutMillis = Math.max(0, firstByteTimeoutMillis);
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = Math.max(0, idleTimeoutMillis);
+    }
+
+    public long getTotalTimeoutMillis() {
+        return totalTimeoutMillis;
+    }
+
+    public void setTotalTimeoutMillis(long totalTimeoutMillis) {
+        this.totalTimeoutMillis = Math.max(0, totalTimeoutMillis);
+    }
+
+    /**
+     * 创建等待首字节超时的异常（状态码408）
+     *
+     * @param target 请求的目标，用于错误消息
+     */
+    public OpenAIException firstByteTimeout(String target, Throwable cause) {
+        return OpenAIException.builder("等待首字节超时 (" + firstByteTimeoutMillis + " ms): " + target)
+                .statusCode(408)
+                .errorType(ERROR_TYPE_FIRST_BYTE_TIMEOUT)
+                .cause(cause)
+                .build();
+    }
+
+    /**
+     * 创建流式事件间隔超时的异常（状态码408）
+     *
+     * @param target 请求的目标，用于错误消息
+     */
+    public OpenAIException idleTimeout(String target) {
+        return OpenAIException.builder("流式响应超过 " + idleTimeoutMillis + " ms 没有新数据: " + target)
+                .statusCode(408)
+                .errorType(ERROR_TYPE_IDLE_TIMEOUT)
+                .build();
+    }
+
+    /**
+     * 异常链中是否有首字节或空闲超时（可以重试）
+     */
+    public static boolean isTimeout(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause() != t ? t.getCause() : null) {
+            if (t instanceof OpenAIException) {
+                String type = ((OpenAIException) t).getErrorType();
+                if (ERROR_TYPE_FIRST_BYTE_TIMEOUT.equals(type) || ERROR_TYPE_IDLE_TIMEOUT.equals(type)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 异常链中是否有超过截止时间（不再重试）
+     */
+    public static boolean isDeadlineExceeded(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause() != t ? t.getCause() : null) {
+            if (t instanceof OpenAIException
+                    && Admission.ERROR_TYPE_DEADLINE_EXCEEDED.equals(((OpenAIException) t).getErrorType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "Timeouts{connect=" + connectTimeoutMillis + "ms, firstByte=" + firstByteTimeoutMillis
+                + "ms, idle=" + idleTimeoutMillis + "ms, total=" + totalTimeoutMillis + "ms}";
+    }
+}
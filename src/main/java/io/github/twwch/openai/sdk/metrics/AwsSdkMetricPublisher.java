@@ -0,0 +1,79 @@
+package io.github.twwch.openai.sdk.metrics;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * AWS SDK指标发布器
+ * 从每次Bedrock调用的SDK指标中提取Netty连接池状态（占用/可用/等待数）和获取连接耗时，
+ * 转换为SDK统一指标。连接池状态以最近一次调用观察到的值作为仪表。
+ */
+public class AwsSdkMetricPublisher implements MetricPublisher {
+    private final MetricsRegistry registry;
+    private final MetricKey leasedKey;
+    private final MetricKey availableKey;
+    private final MetricKey pendingKey;
+    private final MetricKey acquireKey;
+    private final AtomicLong leased = new AtomicLong();
+    private final AtomicLong available = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+    // 注册的仪表，关闭时只移除自己注册的，同一区域的其他发布器不受影响
+    private final LongSupplier leasedGauge = leased::get;
+    private final LongSupplier availableGauge = available::get;
+    private final LongSupplier pendingGauge = pending::get;
+
+    /**
+     * @param registry 指标注册表
+     * @param poolName 连接池名称（如区域），作为endpoint标签
+     */
+    public AwsSdkMetricPublisher(MetricsRegistry registry, String poolName) {
+        this.registry = registry;
+        this.leasedKey = MetricKey.of(SdkMetrics.POOL_LEASED_CONNECTIONS, OpenAIException.Provider.BEDROCK, null, poolName);
+        this.availableKey = leasedKey.withName(SdkMetrics.POOL_IDLE_CONNECTIONS);
+        this.pendingKey = leasedKey.withName(SdkMetrics.POOL_PENDING_ACQUIRES);
+        this.acquireKey = leasedKey.withName(SdkMetrics.QUEUE_WAIT);
+        registry.gauge(leasedKey, leasedGauge);
+        registry.gauge(availableKey, availableGauge);
+        registry.gauge(pendingKey, pendingGauge);
+    }
+
+    @Override
+    public void publish(MetricCollection metricCollection) {
+        if (metricCollection == null || !registry.isEnabled()) {
+            return;
+        }
+        // 连接池指标位于 ApiCall -> ApiCallAttempt -> HttpClient 子集合中
+        for (MetricCollection child : metricCollection.children()) {
+            publish(child);
+        }
+        updateLatest(metricCollection.metricValues(HttpMetric.LEASED_CONCURRENCY), leased);
+        updateLatest(metricCollection.metricValues(HttpMetric.AVAILABLE_CONCURRENCY), available);
+        updateLatest(metricCollection.metricValues(HttpMetric.PENDING_CONCURRENCY_ACQUIRES), pending);
+        for (Duration duration : metricCollection.metricValues(HttpMetric.CONCURRENCY_ACQUIRE_DURATION)) {
+            registry.record(acquireKey, SdkMetrics.toMicros(duration.toNanos()));
+        }
+    }
+
+    private static void updateLatest(List<Integer> values, AtomicLong target) {
+        if (!values.isEmpty()) {
+            target.set(values.get(values.size() - 1));
+        }
+    }
+
+    /**
+     * 移除注册的仪表
+     */
+    @Override
+    public void close() {
+        registry.removeGauge(leasedKey, leasedGauge);
+        registry.removeGauge(availableKey, availableGauge);
+        registry.removeGauge(pendingKey, pendingGauge);
+    }
+}
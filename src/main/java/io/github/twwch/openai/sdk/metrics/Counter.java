@@ -0,0 +1,36 @@
+package io.github.twwch.openai.sdk.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁计数器
+ * 基于LongAdder，高并发下写入不会相互竞争
+ */
+public final class Counter {
+    private final MetricKey key;
+    private final LongAdder adder = new LongAdder();
+
+    Counter(MetricKey key) {
+        this.key = key;
+    }
+
+    public void increment() {
+        adder.increment();
+    }
+
+    public void add(long delta) {
+        adder.add(delta);
+    }
+
+    public long get() {
+        return adder.sum();
+    }
+
+    public MetricKey getKey() {
+        return key;
+    }
+
+    void reset() {
+        adder.reset();
+    }
+}
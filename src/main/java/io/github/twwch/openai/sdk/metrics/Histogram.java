@@ -0,0 +1,224 @@
+package io.github.twwch.openai.sdk.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR风格的无锁直方图
+ * 使用对数-线性分桶：每个2的幂区间再线性划分为32个子桶，相对误差约3%，
+ * 记录操作只有一次原子自增，不需要加锁，适合在请求热路径上记录延迟
+ */
+public final class Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+
+    /**
+     * 可记录的最大值，超出的值会被截断到该值
+     */
+    public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final MetricKey key;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    Histogram(MetricKey key) {
+        this.key = key;
+    }
+
+    /**
+     * 记录一个值（负值按0处理）
+     */
+    public void record(long value) {
+        long v = value < 0 ? 0 : Math.min(value, MAX_VALUE);
+        buckets.incrementAndGet(indexOf(v));
+        count.increment();
+        sum.add(v);
+        long current;
+        while (v < (current = min.get()) && !min.compareAndSet(current, v)) {
+            // CAS重试
+        }
+        while (v > (current = max.get()) && !max.compareAndSet(current, v)) {
+            // CAS重试
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMin() {
+        long m = min.get();
+        return m == Long.MAX_VALUE ? 0 : m;
+    }
+
+    public long getMax() {
+        long m = max.get();
+        return m == Long.MIN_VALUE ? 0 : m;
+    }
+
+    public double getMean() {
+        long c = count.sum();
+        return c == 0 ? 0 : (double) sum.sum() / c;
+    }
+
+    /**
+     * 获取百分位值
+     *
+     * @param percentile 百分位（0-100）
+     * @return 该百分位所在桶的上界（不超过已记录的最大值）
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        double p = Math.max(0, Math.min(100, percentile));
+        long target = Math.max(1, (long) Math.ceil(total * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public MetricKey getKey() {
+        return key;
+    }
+
+    /**
+     * 生成当前统计的快照
+     */
+    public HistogramSnapshot snapshot() {
+        return new HistogramSnapshot(key, getCount(), getSum(), getMin(), getMax(),
+                getPercentile(50), getPercentile(90), getPercentile(99), getPercentile(99.9));
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket)) << shift;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index + 1 >= BUCKET_COUNT) {
+            return MAX_VALUE;
+        }
+        return lowestEquivalentValue(index + 1) - 1;
+    }
+
+    /**
+     * 直方图快照
+     */
+    public static final class HistogramSnapshot {
+        private final MetricKey key;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+
+        HistogramSnapshot(MetricKey key, long count, long sum, long min, long max,
+                          long p50, long p90, long p99, long p999) {
+            this.key = key;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+        }
+
+        public MetricKey getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        @Override
+        public String toString() {
+            return key + "{count=" + count + ", min=" + min + ", p50=" + p50 + ", p90=" + p90
+                    + ", p99=" + p99 + ", p999=" + p999 + ", max=" + max + "}";
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.twwch.openai.sdk.metrics;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * 指标键
+ * 由指标名称和一组标签（provider、model、endpoint等）组成，不可变
+ */
+public final class MetricKey {
+    public static final String TAG_PROVIDER = "provider";
+    public static final String TAG_MODEL = "model";
+    public static final String TAG_ENDPOINT = "endpoint";
+
+    private final String name;
+    private final Map<String, String> tags;
+    private final int hash;
+
+    private MetricKey(String name, Map<String, String> tags) {
+        this.name = name;
+        this.tags = Collections.unmodifiableMap(tags);
+        this.hash = 31 * name.hashCode() + tags.hashCode();
+    }
+
+    /**
+     * 创建不带标签的指标键
+     */
+    public static MetricKey of(String name) {
+        return new MetricKey(Objects.requireNonNull(name, "name"), new TreeMap<>());
+    }
+
+    /**
+     * 创建带有provider、model、endpoint标签的指标键
+     *
+     * @param name     指标名称
+     * @param provider 服务提供商（可为null）
+     * @param model    模型ID（可为null）
+     * @param endpoint 端点（可为null）
+     */
+    public static MetricKey of(String name, OpenAIException.Provider provider, String model, String endpoint) {
+        TreeMap<String, String> tags = new TreeMap<>();
+        if (provider != null) {
+            tags.put(TAG_PROVIDER, provider.getDisplayName());
+        }
+        if (model != null && !model.isEmpty()) {
+            tags.put(TAG_MODEL, model);
+        }
+        if (endpoint != null && !endpoint.isEmpty()) {
+            tags.put(TAG_ENDPOINT, endpoint);
+        }
+        return new MetricKey(Objects.requireNonNull(name, "name"), tags);
+    }
+
+    /**
+     * 返回增加了一个标签的新指标键
+     */
+    public MetricKey withTag(String key, String value) {
+        if (value == null) {
+            return this;
+        }
+        TreeMap<String, String> newTags = new TreeMap<>(tags);
+        newTags.put(key, value);
+        return new MetricKey(name, newTags);
+    }
+
+    /**
+     * 返回同样标签、不同名称的指标键
+     */
+    public MetricKey withName(String newName) {
+        return new MetricKey(Objects.requireNonNull(newName, "name"), new TreeMap<>(tags));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    public String getTag(String key) {
+        return tags.get(key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MetricKey)) {
+            return false;
+        }
+        MetricKey other = (MetricKey) o;
+        return hash == other.hash && name.equals(other.name) && tags.equals(other.tags);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return tags.isEmpty() ? name : name + tags;
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.twwch.openai.sdk.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 指标监听器SPI
+ * 用于把SDK内部记录的指标桥接到外部监控系统（如Micrometer、Prometheus），
+ * SDK本身不依赖任何监控库。实现类需要保证线程安全且不阻塞调用线程。
+ */
+public interface MetricsListener {
+
+    /**
+     * 计数器增加
+     *
+     * @param key   指标键
+     * @param delta 增量
+     */
+    default void onCounter(MetricKey key, long delta) {
+    }
+
+    /**
+     * 直方图记录一个值
+     *
+     * @param key   指标键
+     * @param value 记录的值（单位见 {@link SdkMetrics} 中各指标的说明）
+     */
+    default void onHistogram(MetricKey key, long value) {
+    }
+
+    /**
+     * 注册了一个新的仪表（gauge）
+     *
+     * @param key      指标键
+     * @param supplier 读取当前值的函数
+     */
+    default void onGaugeRegistered(MetricKey key, LongSupplier supplier) {
+    }
+}
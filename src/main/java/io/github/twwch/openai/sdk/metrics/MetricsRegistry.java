@@ -0,0 +1,206 @@
+package io.github.twwch.openai.sdk.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * 指标注册表
+ * 统一管理SDK的计数器、直方图和仪表，不依赖任何第三方监控库。
+ * 默认所有客户端共享 {@link #getDefault()}，也可以为每个配置单独指定。
+ */
+public class MetricsRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final ConcurrentHashMap<MetricKey, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<MetricKey, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<MetricKey, LongSupplier> gauges = new ConcurrentHashMap<>();
+    // 每个仪表键的所有注册者，多个客户端共用一个键时按注册顺序保留
+    private final Map<MetricKey, List<LongSupplier>> gaugeOwners = new HashMap<>();
+    private final List<MetricsListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean enabled = true;
+
+    /**
+     * 获取进程内共享的默认注册表
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 获取或创建计数器
+     */
+    public Counter counter(MetricKey key) {
+        return counters.computeIfAbsent(key, Counter::new);
+    }
+
+    /**
+     * 获取或创建直方图
+     */
+    public Histogram histogram(MetricKey key) {
+        return histograms.computeIfAbsent(key, Histogram::new);
+    }
+
+    /**
+     * 计数器加一
+     */
+    public void increment(MetricKey key) {
+        add(key, 1);
+    }
+
+    /**
+     * 计数器增加指定值
+     */
+    public void add(MetricKey key, long delta) {
+        if (!enabled) {
+            return;
+        }
+        counter(key).add(delta);
+        for (MetricsListener listener : listeners) {
+            try {
+                listener.onCounter(key, delta);
+            } catch (Exception e) {
+                logger.debug("指标监听器处理计数器失败: {}", key, e);
+            }
+        }
+    }
+
+    /**
+     * 直方图记录一个值
+     */
+    public void record(MetricKey key, long value) {
+        if (!enabled) {
+            return;
+        }
+        histogram(key).record(value);
+        for (MetricsListener listener : listeners) {
+            try {
+                listener.onHistogram(key, value);
+            } catch (Exception e) {
+                logger.debug("指标监听器处理直方图失败: {}", key, e);
+            }
+        }
+    }
+
+    /**
+     * 注册仪表（如连接池使用量），同一个键重复注册时以最后一次为准
+     */
+    public void gauge(MetricKey key, LongSupplier supplier) {
+        synchronized (gaugeOwners) {
+            gaugeOwners.computeIfAbsent(key, k -> new ArrayList<>()).add(supplier);
+            gauges.put(key, supplier);
+        }
+        notifyGaugeRegistered(key, supplier);
+    }
+
+    /**
+     * 移除某个注册者的仪表（资源关闭时调用，避免持有已关闭对象的引用）。
+     * 同一个键还有其他注册者时保留仪表，并改用最近一个仍在使用的注册者。
+     */
+    public void removeGauge(MetricKey key, LongSupplier supplier) {
+        LongSupplier restored = null;
+        synchronized (gaugeOwners) {
+            List<LongSupplier> owners = gaugeOwners.get(key);
+            if (owners == null || !owners.remove(supplier)) {
+                return;
+            }
+            if (owners.isEmpty()) {
+                gaugeOwners.remove(key);
+                gauges.remove(key, supplier);
+            } else if (gauges.get(key) == supplier) {
+                restored = owners.get(owners.size() - 1);
+                gauges.put(key, restored);
+            }
+        }
+        if (restored != null) {
+            notifyGaugeRegistered(key, restored);
+        }
+    }
+
+    /**
+     * 移除仪表及其所有注册者
+     */
+    public void removeGauge(MetricKey key) {
+        synchronized (gaugeOwners) {
+            gaugeOwners.remove(key);
+            gauges.remove(key);
+        }
+    }
+
+    private void notifyGaugeRegistered(MetricKey key, LongSupplier supplier) {
+        for (MetricsListener listener : listeners) {
+            try {
+                listener.onGaugeRegistered(key, supplier);
+            } catch (Exception e) {
+                logger.debug("指标监听器注册仪表失败: {}", key, e);
+            }
+        }
+    }
+
+    /**
+     * 添加监听器，已注册的仪表会立即回放给新监听器
+     */
+    public void addListener(MetricsListener listener) {
+        listeners.add(listener);
+        for (Map.Entry<MetricKey, LongSupplier> entry : gauges.entrySet()) {
+            listener.onGaugeRegistered(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void removeListener(MetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 启用或禁用指标记录，禁用后记录操作直接返回
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * 生成当前所有指标的快照
+     */
+    public MetricsSnapshot snapshot() {
+        List<MetricsSnapshot.CounterValue> counterValues = new ArrayList<>();
+        for (Counter counter : counters.values()) {
+            counterValues.add(new MetricsSnapshot.CounterValue(counter.getKey(), counter.get()));
+        }
+        List<Histogram.HistogramSnapshot> histogramValues = new ArrayList<>();
+        for (Histogram histogram : histograms.values()) {
+            histogramValues.add(histogram.snapshot());
+        }
+        List<MetricsSnapshot.CounterValue> gaugeValues = new ArrayList<>();
+        for (Map.Entry<MetricKey, LongSupplier> entry : gauges.entrySet()) {
+            long value;
+            try {
+                value = entry.getValue().getAsLong();
+            } catch (Exception e) {
+                value = -1;
+            }
+            gaugeValues.add(new MetricsSnapshot.CounterValue(entry.getKey(), value));
+        }
+        return new MetricsSnapshot(counterValues, histogramValues, gaugeValues);
+    }
+
+    /**
+     * 清空所有计数器和直方图（仪表保留）
+     */
+    public void reset() {
+        counters.values().forEach(Counter::reset);
+        histograms.values().forEach(Histogram::reset);
+    }
+}
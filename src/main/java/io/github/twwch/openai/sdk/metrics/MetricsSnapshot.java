@@ -0,0 +1,102 @@
+package io.github.twwch.openai.sdk.metrics;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 指标快照
+ * 某一时刻所有计数器、直方图和仪表的只读视图
+ */
+public class MetricsSnapshot {
+    private final List<CounterValue> counters;
+    private final List<Histogram.HistogramSnapshot> histograms;
+    private final List<CounterValue> gauges;
+
+    MetricsSnapshot(List<CounterValue> counters, List<Histogram.HistogramSnapshot> histograms, List<CounterValue> gauges) {
+        counters.sort(Comparator.comparing(c -> c.getKey().toString()));
+        histograms.sort(Comparator.comparing(h -> h.getKey().toString()));
+        gauges.sort(Comparator.comparing(g -> g.getKey().toString()));
+        this.counters = Collections.unmodifiableList(counters);
+        this.histograms = Collections.unmodifiableList(histograms);
+        this.gauges = Collections.unmodifiableList(gauges);
+    }
+
+    public List<CounterValue> getCounters() {
+        return counters;
+    }
+
+    public List<Histogram.HistogramSnapshot> getHistograms() {
+        return histograms;
+    }
+
+    public List<CounterValue> getGauges() {
+        return gauges;
+    }
+
+    /**
+     * 按名称汇总计数器（忽略标签）
+     */
+    public long sumCounters(String name) {
+        long total = 0;
+        for (CounterValue counter : counters) {
+            if (counter.getKey().getName().equals(name)) {
+                total += counter.getValue();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 查找指定键的直方图快照
+     */
+    public Histogram.HistogramSnapshot getHistogram(MetricKey key) {
+        for (Histogram.HistogramSnapshot histogram : histograms) {
+            if (histogram.getKey().equals(key)) {
+                return histogram;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (CounterValue counter : counters) {
+            sb.append(counter).append('\n');
+        }
+        for (Histogram.HistogramSnapshot histogram : histograms) {
+            sb.append(histogram).append('\n');
+        }
+        for (CounterValue gauge : gauges) {
+            sb.append(gauge).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 计数器或仪表的值
+     */
+    public static final class CounterValue {
+        private final MetricKey key;
+        private final long value;
+
+        CounterValue(MetricKey key, long value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public MetricKey getKey() {
+            return key;
+        }
+
+        public long getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package io.github.twwch.openai.sdk.metrics;
+
+import io.github.twwch.openai.sdk.OpenAIConfig;
+import io.github.twwch.openai.sdk.GeminiConfig;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.limit.ConcurrencyLimiter;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.tracing.Span;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SDK指标名称与记录工具
+ * 所有耗时类直方图的单位均为微秒
+ */
+public final class SdkMetrics {
+    /** 请求总耗时（微秒），标签 outcome=success/error */
+    public static final String REQUEST_LATENCY = "openai.sdk.request.latency";
+    /** 请求次数，标签 outcome=success/error */
+    public static final String REQUESTS = "openai.sdk.requests";
+    /** 流式请求首token耗时（微秒） */
+    public static final String TIME_TO_FIRST_TOKEN = "openai.sdk.stream.ttft";
+    /** 流式请求相邻token间隔（微秒） */
+    public static final String INTER_TOKEN_LATENCY = "openai.sdk.stream.inter_token";
+    /** 流式请求输出速度（tokens/秒） */
+    public static final String TOKENS_PER_SECOND = "openai.sdk.stream.tokens_per_second";
+    /** 重试次数 */
+    public static final String RETRIES = "openai.sdk.retries";
+    /** 排队等待耗时，包括等待连接池连接（微秒） */
+    public static final String QUEUE_WAIT = "openai.sdk.queue.wait";
+    /** 连接池连接总数（仪表） */
+    public static final String POOL_CONNECTIONS = "openai.sdk.pool.connections";
+    /** 连接池空闲连接数（仪表） */
+    public static final String POOL_IDLE_CONNECTIONS = "openai.sdk.pool.idle";
+    /** 连接池正在使用的连接数（仪表） */
+    public static final String POOL_LEASED_CONNECTIONS = "openai.sdk.pool.leased";
+    /** 连接池等待获取连接的请求数（仪表） */
+    public static final String POOL_PENDING_ACQUIRES = "openai.sdk.pool.pending";
+    /** 命中prompt缓存的请求数 */
+    public static final String CACHE_HITS = "openai.sdk.cache.hits";
+    /** 未命中prompt缓存的请求数 */
+    public static final String CACHE_MISSES = "openai.sdk.cache.misses";
+    /** 从缓存读取的输入token数 */
+    public static final String CACHE_READ_TOKENS = "openai.sdk.cache.read_tokens";
+    /** 写入缓存的输入token数 */
+    public static final String CACHE_WRITE_TOKENS = "openai.sdk.cache.write_tokens";
+    /** 输入token总数（包括缓存读写部分），与 {@link #CACHE_READ_TOKENS} 之比为缓存命中率 */
+    public static final String CACHE_INPUT_TOKENS = "openai.sdk.cache.input_tokens";
+    /** 自适应并发限制器当前的上限（仪表） */
+    public static final String CONCURRENCY_LIMIT = "openai.sdk.concurrency.limit";
+    /** 自适应并发限制器进行中的请求数（仪表） */
+    public static final String CONCURRENCY_IN_FLIGHT = "openai.sdk.concurrency.in_flight";
+    /** 等待并发许可的耗时（微秒） */
+    public static final String CONCURRENCY_QUEUE_WAIT = "openai.sdk.concurrency.queue_wait";
+    /** 被并发限制器拒绝或因超过截止时间被丢弃的请求数（按reason区分） */
+    public static final String CONCURRENCY_REJECTIONS = "openai.sdk.concurrency.rejections";
+
+    public static final String TAG_OUTCOME = "outcome";
+    public static final String TAG_PRIORITY = "priority";
+    public static final String TAG_REASON = "reason";
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_ERROR = "error";
+
+    /** OpenAI兼容接口的聊天端点 */
+    public static final String ENDPOINT_CHAT_COMPLETIONS = "/chat/completions";
+    /** Bedrock InvokeModel端点 */
+    public static final String ENDPOINT_INVOKE_MODEL = "InvokeModel";
+    /** Bedrock InvokeModelWithResponseStream端点 */
+    public static final String ENDPOINT_INVOKE_MODEL_STREAM = "InvokeModelWithResponseStream";
+    /** Bedrock Converse端点 */
+    public static final String ENDPOINT_CONVERSE = "Converse";
+    /** Bedrock ConverseStream端点 */
+    public static final String ENDPOINT_CONVERSE_STREAM = "ConverseStream";
+
+    private SdkMetrics() {
+    }
+
+    /**
+     * 根据配置推断服务提供商（Azure归为OpenAI，通过endpoint区分）
+     */
+    public static OpenAIException.Provider providerOf(OpenAIConfig config) {
+        if (config == null) {
+            return OpenAIException.Provider.UNKNOWN;
+        }
+        if (config.isBedrock()) {
+            return OpenAIException.Provider.BEDROCK;
+        }
+        if (config instanceof GeminiConfig) {
+            return OpenAIException.Provider.GEMINI;
+        }
+        return OpenAIException.Provider.OPENAI;
+    }
+
+    /**
+     * 记录一次请求的耗时与结果
+     *
+     * @param startNanos 请求开始时的 {@link System#nanoTime()}
+     */
+    public static void recordRequest(MetricsRegistry registry, OpenAIException.Provider provider, String model,
+                                     String endpoint, long startNanos, boolean success) {
+        if (registry == null || !registry.isEnabled()) {
+            return;
+        }
+        String outcome = success ? OUTCOME_SUCCESS : OUTCOME_ERROR;
+        MetricKey key = MetricKey.of(REQUEST_LATENCY, provider, model, endpoint).withTag(TAG_OUTCOME, outcome);
+        registry.record(key, toMicros(System.nanoTime() - startNanos));
+        registry.increment(key.withName(REQUESTS));
+    }
+
+    /**
+     * 记录一次重试
+     */
+    public static void recordRetry(MetricsRegistry registry, OpenAIException.Provider provider, String model, String endpoint) {
+        if (registry == null || !registry.isEnabled()) {
+            return;
+        }
+        registry.increment(MetricKey.of(RETRIES, provider, model, endpoint));
+    }
+
+    /**
+     * 记录排队/等待连接的耗时
+     */
+    public static void recordQueueWait(MetricsRegistry registry, OpenAIException.Provider provider, String model,
+                                       String endpoint, long waitNanos) {
+        if (registry == null || !registry.isEnabled()) {
+            return;
+        }
+        registry.record(MetricKey.of(QUEUE_WAIT, provider, model, endpoint), toMicros(waitNanos));
+    }
+
+    /**
+     * 记录等待并发许可的耗时（按优先级区分）
+     */
+    public static void recordConcurrencyWait(MetricsRegistry registry, OpenAIException.Provider provider, String model,
+                                             String endpoint, ConcurrencyLimiter.Permit permit) {
+        if (registry == null || !registry.isEnabled()) {
+            return;
+        }
+        registry.record(MetricKey.of(CONCURRENCY_QUEUE_WAIT, provider, model, endpoint)
+                        .withTag(TAG_PRIORITY, permit.getPriority().name().toLowerCase(Locale.ROOT)),
+                toMicros(permit.getQueueWaitNanos()));
+    }
+
+    /**
+     * 记录一次没有获得并发许可的请求，reason为异常的错误类型（并发受限或超过截止时间）
+     */
+    public static void recordConcurrencyRejection(MetricsRegistry registry, OpenAIException.Provider provider,
+                                                  String model, String endpoint, Throwable error) {
+        if (registry == null || !registry.isEnabled()) {
+            return;
+        }
+        String reason = error instanceof OpenAIException && ((OpenAIException) error).getErrorType() != null
+                ? ((OpenAIException) error).getErrorType() : OUTCOME_ERROR;
+        registry.increment(MetricKey.of(CONCURRENCY_REJECTIONS, provider, model, endpoint).withTag(TAG_REASON, reason));
+    }
+
+    /**
+     * 记录prompt缓存使用情况（兼容Bedrock和OpenAI/Azure两种usage格式）
+     */
+    public static void recordUsage(MetricsRegistry registry, OpenAIException.Provider provider, String model,
+                                   String endpoint, ChatCompletionResponse.Usage usage) {
+        if (registry == null || !registry.isEnabled() || usage == null) {
+            return;
+        }
+        int cacheRead = usage.getCacheReadInputTokens() != null ? usage.getCacheReadInputTokens() : 0;
+        int cacheWrite = usage.getCacheCreationInputTokens() != null ? usage.getCacheCreationInputTokens() : 0;
+        MetricKey base = MetricKey.of(CACHE_READ_TOKENS, provider, model, endpoint);
+        if (cacheRead > 0) {
+            registry.add(base, cacheRead);
+            registry.increment(base.withName(CACHE_HITS));
+        } else if (usage.getPromptTokens() > 0 || cacheWrite > 0) {
+            registry.increment(base.withName(CACHE_MISSES));
+        }
+        if (cacheWrite > 0) {
+            registry.add(base.withName(CACHE_WRITE_TOKENS), cacheWrite);
+        }
+        // Bedrock的输入token不包含缓存读写部分，OpenAI/Azure的prompt_tokens已包含缓存命中部分
+        long input = provider == OpenAIException.Provider.BEDROCK
+                ? (long) usage.getPromptTokens() + cacheRead + cacheWrite
+                : usage.getPromptTokens();
+        if (input > 0) {
+            registry.add(base.withName(CACHE_INPUT_TOKENS), input);
+        }
+    }
+
+    /**
+     * 计算快照中的prompt缓存命中率（从缓存读取的输入token占输入token总数的比例）
+     *
+     * @return 0到1之间的比例，没有输入token时返回0
+     */
+    public static double cacheHitRate(MetricsSnapshot snapshot) {
+        long input = snapshot.sumCounters(CACHE_INPUT_TOKENS);
+        if (input <= 0) {
+            return 0;
+        }
+        return Math.min(1.0, (double) snapshot.sumCounters(CACHE_READ_TOKENS) / input);
+    }
+
+    /**
+     * 开始记录一个流式请求
+     *
+     * @return 流式指标记录器，需要在每个数据块和结束时回调
+     */
+    public static StreamMetrics startStream(MetricsRegistry registry, OpenAIException.Provider provider,
+                                            String model, String endpoint) {
+        return new StreamMetrics(registry, provider, model, endpoint, null);
+    }
+
+    /**
+     * 开始记录一个流式请求，并关联流Span（流结束时由记录器结束该Span）
+     */
+    public static StreamMetrics startStream(MetricsRegistry registry, OpenAIException.Provider provider,
+                                            String model, String endpoint, Span span) {
+        return new StreamMetrics(registry, provider, model, endpoint, span);
+    }
+
+    static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
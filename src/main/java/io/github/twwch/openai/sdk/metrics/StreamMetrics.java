@@ -0,0 +1,246 @@
+package io.github.twwch.openai.sdk.metrics;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.tracing.Span;
+import io.github.twwch.openai.sdk.tracing.SpanStatus;
+import io.github.twwch.openai.sdk.tracing.TraceAttributes;
+import io.github.twwch.openai.sdk.tracing.Tracing;
+import io.github.twwch.openai.sdk.service.PromptPrefix;
+import io.github.twwch.openai.sdk.limit.ConcurrencyLimiter;
+import io.github.twwch.openai.sdk.usage.PromptCacheLedger;
+import io.github.twwch.openai.sdk.usage.UsageLedger;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个流式请求的指标记录器
+ * 记录首token耗时、token间隔、输出速度，并合并分散在多个数据块中的usage
+ * （Bedrock在message_start中给出输入/缓存token，在message_delta中给出输出token）。
+ * 如果关联了流Span，首token和结束时的token统计会作为Span事件记录，并在结束时结束Span；
+ * 如果关联了用量账本或Prompt缓存效果账本，结束时把合并后的usage记入账本。
+ */
+public class StreamMetrics {
+    private final MetricsRegistry registry;
+    private final OpenAIException.Provider provider;
+    private final String model;
+    private final String endpoint;
+    private final long startNanos;
+    private final Span span;
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+
+    private volatile long firstTokenNanos;
+    private volatile long lastTokenNanos;
+    private volatile long tokenChunks;
+    private volatile ChatCompletionResponse.Usage usage;
+    private volatile UsageLedger ledger;
+    private volatile String tenant;
+    private volatile PromptCacheLedger cacheLedger;
+    private volatile PromptPrefix prefix;
+    private volatile ConcurrencyLimiter limiter;
+    private volatile String limiterTenant;
+
+    StreamMetrics(MetricsRegistry registry, OpenAIException.Provider provider, String model, String endpoint,
+                  Span span) {
+        this.registry = registry;
+        this.provider = provider;
+        this.model = model;
+        this.endpoint = endpoint;
+        this.span = span != null ? span : Span.noop();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * 流Span（未启用追踪时为no-op Span）
+     */
+    public Span getSpan() {
+        return span;
+    }
+
+    /**
+     * 关联用量账本，流结束时记录合并后的usage
+     *
+     * @param ledger 用量账本
+     * @param tenant 租户（请求的user字段）
+     * @return 当前记录器
+     */
+    public StreamMetrics withLedger(UsageLedger ledger, String tenant) {
+        this.ledger = ledger;
+        this.tenant = tenant;
+        return this;
+    }
+
+    /**
+     * 关联Prompt缓存效果账本，流结束时按请求的缓存前缀记录合并后的usage
+     *
+     * @param cacheLedger Prompt缓存效果账本
+     * @param prefix      请求的可缓存前缀，可以为null
+     * @return 当前记录器
+     */
+    public StreamMetrics withPromptCache(PromptCacheLedger cacheLedger, PromptPrefix prefix) {
+        this.cacheLedger = cacheLedger;
+        this.prefix = prefix;
+        return this;
+    }
+
+    /**
+     * 关联并发限制器，流结束时从租户的token额度中扣除合并后的用量
+     *
+     * @param limiter 并发限制器
+     * @param tenant  排队使用的租户（{@link io.github.twwch.openai.sdk.limit.Admission#getTenant()}）
+     * @return 当前记录器
+     */
+    public StreamMetrics withConcurrencyLimiter(ConcurrencyLimiter limiter, String tenant) {
+        this.limiter = limiter;
+        this.limiterTenant = tenant;
+        return this;
+    }
+
+    /**
+     * 收到一个数据块
+     */
+    public void onChunk(ChatCompletionChunk chunk) {
+        boolean metricsEnabled = registry != null && registry.isEnabled();
+        boolean ledgerEnabled = (ledger != null && ledger.isEnabled())
+                || (cacheLedger != null && cacheLedger.isEnabled())
+                || (limiter != null && limiter.isEnabled());
+        if (chunk == null || (!metricsEnabled && !span.isRecording() && !ledgerEnabled)) {
+            return;
+        }
+        if (chunk.getUsage() != null) {
+            mergeUsage(chunk.getUsage());
+        }
+        if (!carriesToken(chunk)) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (firstTokenNanos == 0) {
+            firstTokenNanos = now;
+            if (metricsEnabled) {
+                registry.record(key(SdkMetrics.TIME_TO_FIRST_TOKEN), SdkMetrics.toMicros(now - startNanos));
+            }
+            if (span.isRecording()) {
+                span.addEvent(TraceAttributes.EVENT_FIRST_TOKEN, Collections.singletonMap(
+                        TraceAttributes.TIME_TO_FIRST_TOKEN_MS, TimeUnit.NANOSECONDS.toMillis(now - startNanos)));
+            }
+        } else if (metricsEnabled) {
+            registry.record(key(SdkMetrics.INTER_TOKEN_LATENCY), SdkMetrics.toMicros(now - lastTokenNanos));
+        }
+        lastTokenNanos = now;
+        tokenChunks++;
+    }
+
+    /**
+     * 流结束（成功或失败），只会记录一次
+     */
+    public void finish(boolean success) {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        endSpan(success);
+        // 失败的流也按上游已报告的用量记账
+        if (ledger != null) {
+            ledger.record(tenant, provider, model, usage);
+        }
+        if (cacheLedger != null) {
+            cacheLedger.record(provider, model, endpoint, prefix, usage);
+        }
+        if (limiter != null && usage != null) {
+            limiter.recordTokens(limiterTenant, usage.getTotalTokens());
+        }
+        if (registry == null || !registry.isEnabled()) {
+            return;
+        }
+        SdkMetrics.recordRequest(registry, provider, model, endpoint, startNanos, success);
+        ChatCompletionResponse.Usage merged = usage;
+        if (merged != null) {
+            SdkMetrics.recordUsage(registry, provider, model, endpoint, merged);
+        }
+        if (success && firstTokenNanos > 0 && lastTokenNanos > firstTokenNanos) {
+            long tokens = merged != null && merged.getCompletionTokens() > 0 ? merged.getCompletionTokens() : tokenChunks;
+            double seconds = (lastTokenNanos - firstTokenNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+            registry.record(key(SdkMetrics.TOKENS_PER_SECOND), Math.round(tokens / seconds));
+        }
+    }
+
+    /**
+     * 流因异常结束，异常会记录到流Span上
+     */
+    public void fail(Throwable error) {
+        if (error != null && !finished.get()) {
+            span.recordException(error);
+        }
+        finish(false);
+    }
+
+    private void endSpan(boolean success) {
+        if (!span.isRecording()) {
+            return;
+        }
+        Tracing.setUsage(span, usage);
+        if (firstTokenNanos > 0) {
+            Map<String, Object> attributes = new LinkedHashMap<>();
+            attributes.put(TraceAttributes.TIME_TO_FIRST_TOKEN_MS, TimeUnit.NANOSECONDS.toMillis(firstTokenNanos - startNanos));
+            attributes.put(TraceAttributes.TOKEN_CHUNKS, tokenChunks);
+            if (tokenChunks > 1) {
+                attributes.put(TraceAttributes.MEAN_INTER_TOKEN_MS,
+                        (lastTokenNanos - firstTokenNanos) / (tokenChunks - 1) / 1_000_000.0);
+            }
+            span.addEvent(TraceAttributes.EVENT_TOKEN_SUMMARY, attributes);
+        }
+        span.setStatus(success ? SpanStatus.OK : SpanStatus.ERROR);
+        span.end();
+    }
+
+    /**
+     * 合并后的usage（可能为null）
+     */
+    public ChatCompletionResponse.Usage getUsage() {
+        return usage;
+    }
+
+    private void mergeUsage(ChatCompletionResponse.Usage chunkUsage) {
+        ChatCompletionResponse.Usage current = usage;
+        if (current == null) {
+            current = new ChatCompletionResponse.Usage();
+        }
+        ChatCompletionResponse.Usage merged = new ChatCompletionResponse.Usage();
+        merged.setPromptTokens(Math.max(current.getPromptTokens(), chunkUsage.getPromptTokens()));
+        merged.setCompletionTokens(Math.max(current.getCompletionTokens(), chunkUsage.getCompletionTokens()));
+        merged.setTotalTokens(merged.getPromptTokens() + merged.getCompletionTokens());
+        merged.setCacheReadInputTokens(max(current.getCacheReadInputTokens(), chunkUsage.getCacheReadInputTokens()));
+        merged.setCacheCreationInputTokens(max(current.getCacheCreationInputTokens(), chunkUsage.getCacheCreationInputTokens()));
+        usage = merged;
+    }
+
+    private static Integer max(Integer a, Integer b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return Math.max(a, b);
+    }
+
+    private static boolean carriesToken(ChatCompletionChunk chunk) {
+        if (chunk.getChoices() == null || chunk.getChoices().isEmpty()) {
+            return false;
+        }
+        ChatCompletionChunk.Delta delta = chunk.getChoices().get(0).getDelta();
+        if (delta == null) {
+            return false;
+        }
+        return (delta.getContent() != null && !delta.getContent().isEmpty())
+                || (delta.getToolCalls() != null && !delta.getToolCalls().isEmpty());
+    }
+
+    private MetricKey key(String name) {
+        return MetricKey.of(name, provider, model, endpoint);
+    }
+}
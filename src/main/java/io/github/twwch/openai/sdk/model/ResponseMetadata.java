@@ -0,0 +1,344 @@
+package io.github.twwch.openai.sdk.model;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 响应元数据
+ * 从上游响应头（和Bedrock流结束时的invocationMetrics）中提取的请求ID、服务端处理耗时和限流信息，
+ * 结合SDK测得的耗时可以区分网络/排队耗时与模型耗时
+ */
+public class ResponseMetadata {
+    public static final String HEADER_REQUEST_ID = "x-request-id";
+    public static final String HEADER_AZURE_REQUEST_ID = "apim-request-id";
+    public static final String HEADER_AMZN_REQUEST_ID = "x-amzn-requestid";
+    public static final String HEADER_PROCESSING_MS = "openai-processing-ms";
+    public static final String HEADER_BEDROCK_INVOCATION_LATENCY = "x-amzn-bedrock-invocation-latency";
+    public static final String HEADER_BEDROCK_INPUT_TOKENS = "x-amzn-bedrock-input-token-count";
+    public static final String HEADER_BEDROCK_OUTPUT_TOKENS = "x-amzn-bedrock-output-token-count";
+    public static final String HEADER_LIMIT_REQUESTS = "x-ratelimit-limit-requests";
+    public static final String HEADER_LIMIT_TOKENS = "x-ratelimit-limit-tokens";
+    public static final String HEADER_REMAINING_REQUESTS = "x-ratelimit-remaining-requests";
+    public static final String HEADER_REMAINING_TOKENS = "x-ratelimit-remaining-tokens";
+    public static final String HEADER_RESET_REQUESTS = "x-ratelimit-reset-requests";
+    public static final String HEADER_RESET_TOKENS = "x-ratelimit-reset-tokens";
+    public static final String HEADER_RETRY_AFTER = "retry-after";
+    public static final String HEADER_RETRY_AFTER_MS = "retry-after-ms";
+
+    private OpenAIException.Provider provider;
+    private int statusCode;
+    private String requestId;
+    private Long processingMs;
+    private Long latencyMs;
+    private Long limitRequests;
+    private Long limitTokens;
+    private Long remainingRequests;
+    private Long remainingTokens;
+    private Long resetRequestsMs;
+    private Long resetTokensMs;
+    private Long retryAfterMs;
+    private Long firstByteLatencyMs;
+    private Integer inputTokenCount;
+    private Integer outputTokenCount;
+    private Map<String, String> headers = Collections.emptyMap();
+
+    /**
+     * 从响应头解析元数据
+     *
+     * @param provider 服务提供商
+     * @param statusCode HTTP状态码
+     * @param headers 响应头（名称大小写不敏感）
+     * @param latencyMs SDK测得的耗时（毫秒），未知时为null
+     */
+    public static ResponseMetadata fromHeaders(OpenAIException.Provider provider, int statusCode,
+                                               Map<String, List<String>> headers, Long latencyMs) {
+        ResponseMetadata metadata = new ResponseMetadata();
+        metadata.provider = provider;
+        metadata.statusCode = statusCode;
+        metadata.latencyMs = latencyMs;
+
+        Map<String, String> normalized = new TreeMap<>();
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null && !entry.getValue().isEmpty()) {
+                    normalized.put(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue().get(0));
+                }
+            }
+        }
+        metadata.headers = Collections.unmodifiableMap(normalized);
+
+        metadata.requestId = first(normalized, HEADER_REQUEST_ID, HEADER_AMZN_REQUEST_ID, HEADER_AZURE_REQUEST_ID);
+        metadata.processingMs = parseLong(first(normalized, HEADER_PROCESSING_MS, HEADER_BEDROCK_INVOCATION_LATENCY));
+        metadata.limitRequests = parseLong(normalized.get(HEADER_LIMIT_REQUESTS));
+        metadata.limitTokens = parseLong(normalized.get(HEADER_LIMIT_TOKENS));
+        metadata.remainingRequests = parseLong(normalized.get(HEADER_REMAINING_REQUESTS));
+        metadata.remainingTokens = parseLong(normalized.get(HEADER_REMAINING_TOKENS));
+        metadata.resetRequestsMs = parseDurationMs(normalized.get(HEADER_RESET_REQUESTS));
+        metadata.resetTokensMs = parseDurationMs(normalized.get(HEADER_RESET_TOKENS));
+        Long retryAfterMs = parseLong(normalized.get(HEADER_RETRY_AFTER_MS));
+        if (retryAfterMs == null) {
+            Long retryAfterSeconds = parseLong(normalized.get(HEADER_RETRY_AFTER));
+            retryAfterMs = retryAfterSeconds != null ? retryAfterSeconds * 1000 : null;
+        }
+        metadata.retryAfterMs = retryAfterMs;
+        Long inputTokens = parseLong(normalized.get(HEADER_BEDROCK_INPUT_TOKENS));
+        Long outputTokens = parseLong(normalized.get(HEADER_BEDROCK_OUTPUT_TOKENS));
+        metadata.inputTokenCount = inputTokens != null ? inputTokens.intValue() : null;
+        metadata.outputTokenCount = outputTokens != null ? outputTokens.intValue() : null;
+        return metadata;
+    }
+
+    /**
+     * 解析OpenAI风格的时长（如 "20ms"、"1s"、"6m0s"、"1h2m3.5s"），纯数字按秒处理
+     *
+     * @return 毫秒数，无法解析时返回null
+     */
+    public static Long parseDurationMs(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        String text = value.trim();
+        try {
+            return Math.round(Double.parseDouble(text) * 1000);
+        } catch (NumberFormatException ignored) {
+            // 带单位的格式
+        }
+        double totalMs = 0;
+        int i = 0;
+        boolean parsed = false;
+        while (i < text.length()) {
+            int start = i;
+            while (i < text.length() && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '.')) {
+                i++;
+            }
+            if (start == i) {
+                return null;
+            }
+            double number = Double.parseDouble(text.substring(start, i));
+            int unitStart = i;
+            while (i < text.length() && Character.isLetter(text.charAt(i))) {
+                i++;
+            }
+            String unit = text.substring(unitStart, i);
+            switch (unit) {
+                case "ms":
+                    totalMs += number;
+                    break;
+                case "s":
+                    totalMs += number * 1000;
+                    break;
+                case "m":
+                    totalMs += number * 60_000;
+                    break;
+                case "h":
+                    totalMs += number * 3_600_000;
+                    break;
+                default:
+                    return null;
+            }
+            parsed = true;
+        }
+        return parsed ? Math.round(totalMs) : null;
+    }
+
+    /**
+     * SDK测得耗时减去服务端处理耗时，即网络、排队和连接等开销
+     *
+     * @return 毫秒数，任一耗时未知时返回null
+     */
+    public Long getOverheadMs() {
+        if (latencyMs == null || processingMs == null) {
+            return null;
+        }
+        return Math.max(0, latencyMs - processingMs);
+    }
+
+    /**
+     * 获取原始响应头（名称为小写）
+     */
+    public String getHeader(String name) {
+        return name != null ? headers.get(name.toLowerCase(Locale.ROOT)) : null;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public OpenAIException.Provider getProvider() {
+        return provider;
+    }
+
+    public void setProvider(OpenAIException.Provider provider) {
+        this.provider = provider;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * 服务端处理耗时（OpenAI/Azure的openai-processing-ms，Bedrock的invocation latency）
+     */
+    public Long getProcessingMs() {
+        return processingMs;
+    }
+
+    public void setProcessingMs(Long processingMs) {
+        this.processingMs = processingMs;
+    }
+
+    /**
+     * SDK测得的耗时：非流式为请求发出到读完响应体，流式为请求发出到流结束
+     */
+    public Long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public void setLatencyMs(Long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    public Long getLimitRequests() {
+        return limitRequests;
+    }
+
+    public void setLimitRequests(Long limitRequests) {
+        this.limitRequests = limitRequests;
+    }
+
+    public Long getLimitTokens() {
+        return limitTokens;
+    }
+
+    public void setLimitTokens(Long limitTokens) {
+        this.limitTokens = limitTokens;
+    }
+
+    public Long getRemainingRequests() {
+        return remainingRequests;
+    }
+
+    public void setRemainingRequests(Long remainingRequests) {
+        this.remainingRequests = remainingRequests;
+    }
+
+    public Long getRemainingTokens() {
+        return remainingTokens;
+    }
+
+    public void setRemainingTokens(Long remainingTokens) {
+        this.remainingTokens = remainingTokens;
+    }
+
+    public Long getResetRequestsMs() {
+        return resetRequestsMs;
+    }
+
+    public void setResetRequestsMs(Long resetRequestsMs) {
+        this.resetRequestsMs = resetRequestsMs;
+    }
+
+    public Long getResetTokensMs() {
+        return resetTokensMs;
+    }
+
+    public void setResetTokensMs(Long resetTokensMs) {
+        this.resetTokensMs = resetTokensMs;
+    }
+
+    public Long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    public void setRetryAfterMs(Long retryAfterMs) {
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * 服务端首字节耗时（Bedrock流式invocationMetrics的firstByteLatency）
+     */
+    public Long getFirstByteLatencyMs() {
+        return firstByteLatencyMs;
+    }
+
+    public void setFirstByteLatencyMs(Long firstByteLatencyMs) {
+        this.firstByteLatencyMs = firstByteLatencyMs;
+    }
+
+    /**
+     * 服务端统计的输入token数（Bedrock）
+     */
+    public Integer getInputTokenCount() {
+        return inputTokenCount;
+    }
+
+    public void setInputTokenCount(Integer inputTokenCount) {
+        this.inputTokenCount = inputTokenCount;
+    }
+
+    /**
+     * 服务端统计的输出token数（Bedrock）
+     */
+    public Integer getOutputTokenCount() {
+        return outputTokenCount;
+    }
+
+    public void setOutputTokenCount(Integer outputTokenCount) {
+        this.outputTokenCount = outputTokenCount;
+    }
+
+    private static String first(Map<String, String> headers, String... names) {
+        for (String name : names) {
+            String value = headers.get(name);
+            if (value != null && !value.isEmpty()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            try {
+                return Math.round(Double.parseDouble(value.trim()));
+            } catch (NumberFormatException ignored) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseMetadata{" +
+                "provider=" + provider +
+                ", statusCode=" + statusCode +
+                ", requestId='" + requestId + '\'' +
+                ", processingMs=" + processingMs +
+                ", latencyMs=" + latencyMs +
+                ", remainingRequests=" + remainingRequests +
+                ", remainingTokens=" + remainingTokens +
+                '}';
+    }
+}
@@ -1,7 +1,10 @@
 package io.github.twwch.openai.sdk.model.chat;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.github.twwch.openai.sdk.limit.RequestPriority;
+import io.github.twwch.openai.sdk.limit.Timeouts;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -146,6 +149,24 @@ public class ChatCompletionRequest {
     @JsonProperty("bedrock_enable_system_cache")
     private Boolean bedrockEnableSystemCache;
 
+    /**
+     * 调度优先级，只在SDK内使用，不发送给服务端
+     */
+    @JsonIgnore
+    private RequestPriority priority;
+
+    /**
+     * 绝对截止时间（epoch毫秒），超过后请求在发出前丢弃；只在SDK内使用，不发送给服务端
+     */
+    @JsonIgnore
+    private Long deadline;
+
+    /**
+     * 本次调用的分段超时，大于0的字段覆盖配置中的超时；只在SDK内使用，不发送给服务端
+     */
+    @JsonIgnore
+    private Timeouts timeouts;
+
     public ChatCompletionRequest() {
         this.messages = new ArrayList<>();
         // 不设置默认值，让各个服务自己处理
@@ -157,6 +178,52 @@ public class ChatCompletionRequest {
         // 不设置默认值，让各个服务自己处理
     }
 
+    /**
+     * 浅拷贝请求，消息列表等引用与原请求共享
+     * SDK在发出前需要调整参数（如预测的max_tokens）时使用，避免改动调用方的请求对象
+     */
+    public ChatCompletionRequest copy() {
+        ChatCompletionRequest copy = new ChatCompletionRequest();
+        copy.model = model;
+        copy.messages = messages;
+        copy.maxTokens = maxTokens;
+        copy.temperature = temperature;
+        copy.topP = topP;
+        copy.n = n;
+        copy.stream = stream;
+        copy.stop = stop;
+        copy.presencePenalty = presencePenalty;
+        copy.frequencyPenalty = frequencyPenalty;
+        copy.logitBias = logitBias;
+        copy.user = user;
+        copy.functions = functions;
+        copy.functionCall = functionCall;
+        copy.tools = tools;
+        copy.toolChoice = toolChoice;
+        copy.responseFormat = responseFormat;
+        copy.streamOptions = streamOptions;
+        copy.audio = audio;
+        copy.logprobs = logprobs;
+        copy.maxCompletionTokens = maxCompletionTokens;
+        copy.metadata = metadata;
+        copy.modalities = modalities;
+        copy.parallelToolCalls = parallelToolCalls;
+        copy.prediction = prediction;
+        copy.promptCacheKey = promptCacheKey;
+        copy.reasoningEffort = reasoningEffort;
+        copy.safetyIdentifier = safetyIdentifier;
+        copy.seed = seed;
+        copy.serviceTier = serviceTier;
+        copy.store = store;
+        copy.topLogprobs = topLogprobs;
+        copy.webSearchOptions = webSearchOptions;
+        copy.bedrockEnableSystemCache = bedrockEnableSystemCache;
+        copy.priority = priority;
+        copy.deadline = deadline;
+        copy.timeouts = timeouts;
+        return copy;
+    }
+
     public String getModel() {
         return model;
     }
@@ -458,6 +525,30 @@ public class ChatCompletionRequest {
         this.bedrockEnableSystemCache = bedrockEnableSystemCache;
     }
 
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(RequestPriority priority) {
+        this.priority = priority;
+    }
+
+    public Long getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(Long deadline) {
+        this.deadline = deadline;
+    }
+
+    public Timeouts getTimeouts() {
+        return timeouts;
+    }
+
+    public void setTimeouts(Timeouts timeouts) {
+        this.timeouts = timeouts;
+    }
+
     /**
      * 函数定义
      */
@@ -1,8 +1,11 @@
 package io.github.twwch.openai.sdk.model.chat;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import io.github.twwch.openai.sdk.model.ResponseMetadata;
+
 import java.util.List;
 
 /**
@@ -16,6 +19,8 @@ public class ChatCompletionResponse {
     private String model;
     private List<Choice> choices;
     private Usage usage;
+    @JsonIgnore
+    private ResponseMetadata responseMetadata;
 
     public String getId() {
         return id;
@@ -65,6 +70,20 @@ public class ChatCompletionResponse {
         this.usage = usage;
     }
 
+    /**
+     * 获取响应元数据（请求ID、服务端处理耗时、限流信息），不参与JSON序列化
+     * @return 响应元数据，未能获取时为null
+     */
+    @JsonIgnore
+    public ResponseMetadata getResponseMetadata() {
+        return responseMetadata;
+    }
+
+    @JsonIgnore
+    public void setResponseMetadata(ResponseMetadata responseMetadata) {
+        this.responseMetadata = responseMetadata;
+    }
+
     /**
      * 获取第一个选择的消息内容
      * @return 消息内容
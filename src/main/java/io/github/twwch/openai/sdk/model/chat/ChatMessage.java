@@ -106,6 +106,33 @@ public class ChatMessage {
         this.toolCalls = toolCalls;
     }
 
+    /**
+     * 浅拷贝消息，内容块数组逐块复制，其余引用与原消息共享
+     * SDK需要在内容块上放置缓存断点等标记时使用，避免改动调用方的消息对象
+     */
+    public ChatMessage copy() {
+        ChatMessage copy = new ChatMessage(role, content);
+        copy.name = name;
+        copy.toolCallId = toolCallId;
+        copy.functionCall = functionCall;
+        copy.toolCalls = toolCalls;
+        if (content instanceof ContentPart[]) {
+            ContentPart[] source = (ContentPart[]) content;
+            ContentPart[] parts = new ContentPart[source.length];
+            for (int i = 0; i < source.length; i++) {
+                if (source[i] != null) {
+                    parts[i] = new ContentPart();
+                    parts[i].setType(source[i].getType());
+                    parts[i].setText(source[i].getText());
+                    parts[i].setImageUrl(source[i].getImageUrl());
+                    parts[i].setCacheControl(source[i].getCacheControl());
+                }
+            }
+            copy.content = parts;
+        }
+        return copy;
+    }
+
     /**
      * 创建系统消息
      * @param content 消息内容
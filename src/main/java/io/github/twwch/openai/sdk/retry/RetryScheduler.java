@@ -0,0 +1,197 @@
+package io.github.twwch.openai.sdk.retry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 重试调度器
+ * 退避等待不再占用调用线程：重试任务挂在一个共享的守护定时线程上，到期后交给工作线程发起下一次尝试，
+ * 异步和流式调用在退避期间不阻塞任何线程。定时线程只负责计时，请求转换、图片下载等工作在工作线程上执行。
+ * 默认所有客户端共享 {@link #getDefault()}，也可以为每个配置单独指定。
+ */
+public class RetryScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(RetryScheduler.class);
+
+    private static final RetryScheduler DEFAULT = new RetryScheduler("openai-sdk-retry");
+
+    private final ScheduledThreadPoolExecutor timer;
+    private final ExecutorService workers;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * 创建调度器
+     * @param threadNamePrefix 线程名前缀
+     */
+    public RetryScheduler(String threadNamePrefix) {
+        this.timer = new ScheduledThreadPoolExecutor(1, daemonThreads(threadNamePrefix + "-timer"));
+        // 取消的重试立即从队列移除，避免大量取消后堆积
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.workers = Executors.newCachedThreadPool(daemonThreads(threadNamePrefix + "-worker"));
+    }
+
+    /**
+     * 获取进程内共享的默认调度器
+     */
+    public static RetryScheduler getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 在延迟后执行重试任务
+     * @param task 发起下一次尝试的任务
+     * @param delayMillis 退避时间（毫秒）
+     * @return 可用于取消尚未执行的重试
+     * @throws RejectedExecutionException 如果调度器已关闭
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        pending.incrementAndGet();
+        ScheduledFuture<?> future = timer.schedule(() -> {
+            pending.decrementAndGet();
+            try {
+                workers.execute(task);
+            } catch (RejectedExecutionException e) {
+                logger.warn("重试调度器已关闭，放弃重试");
+            }
+        }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+        return new PendingRetry(future);
+    }
+
+    /**
+     * 在延迟后发起异步调用，延迟为0时在当前线程立即发起
+     * 取消返回的Future会取消尚未执行的任务或进行中的调用
+     *
+     * @param call        发起调用的任务
+     * @param delayMillis 等待时间（毫秒）
+     * @return 调用的结果；调度器已关闭时以 {@link RejectedExecutionException} 异常完成
+     */
+    public <T> CompletableFuture<T> defer(Supplier<CompletableFuture<T>> call, long delayMillis) {
+        if (delayMillis <= 0) {
+            return call.get();
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ScheduledFuture<?> task;
+        try {
+            task = schedule(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                CompletableFuture<T> inFlight;
+                try {
+                    inFlight = call.get();
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                result.whenComplete((value, throwable) -> {
+                    if (result.isCancelled()) {
+                        inFlight.cancel(true);
+                    }
+                });
+                inFlight.whenComplete((value, throwable) -> {
+                    if (throwable != null) {
+                        result.completeExceptionally(throwable instanceof CompletionException
+                                && throwable.getCause() != null ? throwable.getCause() : throwable);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            }, delayMillis);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                task.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 获取等待中的重试数量
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * 关闭调度器，尚未执行的重试将被丢弃；默认调度器不应关闭
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+        workers.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 取消时同步更新等待计数
+     */
+    private final class PendingRetry implements ScheduledFuture<Object> {
+        private final ScheduledFuture<?> delegate;
+
+        PendingRetry(ScheduledFuture<?> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = delegate.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                pending.decrementAndGet();
+            }
+            return cancelled;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return delegate.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(java.util.concurrent.Delayed o) {
+            return delegate.compareTo(o);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return delegate.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return delegate.isDone();
+        }
+
+        @Override
+        public Object get() throws InterruptedException, java.util.concurrent.ExecutionException {
+            return delegate.get();
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException,
+                java.util.concurrent.ExecutionException, java.util.concurrent.TimeoutException {
+            return delegate.get(timeout, unit);
+        }
+    }
+}
@@ -1,86 +1,151 @@
 package io.github.twwch.openai.sdk.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.twwch.openai.sdk.BedrockConfig;
 import io.github.twwch.openai.sdk.exception.ErrorLogger;
 import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.jfr.ChunkDecodeEvent;
+import io.github.twwch.openai.sdk.jfr.FirstByteEvent;
+import io.github.twwch.openai.sdk.jfr.RequestSerializationEvent;
+import io.github.twwch.openai.sdk.jfr.ResponseConversionEvent;
+import io.github.twwch.openai.sdk.jfr.UpstreamWaitEvent;
+import io.github.twwch.openai.sdk.leak.LeakDetector;
+import io.github.twwch.openai.sdk.leak.ResourceType;
+import io.github.twwch.openai.sdk.leak.TrackedResource;
+import io.github.twwch.openai.sdk.limit.Admission;
+import io.github.twwch.openai.sdk.limit.ConcurrencyLimiter;
+import io.github.twwch.openai.sdk.limit.StreamWatchdog;
+import io.github.twwch.openai.sdk.limit.Timeouts;
+import io.github.twwch.openai.sdk.metrics.AwsSdkMetricPublisher;
+import io.github.twwch.openai.sdk.metrics.MetricKey;
+import io.github.twwch.openai.sdk.metrics.MetricsRegistry;
+import io.github.twwch.openai.sdk.metrics.SdkMetrics;
+import io.github.twwch.openai.sdk.metrics.StreamMetrics;
 import io.github.twwch.openai.sdk.model.ModelInfo;
+import io.github.twwch.openai.sdk.model.ResponseMetadata;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.tracing.Scope;
+import io.github.twwch.openai.sdk.tracing.Span;
+import io.github.twwch.openai.sdk.tracing.SpanKind;
+import io.github.twwch.openai.sdk.tracing.SpanStatus;
+import io.github.twwch.openai.sdk.tracing.TraceAttributes;
+import io.github.twwch.openai.sdk.tracing.Tracing;
+import io.github.twwch.openai.sdk.service.bedrock.BedrockClientGenerations;
+import io.github.twwch.openai.sdk.service.bedrock.BedrockClientPool;
 import io.github.twwch.openai.sdk.service.bedrock.BedrockModelAdapter;
 import io.github.twwch.openai.sdk.service.bedrock.BedrockModelAdapterFactory;
 import io.github.twwch.openai.sdk.service.bedrock.BedrockRequestValidator;
-import io.github.twwch.openai.sdk.service.bedrock.auth.BedrockCredentialsIsolator;
+import io.github.twwch.openai.sdk.service.bedrock.BedrockStreamDecoder;
+import io.github.twwch.openai.sdk.service.bedrock.CacheBreakpointPlanner;
+import io.github.twwch.openai.sdk.service.bedrock.CacheWarmingCoordinator;
+import io.github.twwch.openai.sdk.service.bedrock.ClaudeModelAdapter;
+import io.github.twwch.openai.sdk.service.bedrock.ConverseModelAdapter;
+import io.github.twwch.openai.sdk.service.bedrock.MaxTokensPredictor;
+import io.github.twwch.openai.sdk.service.bedrock.ConverseStreamDecoder;
+import io.github.twwch.openai.sdk.service.bedrock.ModelCapabilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
 import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
 import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.http.SdkHttpResponse;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
-import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 import software.amazon.awssdk.services.bedrockruntime.model.*;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 /**
  * Bedrock服务实现类
  */
 public class BedrockService implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(BedrockService.class);
-
     private final BedrockConfig config;
-    private volatile BedrockRuntimeClient client;
-    private volatile BedrockRuntimeAsyncClient asyncClient;
+    private final BedrockClientPool.Handle clientHandle;
+    private final BedrockClientGenerations clients;
     private final ObjectMapper objectMapper;
+    private final ModelCapabilities capabilities;
+    /** 使用InvokeModel API时不为null */
     private final BedrockModelAdapter modelAdapter;
-    private final Object clientLock = new Object();
+    /** 使用Converse API时不为null */
+    private final ConverseModelAdapter converseAdapter;
+    private final CacheBreakpointPlanner cachePlanner;
+    private final MetricsRegistry metrics;
+    private final AwsSdkMetricPublisher metricPublisher;
+    private final LeakDetector leakDetector;
+    private final ConcurrencyLimiter limiter;
+    /** 并发限制的端点：区域和模型 */
+    private final String limitKey;
+    private final MetricKey limitGaugeKey;
+    private final LongSupplier limitGauge;
+    private final LongSupplier inFlightGauge;
+
+    /** 流式请求最多尝试次数（包括第一次） */
+    private static final int MAX_STREAM_ATTEMPTS = 5;
 
     public BedrockService(BedrockConfig config) {
         this.config = config;
         this.objectMapper = new ObjectMapper();
+        this.metrics = config.getMetricsRegistry();
+        this.metricPublisher = new AwsSdkMetricPublisher(metrics, config.getRegion());
 
         logger.debug("初始化Bedrock服务 - 区域: {}, 模型: {}", config.getRegion(), config.getModelId());
 
         // 检查是否使用默认凭证
         boolean useDefaultCredentials = (config.getAccessKeyId() == null || config.getSecretAccessKey() == null);
-
         if (useDefaultCredentials) {
             logger.info("使用默认AWS凭证链（~/.aws/credentials, 环境变量, IAM角色等）");
-
-            // 使用默认凭证创建客户端
-            this.client = BedrockCredentialsIsolator.createIsolatedClientWithDefaultCredentials(
-                    config.getRegion()
-            );
-
-            this.asyncClient = BedrockCredentialsIsolator.createIsolatedAsyncClientWithDefaultCredentials(
-                    config.getRegion()
-            );
         } else {
             logger.info("使用显式提供的AWS凭证");
-
-            // 使用隔离器创建客户端，确保完全隔离AWS环境凭证
-            this.client = BedrockCredentialsIsolator.createIsolatedClient(
-                    config.getRegion(),
-                    config.getAccessKeyId(),
-                    config.getSecretAccessKey(),
-                    config.getSessionToken()
-            );
-
-            this.asyncClient = BedrockCredentialsIsolator.createIsolatedAsyncClient(
-                    config.getRegion(),
-                    config.getAccessKeyId(),
-                    config.getSecretAccessKey(),
-                    config.getSessionToken()
-            );
         }
 
+        // 同步和流式请求都走异步客户端，相同区域和凭证的服务共享客户端池中的同一个客户端；
+        // 连接出错时按代重建，旧客户端在进行中的请求结束后才关闭
+        this.leakDetector = config.getLeakDetector();
+        this.clientHandle = BedrockClientPool.getDefault().acquire(config);
+        this.clients = clientHandle.clients();
+
         // 创建模型适配器
-        this.modelAdapter = BedrockModelAdapterFactory.createAdapter(config.getModelId());
+        this.capabilities = config.getCapabilityRegistry().resolve(config.getModelId(), config.isUseConverseApi());
+        // 使用Converse API时所有模型系列共用Converse适配器，不需要（也可能没有）InvokeModel适配器
+        this.converseAdapter = config.isUseConverseApi()
+                ? BedrockModelAdapterFactory.createConverseAdapter(capabilities) : null;
+        this.modelAdapter = converseAdapter == null ? BedrockModelAdapterFactory.createAdapter(capabilities) : null;
+        this.cachePlanner = config.isAutoCacheBreakpoints() && capabilities.isSupportsPromptCache()
+                ? new CacheBreakpointPlanner() : null;
+
+        this.limiter = config.getConcurrencyLimiter();
+        this.limitKey = config.getRegion() + "/" + config.getModelId();
+        if (limiter.isEnabled()) {
+            this.limitGaugeKey = MetricKey.of(SdkMetrics.CONCURRENCY_LIMIT, OpenAIException.Provider.BEDROCK,
+                    config.getModelId(), null).withTag("region", config.getRegion());
+            this.limitGauge = () -> limiter.getLimit(limitKey);
+            this.inFlightGauge = () -> limiter.getInFlight(limitKey);
+            metrics.gauge(limitGaugeKey, limitGauge);
+            metrics.gauge(limitGaugeKey.withName(SdkMetrics.CONCURRENCY_IN_FLIGHT), inFlightGauge);
+        } else {
+            this.limitGaugeKey = null;
+            this.limitGauge = null;
+            this.inFlightGauge = null;
+        }
 
         logger.info("Bedrock服务初始化成功 - 使用模型: {}", config.getModelId());
     }
@@ -91,25 +156,11 @@ public class BedrockService implements AutoCloseable {
      * 列出可用模型
      */
     public List<ModelInfo> listModels() throws OpenAIException {
-        // Bedrock不提供列出模型的API，返回预定义的模型列表
+        // Bedrock运行时不提供列出模型的API，返回模型能力表中登记的模型
         List<ModelInfo> models = new ArrayList<>();
-
-        // Claude模型
-        models.add(createModelInfo("anthropic.claude-3-opus-20240229", "anthropic"));
-        models.add(createModelInfo("anthropic.claude-3-sonnet-20240229", "anthropic"));
-        models.add(createModelInfo("anthropic.claude-3-haiku-20240307", "anthropic"));
-        models.add(createModelInfo("anthropic.claude-v2:1", "anthropic"));
-        models.add(createModelInfo("anthropic.claude-v2", "anthropic"));
-        models.add(createModelInfo("anthropic.claude-instant-v1", "anthropic"));
-
-        // Llama模型
-        models.add(createModelInfo("meta.llama2-13b-chat-v1", "meta"));
-        models.add(createModelInfo("meta.llama2-70b-chat-v1", "meta"));
-
-        // Amazon Titan模型
-        models.add(createModelInfo("amazon.titan-text-express-v1", "amazon"));
-        models.add(createModelInfo("amazon.titan-text-lite-v1", "amazon"));
-
+        for (ModelCapabilities model : config.getCapabilityRegistry().listModels()) {
+            models.add(createModelInfo(model.getId(), model.getProvider()));
+        }
         return models;
     }
 
@@ -135,303 +186,1207 @@ public class BedrockService implements AutoCloseable {
 
     /**
      * 创建聊天完成
+     * 同步调用是异步调用的薄封装，与流式请求共用同一个异步客户端和连接池
      */
     public ChatCompletionResponse createChatCompletion(ChatCompletionRequest request) throws OpenAIException {
-        String bedrockRequest = null;
+        CompletableFuture<ChatCompletionResponse> future = createChatCompletionAsync(request);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new OpenAIException("请求被中断", e);
+        } catch (ExecutionException e) {
+            throw toOpenAIException(e.getCause());
+        }
+    }
+
+    /**
+     * 创建聊天完成（异步）
+     * 调用线程只负责转换请求，等待上游和转换响应都在SDK的Netty线程上完成；
+     * 取消返回的Future会取消底层请求。调用前检查预算，预算限流的等待挂到重试调度器上。
+     *
+     * @return 完成时包含聊天响应，失败时以 {@link OpenAIException} 异常完成
+     */
+    public CompletableFuture<ChatCompletionResponse> createChatCompletionAsync(ChatCompletionRequest request) {
+        Admission admission = Admission.of(request, config.getTimeouts());
+        long budgetDelay;
+        try {
+            budgetDelay = config.getUsageLedger().checkBudgetDelay(request.getUser());
+        } catch (RuntimeException e) {
+            CompletableFuture<ChatCompletionResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return config.getRetryScheduler().defer(() -> createChatCompletionAsync(request, admission), budgetDelay);
+    }
+
+    /**
+     * 创建聊天完成（异步），使用调用方计算的截止时间和超时
+     * 由 {@link OpenAIService} 在每次尝试时调用，预算已在调用开始时检查过
+     *
+     * @param admission 调用的优先级、截止时间和超时，重试之间共用
+     */
+    CompletableFuture<ChatCompletionResponse> createChatCompletionAsync(ChatCompletionRequest request,
+                                                                        Admission admission) {
+        final long startNanos = System.nanoTime();
+        final Span parent = Tracing.current();
+        final CompletableFuture<ChatCompletionResponse> result = new CompletableFuture<>();
+        final String endpoint = converseAdapter != null ? SdkMetrics.ENDPOINT_CONVERSE : SdkMetrics.ENDPOINT_INVOKE_MODEL;
+
+        final CacheWarmingCoordinator.Lease warming;
+        final String predictionKey;
+        final ChatCompletionRequest outgoing;
+        try {
+            ChatCompletionRequest planned = planCacheBreakpoints(cleanedCopy(request));
+            predictionKey = predictionKey(planned);
+            outgoing = predictionKey != null ? withPredictedMaxTokens(planned, predictionKey) : planned;
+            warming = admitWarming(outgoing);
+        } catch (Exception e) {
+            fail(result, toOpenAIException(e), endpoint, startNanos);
+            return result;
+        }
+        result.whenComplete((response, throwable) -> warming.complete(response != null ? response.getUsage() : null));
+        if (warming.ready().isDone()) {
+            sendPredicted(outgoing, admission, predictionKey, endpoint, parent, startNanos, result);
+        } else {
+            // 等待同一缓存前缀的领头请求写入缓存，等待期间取消则不再发出
+            warming.ready().whenComplete((ignored, throwable) -> {
+                if (!result.isDone()) {
+                    sendPredicted(outgoing, admission, predictionKey, endpoint, parent, startNanos, result);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * 发起非流式调用；max_tokens由预测器设置时，截断的输出继续生成，合并后记录输出长度
+     *
+     * @param predictionKey 预测分类，未预测时为null
+     */
+    private void sendPredicted(ChatCompletionRequest request, Admission admission, String predictionKey,
+                               String endpoint, Span parent, long startNanos,
+                               CompletableFuture<ChatCompletionResponse> result) {
+        if (predictionKey == null) {
+            send(request, admission, endpoint, parent, startNanos, result);
+            return;
+        }
+        continueGeneration(request, request, admission, predictionKey, null, 0, endpoint, parent, startNanos, result);
+    }
+
+    private void continueGeneration(ChatCompletionRequest original, ChatCompletionRequest request,
+                                    Admission admission, String predictionKey, ChatCompletionResponse previous, int continuations,
+                                    String endpoint, Span parent, long startNanos,
+                                    CompletableFuture<ChatCompletionResponse> result) {
+        CompletableFuture<ChatCompletionResponse> segment = new CompletableFuture<>();
+        result.whenComplete((response, throwable) -> {
+            if (result.isCancelled()) {
+                segment.cancel(true);
+            }
+        });
+        segment.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(unwrap(throwable));
+                return;
+            }
+            ChatCompletionResponse merged = previous != null ? OutputContinuation.merge(previous, response) : response;
+            int output = merged.getUsage() != null ? merged.getUsage().getCompletionTokens() : 0;
+            int ceiling = maxTokensCeiling();
+            if (continuations < config.getMaxTokensPredictor().getMaxContinuations() && output < ceiling
+                    && OutputContinuation.canContinue(merged) && !result.isDone()) {
+                logger.debug("输出在 {} tokens 处被截断，继续生成 ({}/{})", output, continuations + 1,
+                        config.getMaxTokensPredictor().getMaxContinuations());
+                continueGeneration(original, OutputContinuation.request(original, merged.getContent(),
+                                ceiling - output), admission, predictionKey, merged, continuations + 1, endpoint, parent,
+                        startNanos, result);
+                return;
+            }
+            config.getMaxTokensPredictor().record(predictionKey, output);
+            result.complete(merged);
+        });
+        send(request, admission, endpoint, parent, startNanos, segment);
+    }
+
+    /**
+     * 调用方未设置max_tokens的Claude请求按预测器设置max_tokens
+     *
+     * @return 预测分类；不预测（预测器关闭、调用方已设置、非Claude模型或最后一条是assistant预填充）时返回null
+     */
+    private String predictionKey(ChatCompletionRequest request) {
+        MaxTokensPredictor predictor = config.getMaxTokensPredictor();
+        if (!predictor.isEnabled() || request.getMaxTokens() != null || !"claude".equals(capabilities.getFamily())
+                || request.getMessages() == null || request.getMessages().isEmpty()
+                || "assistant".equals(request.getMessages().get(request.getMessages().size() - 1).getRole())) {
+            return null;
+        }
+        return MaxTokensPredictor.key(config.getModelId(), request);
+    }
+
+    /**
+     * 预测的max_tokens设置在请求的副本上，调用方的请求保持未设置，重复使用时仍按预测发出
+     */
+    private ChatCompletionRequest withPredictedMaxTokens(ChatCompletionRequest request, String predictionKey) {
+        int ceiling = maxTokensCeiling();
+        int predicted = config.getMaxTokensPredictor().predict(predictionKey, ceiling);
+        if (predicted < ceiling) {
+            logger.debug("按历史输出长度设置max_tokens为 {}（默认 {}）", predicted, ceiling);
+        }
+        ChatCompletionRequest predictedRequest = request.copy();
+        predictedRequest.setMaxTokens(predicted);
+        return predictedRequest;
+    }
+
+    /**
+     * 调用方未设置max_tokens时的上限
+     */
+    private int maxTokensCeiling() {
+        return capabilities.getMaxOutputTokens() > 0
+                ? Math.min(ClaudeModelAdapter.DEFAULT_MAX_TOKENS, capabilities.getMaxOutputTokens())
+                : ClaudeModelAdapter.DEFAULT_MAX_TOKENS;
+    }
+
+    /**
+     * 转换请求并发起非流式调用
+     */
+    private void send(ChatCompletionRequest request, Admission admission, String endpoint, Span parent,
+                      long startNanos, CompletableFuture<ChatCompletionResponse> result) {
+        // 使用配置的模型ID覆盖请求中的模型
+        final String modelId = config.getModelId();
+        byte[] bedrockRequest = null;
         try {
-            // 验证和清理请求参数
-            BedrockRequestValidator.validateAndCleanRequest(request);
+            if (converseAdapter != null) {
+                // Converse请求直接构建为SDK模型对象，没有中间JSON，序列化由SDK完成
+                RequestSerializationEvent serializationEvent = new RequestSerializationEvent();
+                serializationEvent.begin();
+                ConverseRequest converseRequest = convertTraced(
+                        () -> converseAdapter.toConverseRequest(modelId, request, objectMapper, admission))
+                        .toBuilder()
+                        .overrideConfiguration(o -> applyTimeouts(o.addMetricPublisher(metricPublisher), admission))
+                        .build();
+                serializationEvent.complete(OpenAIException.Provider.BEDROCK, modelId, endpoint, 0);
 
-            // 使用配置的模型ID覆盖请求中的模型
-            String modelId = config.getModelId();
+                logger.debug("发送Bedrock Converse请求 - 模型: {}, 消息数: {}", modelId, converseRequest.messages().size());
+                invoke(endpoint, client -> client.converse(converseRequest),
+                        response -> converseAdapter.convertResponse(response, request, objectMapper),
+                        null, request, admission, parent, startNanos, result);
+                return;
+            }
 
             // 转换请求格式
-            bedrockRequest = modelAdapter.convertRequest(request, objectMapper);
+            RequestSerializationEvent serializationEvent = new RequestSerializationEvent();
+            serializationEvent.begin();
+            bedrockRequest = convertRequestTraced(request, false, admission);
+            serializationEvent.complete(OpenAIException.Provider.BEDROCK, modelId, endpoint, bedrockRequest.length);
 
             // 检查请求大小
-            if (bedrockRequest.length() > 100000) {
-                logger.warn("请求体过大: {} bytes，可能超出限制", bedrockRequest.length());
+            if (bedrockRequest.length > 100000) {
+                logger.warn("请求体过大: {} bytes，可能超出限制", bedrockRequest.length);
             }
 
-            logger.debug("发送Bedrock请求 - 模型: {}, 请求大小: {} bytes", modelId, bedrockRequest.length());
+            logger.debug("发送Bedrock请求 - 模型: {}, 请求大小: {} bytes", modelId, bedrockRequest.length);
 
             // 调用Bedrock API
             InvokeModelRequest invokeRequest = InvokeModelRequest.builder()
                     .modelId(modelId)
-                    .body(SdkBytes.fromString(bedrockRequest, StandardCharsets.UTF_8))
+                    .body(SdkBytes.fromByteArrayUnsafe(bedrockRequest))
                     .contentType("application/json")
                     .accept("application/json")
+                    .overrideConfiguration(o -> applyTimeouts(o.addMetricPublisher(metricPublisher), admission))
                     .build();
+            invoke(endpoint, client -> client.invokeModel(invokeRequest),
+                    response -> modelAdapter.convertResponse(response.body().asUtf8String(), request, objectMapper),
+                    bedrockRequest, request, admission, parent, startNanos, result);
+        } catch (Exception e) {
+            if (bedrockRequest != null && logger.isDebugEnabled()) {
+                logger.debug("请求体: {}", new String(bedrockRequest, StandardCharsets.UTF_8));
+            }
+            fail(result, toOpenAIException(e), endpoint, startNanos);
+        }
+    }
 
-            InvokeModelResponse response = client.invokeModel(invokeRequest);
-            String responseBody = response.body().asUtf8String();
+    /**
+     * 把Bedrock响应转换为聊天响应
+     */
+    private interface ResponseConverter<R> {
+        ChatCompletionResponse convert(R response) throws Exception;
+    }
 
-            // 转换响应格式
-            return modelAdapter.convertResponse(responseBody, request, objectMapper);
+    /**
+     * 获取并发许可后发起非流式调用，被限制器拒绝时以429失败，超过截止时间的请求不再发出
+     */
+    private <R extends BedrockRuntimeResponse> void invoke(String endpoint,
+                                                           Function<BedrockRuntimeAsyncClient, CompletableFuture<R>> call,
+                                                           ResponseConverter<R> converter, byte[] requestBody,
+                                                           ChatCompletionRequest request, Admission admission,
+                                                           Span parent, long startNanos,
+                                                           CompletableFuture<ChatCompletionResponse> result) {
+        CompletableFuture<ConcurrencyLimiter.Permit> permit = limiter.acquire(limitKey, admission,
+                config.getRetryScheduler());
+        result.whenComplete((response, throwable) -> {
+            if (result.isCancelled()) {
+                // 排队中被取消则退出排队
+                permit.cancel(true);
+            }
+        });
+        permit.whenComplete((granted, throwable) -> {
+            if (throwable != null) {
+                if (!permit.isCancelled()) {
+                    OpenAIException rejected = toOpenAIException(unwrap(throwable));
+                    SdkMetrics.recordConcurrencyRejection(metrics, OpenAIException.Provider.BEDROCK,
+                            config.getModelId(), endpoint, rejected);
+                    fail(result, rejected, endpoint, startNanos);
+                }
+                return;
+            }
+            if (limiter.isEnabled()) {
+                SdkMetrics.recordConcurrencyWait(metrics, OpenAIException.Provider.BEDROCK, config.getModelId(),
+                        endpoint, granted);
+            }
+            if (result.isDone()) {
+                granted.ignore();
+                return;
+            }
+            try {
+                invoke(endpoint, call, converter, requestBody, request, admission, parent, startNanos, result,
+                        granted);
+            } catch (RuntimeException e) {
+                granted.ignore();
+                fail(result, toOpenAIException(e), endpoint, startNanos);
+            }
+        });
+    }
 
-        } catch (Exception e) {
-            if (bedrockRequest != null) {
-                logger.debug("请求体: {}", bedrockRequest);
+    /**
+     * 租用客户端发起非流式调用，完成时归还客户端、释放并发许可并转换响应
+     * 异步调用拿到的是完整响应，等待上游包含了获取连接和读取响应体
+     *
+     * @param requestBody InvokeModel请求体，失败时用于调试日志；Converse请求为null
+     * @param permit      并发许可
+     */
+    private <R extends BedrockRuntimeResponse> void invoke(String endpoint,
+                                                           Function<BedrockRuntimeAsyncClient, CompletableFuture<R>> call,
+                                                           ResponseConverter<R> converter, byte[] requestBody,
+                                                           ChatCompletionRequest request, Admission admission,
+                                                           Span parent, long startNanos,
+                                                           CompletableFuture<ChatCompletionResponse> result,
+                                                           ConcurrencyLimiter.Permit permit) {
+        final String modelId = config.getModelId();
+        final UpstreamWaitEvent upstreamEvent = new UpstreamWaitEvent();
+        upstreamEvent.begin();
+        final Span invokeSpan = parent.startChild(TraceAttributes.SPAN_INVOKE_MODEL, SpanKind.CLIENT);
+        BedrockClientGenerations.Lease lease = clients.acquire();
+        CompletableFuture<R> sdkFuture;
+        try {
+            sdkFuture = call.apply(lease.client());
+        } catch (RuntimeException e) {
+            lease.close();
+            invokeSpan.end();
+            throw e;
+        }
+        result.whenComplete((response, throwable) -> {
+            if (result.isCancelled()) {
+                sdkFuture.cancel(true);
+                SdkMetrics.recordRequest(metrics, OpenAIException.Provider.BEDROCK, modelId, endpoint, startNanos, false);
             }
-            // 如果是AWS服务异常，获取状态码
-            int statusCode = 0;
-            if (e instanceof SdkServiceException) {
-                statusCode = ((SdkServiceException) e).statusCode();
+        });
+        sdkFuture.whenComplete((response, throwable) -> {
+            lease.close();
+            release(permit, throwable);
+            if (throwable != null) {
+                Throwable cause = unwrap(throwable);
+                if (messageContains(cause, "ClosedChannelException", "An error occurred on the connection")
+                        && clients.rebuild(lease.generation())) {
+                    logger.warn("检测到连接池问题，已重建客户端");
+                }
+                invokeSpan.recordException(cause);
+                invokeSpan.end();
+                if (requestBody != null && logger.isDebugEnabled()) {
+                    logger.debug("请求体: {}", new String(requestBody, StandardCharsets.UTF_8));
+                }
+                fail(result, toOpenAIException(cause, admission), endpoint, startNanos);
+                return;
+            }
+            invokeSpan.setStatus(SpanStatus.OK);
+            invokeSpan.end();
+            upstreamEvent.complete(OpenAIException.Provider.BEDROCK, modelId, endpoint);
+            try {
+                ChatCompletionResponse completion = convertResponse(response, converter, endpoint, request, admission,
+                        parent, startNanos);
+                // 指标在结果对调用方可见之前记录
+                SdkMetrics.recordRequest(metrics, OpenAIException.Provider.BEDROCK, modelId, endpoint, startNanos, true);
+                result.complete(completion);
+            } catch (Exception e) {
+                fail(result, toOpenAIException(e), endpoint, startNanos);
             }
-            throw ErrorLogger.logAndCreateException(logger, OpenAIException.Provider.BEDROCK,
-                    config.getModelId(), "请求失败", statusCode > 0 ? statusCode : 0, e);
+        });
+    }
+
+    /**
+     * 按调用结果释放并发许可：成功计入延迟样本，限流减小上限，其他失败不影响上限
+     */
+    private static void release(ConcurrencyLimiter.Permit permit, Throwable throwable) {
+        if (throwable == null) {
+            permit.success();
+        } else if (isThrottled(unwrap(throwable))) {
+            permit.throttled();
+        } else {
+            permit.ignore();
+        }
+    }
+
+    /**
+     * 是否是Bedrock的限流错误（ThrottlingException或429）
+     */
+    private static boolean isThrottled(Throwable error) {
+        if (error instanceof SdkServiceException) {
+            SdkServiceException serviceException = (SdkServiceException) error;
+            return serviceException.isThrottlingException() || serviceException.statusCode() == 429;
+        }
+        return error instanceof OpenAIException && ((OpenAIException) error).getStatusCode() == 429;
+    }
+
+    /**
+     * 记录失败指标后异常完成结果
+     */
+    private void fail(CompletableFuture<ChatCompletionResponse> result, OpenAIException exception, String endpoint,
+                      long startNanos) {
+        if (!result.isDone()) {
+            SdkMetrics.recordRequest(metrics, OpenAIException.Provider.BEDROCK, config.getModelId(),
+                    endpoint, startNanos, false);
+            result.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * 转换非流式响应并记录用量
+     */
+    private <R extends BedrockRuntimeResponse> ChatCompletionResponse convertResponse(R response,
+                                                                                      ResponseConverter<R> converter,
+                                                                                      String endpoint,
+                                                                                      ChatCompletionRequest request,
+                                                                                      Admission admission,
+                                                                                      Span parent, long startNanos)
+            throws Exception {
+        String modelId = config.getModelId();
+
+        // 转换响应格式
+        ResponseConversionEvent conversionEvent = new ResponseConversionEvent();
+        conversionEvent.begin();
+        Span conversionSpan = parent.startChild(TraceAttributes.SPAN_CONVERT_RESPONSE);
+        ChatCompletionResponse result;
+        try {
+            result = converter.convert(response);
+        } finally {
+            conversionSpan.end();
+        }
+        conversionEvent.complete(OpenAIException.Provider.BEDROCK, modelId, responseSize(response));
+        result.setResponseMetadata(responseMetadata(response, startNanos));
+        SdkMetrics.recordUsage(metrics, OpenAIException.Provider.BEDROCK, modelId, endpoint, result.getUsage());
+        config.getUsageLedger().record(request.getUser(), OpenAIException.Provider.BEDROCK, modelId, result.getUsage());
+        if (result.getUsage() != null) {
+            limiter.recordTokens(admission.getTenant(), result.getUsage().getTotalTokens());
+        }
+        config.getPromptCacheLedger().record(OpenAIException.Provider.BEDROCK, modelId, endpoint, promptPrefix(request),
+                result.getUsage());
+        return result;
+    }
+
+    /**
+     * 响应体大小，Converse响应已由SDK解析，取Content-Length
+     */
+    private static long responseSize(BedrockRuntimeResponse response) {
+        if (response instanceof InvokeModelResponse) {
+            return ((InvokeModelResponse) response).body().asByteArrayUnsafe().length;
+        }
+        SdkHttpResponse httpResponse = response.sdkHttpResponse();
+        if (httpResponse == null) {
+            return 0;
+        }
+        try {
+            return httpResponse.firstMatchingHeader("Content-Length").map(Long::parseLong).orElse(0L);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 把失败原因转换为OpenAIException，AWS服务异常保留状态码
+     */
+    private OpenAIException toOpenAIException(Throwable throwable) {
+        Throwable cause = unwrap(throwable);
+        if (cause instanceof OpenAIException) {
+            return (OpenAIException) cause;
+        }
+        int statusCode = 0;
+        if (cause instanceof SdkServiceException) {
+            statusCode = ((SdkServiceException) cause).statusCode();
+        }
+        return ErrorLogger.logAndCreateException(logger, OpenAIException.Provider.BEDROCK,
+                config.getModelId(), "请求失败", statusCode, cause);
+    }
+
+    /**
+     * 把SDK的超时异常转换为首字节超时或超过截止时间，其他异常按 {@link #toOpenAIException(Throwable)} 转换
+     */
+    private OpenAIException toOpenAIException(Throwable throwable, Admission admission) {
+        Throwable cause = unwrap(throwable);
+        if (cause instanceof ApiCallTimeoutException && admission.hasDeadline()) {
+            return admission.deadlineExceeded("Bedrock调用超过截止时间: " + config.getModelId());
+        }
+        if (cause instanceof ApiCallAttemptTimeoutException && admission.getTimeouts() != null
+                && admission.getTimeouts().getFirstByteTimeoutMillis() > 0) {
+            return admission.getTimeouts().firstByteTimeout("Bedrock " + config.getModelId(), cause);
+        }
+        return toOpenAIException(cause);
+    }
+
+    /**
+     * 按调用的首字节超时和剩余时间设置单次请求的SDK超时，连接和读取超时仍使用客户端的配置
+     */
+    private static AwsRequestOverrideConfiguration.Builder applyTimeouts(AwsRequestOverrideConfiguration.Builder builder,
+                                                                         Admission admission) {
+        Timeouts timeouts = admission.getTimeouts();
+        if (timeouts != null && timeouts.getFirstByteTimeoutMillis() > 0) {
+            builder.apiCallAttemptTimeout(Duration.ofMillis(timeouts.getFirstByteTimeoutMillis()));
+        }
+        if (admission.hasDeadline()) {
+            builder.apiCallTimeout(Duration.ofMillis(Math.max(1, admission.remainingMillis())));
+        }
+        return builder;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
         }
+        return cause;
     }
 
     /**
      * 创建聊天完成（流式）
-     * @return CompletableFuture 用于等待流完成
+     * @return 流结束时完成的Future
+     * @see #streamChatCompletion(ChatCompletionRequest, Consumer, Runnable, Consumer)
      */
     public CompletableFuture<Void> createChatCompletionStream(ChatCompletionRequest request,
                                            Consumer<ChatCompletionChunk> onChunk,
                                            Runnable onComplete,
                                            Consumer<Throwable> onError) throws OpenAIException {
-        // 添加重试机制
-        int maxRetries = 5;  // 增加重试次数
-        Exception lastException = null;
-        
-        for (int attempt = 0; attempt < maxRetries; attempt++) {
-            try {
-                return createChatCompletionStreamInternal(request, onChunk, onComplete, onError);
-            } catch (Exception e) {
-                lastException = e;
-                String message = e.getMessage();
-                
-                // 判断是否是可重试的错误
-                if (message != null && (
-                    message.contains("Acquire operation took longer") ||
-                    message.contains("connection pool") ||
-                    message.contains("Unable to execute HTTP request") ||
-                    message.contains("ClosedChannelException") ||
-                    message.contains("An error occurred on the connection") ||
-                    message.contains("All streams will be closed") ||
-                    message.contains("timeout"))) {
-                    
-                    if (attempt < maxRetries - 1) {
-                        ErrorLogger.logWarn(logger, OpenAIException.Provider.BEDROCK, config.getModelId(),
-                                String.format("流式请求失败，尝试重试 (%d/%d)", attempt + 1, maxRetries), e);
-                        
-                        // 如果是连接池相关错误，在第3次重试时重建客户端
-                        if (attempt == 2 && message != null && 
-                            (message.contains("ClosedChannelException") || 
-                             message.contains("An error occurred on the connection"))) {
-                            logger.warn("检测到连接池问题，重建客户端...");
-                            rebuildAsyncClient();
-                        }
-                        
-                        // 等待一段时间后重试（使用更长的退避时间）
-                        try {
-                            long backoffTime = Math.min((long)Math.pow(2, attempt) * 1000, 10000); // 指数退避，最多10秒
-                            logger.info("等待 {} ms 后重试...", backoffTime);
-                            Thread.sleep(backoffTime);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            throw new OpenAIException("重试被中断", ie);
-                        }
-                        continue;
-                    }
-                }
-                
-                // 不可重试的错误或已达到最大重试次数
-                throw e;
+        return streamChatCompletion(request, onChunk, onComplete, onError);
+    }
+
+    /**
+     * 创建聊天完成（流式），返回流式请求句柄
+     * @return 流式请求句柄，用于等待流完成或获取响应元数据
+     */
+    public StreamHandle streamChatCompletion(ChatCompletionRequest request,
+                                             Consumer<ChatCompletionChunk> onChunk,
+                                             Runnable onComplete,
+                                             Consumer<Throwable> onError) throws OpenAIException {
+        return streamChatCompletion(request, Admission.of(request, config.getTimeouts()), onChunk, onComplete,
+                onError);
+    }
+
+    /**
+     * 创建聊天完成（流式），使用调用方计算的截止时间和超时；发出请求前检查预算，限流等待不占用调用线程
+     *
+     * @param admission 调用的优先级、截止时间和超时，重试和继续生成的各段共用
+     */
+    StreamHandle streamChatCompletion(ChatCompletionRequest request, Admission admission,
+                                      Consumer<ChatCompletionChunk> onChunk,
+                                      Runnable onComplete,
+                                      Consumer<Throwable> onError) throws OpenAIException {
+        long budgetDelay = config.getUsageLedger().checkBudgetDelay(request.getUser());
+        // 断点只在第一次尝试前规划一次，重试沿用同样的断点
+        ChatCompletionRequest planned = planCacheBreakpoints(request);
+        String predictionKey = predictionKey(planned);
+        if (predictionKey == null) {
+            return startStream(planned, admission, budgetDelay, onChunk, onComplete, onError);
+        }
+        // 截断的流以预填充的方式继续生成，各段共用调用方的句柄和回调；预算限流只等待第一段
+        AtomicLong firstDelay = new AtomicLong(budgetDelay);
+        return new OutputContinuation.Stream(withPredictedMaxTokens(planned, predictionKey), maxTokensCeiling(),
+                config.getMaxTokensPredictor().getMaxContinuations(),
+                (segment, chunkCallback, completeCallback, errorCallback) -> startStream(segment, admission,
+                        firstDelay.getAndSet(0), chunkCallback, completeCallback, errorCallback),
+                onChunk, onComplete, onError,
+                output -> config.getMaxTokensPredictor().record(predictionKey, output)).start();
+    }
+
+    /**
+     * 发起带重试的流式请求（一段输出）
+     *
+     * @param budgetDelay 预算限流的等待毫秒数，在重试调度器上等待
+     */
+    private StreamHandle startStream(ChatCompletionRequest request, Admission admission, long budgetDelay,
+                                     Consumer<ChatCompletionChunk> onChunk,
+                                     Runnable onComplete,
+                                     Consumer<Throwable> onError) throws OpenAIException {
+        // 同一缓存前缀的并发请求等待领头请求的message_start确认缓存已写入
+        final CacheWarmingCoordinator.Lease warming = admitWarming(request);
+        final Consumer<ChatCompletionChunk> chunks = chunk -> {
+            if (chunk.getUsage() != null) {
+                warming.complete(chunk.getUsage());
             }
+            if (onChunk != null) {
+                onChunk.accept(chunk);
+            }
+        };
+        // 在送出第一个数据块前失败时，在重试调度器上安排下一次尝试，退避期间不占用调用线程
+        final AtomicInteger attemptGeneration = new AtomicInteger();
+        StreamRetry retry = new StreamRetry(config.getRetryScheduler(), MAX_STREAM_ATTEMPTS, admission,
+                BedrockService::isRetryableStreamError,
+                attempt -> Math.min((1L << (attempt - 1)) * 1000, 10000), // 指数退避，最多10秒
+                (attempt, delay, error) -> {
+                    SdkMetrics.recordRetry(metrics, OpenAIException.Provider.BEDROCK, config.getModelId(),
+                            streamEndpoint());
+                    ErrorLogger.logWarn(logger, OpenAIException.Provider.BEDROCK, config.getModelId(),
+                            String.format("流式请求失败，尝试重试 (%d/%d)", attempt, MAX_STREAM_ATTEMPTS), error);
+
+                    // 如果是连接池相关错误，重建出错的那一代客户端（按代去重并限制频率）
+                    if (messageContains(error, "ClosedChannelException", "An error occurred on the connection")
+                            && clients.rebuild(attemptGeneration.get())) {
+                        logger.warn("检测到连接池问题，已重建客户端");
+                    }
+                    logger.info("等待 {} ms 后重试...", delay);
+                },
+                (chunkCallback, completeCallback, errorCallback) -> createChatCompletionStreamInternal(
+                        request, admission, chunkCallback, completeCallback, errorCallback, attemptGeneration),
+                chunks, onComplete, onError);
+        StreamHandle handle;
+        try {
+            handle = warming.ready().isDone() ? retry.start(budgetDelay)
+                    : retry.startAfter(warming.ready(), budgetDelay);
+        } catch (RuntimeException e) {
+            warming.complete(null);
+            throw e;
         }
-        
-        // 所有重试都失败
-        throw ErrorLogger.createException(OpenAIException.Provider.BEDROCK, config.getModelId(),
-                "流式请求失败，已重试 " + maxRetries + " 次", lastException);
+        handle.whenComplete((ignored, throwable) -> warming.complete(null));
+        return handle;
     }
-    
+
     /**
-     * 重建异步客户端
+     * 请求的缓存前缀（缓存断点之前的部分），缓存效果账本关闭时不计算
      */
-    private void rebuildAsyncClient() {
-        synchronized (clientLock) {
-            logger.info("重建 Bedrock 异步客户端...");
+    private PromptPrefix promptPrefix(ChatCompletionRequest request) {
+        if (!config.getPromptCacheLedger().isEnabled()) {
+            return null;
+        }
+        return PromptPrefix.ofCacheBreakpoints(config.getRegion() + "|" + config.getModelId(), request);
+    }
 
-            // 关闭旧客户端
-            if (asyncClient != null) {
-                try {
-                    asyncClient.close();
-                } catch (Exception e) {
-                    logger.warn("关闭旧客户端时出错: {}", e.getMessage());
+    /**
+     * 向缓存预热协调器申请放行，不支持prompt缓存的模型直接放行
+     */
+    private CacheWarmingCoordinator.Lease admitWarming(ChatCompletionRequest request) {
+        CacheWarmingCoordinator coordinator = config.getCacheWarmingCoordinator();
+        if (!coordinator.isEnabled() || !capabilities.isSupportsPromptCache()) {
+            return coordinator.admit(null, config.getRetryScheduler());
+        }
+        String fingerprint = CacheWarmingCoordinator.fingerprint(
+                config.getRegion() + "|" + config.getModelId(), request);
+        return coordinator.admit(fingerprint, config.getRetryScheduler());
+    }
+
+    /**
+     * 预热prompt缓存：用给定的前缀（system、tools和消息）发送一个只输出1个token的请求，在流量到来前写入缓存
+     * 前缀中没有缓存断点时，在system（没有system时在最后一条消息）上放置断点。不修改传入的请求。
+     *
+     * @param prefix 要缓存的前缀
+     * @return 完成时包含预热请求的用量（cache_creation_input_tokens为写入缓存的token数）
+     */
+    public CompletableFuture<ChatCompletionResponse.Usage> prewarmCache(ChatCompletionRequest prefix) {
+        ChatCompletionRequest warm = new ChatCompletionRequest();
+        List<ChatMessage> messages = new ArrayList<>();
+        boolean hasSystem = false;
+        boolean marked = false;
+        for (ChatMessage message : prefix.getMessages()) {
+            hasSystem |= "system".equals(message.getRole());
+            // 复制消息和内容块，后续放置断点不影响调用方的请求
+            ChatMessage copy = message.copy();
+            if (copy.getContent() instanceof ChatMessage.ContentPart[]) {
+                for (ChatMessage.ContentPart part : (ChatMessage.ContentPart[]) copy.getContent()) {
+                    marked |= part != null && part.getCacheControl() != null;
                 }
             }
+            messages.add(copy);
+        }
+        warm.setMessages(messages);
+        warm.setTools(prefix.getTools());
+        warm.setToolChoice(prefix.getToolChoice());
+        warm.setBedrockEnableSystemCache(prefix.getBedrockEnableSystemCache());
+        warm.setMaxTokens(1);
+        if (!marked && !Boolean.TRUE.equals(warm.getBedrockEnableSystemCache())) {
+            ChatMessage last = messages.isEmpty() ? null : messages.get(messages.size() - 1);
+            if (hasSystem) {
+                warm.setBedrockEnableSystemCache(true);
+            } else if (last != null && last.getContent() instanceof String) {
+                last.setContent(new ChatMessage.ContentPart[]{
+                        ChatMessage.ContentPart.textWithCache((String) last.getContent(), true)});
+            }
+        }
+        boolean hasTurn = false;
+        for (ChatMessage message : messages) {
+            hasTurn |= !"system".equals(message.getRole());
+        }
+        if (!hasTurn) {
+            // Claude要求至少一条user消息，该消息在缓存断点之后，不影响缓存的前缀
+            messages.add(ChatMessage.user("."));
+        }
+        logger.info("预热prompt缓存 - 模型: {}, 消息数: {}", config.getModelId(), messages.size());
+        return createChatCompletionAsync(warm).thenApply(ChatCompletionResponse::getUsage);
+    }
 
-            // 检查是否使用默认凭证
-            boolean useDefaultCredentials = (config.getAccessKeyId() == null || config.getSecretAccessKey() == null);
-
-            if (useDefaultCredentials) {
-                // 使用默认凭证重建客户端
-                this.asyncClient = BedrockCredentialsIsolator.createIsolatedAsyncClientWithDefaultCredentials(
-                        config.getRegion()
-                );
-            } else {
-                // 使用显式凭证重建客户端
-                this.asyncClient = BedrockCredentialsIsolator.createIsolatedAsyncClient(
-                        config.getRegion(),
-                        config.getAccessKeyId(),
-                        config.getSecretAccessKey(),
-                        config.getSessionToken()
-                );
+    /**
+     * 在请求的副本上验证和清理参数（包括清除metadata等Bedrock不支持的字段），消息和内容块也复制，
+     * 调用方的请求保持不变，重试时从原请求重新清理
+     */
+    private ChatCompletionRequest cleanedCopy(ChatCompletionRequest request) {
+        ChatCompletionRequest cleaned = request.copy();
+        if (request.getMessages() != null) {
+            List<ChatMessage> messages = new ArrayList<>(request.getMessages().size());
+            for (ChatMessage message : request.getMessages()) {
+                messages.add(message != null ? message.copy() : null);
             }
+            cleaned.setMessages(messages);
+        }
+        BedrockRequestValidator.validateAndCleanRequest(cleaned, capabilities);
+        return cleaned;
+    }
 
-            logger.info("异步客户端重建完成");
+    /**
+     * 开启自动缓存断点时在请求的副本上放置断点，调用方的请求和消息不变；规划失败只记录日志，按原请求发送
+     *
+     * @return 放置了断点的请求副本，未开启自动断点时为原请求
+     */
+    private ChatCompletionRequest planCacheBreakpoints(ChatCompletionRequest request) {
+        if (cachePlanner == null || request == null || request.getMessages() == null) {
+            return request;
+        }
+        try {
+            ChatCompletionRequest planned = request.copy();
+            cachePlanner.plan(planned, capabilities);
+            return planned;
+        } catch (RuntimeException e) {
+            logger.warn("缓存断点规划失败，按原请求发送: {}", e.getMessage());
+            return request;
+        }
+    }
+
+    /**
+     * 判断流式请求的错误是否可重试（连接池、连接断开和超时），超过截止时间不再重试
+     */
+    private static boolean isRetryableStreamError(Throwable error) {
+        if (Timeouts.isDeadlineExceeded(error)) {
+            return false;
+        }
+        return Timeouts.isTimeout(error) || messageContains(error,
+                "Acquire operation took longer",
+                "connection pool",
+                "Unable to execute HTTP request",
+                "ClosedChannelException",
+                "An error occurred on the connection",
+                "All streams will be closed",
+                "timeout");
+    }
+
+    /**
+     * 异常链中任一异常的消息包含指定片段
+     */
+    private static boolean messageContains(Throwable error, String... fragments) {
+        for (Throwable t = error; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            String message = t.getMessage();
+            if (message == null) {
+                continue;
+            }
+            for (String fragment : fragments) {
+                if (message.contains(fragment)) {
+                    return true;
+                }
+            }
         }
+        return false;
     }
     
     /**
      * 内部流式请求实现（不带重试）
      */
-    private CompletableFuture<Void> createChatCompletionStreamInternal(ChatCompletionRequest request,
+    private StreamHandle createChatCompletionStreamInternal(ChatCompletionRequest request, Admission admission,
                                            Consumer<ChatCompletionChunk> onChunk,
                                            Runnable onComplete,
-                                           Consumer<Throwable> onError) throws OpenAIException {
-        String bedrockRequest = null;
-        CompletableFuture<Void> streamCompletion = new CompletableFuture<>();
-        
+                                           Consumer<Throwable> onError,
+                                           AtomicInteger attemptGeneration) throws OpenAIException {
+        StreamState stream = new StreamState(request, admission, onComplete, onError);
         try {
-            // 验证和清理请求参数
-            BedrockRequestValidator.validateAndCleanRequest(request);
+            ChatCompletionRequest cleaned = cleanedCopy(request);
+            if (converseAdapter != null) {
+                startConverseStream(cleaned, stream, onChunk, attemptGeneration);
+            } else {
+                startInvokeModelStream(cleaned, stream, onChunk, attemptGeneration);
+            }
+        } catch (Exception e) {
+            stream.failStart(e);
+        }
+        return stream.handle;
+    }
 
-            // 使用配置的模型ID覆盖请求中的模型
-            String modelId = config.getModelId();
+    /**
+     * 通过InvokeModelWithResponseStream发起流式请求，由模型适配器解码各模型自己的事件格式
+     */
+    @SuppressWarnings("try")
+    private void startInvokeModelStream(ChatCompletionRequest request, StreamState stream,
+                                        Consumer<ChatCompletionChunk> onChunk,
+                                        AtomicInteger attemptGeneration) throws Exception {
+        // 使用配置的模型ID覆盖请求中的模型
+        final String modelId = config.getModelId();
 
-            // 转换请求格式（流式）
-            bedrockRequest = modelAdapter.convertStreamRequest(request, objectMapper);
+        // 转换请求格式（流式）
+        RequestSerializationEvent serializationEvent = new RequestSerializationEvent();
+        serializationEvent.begin();
+        try (Scope scope = stream.metrics.getSpan().makeCurrent()) {
+            stream.requestBody = convertRequestTraced(request, true, stream.admission);
+        }
+        byte[] bedrockRequest = stream.requestBody;
+        serializationEvent.complete(OpenAIException.Provider.BEDROCK, modelId,
+                SdkMetrics.ENDPOINT_INVOKE_MODEL_STREAM, bedrockRequest.length);
 
-            // 检查请求大小
-            if (bedrockRequest.length() > 100000) {
-                logger.warn("请求体过大: {} bytes，可能超出限制", bedrockRequest.length());
-            }
+        // 检查请求大小
+        if (bedrockRequest.length > 100000) {
+            logger.warn("请求体过大: {} bytes，可能超出限制", bedrockRequest.length);
+        }
 
-            logger.debug("发送Bedrock请求 - 模型: {}, 请求大小: {} bytes", modelId, bedrockRequest.length());
+        logger.debug("发送Bedrock请求 - 模型: {}, 请求大小: {} bytes", modelId, bedrockRequest.length);
 
-            // 调用Bedrock流式API
-            InvokeModelWithResponseStreamRequest invokeRequest = InvokeModelWithResponseStreamRequest.builder()
-                    .modelId(modelId)
-                    .body(SdkBytes.fromString(bedrockRequest, StandardCharsets.UTF_8))
-                    .contentType("application/json")
-                    .accept("application/json")
-                    .build();
+        // 调用Bedrock流式API
+        InvokeModelWithResponseStreamRequest invokeRequest = InvokeModelWithResponseStreamRequest.builder()
+                .modelId(modelId)
+                .body(SdkBytes.fromByteArrayUnsafe(bedrockRequest))
+                .contentType("application/json")
+                .accept("application/json")
+                .overrideConfiguration(o -> o.addMetricPublisher(metricPublisher))
+                .build();
 
-            // 使用原子布尔值跟踪完成状态，防止重复调用回调
-            final java.util.concurrent.atomic.AtomicBoolean isCompleted = new java.util.concurrent.atomic.AtomicBoolean(false);
-            final java.util.concurrent.atomic.AtomicBoolean hasError = new java.util.concurrent.atomic.AtomicBoolean(false);
-            
-            // 处理流式响应 - 使用Visitor模式确保资源清理
-            InvokeModelWithResponseStreamResponseHandler responseHandler = InvokeModelWithResponseStreamResponseHandler.builder()
-                    .subscriber(responseStream -> {
-                                // 处理流式响应
-                        if (responseStream instanceof PayloadPart) {
-                            PayloadPart payloadPart = (PayloadPart) responseStream;
-                            if (hasError.get()) {
-                                return; // 如果已经出错，忽略后续数据
-                            }
-                            
-                            String chunk = payloadPart.bytes().asUtf8String();
-                            try {
-                                // 转换并发送chunk
-                                List<ChatCompletionChunk> chunks = modelAdapter.convertStreamChunk(chunk, objectMapper);
-                                for (ChatCompletionChunk completionChunk : chunks) {
-                                    if (onChunk != null && !hasError.get()) {
-                                        onChunk.accept(completionChunk);
-                                    }
-                                }
-                            } catch (Exception e) {
-                                logger.error("解析流式响应失败: {}", e.getMessage());
-                                if (!hasError.getAndSet(true) && onError != null) {
-                                    onError.accept(new OpenAIException("解析流式响应失败: " + e.getMessage(), e));
-                                }
-                                streamCompletion.completeExceptionally(e);
-                            }
-                        } else {
-                            // 处理其他事件类型
-                            logger.debug("收到流事件: {}", responseStream.getClass().getSimpleName());
+        final java.util.concurrent.atomic.AtomicBoolean firstPayload = new java.util.concurrent.atomic.AtomicBoolean(true);
+        final BedrockStreamDecoder streamDecoder = modelAdapter.newStreamDecoder(modelId, objectMapper);
+        final java.util.concurrent.atomic.AtomicBoolean invocationMetricsApplied = new java.util.concurrent.atomic.AtomicBoolean(false);
+
+        // 处理流式响应 - 使用Visitor模式确保资源清理
+        InvokeModelWithResponseStreamResponseHandler responseHandler = InvokeModelWithResponseStreamResponseHandler.builder()
+                .onResponse(stream::onResponse)
+                .subscriber(responseStream -> {
+                            // 处理流式响应
+                    stream.onData();
+                    if (responseStream instanceof PayloadPart) {
+                        PayloadPart payloadPart = (PayloadPart) responseStream;
+                        if (firstPayload.getAndSet(false)) {
+                            stream.firstByteEvent.complete(OpenAIException.Provider.BEDROCK, modelId,
+                                    SdkMetrics.ENDPOINT_INVOKE_MODEL_STREAM, true);
                         }
-                    })
-                    .onComplete(() -> {
-                        logger.debug("流式响应处理完成");
-                        if (!isCompleted.getAndSet(true) && !hasError.get()) {
-                            if (onComplete != null) {
-                                try {
-                                    onComplete.run();
-                                } catch (Exception e) {
-                                    logger.error("完成回调执行失败", e);
-                                }
-                            }
-                            streamCompletion.complete(null);
+                        if (stream.hasError.get()) {
+                            return; // 如果已经出错，忽略后续数据
                         }
-                    })
-                    .onError(throwable -> {
-                        OpenAIException exception = ErrorLogger.logAndCreateException(logger,
-                                OpenAIException.Provider.BEDROCK, config.getModelId(), "流式请求失败", throwable);
-                        if (!hasError.getAndSet(true)) {
-                            if (onError != null) {
-                                try {
-                                    onError.accept(exception);
-                                } catch (Exception e) {
-                                    logger.error("错误回调执行失败", e);
-                                }
+
+                        // SDK不再使用该数组，直接引用避免复制
+                        byte[] payload = payloadPart.bytes().asByteArrayUnsafe();
+                        try {
+                            // 转换并发送chunk
+                            ChunkDecodeEvent decodeEvent = new ChunkDecodeEvent();
+                            decodeEvent.begin();
+                            List<ChatCompletionChunk> chunks = streamDecoder.decode(payload);
+                            decodeEvent.complete(OpenAIException.Provider.BEDROCK, modelId, payload.length, chunks.size());
+                            if (streamDecoder.getInvocationMetrics() != null && !invocationMetricsApplied.getAndSet(true)) {
+                                applyInvocationMetrics(stream.handle.getMetadata(), streamDecoder.getInvocationMetrics());
                             }
-                            streamCompletion.completeExceptionally(throwable);
+                            stream.emit(chunks, onChunk);
+                        } catch (Exception e) {
+                            stream.failDecode(e);
                         }
-                    })
+                    } else {
+                        // 处理其他事件类型
+                        logger.debug("收到流事件: {}", responseStream.getClass().getSimpleName());
+                    }
+                })
+                .onComplete(stream::finish)
+                .onError(stream::fail)
+                .build();
+
+        stream.start(attemptGeneration,
+                client -> client.invokeModelWithResponseStream(invokeRequest, responseHandler));
+    }
+
+    /**
+     * 通过ConverseStream发起流式请求，SDK已把事件解析为类型化对象，各模型系列共用一个解码器
+     */
+    @SuppressWarnings("try")
+    private void startConverseStream(ChatCompletionRequest request, StreamState stream,
+                                     Consumer<ChatCompletionChunk> onChunk,
+                                     AtomicInteger attemptGeneration) throws Exception {
+        final String modelId = config.getModelId();
+
+        RequestSerializationEvent serializationEvent = new RequestSerializationEvent();
+        serializationEvent.begin();
+        ConverseStreamRequest converseRequest;
+        try (Scope scope = stream.metrics.getSpan().makeCurrent()) {
+            converseRequest = convertTraced(() -> converseAdapter.toConverseStreamRequest(modelId, request,
+                            objectMapper, stream.admission))
+                    .toBuilder()
+                    .overrideConfiguration(o -> o.addMetricPublisher(metricPublisher))
                     .build();
+        }
+        serializationEvent.complete(OpenAIException.Provider.BEDROCK, modelId, SdkMetrics.ENDPOINT_CONVERSE_STREAM, 0);
+
+        logger.debug("发送Bedrock ConverseStream请求 - 模型: {}, 消息数: {}", modelId, converseRequest.messages().size());
+
+        final java.util.concurrent.atomic.AtomicBoolean firstEvent = new java.util.concurrent.atomic.AtomicBoolean(true);
+        final ConverseStreamDecoder streamDecoder = converseAdapter.newConverseStreamDecoder(modelId, objectMapper);
+
+        ConverseStreamResponseHandler responseHandler = ConverseStreamResponseHandler.builder()
+                .onResponse(stream::onResponse)
+                .subscriber(event -> {
+                    stream.onData();
+                    if (firstEvent.getAndSet(false)) {
+                        stream.firstByteEvent.complete(OpenAIException.Provider.BEDROCK, modelId,
+                                SdkMetrics.ENDPOINT_CONVERSE_STREAM, true);
+                    }
+                    if (stream.hasError.get()) {
+                        return; // 如果已经出错，忽略后续数据
+                    }
+                    try {
+                        ChunkDecodeEvent decodeEvent = new ChunkDecodeEvent();
+                        decodeEvent.begin();
+                        List<ChatCompletionChunk> chunks = streamDecoder.decode(event);
+                        decodeEvent.complete(OpenAIException.Provider.BEDROCK, modelId, 0, chunks.size());
+                        if (event instanceof ConverseStreamMetadataEvent) {
+                            applyConverseMetrics(stream.handle.getMetadata(), (ConverseStreamMetadataEvent) event);
+                        }
+                        stream.emit(chunks, onChunk);
+                    } catch (Exception e) {
+                        stream.failDecode(e);
+                    }
+                })
+                .onComplete(stream::finish)
+                .onError(stream::fail)
+                .build();
+
+        stream.start(attemptGeneration, client -> client.converseStream(converseRequest, responseHandler));
+    }
+
+    /**
+     * 一次流式尝试的状态和回调处理，InvokeModel和Converse两条路径共用
+     */
+    private final class StreamState {
+        private final StreamHandle handle = new StreamHandle();
+        private final StreamMetrics metrics;
+        private final long startNanos = System.nanoTime();
+        private final Runnable onComplete;
+        private final Consumer<Throwable> onError;
+        // 使用原子布尔值跟踪完成状态，防止重复调用回调
+        private final java.util.concurrent.atomic.AtomicBoolean isCompleted = new java.util.concurrent.atomic.AtomicBoolean(false);
+        private final java.util.concurrent.atomic.AtomicBoolean hasError = new java.util.concurrent.atomic.AtomicBoolean(false);
+        private final UpstreamWaitEvent upstreamEvent = new UpstreamWaitEvent();
+        private final FirstByteEvent firstByteEvent = new FirstByteEvent();
+        private byte[] requestBody;
+        private volatile long responseNanos;
+        private volatile StreamWatchdog watchdog;
+        private volatile CompletableFuture<Void> sdkCall;
+        private final Admission admission;
+
+        StreamState(ChatCompletionRequest request, Admission admission, Runnable onComplete,
+                    Consumer<Throwable> onError) {
+            this.admission = admission;
+            this.onComplete = onComplete;
+            this.onError = onError;
+            // 跟踪进行中的流，流结束（包括失败和超时）时释放
+            TrackedResource streamResource = leakDetector.track(ResourceType.STREAM, handle,
+                    "Bedrock流 " + config.getModelId());
+            handle.whenComplete((result, throwable) -> streamResource.close());
+            this.metrics = SdkMetrics.startStream(BedrockService.this.metrics, OpenAIException.Provider.BEDROCK,
+                    config.getModelId(), streamEndpoint(),
+                    Tracing.startRequestSpan(config, TraceAttributes.SPAN_CHAT_STREAM, config.getModelId()))
+                    .withLedger(config.getUsageLedger(), request.getUser())
+                    .withPromptCache(config.getPromptCacheLedger(), promptPrefix(request))
+                    .withConcurrencyLimiter(limiter, admission.getTenant());
+        }
+
+        void onResponse(BedrockRuntimeResponse response) {
+            responseNanos = System.nanoTime();
+            upstreamEvent.complete(OpenAIException.Provider.BEDROCK, config.getModelId(), streamEndpoint());
+            handle.setMetadata(responseMetadata(response, startNanos));
+            metrics.getSpan().addEvent(TraceAttributes.EVENT_RESPONSE_HEADERS);
+        }
+
+        /**
+         * 收到流事件，重置空闲计时
+         */
+        void onData() {
+            StreamWatchdog current = watchdog;
+            if (current != null) {
+                current.onData();
+            }
+        }
+
+        void emit(List<ChatCompletionChunk> chunks, Consumer<ChatCompletionChunk> onChunk) {
+            for (ChatCompletionChunk completionChunk : chunks) {
+                metrics.onChunk(completionChunk);
+                if (onChunk != null && !hasError.get()) {
+                    onChunk.accept(completionChunk);
+                }
+            }
+        }
+
+        void finish() {
+            logger.debug("流式响应处理完成");
+            metrics.finish(!hasError.get());
+            handle.recordLatency(startNanos);
+            if (!isCompleted.getAndSet(true) && !hasError.get()) {
+                if (onComplete != null) {
+                    try {
+                        onComplete.run();
+                    } catch (Exception e) {
+                        logger.error("完成回调执行失败", e);
+                    }
+                }
+                handle.complete(null);
+            }
+        }
+
+        void fail(Throwable throwable) {
+            OpenAIException exception = ErrorLogger.logAndCreateException(logger,
+                    OpenAIException.Provider.BEDROCK, config.getModelId(), "流式请求失败", throwable);
+            metrics.fail(throwable);
+            if (!hasError.getAndSet(true)) {
+                notifyError(exception);
+                handle.completeExceptionally(throwable);
+            }
+        }
+
+        /**
+         * 首字节、空闲超时或超过截止时间，以超时异常结束本次尝试
+         */
+        void timeout(OpenAIException exception) {
+            logger.warn("Bedrock流式请求超时: {}", exception.getMessage());
+            metrics.fail(exception);
+            if (!hasError.getAndSet(true)) {
+                notifyError(exception);
+                handle.completeExceptionally(exception);
+            }
+        }
+
+        void failDecode(Exception e) {
+            logger.error("解析流式响应失败: {}", e.getMessage());
+            metrics.fail(e);
+            if (!hasError.getAndSet(true)) {
+                notifyError(new OpenAIException("解析流式响应失败: " + e.getMessage(), e));
+            }
+            handle.completeExceptionally(e);
+        }
+
+        void failStart(Exception e) {
+            if (requestBody != null && logger.isDebugEnabled()) {
+                logger.debug("请求体: {}", new String(requestBody, StandardCharsets.UTF_8));
+            }
+            OpenAIException exception = ErrorLogger.logAndCreateException(logger,
+                    OpenAIException.Provider.BEDROCK, config.getModelId(), "流式请求失败", e);
+            metrics.fail(e);
+            notifyError(exception);
+            // 确保Future被标记为失败
+            handle.completeExceptionally(e);
+        }
+
+        private void notifyError(OpenAIException exception) {
+            if (onError != null) {
+                try {
+                    onError.accept(exception);
+                } catch (Exception callbackError) {
+                    logger.error("错误回调执行失败", callbackError);
+                }
+            }
+        }
+
+        /**
+         * 获取并发许可后发起流式调用，流结束时释放许可；被限制器拒绝时以429失败，超过截止时间的请求不再发出
+         * 流的延迟样本为收到响应头的时间
+         */
+        void start(AtomicInteger attemptGeneration, Function<BedrockRuntimeAsyncClient, CompletableFuture<Void>> call) {
+            CompletableFuture<ConcurrencyLimiter.Permit> permit = limiter.acquire(limitKey, admission,
+                    config.getRetryScheduler());
+            handle.setCancelAction(() -> permit.cancel(true));
+            permit.whenComplete((granted, throwable) -> {
+                if (throwable != null) {
+                    if (!permit.isCancelled()) {
+                        Throwable cause = unwrap(throwable);
+                        SdkMetrics.recordConcurrencyRejection(BedrockService.this.metrics,
+                                OpenAIException.Provider.BEDROCK, config.getModelId(), streamEndpoint(), cause);
+                        failStart(cause instanceof Exception ? (Exception) cause : new OpenAIException(
+                                "获取并发许可失败", cause));
+                    }
+                    return;
+                }
+                if (limiter.isEnabled()) {
+                    SdkMetrics.recordConcurrencyWait(BedrockService.this.metrics, OpenAIException.Provider.BEDROCK,
+                            config.getModelId(), streamEndpoint(), granted);
+                }
+                long grantedNanos = System.nanoTime();
+                handle.whenComplete((result, error) -> {
+                    if (error == null && responseNanos != 0) {
+                        granted.success(responseNanos - grantedNanos);
+                    } else if (error != null && isThrottled(unwrap(error))) {
+                        granted.throttled();
+                    } else {
+                        granted.ignore();
+                    }
+                });
+                if (handle.isDone()) {
+                    return;
+                }
+                try {
+                    startNow(attemptGeneration, call);
+                } catch (RuntimeException e) {
+                    failStart(e);
+                }
+            });
+        }
+
+        /**
+         * 租用客户端执行异步调用，并把SDK的Future和超时看门狗挂到句柄上
+         */
+        private void startNow(AtomicInteger attemptGeneration,
+                              Function<BedrockRuntimeAsyncClient, CompletableFuture<Void>> call) {
+            upstreamEvent.begin();
+            firstByteEvent.begin();
+            // 流结束（包括失败、取消和超时）时归还客户端，旧一代客户端在所有流归还后才关闭
+            BedrockClientGenerations.Lease lease = clients.acquire();
+            attemptGeneration.set(lease.generation());
+            handle.whenComplete((result, throwable) -> lease.close());
+            // 首字节、空闲超时和截止时间由看门狗检查，超时后取消SDK调用，连接随之释放
+            // 看门狗在发起调用前启动，避免漏掉调用返回前到达的事件
+            StreamWatchdog current = StreamWatchdog.start(admission, config.getRetryScheduler(),
+                    "Bedrock " + config.getModelId(), exception -> {
+                        timeout(exception);
+                        CompletableFuture<Void> inFlight = sdkCall;
+                        if (inFlight != null) {
+                            inFlight.cancel(true);
+                        }
+                    });
+            watchdog = current;
+            handle.whenComplete((result, throwable) -> current.stop());
+            CompletableFuture<Void> sdkFuture = call.apply(lease.client());
+            sdkCall = sdkFuture;
+            handle.setCancelAction(() -> sdkFuture.cancel(true));
+            if (current.isStopped() && handle.isCompletedExceptionally()) {
+                // 调用返回前已超时
+                sdkFuture.cancel(true);
+            }
 
-            // 执行异步调用
-            CompletableFuture<Void> sdkFuture = asyncClient.invokeModelWithResponseStream(invokeRequest, responseHandler);
-            
             // 确保SDK的Future完成时，我们的Future也完成（用于资源清理）
             sdkFuture.whenComplete((result, throwable) -> {
                 if (throwable != null) {
                     if (!hasError.getAndSet(true)) {
+                        metrics.fail(throwable);
                         ErrorLogger.logAndCreateException(logger, OpenAIException.Provider.BEDROCK,
                                 config.getModelId(), "SDK流式请求失败", throwable);
-                        streamCompletion.completeExceptionally(throwable);
+                        handle.completeExceptionally(throwable);
                     }
                 } else if (!isCompleted.get()) {
                     // 如果流没有正常完成，强制完成
-                    streamCompletion.complete(null);
+                    handle.complete(null);
                 }
             });
-            
-            // 添加超时保护，防止连接永远不释放
-            streamCompletion.orTimeout(120, TimeUnit.SECONDS)
-                .exceptionally(throwable -> {
-                    if (throwable instanceof java.util.concurrent.TimeoutException) {
-                        OpenAIException exception = ErrorLogger.logAndCreateException(logger,
-                                OpenAIException.Provider.BEDROCK, config.getModelId(), "流式请求超时（120秒）", throwable);
-                        if (!hasError.getAndSet(true) && onError != null) {
-                            onError.accept(exception);
-                        }
-                    }
-                    return null;
-                });
-            
-            return streamCompletion;
+        }
+    }
+
+    /**
+     * 从Bedrock响应中提取请求ID和响应头中的调用指标
+     */
+    private ResponseMetadata responseMetadata(BedrockRuntimeResponse response, long startNanos) {
+        SdkHttpResponse httpResponse = response.sdkHttpResponse();
+        ResponseMetadata metadata = ResponseMetadata.fromHeaders(OpenAIException.Provider.BEDROCK,
+                httpResponse != null ? httpResponse.statusCode() : 0,
+                httpResponse != null ? httpResponse.headers() : null,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        String requestId = response.responseMetadata().requestId();
+        if (requestId != null && !"UNKNOWN".equals(requestId)) {
+            metadata.setRequestId(requestId);
+        }
+        return metadata;
+    }
 
+    /**
+     * 解析流最后一个数据块中的 amazon-bedrock-invocationMetrics（服务端统计的token数和耗时）
+     */
+    private void applyInvocationMetrics(ResponseMetadata metadata, JsonNode invocationMetrics) {
+        if (metadata == null) {
+            return;
+        }
+        try {
+            if (invocationMetrics.has("inputTokenCount")) {
+                metadata.setInputTokenCount(invocationMetrics.get("inputTokenCount").asInt());
+            }
+            if (invocationMetrics.has("outputTokenCount")) {
+                metadata.setOutputTokenCount(invocationMetrics.get("outputTokenCount").asInt());
+            }
+            if (invocationMetrics.has("invocationLatency")) {
+                metadata.setProcessingMs(invocationMetrics.get("invocationLatency").asLong());
+            }
+            if (invocationMetrics.has("firstByteLatency")) {
+                metadata.setFirstByteLatencyMs(invocationMetrics.get("firstByteLatency").asLong());
+            }
         } catch (Exception e) {
-            if (bedrockRequest != null) {
-                logger.debug("请求体: {}", bedrockRequest);
+            logger.debug("解析Bedrock调用指标失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 解析ConverseStream最后的metadata事件中的用量和服务端耗时
+     */
+    private void applyConverseMetrics(ResponseMetadata metadata, ConverseStreamMetadataEvent event) {
+        if (metadata == null) {
+            return;
+        }
+        if (event.usage() != null) {
+            if (event.usage().inputTokens() != null) {
+                metadata.setInputTokenCount(event.usage().inputTokens());
             }
-            OpenAIException exception = ErrorLogger.logAndCreateException(logger,
-                    OpenAIException.Provider.BEDROCK, config.getModelId(), "流式请求失败", e);
-            if (onError != null) {
-                try {
-                    onError.accept(exception);
-                } catch (Exception callbackError) {
-                    logger.error("错误回调执行失败", callbackError);
-                }
+            if (event.usage().outputTokens() != null) {
+                metadata.setOutputTokenCount(event.usage().outputTokens());
             }
-            // 确保Future被标记为失败
-            streamCompletion.completeExceptionally(e);
-            return streamCompletion;
+        }
+        if (event.metrics() != null && event.metrics().latencyMs() != null) {
+            metadata.setProcessingMs(event.metrics().latencyMs());
+        }
+    }
+
+    /**
+     * 流式请求的指标端点
+     */
+    private String streamEndpoint() {
+        return converseAdapter != null ? SdkMetrics.ENDPOINT_CONVERSE_STREAM : SdkMetrics.ENDPOINT_INVOKE_MODEL_STREAM;
+    }
+
+    /**
+     * 在子Span中转换请求，图片下载等内部阶段会挂在该Span下
+     * 返回的字节数组由适配器新建，直接交给SdkBytes而不再复制
+     */
+    private byte[] convertRequestTraced(ChatCompletionRequest request, boolean stream, Admission admission)
+            throws Exception {
+        return convertTraced(() -> modelAdapter.convertRequestBytes(request, objectMapper, stream, admission));
+    }
+
+    /**
+     * 在子Span中执行请求转换
+     */
+    @SuppressWarnings("try")
+    private <T> T convertTraced(Callable<T> conversion) throws Exception {
+        Span span = Tracing.startChild(TraceAttributes.SPAN_CONVERT_REQUEST);
+        try (Scope scope = span.makeCurrent()) {
+            return conversion.call();
+        } catch (Exception e) {
+            span.recordException(e);
+            throw e;
+        } finally {
+            span.end();
         }
     }
 
@@ -440,47 +1395,21 @@ public class BedrockService implements AutoCloseable {
      */
     @Override
     public void close() {
-        synchronized (clientLock) {
-            try {
-                logger.debug("关闭 BedrockService，释放资源...");
-            
-            // 关闭同步客户端
-            if (client != null) {
-                try {
-                    client.close();
-                    logger.debug("同步客户端已关闭");
-                } catch (Exception e) {
-                    logger.warn("关闭同步客户端时出现警告（可能已经关闭）: {}", e.getMessage());
-                }
-            }
-            
-            // 关闭异步客户端（可能需要更长时间）
-            if (asyncClient != null) {
-                try {
-                    // 使用异步方式关闭，避免阻塞
-                    java.util.concurrent.CompletableFuture<Void> closeFuture = 
-                        java.util.concurrent.CompletableFuture.runAsync(() -> {
-                            try {
-                                asyncClient.close();
-                            } catch (Exception e) {
-                                logger.warn("关闭异步客户端时出现警告: {}", e.getMessage());
-                            }
-                        });
-                    
-                    // 等待最多5秒
-                    closeFuture.get(5, java.util.concurrent.TimeUnit.SECONDS);
-                    logger.debug("异步客户端已关闭");
-                } catch (java.util.concurrent.TimeoutException e) {
-                    logger.warn("关闭异步客户端超时（5秒），可能有未完成的请求");
-                } catch (Exception e) {
-                    logger.warn("关闭异步客户端时出现警告: {}", e.getMessage());
-                }
+        try {
+            logger.debug("关闭 BedrockService，释放资源...");
+
+            // 释放共享客户端，最后一个使用者释放时关闭所有代的异步客户端（可能需要更长时间）
+            clientHandle.close();
+            metricPublisher.close();
+            if (limitGaugeKey != null) {
+                // 同一区域和模型的其他服务可能共用这个仪表键，只移除自己注册的
+                metrics.removeGauge(limitGaugeKey, limitGauge);
+                metrics.removeGauge(limitGaugeKey.withName(SdkMetrics.CONCURRENCY_IN_FLIGHT), inFlightGauge);
             }
-            
+
             logger.debug("BedrockService 资源释放完成");
-            } catch (Exception e) {
-                logger.error("关闭 BedrockService 时发生错误", e);
-            }
+        } catch (Exception e) {
+            logger.error("关闭 BedrockService 时发生错误", e);
         }
     }
 }
\ No newline at end of file
@@ -4,13 +4,26 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.twwch.openai.sdk.GeminiConfig;
+import io.github.twwch.openai.sdk.exception.LogThrottler;
 import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.exception.PayloadSampler;
+import io.github.twwch.openai.sdk.http.HttpResult;
 import io.github.twwch.openai.sdk.http.OpenAIHttpClient;
+import io.github.twwch.openai.sdk.jfr.ChunkDecodeEvent;
+import io.github.twwch.openai.sdk.jfr.ResponseConversionEvent;
+import io.github.twwch.openai.sdk.limit.Admission;
+import io.github.twwch.openai.sdk.metrics.SdkMetrics;
+import io.github.twwch.openai.sdk.metrics.StreamMetrics;
 import io.github.twwch.openai.sdk.model.ModelInfo;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
 import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.tracing.Scope;
+import io.github.twwch.openai.sdk.tracing.Span;
+import io.github.twwch.openai.sdk.tracing.SpanStatus;
+import io.github.twwch.openai.sdk.tracing.TraceAttributes;
+import io.github.twwch.openai.sdk.tracing.Tracing;
 import io.github.twwch.openai.sdk.util.ImageUtils;
 import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSourceListener;
@@ -22,13 +35,17 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 
 /**
  * Google Gemini服务类
  * 实现OpenAI兼容接口，用于与Google Gemini API交互
  */
-public class GeminiService {
+public class GeminiService implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(GeminiService.class);
     
     private final GeminiConfig config;
@@ -89,12 +106,84 @@ public class GeminiService {
      * @throws OpenAIException 如果请求失败
      */
     public ChatCompletionResponse createChatCompletion(ChatCompletionRequest request) throws OpenAIException {
-        // 转换请求以处理图片
-        ChatCompletionRequest processedRequest = processImagesInRequest(request);
-        
-        String response = httpClient.post("/chat/completions", processedRequest);
+        // 与异步调用共用预算检查：限流等待挂到重试调度器上，调用线程只等待结果
+        CompletableFuture<ChatCompletionResponse> future = createChatCompletionAsync(request);
         try {
-            return objectMapper.readValue(response, ChatCompletionResponse.class);
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new OpenAIException("请求被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new OpenAIException("请求失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 创建聊天完成（异步）
+     * 图片处理在调用线程完成，HTTP请求在OkHttp的调度线程上完成；取消返回的Future会取消底层请求
+     *
+     * @param request 聊天完成请求
+     * @return 完成时包含聊天响应，失败时以 {@link OpenAIException} 异常完成
+     */
+    @SuppressWarnings("try")
+    public CompletableFuture<ChatCompletionResponse> createChatCompletionAsync(ChatCompletionRequest request) {
+        Span span = Tracing.startRequestSpan(config, TraceAttributes.SPAN_CHAT, request.getModel());
+        CompletableFuture<HttpResult> httpFuture;
+        try (Scope scope = span.makeCurrent()) {
+            long budgetDelay = config.getUsageLedger().checkBudgetDelay(request.getUser());
+            // 截止时间从调用开始计算，覆盖预算限流等待
+            Admission admission = Admission.of(request, config.getTimeouts());
+            // 预算限流的等待挂到重试调度器上，不占用调用线程
+            httpFuture = config.getRetryScheduler().defer(() -> {
+                try (Scope delayed = span.makeCurrent()) {
+                    return httpClient.postForResultAsync("/chat/completions",
+                            processImagesInRequest(request, admission), admission);
+                }
+            }, budgetDelay);
+        } catch (RuntimeException e) {
+            span.recordException(e);
+            span.end();
+            CompletableFuture<ChatCompletionResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        CompletableFuture<ChatCompletionResponse> future = httpFuture.thenApply(result -> toCompletion(result, request));
+        future.whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                Tracing.setUsage(span, response.getUsage());
+                span.setStatus(SpanStatus.OK);
+            } else if (throwable instanceof CancellationException) {
+                httpFuture.cancel(true);
+            } else {
+                span.recordException(throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause() : throwable);
+            }
+            span.end();
+        });
+        return future;
+    }
+
+    /**
+     * 解析聊天完成响应并记录用量
+     */
+    private ChatCompletionResponse toCompletion(HttpResult httpResult, ChatCompletionRequest request) throws OpenAIException {
+        String response = httpResult.getBody();
+        try {
+            ResponseConversionEvent conversionEvent = new ResponseConversionEvent();
+            conversionEvent.begin();
+            ChatCompletionResponse result = objectMapper.readValue(response, ChatCompletionResponse.class);
+            conversionEvent.complete(OpenAIException.Provider.GEMINI, request.getModel(), response.length());
+            result.setResponseMetadata(httpResult.getMetadata());
+            SdkMetrics.recordUsage(config.getMetricsRegistry(), OpenAIException.Provider.GEMINI, request.getModel(),
+                    SdkMetrics.ENDPOINT_CHAT_COMPLETIONS, result.getUsage());
+            config.getUsageLedger().record(request.getUser(), OpenAIException.Provider.GEMINI, request.getModel(),
+                    result.getUsage());
+            return result;
         } catch (JsonProcessingException e) {
             logger.error("解析Gemini聊天完成响应失败 - 模型: {}, 响应: {}", request.getModel(), response, e);
             throw new OpenAIException("无法解析Gemini聊天完成响应", e);
@@ -108,24 +197,71 @@ public class GeminiService {
      * @param onComplete 完成时的回调
      * @param onError 错误时的回调
      * @throws OpenAIException 如果请求失败
+     * @see #streamChatCompletion(ChatCompletionRequest, Consumer, Runnable, Consumer)
      */
     public void createChatCompletionStream(ChatCompletionRequest request,
                                           Consumer<ChatCompletionChunk> onChunk,
                                           Runnable onComplete,
                                           Consumer<Throwable> onError) throws OpenAIException {
+        streamChatCompletion(request, onChunk, onComplete, onError);
+    }
+
+    /**
+     * 创建聊天完成（流式），返回流式请求句柄
+     * @param request 聊天完成请求
+     * @param onChunk 处理每个数据块的回调
+     * @param onComplete 完成时的回调
+     * @param onError 错误时的回调
+     * @return 流式请求句柄，可获取响应元数据或等待流结束
+     * @throws OpenAIException 如果请求失败
+     */
+    public StreamHandle streamChatCompletion(ChatCompletionRequest request,
+                                             Consumer<ChatCompletionChunk> onChunk,
+                                             Runnable onComplete,
+                                             Consumer<Throwable> onError) throws OpenAIException {
+        long budgetDelay = config.getUsageLedger().checkBudgetDelay(request.getUser());
+        Admission admission = Admission.of(request, config.getTimeouts());
+        // Gemini流式请求不重试（只尝试一次），预算限流的等待挂到重试调度器上，不占用调用线程
+        return new StreamRetry(config.getRetryScheduler(), 1, admission, error -> false, attempt -> 0,
+                (attempt, delay, error) -> { },
+                (chunkCallback, completeCallback, errorCallback) -> startStream(request, admission,
+                        chunkCallback, completeCallback, errorCallback),
+                onChunk, onComplete, onError).start(budgetDelay);
+    }
+
+    /**
+     * 发起一次流式请求（不带重试）
+     */
+    @SuppressWarnings("try")
+    private StreamHandle startStream(ChatCompletionRequest request, Admission admission,
+                                     Consumer<ChatCompletionChunk> onChunk,
+                                     Runnable onComplete,
+                                     Consumer<Throwable> onError) throws OpenAIException {
         // 设置流式标志
         request.setStream(true);
         
+        StreamMetrics streamMetrics = SdkMetrics.startStream(config.getMetricsRegistry(),
+                OpenAIException.Provider.GEMINI, request.getModel(), SdkMetrics.ENDPOINT_CHAT_COMPLETIONS,
+                Tracing.startRequestSpan(config, TraceAttributes.SPAN_CHAT_STREAM, request.getModel()))
+                .withLedger(config.getUsageLedger(), request.getUser());
+
         // 转换请求以处理图片
-        ChatCompletionRequest processedRequest = processImagesInRequest(request);
+        ChatCompletionRequest processedRequest;
+        try (Scope scope = streamMetrics.getSpan().makeCurrent()) {
+            processedRequest = processImagesInRequest(request, admission);
+        }
         
+        StreamHandle handle = new StreamHandle();
+        long startNanos = System.nanoTime();
         EventSource eventSource = httpClient.postStream("/chat/completions", processedRequest, new EventSourceListener() {
             private volatile boolean isDone = false;
             
             @Override
             public void onOpen(EventSource eventSource, okhttp3.Response response) {
+                handle.setMetadata(httpClient.responseMetadata(response, startNanos));
                 if (!response.isSuccessful()) {
                     isDone = true;
+                    streamMetrics.finish(false);
                     eventSource.cancel();
                     if (onError != null) {
                         String errorMessage = "Gemini流式请求失败 (状态码: " + response.code() + ")";
@@ -133,23 +269,23 @@ public class GeminiService {
                             errorMessage += " - " + response.message();
                         }
                         
-                        logger.error("Gemini API 流式请求错误 - 状态码: {}, URL: {}", 
-                            response.code(), response.request().url());
-                        
+                        String body = null;
                         try {
                             if (response.body() != null) {
-                                String body = response.body().string();
+                                body = response.body().string();
                                 if (!body.isEmpty()) {
-                                    logger.error("错误响应: {}", body);
                                     errorMessage += " - " + body;
                                 }
                             }
                         } catch (IOException e) {
                             // 忽略读取错误
                         }
+                        logStreamError("Gemini API 流式请求错误", request, response, body, errorMessage, null);
                         
                         onError.accept(new OpenAIException(errorMessage));
                     }
+                    handle.completeExceptionally(new OpenAIException(
+                            "Gemini流式请求失败 (状态码: " + response.code() + ")", response.code(), null, null));
                 }
             }
             
@@ -157,25 +293,34 @@ public class GeminiService {
             public void onEvent(EventSource eventSource, String id, String type, String data) {
                 if ("[DONE]".equals(data)) {
                     isDone = true;
+                    streamMetrics.finish(true);
                     eventSource.cancel();
+                    handle.recordLatency(startNanos);
                     if (onComplete != null) {
                         onComplete.run();
                     }
+                    handle.complete(null);
                     return;
                 }
                 
                 try {
+                    ChunkDecodeEvent decodeEvent = new ChunkDecodeEvent();
+                    decodeEvent.begin();
                     ChatCompletionChunk chunk = objectMapper.readValue(data, ChatCompletionChunk.class);
+                    decodeEvent.complete(OpenAIException.Provider.GEMINI, request.getModel(), data.length(), 1);
+                    streamMetrics.onChunk(chunk);
                     if (onChunk != null) {
                         onChunk.accept(chunk);
                     }
                 } catch (JsonProcessingException e) {
                     isDone = true;
+                    streamMetrics.finish(false);
                     eventSource.cancel();
                     logger.error("解析Gemini流式响应失败: {}", data, e);
                     if (onError != null) {
                         onError.accept(new OpenAIException("无法解析Gemini流式响应: " + data, e));
                     }
+                    handle.completeExceptionally(e);
                 }
             }
             
@@ -193,6 +338,11 @@ public class GeminiService {
                             isIgnorableError = true;
                         }
                     }
+                    if (isIgnorableError) {
+                        streamMetrics.finish(true);
+                    } else {
+                        streamMetrics.fail(t);
+                    }
                     
                     if (!isIgnorableError && onError != null) {
                         String errorMessage = "Gemini流式请求失败";
@@ -202,33 +352,44 @@ public class GeminiService {
                                 errorMessage += " - " + response.message();
                             }
                             
-                            logger.error("Gemini API 流式请求失败 - 状态码: {}, URL: {}", 
-                                response.code(), response.request().url(), t);
+                            logStreamError("Gemini API 流式请求失败", request, response, null, errorMessage, t);
                         }
                         if (t != null && t.getMessage() != null) {
                             errorMessage += ": " + t.getMessage();
                         }
                         onError.accept(new OpenAIException(errorMessage, t));
                     }
+                    if (isIgnorableError) {
+                        handle.recordLatency(startNanos);
+                        handle.complete(null);
+                    } else {
+                        handle.completeExceptionally(t != null ? t : new OpenAIException("Gemini流式请求失败"));
+                    }
                 }
                 eventSource.cancel();
             }
             
             @Override
             public void onClosed(EventSource eventSource) {
+                streamMetrics.finish(true);
+                handle.recordLatency(startNanos);
                 if (!isDone && onComplete != null) {
                     onComplete.run();
                 }
+                handle.complete(null);
             }
-        });
+        }, streamMetrics.getSpan(), admission);
+        handle.setCancelAction(eventSource::cancel);
+        return handle;
     }
     
     /**
      * 处理请求中的图片，将URL转换为base64编码
      * @param request 原始请求
+     * @param admission 调用的截止时间，图片下载不超过截止时间
      * @return 处理后的请求
      */
-    private ChatCompletionRequest processImagesInRequest(ChatCompletionRequest request) {
+    private ChatCompletionRequest processImagesInRequest(ChatCompletionRequest request, Admission admission) {
         try {
             // 深拷贝请求对象
             String requestJson = objectMapper.writeValueAsString(request);
@@ -260,7 +421,8 @@ public class GeminiService {
             // 并发批量下载所有图片
             if (!urlsToDownload.isEmpty()) {
                 logger.info("批量下载 {} 张图片用于Gemini API", urlsToDownload.size());
-                Map<String, String> downloadedImages = ImageUtils.downloadAndConvertBatch(urlsToDownload);
+                Map<String, String> downloadedImages = ImageUtils.downloadAndConvertBatch(urlsToDownload,
+                        admission.getDeadlineMillis());
                 
                 // 更新所有图片URL为base64编码
                 for (Map.Entry<String, String> entry : downloadedImages.entrySet()) {
@@ -285,4 +447,37 @@ public class GeminiService {
             return request;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 记录流式请求的HTTP错误：日志按状态码去重限流，请求体仅在被采样时才序列化并保存到 {@link PayloadSampler}
+     */
+    private void logStreamError(String title, ChatCompletionRequest request, okhttp3.Response response,
+                                String responseBody, String errorMessage, Throwable t) {
+        long suppressed = LogThrottler.getDefault().tryAcquire("stream|" + OpenAIException.Provider.GEMINI + "|"
+                + response.code() + "|" + response.request().url().encodedPath());
+        if (suppressed >= 0) {
+            logger.error("{} - 状态码: {}, URL: {}, 错误响应: {}{}", title, response.code(), response.request().url(),
+                    responseBody, LogThrottler.suppressedSuffix(suppressed), t);
+        }
+        PayloadSampler.getDefault().record(OpenAIException.Provider.GEMINI, request.getModel(), response.code(),
+                errorMessage, () -> {
+                    try {
+                        return objectMapper.writeValueAsString(request);
+                    } catch (JsonProcessingException e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }, responseBody);
+    }
+
+    /**
+     * 关闭服务并释放HTTP客户端资源
+     */
+    @Override
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (Exception e) {
+            logger.error("关闭 GeminiService 时发生错误", e);
+        }
+    }
+}
@@ -7,12 +7,27 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.twwch.openai.sdk.AzureOpenAIConfig;
 import io.github.twwch.openai.sdk.BedrockConfig;
 import io.github.twwch.openai.sdk.OpenAIConfig;
+import io.github.twwch.openai.sdk.exception.LogThrottler;
 import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.exception.PayloadSampler;
+import io.github.twwch.openai.sdk.http.HttpResult;
 import io.github.twwch.openai.sdk.http.OpenAIHttpClient;
+import io.github.twwch.openai.sdk.jfr.ChunkDecodeEvent;
+import io.github.twwch.openai.sdk.jfr.ResponseConversionEvent;
+import io.github.twwch.openai.sdk.limit.Admission;
+import io.github.twwch.openai.sdk.limit.RequestPriority;
+import io.github.twwch.openai.sdk.limit.Timeouts;
+import io.github.twwch.openai.sdk.metrics.SdkMetrics;
+import io.github.twwch.openai.sdk.metrics.StreamMetrics;
 import io.github.twwch.openai.sdk.model.ModelInfo;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.tracing.Scope;
+import io.github.twwch.openai.sdk.tracing.Span;
+import io.github.twwch.openai.sdk.tracing.SpanStatus;
+import io.github.twwch.openai.sdk.tracing.TraceAttributes;
+import io.github.twwch.openai.sdk.tracing.Tracing;
 import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSourceListener;
 import org.slf4j.Logger;
@@ -21,8 +36,14 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -37,6 +58,13 @@ public class OpenAIService implements AutoCloseable {
     private final OpenAIConfig config;
     private final BedrockService bedrockService;
 
+    /** 最多尝试次数（包括第一次） */
+    private static final int MAX_RETRIES = 3;
+    /** 初始重试延迟1秒，之后每次翻倍 */
+    private static final long INITIAL_RETRY_DELAY_MS = 1000;
+    /** 重试延迟上限 */
+    private static final long MAX_RETRY_DELAY_MS = 10000;
+
     public OpenAIService(OpenAIConfig config) {
         this.config = config;
         this.objectMapper = new ObjectMapper();
@@ -116,82 +144,304 @@ public class OpenAIService implements AutoCloseable {
 
     /**
      * 创建聊天完成
+     * 同步调用是异步调用的薄封装，重试的退避等待在重试调度器上进行
      *
      * @param request 聊天完成请求
      * @return 聊天完成响应
      * @throws OpenAIException 如果请求失败
      */
     public ChatCompletionResponse createChatCompletion(ChatCompletionRequest request) throws OpenAIException {
-        // 重试配置
-        int maxRetries = 3;
-        int retryCount = 0;
-        long retryDelay = 1000; // 初始重试延迟1秒
-        
-        while (retryCount < maxRetries) {
-            try {
-                // 如果是Bedrock，使用Bedrock服务
-                if (config.isBedrock()) {
-                    return bedrockService.createChatCompletion(request);
+        CompletableFuture<ChatCompletionResponse> future = createChatCompletionAsync(request);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new OpenAIException("请求被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new OpenAIException("请求失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 创建聊天完成（异步）
+     * 请求在HTTP客户端（Bedrock为SDK的异步客户端）的线程上完成，不占用调用线程；
+     * 遇到可重试错误时下一次尝试挂到 {@link OpenAIConfig#getRetryScheduler()} 上，退避期间同样不占用线程。
+     * 取消返回的Future会取消进行中的请求和尚未执行的重试。
+     *
+     * @param request 聊天完成请求
+     * @return 完成时包含聊天响应，失败时以 {@link OpenAIException} 异常完成
+     */
+    @SuppressWarnings("try")
+    public CompletableFuture<ChatCompletionResponse> createChatCompletionAsync(ChatCompletionRequest request) {
+        Span span = Tracing.startRequestSpan(config, TraceAttributes.SPAN_CHAT, spanModel(request));
+        CompletableFuture<ChatCompletionResponse> result = new CompletableFuture<>();
+        CompletableFuture<ChatCompletionResponse> attempts = new CompletableFuture<>();
+        // Span在结果对调用方可见之前结束
+        attempts.whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                Tracing.setUsage(span, response.getUsage());
+                span.setStatus(SpanStatus.OK);
+                span.end();
+                result.complete(response);
+            } else {
+                Throwable cause = unwrap(throwable);
+                if (!(cause instanceof CancellationException)) {
+                    span.recordException(cause);
                 }
-                
-                // 如果是Azure OpenAI，并且没有设置模型，则使用部署ID作为模型
-                if (config.isAzure() && (request.getModel() == null || request.getModel().isEmpty())) {
-                    AzureOpenAIConfig azureConfig = (AzureOpenAIConfig) config;
-                    request.setModel(azureConfig.getDeploymentId());
+                span.end();
+                result.completeExceptionally(cause);
+            }
+        });
+        result.whenComplete((response, throwable) -> {
+            if (result.isCancelled()) {
+                attempts.cancel(true);
+            }
+        });
+        long budgetDelay;
+        try (Scope scope = span.makeCurrent()) {
+            budgetDelay = config.getUsageLedger().checkBudgetDelay(request.getUser());
+        } catch (RuntimeException e) {
+            attempts.completeExceptionally(e);
+            return result;
+        }
+        // 截止时间从调用开始计算，覆盖预算限流等待和所有重试
+        Admission admission = Admission.of(request, config.getTimeouts());
+        if (budgetDelay <= 0) {
+            attempt(request, admission, span, attempts, 1, INITIAL_RETRY_DELAY_MS);
+            return result;
+        }
+        // 预算限流的等待挂到重试调度器上，不占用调用线程
+        try {
+            ScheduledFuture<?> first = config.getRetryScheduler().schedule(
+                    () -> attempt(request, admission, span, attempts, 1, INITIAL_RETRY_DELAY_MS), budgetDelay);
+            attempts.whenComplete((ignored, t) -> {
+                if (attempts.isCancelled()) {
+                    first.cancel(false);
                 }
+            });
+        } catch (RuntimeException e) {
+            attempts.completeExceptionally(e);
+        }
+        return result;
+    }
 
-                // 清除Bedrock专用字段，避免Azure/OpenAI不认识这些字段而返回400错误
-                request.setBedrockEnableSystemCache(null);
+    /**
+     * 发起一次尝试，失败且可重试时在重试调度器上安排下一次尝试
+     */
+    @SuppressWarnings("try")
+    private void attempt(ChatCompletionRequest request, Admission admission, Span span,
+                         CompletableFuture<ChatCompletionResponse> attempts, int attempt, long retryDelay) {
+        if (attempts.isDone()) {
+            return;
+        }
+        CompletableFuture<ChatCompletionResponse> future;
+        try (Scope scope = span.makeCurrent()) {
+            future = sendAsync(request, admission);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        CompletableFuture<ChatCompletionResponse> inFlight = future;
+        attempts.whenComplete((response, throwable) -> {
+            if (attempts.isCancelled()) {
+                inFlight.cancel(true);
+            }
+        });
+        inFlight.whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                attempts.complete(response);
+                return;
+            }
+            Throwable cause = unwrap(throwable);
+            if (attempts.isDone()) {
+                return;
+            }
+            // 判断是否是可重试的错误
+            if (!isRetryableError(cause)) {
+                attempts.completeExceptionally(cause);
+                return;
+            }
+            if (admission.remainingMillis() <= retryDelay) {
+                // 重试时已超过截止时间
+                attempts.completeExceptionally(cause);
+                return;
+            }
+            if (attempt >= MAX_RETRIES) {
+                logger.error("达到最大重试次数 ({} 次)，放弃重试", MAX_RETRIES);
+                attempts.completeExceptionally(new OpenAIException(
+                        "请求失败，已重试 " + MAX_RETRIES + " 次: " + cause.getMessage(), cause));
+                return;
+            }
 
-                String response = httpClient.post("/chat/completions", request);
-                try {
-                    return objectMapper.readValue(response, ChatCompletionResponse.class);
-                } catch (JsonProcessingException e) {
-                    logger.error("解析聊天完成响应失败 - 模型: {}, 响应: {}", request.getModel(), response, e);
-                    throw new OpenAIException("无法解析聊天完成响应", e);
-                }
-                
-            } catch (Exception e) {
-                // 判断是否是可重试的错误
-                if (isRetryableError(e)) {
-                    retryCount++;
-                    
-                    if (retryCount >= maxRetries) {
-                        logger.error("达到最大重试次数 ({} 次)，放弃重试", maxRetries);
-                        throw new OpenAIException("请求失败，已重试 " + maxRetries + " 次: " + e.getMessage(), e);
-                    }
-                    
-                    logger.warn("遇到可重试错误: {}，将在 {} 毫秒后进行第 {} 次重试", 
-                               e.getMessage(), retryDelay, retryCount + 1);
-                    
-                    try {
-                        Thread.sleep(retryDelay);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new OpenAIException("重试被中断", ie);
+            logger.warn("遇到可重试错误: {}，将在 {} 毫秒后进行第 {} 次重试",
+                    cause.getMessage(), retryDelay, attempt + 1);
+            SdkMetrics.recordRetry(config.getMetricsRegistry(), SdkMetrics.providerOf(config),
+                    request.getModel(), metricsEndpoint(false));
+            span.addEvent(TraceAttributes.EVENT_RETRY,
+                    Collections.singletonMap(TraceAttributes.RETRY_ATTEMPT, attempt));
+            try {
+                // 指数退避，下次重试延迟翻倍
+                ScheduledFuture<?> retry = config.getRetryScheduler().schedule(() -> attempt(request, admission, span,
+                        attempts, attempt + 1, Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS)), retryDelay);
+                attempts.whenComplete((ignored, t) -> {
+                    if (attempts.isCancelled()) {
+                        retry.cancel(false);
                     }
-                    
-                    // 指数退避，下次重试延迟翻倍
-                    retryDelay = Math.min(retryDelay * 2, 10000); // 最多延迟10秒
-                    
-                } else {
-                    // 不可重试的错误，直接抛出
-                    throw e;
-                }
+                });
+            } catch (RuntimeException e) {
+                attempts.completeExceptionally(cause);
             }
+        });
+    }
+
+    /**
+     * 发送一次请求（不带重试）
+     */
+    private CompletableFuture<ChatCompletionResponse> sendAsync(ChatCompletionRequest request, Admission admission) {
+        // 如果是Bedrock，使用Bedrock服务
+        if (config.isBedrock()) {
+            return bedrockService.createChatCompletionAsync(request, admission);
         }
-        
-        // 不应该到达这里
-        throw new OpenAIException("意外的重试逻辑错误");
+        ChatCompletionRequest prepared = prepareHttpRequest(request);
+        CompletableFuture<HttpResult> httpFuture = httpClient.postForResultAsync("/chat/completions", prepared,
+                admission);
+        CompletableFuture<ChatCompletionResponse> future = httpFuture.thenApply(
+                result -> toCompletion(result, prepared, admission));
+        // 取消转换后的Future时同时取消HTTP调用
+        future.whenComplete((response, throwable) -> {
+            if (throwable instanceof CancellationException) {
+                httpFuture.cancel(true);
+            }
+        });
+        return future;
     }
-    
+
+    private static Throwable unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * 补全Azure部署ID和prompt_cache_key，并清除Bedrock专用字段
+     * 在请求的副本上调整，不改动调用方的请求对象：复用同一个请求对象的调用方每次都按当时的前缀推导prompt_cache_key
+     *
+     * @return 发出的请求
+     */
+    private ChatCompletionRequest prepareHttpRequest(ChatCompletionRequest original) {
+        ChatCompletionRequest request = original.copy();
+        // 如果是Azure OpenAI，并且没有设置模型，则使用部署ID作为模型
+        if (config.isAzure() && (request.getModel() == null || request.getModel().isEmpty())) {
+            AzureOpenAIConfig azureConfig = (AzureOpenAIConfig) config;
+            request.setModel(azureConfig.getDeploymentId());
+        }
+
+        // 按可缓存前缀推导prompt_cache_key，让相同前缀的请求落在同一个缓存分片
+        if (config.isAutoPromptCacheKey() && request.getPromptCacheKey() == null) {
+            request.setPromptCacheKey(PromptCacheKeys.derive(request, config.getPromptCacheKeyLeadingTurns()));
+        }
+
+        // 批处理请求可以使用更便宜的服务层级（Azure不支持）
+        if (!config.isAzure() && request.getPriority() == RequestPriority.BATCH && request.getServiceTier() == null
+                && config.getBatchServiceTier() != null) {
+            request.setServiceTier(config.getBatchServiceTier());
+        }
+
+        // 清除Bedrock专用字段，避免Azure/OpenAI不认识这些字段而返回400错误
+        request.setBedrockEnableSystemCache(null);
+        return request;
+    }
+
+    /**
+     * 请求的可缓存前缀（与prompt_cache_key推导使用相同的范围），缓存效果账本关闭时不计算
+     */
+    private PromptPrefix promptPrefix(ChatCompletionRequest request) {
+        if (!config.getPromptCacheLedger().isEnabled()) {
+            return null;
+        }
+        return PromptPrefix.ofLeadingMessages(request, config.getPromptCacheKeyLeadingTurns());
+    }
+
+    /**
+     * 解析聊天完成响应并记录用量
+     */
+    private ChatCompletionResponse toCompletion(HttpResult result, ChatCompletionRequest request, Admission admission)
+            throws OpenAIException {
+        String response = result.getBody();
+        try {
+            ResponseConversionEvent conversionEvent = new ResponseConversionEvent();
+            conversionEvent.begin();
+            ChatCompletionResponse completion = objectMapper.readValue(response, ChatCompletionResponse.class);
+            conversionEvent.complete(SdkMetrics.providerOf(config), request.getModel(), response.length());
+            completion.setResponseMetadata(result.getMetadata());
+            SdkMetrics.recordUsage(config.getMetricsRegistry(), SdkMetrics.providerOf(config),
+                    request.getModel(), SdkMetrics.ENDPOINT_CHAT_COMPLETIONS, completion.getUsage());
+            if (request.getPromptCacheKey() != null && completion.getUsage() != null) {
+                logger.debug("prompt_cache_key: {}, 缓存命中 {}/{} tokens", request.getPromptCacheKey(),
+                        completion.getUsage().getCacheReadInputTokens(), completion.getUsage().getPromptTokens());
+            }
+            config.getUsageLedger().record(request.getUser(), SdkMetrics.providerOf(config),
+                    request.getModel(), completion.getUsage());
+            if (completion.getUsage() != null) {
+                config.getConcurrencyLimiter().recordTokens(admission.getTenant(),
+                        completion.getUsage().getTotalTokens());
+            }
+            config.getPromptCacheLedger().record(SdkMetrics.providerOf(config), request.getModel(),
+                    SdkMetrics.ENDPOINT_CHAT_COMPLETIONS, promptPrefix(request), completion.getUsage());
+            return completion;
+        } catch (JsonProcessingException e) {
+            logger.error("解析聊天完成响应失败 - 模型: {}, 响应: {}", request.getModel(), response, e);
+            throw new OpenAIException("无法解析聊天完成响应", e);
+        }
+    }
+
+    /**
+     * Span中记录的模型（Bedrock以配置的模型ID为准，Azure未设置模型时为部署ID）
+     */
+    private String spanModel(ChatCompletionRequest request) {
+        if (config.isBedrock()) {
+            return ((BedrockConfig) config).getModelId();
+        }
+        if (config.isAzure() && (request.getModel() == null || request.getModel().isEmpty())) {
+            return ((AzureOpenAIConfig) config).getDeploymentId();
+        }
+        return request.getModel();
+    }
+
+    /**
+     * 指标中使用的端点名称
+     */
+    private String metricsEndpoint(boolean stream) {
+        if (config.isBedrock()) {
+            return stream ? SdkMetrics.ENDPOINT_INVOKE_MODEL_STREAM : SdkMetrics.ENDPOINT_INVOKE_MODEL;
+        }
+        return SdkMetrics.ENDPOINT_CHAT_COMPLETIONS;
+    }
+
     /**
      * 判断是否是可重试的错误
      */
-    private boolean isRetryableError(Exception e) {
+    private boolean isRetryableError(Throwable e) {
         if (e == null) {
             return false;
         }
+
+        // 超过截止时间不再重试，首字节和空闲超时可以重试
+        if (Timeouts.isDeadlineExceeded(e)) {
+            return false;
+        }
+        if (Timeouts.isTimeout(e)) {
+            logger.debug("检测到超时错误: {}", e.getMessage());
+            return true;
+        }
         
         String message = e.getMessage();
         if (message == null) {
@@ -242,7 +492,8 @@ public class OpenAIService implements AutoCloseable {
         }
         
         // HTTP 5xx 错误（服务器错误）
-        if (message.contains("500") || 
+        if ((e instanceof OpenAIException && ((OpenAIException) e).getStatusCode() >= 500) ||
+            message.contains("500") || 
             message.contains("502") || 
             message.contains("503") || 
             message.contains("504")) {
@@ -253,6 +504,21 @@ public class OpenAIService implements AutoCloseable {
         return false;
     }
 
+    /**
+     * 预热prompt缓存（仅Bedrock Claude），在流量到来前用给定的前缀写入缓存
+     *
+     * @param prefix 要缓存的前缀（system、tools和消息）
+     * @return 完成时包含预热请求的用量，非Bedrock配置以 {@link OpenAIException} 异常完成
+     */
+    public CompletableFuture<ChatCompletionResponse.Usage> prewarmCache(ChatCompletionRequest prefix) {
+        if (!config.isBedrock()) {
+            CompletableFuture<ChatCompletionResponse.Usage> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new OpenAIException("只有Bedrock支持缓存预热"));
+            return failed;
+        }
+        return bedrockService.prewarmCache(prefix);
+    }
+
     /**
      * 创建聊天完成（流式）
      * @param request 聊天完成请求
@@ -260,75 +526,59 @@ public class OpenAIService implements AutoCloseable {
      * @param onComplete 完成时的回调
      * @param onError 错误时的回调
      * @throws OpenAIException 如果请求失败
+     * @see #streamChatCompletion(ChatCompletionRequest, Consumer, Runnable, Consumer)
      */
     public void createChatCompletionStream(ChatCompletionRequest request, 
                                            Consumer<ChatCompletionChunk> onChunk,
                                            Runnable onComplete,
                                            Consumer<Throwable> onError) throws OpenAIException {
-        // 重试配置
-        int maxRetries = 3;
-        int retryCount = 0;
-        long retryDelay = 1000; // 初始重试延迟1秒
-        
-        while (retryCount < maxRetries) {
-            try {
-                // 如果是Bedrock，使用Bedrock服务
-                if (config.isBedrock()) {
-                    bedrockService.createChatCompletionStream(request, onChunk, onComplete, onError);
-                    return;
-                }
-                
-                // 调用内部流式方法
-                createChatCompletionStreamInternal(request, onChunk, onComplete, onError);
-                return; // 成功则返回
-                
-            } catch (Exception e) {
-                // 判断是否是可重试的错误
-                if (isRetryableError(e)) {
-                    retryCount++;
-                    
-                    if (retryCount >= maxRetries) {
-                        logger.error("流式请求达到最大重试次数 ({} 次)，放弃重试", maxRetries);
-                        if (onError != null) {
-                            onError.accept(new OpenAIException("流式请求失败，已重试 " + maxRetries + " 次: " + e.getMessage(), e));
-                        }
-                        throw new OpenAIException("流式请求失败，已重试 " + maxRetries + " 次: " + e.getMessage(), e);
-                    }
-                    
-                    logger.warn("流式请求遇到可重试错误: {}，将在 {} 毫秒后进行第 {} 次重试", 
-                               e.getMessage(), retryDelay, retryCount + 1);
-                    
-                    try {
-                        Thread.sleep(retryDelay);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        if (onError != null) {
-                            onError.accept(new OpenAIException("重试被中断", ie));
-                        }
-                        throw new OpenAIException("重试被中断", ie);
-                    }
-                    
-                    // 指数退避，下次重试延迟翻倍
-                    retryDelay = Math.min(retryDelay * 2, 10000); // 最多延迟10秒
-                    
-                } else {
-                    // 不可重试的错误，直接传递给错误处理器并抛出
-                    if (onError != null) {
-                        onError.accept(e);
-                    }
-                    throw e;
-                }
-            }
+        streamChatCompletion(request, onChunk, onComplete, onError);
+    }
+
+    /**
+     * 创建聊天完成（流式），返回流式请求句柄
+     * @param request 聊天完成请求
+     * @param onChunk 处理每个数据块的回调
+     * @param onComplete 完成时的回调
+     * @param onError 错误时的回调
+     * @return 流式请求句柄，可获取响应元数据或等待流结束
+     * @throws OpenAIException 如果请求失败
+     */
+    public StreamHandle streamChatCompletion(ChatCompletionRequest request,
+                                             Consumer<ChatCompletionChunk> onChunk,
+                                             Runnable onComplete,
+                                             Consumer<Throwable> onError) throws OpenAIException {
+        Admission admission = Admission.of(request, config.getTimeouts());
+
+        // 如果是Bedrock，使用Bedrock服务（自带重试和预算检查）
+        if (config.isBedrock()) {
+            return bedrockService.streamChatCompletion(request, admission, onChunk, onComplete, onError);
         }
+
+        long budgetDelay = config.getUsageLedger().checkBudgetDelay(request.getUser());
+
+        // 预算限流的等待和失败后的重试都挂到重试调度器上，不占用调用线程
+        return new StreamRetry(config.getRetryScheduler(), MAX_RETRIES, admission, this::isRetryableError,
+                attempt -> Math.min(INITIAL_RETRY_DELAY_MS << (attempt - 1), MAX_RETRY_DELAY_MS),
+                (attempt, delay, error) -> {
+                    logger.warn("流式请求遇到可重试错误: {}，将在 {} 毫秒后进行第 {} 次重试",
+                            error.getMessage(), delay, attempt + 1);
+                    SdkMetrics.recordRetry(config.getMetricsRegistry(), SdkMetrics.providerOf(config),
+                            request.getModel(), metricsEndpoint(true));
+                },
+                (chunkCallback, completeCallback, errorCallback) -> createChatCompletionStreamInternal(
+                        request, admission, chunkCallback, completeCallback, errorCallback),
+                onChunk, onComplete, onError).start(budgetDelay);
     }
     
     /**
      * 内部流式请求方法（不带重试）
      */
-    private void createChatCompletionStreamInternal(ChatCompletionRequest request, 
+    private StreamHandle createChatCompletionStreamInternal(ChatCompletionRequest original, Admission admission,
                                                     Consumer<ChatCompletionChunk> onChunk,
                                                     Runnable onComplete,
                                                     Consumer<Throwable> onError) throws OpenAIException {
+        ChatCompletionRequest request = prepareHttpRequest(original);
         // 设置流式标志
         request.setStream(true);
         
@@ -336,25 +586,27 @@ public class OpenAIService implements AutoCloseable {
         // if (request.getStreamOptions() == null) {
         //     request.setStreamOptions(new ChatCompletionRequest.StreamOptions(true));
         // }
-        
-        // 如果是Azure OpenAI，并且没有设置模型，则使用部署ID作为模型
-        if (config.isAzure() && (request.getModel() == null || request.getModel().isEmpty())) {
-            AzureOpenAIConfig azureConfig = (AzureOpenAIConfig) config;
-            request.setModel(azureConfig.getDeploymentId());
-        }
 
-        // 清除Bedrock专用字段，避免Azure/OpenAI不认识这些字段而返回400错误
-        request.setBedrockEnableSystemCache(null);
+        StreamMetrics streamMetrics = SdkMetrics.startStream(config.getMetricsRegistry(), SdkMetrics.providerOf(config),
+                request.getModel(), SdkMetrics.ENDPOINT_CHAT_COMPLETIONS,
+                Tracing.startRequestSpan(config, TraceAttributes.SPAN_CHAT_STREAM, request.getModel()))
+                .withLedger(config.getUsageLedger(), request.getUser())
+                .withPromptCache(config.getPromptCacheLedger(), promptPrefix(request))
+                .withConcurrencyLimiter(config.getConcurrencyLimiter(), admission.getTenant());
 
+        StreamHandle handle = new StreamHandle();
+        long startNanos = System.nanoTime();
         EventSource eventSource = httpClient.postStream("/chat/completions", request, new EventSourceListener() {
             private volatile boolean isDone = false;
             
             @Override
             public void onOpen(EventSource eventSource, okhttp3.Response response) {
+                handle.setMetadata(httpClient.responseMetadata(response, startNanos));
                 // 检查响应状态
                 if (!response.isSuccessful()) {
                     isDone = true;
                     eventSource.cancel();
+                    streamMetrics.finish(false);
                     if (onError != null) {
                         String errorMessage = "流式请求失败 (状态码: " + response.code() + ")";
                         if (response.message() != null && !response.message().isEmpty()) {
@@ -367,8 +619,6 @@ public class OpenAIService implements AutoCloseable {
                             if (response.body() != null) {
                                 responseBody = response.body().string();
                                 if (responseBody != null && !responseBody.isEmpty()) {
-                                    logger.error("OpenAI API 流式请求错误 - 状态码: {}, URL: {}, API原始错误响应: {}",
-                                        response.code(), response.request().url(), responseBody);
                                     errorMessage += "\nAPI原始错误响应: " + responseBody;
                                 }
                             }
@@ -376,21 +626,12 @@ public class OpenAIService implements AutoCloseable {
                             logger.warn("读取错误响应体失败: {}", e.getMessage());
                         }
 
-                        // 如果没有读取到响应体，仍然记录错误
-                        if (responseBody == null || responseBody.isEmpty()) {
-                            logger.error("OpenAI API 流式请求错误 - 状态码: {}, URL: {}",
-                                response.code(), response.request().url());
-                        }
-
-                        try {
-                            String requestJson = objectMapper.writeValueAsString(request);
-                            logger.debug("请求参数: {}", requestJson);
-                        } catch (JsonProcessingException je) {
-                            logger.debug("请求参数: [无法序列化]", je);
-                        }
+                        logStreamError("OpenAI API 流式请求错误", request, response, responseBody, errorMessage, null);
 
                         onError.accept(new OpenAIException(errorMessage));
                     }
+                    handle.completeExceptionally(new OpenAIException(
+                            "流式请求失败 (状态码: " + response.code() + ")", response.code(), null, null));
                 }
             }
             
@@ -399,14 +640,21 @@ public class OpenAIService implements AutoCloseable {
                 if ("[DONE]".equals(data)) {
                     isDone = true;
                     eventSource.cancel(); // 关闭连接
+                    streamMetrics.finish(true);
+                    handle.recordLatency(startNanos);
                     if (onComplete != null) {
                         onComplete.run();
                     }
+                    handle.complete(null);
                     return;
                 }
                 
                 try {
+                    ChunkDecodeEvent decodeEvent = new ChunkDecodeEvent();
+                    decodeEvent.begin();
                     ChatCompletionChunk chunk = objectMapper.readValue(data, ChatCompletionChunk.class);
+                    decodeEvent.complete(SdkMetrics.providerOf(config), request.getModel(), data.length(), 1);
+                    streamMetrics.onChunk(chunk);
 
                     // 只要有chunk就调用回调，包括空内容的chunk
                     if (onChunk != null) {
@@ -415,10 +663,12 @@ public class OpenAIService implements AutoCloseable {
                 } catch (JsonProcessingException e) {
                     isDone = true;
                     eventSource.cancel(); // 出错时关闭连接
+                    streamMetrics.finish(false);
                     logger.error("解析流式响应失败: {}", data, e);
                     if (onError != null) {
                         onError.accept(new OpenAIException("无法解析流式响应: " + data, e));
                     }
+                    handle.completeExceptionally(e);
                 }
             }
 
@@ -439,6 +689,11 @@ public class OpenAIService implements AutoCloseable {
                         }
                     }
 
+                    if (isIgnorableError) {
+                        streamMetrics.finish(true);
+                    } else {
+                        streamMetrics.fail(t);
+                    }
                     if (!isIgnorableError && onError != null) {
                         // 构建更详细的错误信息
                         String errorMessage = "流式请求失败";
@@ -455,8 +710,6 @@ public class OpenAIService implements AutoCloseable {
                                 if (response.body() != null) {
                                     responseBody = response.body().string();
                                     if (responseBody != null && !responseBody.isEmpty()) {
-                                        logger.error("OpenAI API 流式请求失败 - 状态码: {}, URL: {}, API原始错误响应: {}",
-                                            response.code(), response.request().url(), responseBody);
                                         errorMessage += "\nAPI原始错误响应: " + responseBody;
                                     }
                                 }
@@ -464,35 +717,57 @@ public class OpenAIService implements AutoCloseable {
                                 logger.warn("读取错误响应体失败: {}", e.getMessage());
                             }
 
-                            // 如果没有读取到响应体，仍然记录错误
-                            if (responseBody == null || responseBody.isEmpty()) {
-                                logger.error("OpenAI API 流式请求失败 - 状态码: {}, URL: {}",
-                                    response.code(), response.request().url(), t);
-                            }
-
-                            try {
-                                String requestJson = objectMapper.writeValueAsString(request);
-                                logger.debug("请求参数: {}", requestJson);
-                            } catch (JsonProcessingException je) {
-                                logger.debug("请求参数: [无法序列化]", je);
-                            }
+                            logStreamError("OpenAI API 流式请求失败", request, response, responseBody, errorMessage, t);
                         }
                         if (t != null && t.getMessage() != null) {
                             errorMessage += ": " + t.getMessage();
                         }
                         onError.accept(new OpenAIException(errorMessage, t));
                     }
+                    if (isIgnorableError) {
+                        handle.recordLatency(startNanos);
+                        handle.complete(null);
+                    } else {
+                        handle.completeExceptionally(t != null ? t : new OpenAIException("流式请求失败"));
+                    }
                 }
                 eventSource.cancel(); // 确保连接被关闭
             }
 
             @Override
             public void onClosed(EventSource eventSource) {
+                streamMetrics.finish(true);
+                handle.recordLatency(startNanos);
                 if (!isDone && onComplete != null) {
                     onComplete.run();
                 }
+                handle.complete(null);
             }
-        });
+        }, streamMetrics.getSpan(), admission);
+        handle.setCancelAction(eventSource::cancel);
+        return handle;
+    }
+
+    /**
+     * 记录流式请求的HTTP错误：日志按状态码去重限流，请求体仅在被采样时才序列化并保存到 {@link PayloadSampler}
+     */
+    private void logStreamError(String title, ChatCompletionRequest request, okhttp3.Response response,
+                                String responseBody, String errorMessage, Throwable t) {
+        OpenAIException.Provider provider = SdkMetrics.providerOf(config);
+        long suppressed = LogThrottler.getDefault().tryAcquire(
+                "stream|" + provider + "|" + response.code() + "|" + response.request().url().encodedPath());
+        if (suppressed >= 0) {
+            logger.error("{} - 状态码: {}, URL: {}, API原始错误响应: {}{}", title, response.code(),
+                    response.request().url(), responseBody, LogThrottler.suppressedSuffix(suppressed), t);
+        }
+        PayloadSampler.getDefault().record(provider, request.getModel(), response.code(), errorMessage,
+                () -> {
+                    try {
+                        return objectMapper.writeValueAsString(request);
+                    } catch (JsonProcessingException e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }, responseBody);
     }
     
     /**
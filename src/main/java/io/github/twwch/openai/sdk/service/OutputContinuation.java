@@ -0,0 +1,293 @@
+package io.github.twwch.openai.sdk.service;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * 截断输出的继续生成
+ * 输出因max_tokens截断（finish_reason=length）时，把已生成的文本作为最后一条assistant消息（预填充）再次请求，
+ * 模型从截断处继续生成；多段输出合并后交给调用方。输出中有工具调用时不继续，截断的结果直接返回。
+ * 由 {@link BedrockService} 在max_tokens由预测器设置时使用。
+ */
+public final class OutputContinuation {
+    private static final Logger logger = LoggerFactory.getLogger(OutputContinuation.class);
+
+    public static final String FINISH_REASON_LENGTH = "length";
+
+    private OutputContinuation() {
+    }
+
+    /**
+     * 响应是否因max_tokens截断且可以继续生成
+     */
+    public static boolean canContinue(ChatCompletionResponse response) {
+        if (response == null || response.getChoices() == null || response.getChoices().size() != 1) {
+            return false;
+        }
+        ChatCompletionResponse.Choice choice = response.getChoices().get(0);
+        if (!FINISH_REASON_LENGTH.equals(choice.getFinishReason()) || choice.getMessage() == null
+                || choice.getMessage().getToolCalls() != null && choice.getMessage().getToolCalls().length > 0) {
+            return false;
+        }
+        String text = choice.getMessage().getContentAsString();
+        return text != null && !text.trim().isEmpty();
+    }
+
+    /**
+     * 构建继续生成的请求：原请求的消息加上已生成文本组成的assistant消息
+     * Claude不接受以空白结尾的预填充，已生成文本末尾的空白会被去掉
+     *
+     * @param generated 已生成的文本
+     * @param maxTokens 继续生成的max_tokens
+     */
+    public static ChatCompletionRequest request(ChatCompletionRequest original, String generated, int maxTokens) {
+        ChatCompletionRequest next = new ChatCompletionRequest();
+        next.setModel(original.getModel());
+        List<ChatMessage> messages = new ArrayList<>(original.getMessages());
+        messages.add(ChatMessage.assistant(stripTrailing(generated)));
+        next.setMessages(messages);
+        next.setMaxTokens(Math.max(1, maxTokens));
+        next.setTemperature(original.getTemperature());
+        next.setTopP(original.getTopP());
+        next.setStop(original.getStop());
+        next.setTools(original.getTools());
+        next.setToolChoice(original.getToolChoice());
+        next.setUser(original.getUser());
+        next.setMetadata(original.getMetadata());
+        next.setStream(original.getStream());
+        next.setBedrockEnableSystemCache(original.getBedrockEnableSystemCache());
+        next.setPriority(original.getPriority());
+        next.setDeadline(original.getDeadline());
+        next.setTimeouts(original.getTimeouts());
+        return next;
+    }
+
+    /**
+     * 合并截断的响应和继续生成的响应，结果写入previous
+     */
+    public static ChatCompletionResponse merge(ChatCompletionResponse previous, ChatCompletionResponse next) {
+        ChatCompletionResponse.Choice choice = previous.getChoices().get(0);
+        ChatMessage message = choice.getMessage();
+        ChatMessage continued = next.getMessage();
+        String text = stripTrailing(message.getContentAsString());
+        if (continued != null) {
+            if (continued.getContentAsString() != null) {
+                text += continued.getContentAsString();
+            }
+            message.setToolCalls(continued.getToolCalls());
+        }
+        message.setContent(text);
+        if (next.getChoices() != null && !next.getChoices().isEmpty()) {
+            choice.setFinishReason(next.getChoices().get(0).getFinishReason());
+        }
+        previous.setUsage(add(previous.getUsage(), next.getUsage()));
+        return previous;
+    }
+
+    /**
+     * 合并多次调用的用量
+     */
+    public static ChatCompletionResponse.Usage add(ChatCompletionResponse.Usage a, ChatCompletionResponse.Usage b) {
+        if (a == null || b == null) {
+            return a != null ? a : b;
+        }
+        ChatCompletionResponse.Usage sum = new ChatCompletionResponse.Usage();
+        sum.setPromptTokens(a.getPromptTokens() + b.getPromptTokens());
+        sum.setCompletionTokens(a.getCompletionTokens() + b.getCompletionTokens());
+        sum.setTotalTokens(a.getTotalTokens() + b.getTotalTokens());
+        sum.setCacheReadInputTokens(addNullable(a.getCacheReadInputTokens(), b.getCacheReadInputTokens()));
+        sum.setCacheCreationInputTokens(addNullable(a.getCacheCreationInputTokens(), b.getCacheCreationInputTokens()));
+        return sum;
+    }
+
+    private static Integer addNullable(Integer a, Integer b) {
+        if (a == null || b == null) {
+            return a != null ? a : b;
+        }
+        return a + b;
+    }
+
+    private static String stripTrailing(String text) {
+        return text != null ? text.replaceAll("\\s+$", "") : "";
+    }
+
+    /**
+     * 流式请求的继续生成
+     * 返回给调用方的句柄和回调跨越所有分段，调用方看到的是一条连续的流：
+     * 截断的分段的结束数据块（finish_reason，包括随后的message_stop）被去掉，继续生成的分段不再送出开始数据块（role），
+     * 只携带用量的数据块照常送出；完成回调只在最后一段结束时调用一次。
+     */
+    public static final class Stream {
+        /**
+         * 发起一段流式请求
+         */
+        public interface Segment {
+            StreamHandle start(ChatCompletionRequest request, Consumer<ChatCompletionChunk> onChunk,
+                               Runnable onComplete, Consumer<Throwable> onError) throws OpenAIException;
+        }
+
+        private final ChatCompletionRequest original;
+        private final int ceiling;
+        private final int maxContinuations;
+        private final Segment segment;
+        private final Consumer<ChatCompletionChunk> onChunk;
+        private final Runnable onComplete;
+        private final Consumer<Throwable> onError;
+        private final IntConsumer onFinished;
+        private final StreamHandle handle = new StreamHandle();
+        private final StringBuilder text = new StringBuilder();
+
+        private volatile StreamHandle current;
+        private volatile boolean toolCalls;
+        private volatile boolean held;
+        private volatile int segmentOutput;
+        private volatile int totalOutput;
+        private volatile int continuations;
+
+        /**
+         * @param ceiling          所有分段合计的输出上限
+         * @param maxContinuations 最多继续生成的次数
+         * @param onFinished       全部分段结束时接收合计输出token数
+         */
+        public Stream(ChatCompletionRequest original, int ceiling, int maxContinuations, Segment segment,
+               Consumer<ChatCompletionChunk> onChunk, Runnable onComplete, Consumer<Throwable> onError,
+               IntConsumer onFinished) {
+            this.original = original;
+            this.ceiling = ceiling;
+            this.maxContinuations = maxContinuations;
+            this.segment = segment;
+            this.onChunk = onChunk;
+            this.onComplete = onComplete;
+            this.onError = onError;
+            this.onFinished = onFinished;
+        }
+
+        /**
+         * 发起第一段
+         * @throws OpenAIException 如果第一段同步失败
+         */
+        public StreamHandle start() throws OpenAIException {
+            handle.setCancelAction(() -> {
+                StreamHandle segmentHandle = current;
+                if (segmentHandle != null) {
+                    segmentHandle.cancel(true);
+                }
+            });
+            run(original);
+            return handle;
+        }
+
+        private void run(ChatCompletionRequest request) {
+            segmentOutput = 0;
+            held = false;
+            StreamHandle segmentHandle = segment.start(request, this::onChunk, this::onSegmentComplete,
+                    this::onSegmentError);
+            current = segmentHandle;
+            segmentHandle.getMetadataFuture().thenAccept(metadata -> {
+                if (metadata != null && handle.getMetadata() == null) {
+                    handle.setMetadata(metadata);
+                }
+            });
+            if (handle.isCancelled()) {
+                segmentHandle.cancel(true);
+            }
+        }
+
+        private void onChunk(ChatCompletionChunk chunk) {
+            if (chunk.getUsage() != null) {
+                segmentOutput = Math.max(segmentOutput, chunk.getUsage().getCompletionTokens());
+            }
+            // 去掉开始和结束标记后什么都不剩的数据块不送出
+            boolean visible = chunk.getUsage() != null || chunk.getChoices() == null || chunk.getChoices().isEmpty();
+            if (chunk.getChoices() != null) {
+                for (ChatCompletionChunk.Choice choice : chunk.getChoices()) {
+                    ChatCompletionChunk.Delta delta = choice.getDelta();
+                    if (delta != null) {
+                        if (delta.getContent() != null) {
+                            synchronized (text) {
+                                text.append(delta.getContent());
+                            }
+                        }
+                        if (delta.getToolCalls() != null && !delta.getToolCalls().isEmpty()) {
+                            toolCalls = true;
+                        }
+                        if (continuations > 0) {
+                            // 继续生成的分段接在前一段之后，不再送出开始数据块
+                            delta.setRole(null);
+                        }
+                    }
+                    if (!held && FINISH_REASON_LENGTH.equals(choice.getFinishReason()) && canContinue()) {
+                        // 继续生成，调用方看不到这一段的截断
+                        held = true;
+                    }
+                    if (held) {
+                        // 截断的分段之后的结束数据块（如message_stop）也不送出
+                        choice.setFinishReason(null);
+                    }
+                    visible |= choice.getFinishReason() != null || delta != null && (delta.getContent() != null
+                            || delta.getRole() != null || delta.getFunctionCall() != null
+                            || delta.getToolCalls() != null && !delta.getToolCalls().isEmpty());
+                }
+            }
+            if (visible && onChunk != null) {
+                onChunk.accept(chunk);
+            }
+        }
+
+        private boolean canContinue() {
+            if (continuations >= maxContinuations || toolCalls || handle.isDone()
+                    || totalOutput + segmentOutput >= ceiling) {
+                return false;
+            }
+            synchronized (text) {
+                return text.toString().trim().length() > 0;
+            }
+        }
+
+        private void onSegmentComplete() {
+            totalOutput += segmentOutput;
+            if (held && !handle.isDone()) {
+                continuations++;
+                String generated;
+                synchronized (text) {
+                    // 后续分段接在去掉末尾空白的预填充之后
+                    generated = stripTrailing(text.toString());
+                    text.setLength(generated.length());
+                }
+                logger.debug("输出在 {} tokens 处被截断，继续生成 ({}/{})", totalOutput, continuations,
+                        maxContinuations);
+                try {
+                    run(request(original, generated, ceiling - totalOutput));
+                } catch (RuntimeException e) {
+                    onSegmentError(e);
+                }
+                return;
+            }
+            onFinished.accept(totalOutput);
+            if (onComplete != null) {
+                onComplete.run();
+            }
+            handle.complete(null);
+        }
+
+        private void onSegmentError(Throwable error) {
+            if (handle.isDone()) {
+                return;
+            }
+            if (onError != null) {
+                onError.accept(error);
+            }
+            handle.completeExceptionally(error);
+        }
+    }
+}
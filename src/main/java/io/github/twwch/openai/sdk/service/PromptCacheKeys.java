@@ -0,0 +1,29 @@
+package io.github.twwch.openai.sdk.service;
+
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+
+/**
+ * OpenAI/Azure prompt_cache_key 推导
+ * OpenAI按前缀哈希和prompt_cache_key把请求路由到缓存分片，相同system prompt和tools的请求
+ * 使用相同的key才能落在同一个分片上命中缓存。key由可缓存前缀的指纹得到：tools、全部system消息，
+ * 以及可选的前几条非system消息（多轮对话可以按会话的开头区分）。
+ */
+public final class PromptCacheKeys {
+    /** 推导出的key的前缀，便于和调用方自己设置的key区分 */
+    public static final String PREFIX = "pck-";
+
+    private PromptCacheKeys() {
+    }
+
+    /**
+     * 根据请求的可缓存前缀推导prompt_cache_key
+     *
+     * @param leadingTurns 计入前缀的非system消息条数（从第一条开始）
+     * @return 推导出的key；请求没有system消息、tools和计入的消息时返回null
+     */
+    public static String derive(ChatCompletionRequest request, int leadingTurns) {
+        PromptPrefix prefix = PromptPrefix.ofLeadingMessages(request, leadingTurns);
+        // 无法序列化的请求同样不设置key，由服务端按默认方式路由
+        return prefix != null ? PREFIX + prefix.getFingerprint() : null;
+    }
+}
@@ -0,0 +1,170 @@
+package io.github.twwch.openai.sdk.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * 请求的可缓存前缀：指纹和序列化后的大小
+ * Bedrock Claude按显式缓存断点确定前缀，OpenAI/Azure按tools、system消息和开头的几条消息确定前缀。
+ * 同一前缀的请求得到相同的指纹，用于缓存key推导、缓存预热去重和按前缀统计缓存效果。
+ */
+public final class PromptPrefix {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String fingerprint;
+    private final long bytes;
+
+    private PromptPrefix(String fingerprint, long bytes) {
+        this.fingerprint = fingerprint;
+        this.bytes = bytes;
+    }
+
+    /**
+     * 最后一个缓存断点之前的前缀：tools、system消息，以及直到最后一条带cache_control消息的所有消息
+     *
+     * @param scope 区分缓存空间的标识（如区域和模型）
+     * @return 请求没有缓存断点时返回null
+     */
+    public static PromptPrefix ofCacheBreakpoints(String scope, ChatCompletionRequest request) {
+        List<ChatMessage> messages = request.getMessages();
+        if (messages == null) {
+            return null;
+        }
+        int lastMarked = -1;
+        for (int i = 0; i < messages.size(); i++) {
+            if (hasCacheControl(messages.get(i))) {
+                lastMarked = i;
+            }
+        }
+        if (!Boolean.TRUE.equals(request.getBedrockEnableSystemCache()) && lastMarked < 0) {
+            return null;
+        }
+        Builder builder = new Builder();
+        builder.update(scope.getBytes(StandardCharsets.UTF_8), false);
+        try {
+            if (request.getTools() != null) {
+                builder.update(MAPPER.writeValueAsBytes(request.getTools()), true);
+            }
+            for (int i = 0; i < messages.size(); i++) {
+                ChatMessage message = messages.get(i);
+                if ("system".equals(message.getRole()) || i <= lastMarked) {
+                    builder.update(MAPPER.writeValueAsBytes(message), true);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+        return builder.build();
+    }
+
+    /**
+     * tools、全部system/developer消息和前几条非system消息组成的前缀
+     *
+     * @param leadingTurns 计入前缀的非system消息条数（从第一条开始）
+     * @return 请求没有system消息、tools和计入的消息时返回null
+     */
+    public static PromptPrefix ofLeadingMessages(ChatCompletionRequest request, int leadingTurns) {
+        Builder builder = new Builder();
+        boolean empty = true;
+        try {
+            if (request.getTools() != null && !request.getTools().isEmpty()) {
+                builder.update(MAPPER.writeValueAsBytes(request.getTools()), true);
+                empty = false;
+            }
+            if (request.getMessages() != null) {
+                int turns = 0;
+                for (ChatMessage message : request.getMessages()) {
+                    if ("system".equals(message.getRole()) || "developer".equals(message.getRole())) {
+                        builder.update(MAPPER.writeValueAsBytes(message), true);
+                        empty = false;
+                    } else if (turns < leadingTurns) {
+                        builder.update(MAPPER.writeValueAsBytes(message), true);
+                        turns++;
+                        empty = false;
+                    }
+                }
+            }
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+        return empty ? null : builder.build();
+    }
+
+    /**
+     * 前缀指纹（SHA-256前128位，32个十六进制字符）
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * 前缀序列化后的字节数
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "PromptPrefix{" + fingerprint + ", bytes=" + bytes + "}";
+    }
+
+    private static boolean hasCacheControl(ChatMessage message) {
+        Object content = message.getContent();
+        if (content instanceof ChatMessage.ContentPart[]) {
+            for (ChatMessage.ContentPart part : (ChatMessage.ContentPart[]) content) {
+                if (part != null && part.getCacheControl() != null) {
+                    return true;
+                }
+            }
+        } else if (content instanceof List) {
+            for (Object item : (List<?>) content) {
+                if (item instanceof ChatMessage.ContentPart && ((ChatMessage.ContentPart) item).getCacheControl() != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final class Builder {
+        private final MessageDigest digest;
+        private long bytes;
+
+        Builder() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256不可用", e);
+            }
+        }
+
+        /**
+         * 计入一段内容，每段之后写入分隔符
+         * @param counted 是否计入前缀大小
+         */
+        void update(byte[] data, boolean counted) {
+            digest.update(data);
+            digest.update((byte) 0);
+            if (counted) {
+                bytes += data.length;
+            }
+        }
+
+        PromptPrefix build() {
+            byte[] hash = digest.digest();
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return new PromptPrefix(hex.toString(), bytes);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.twwch.openai.sdk.service;
+
+import io.github.twwch.openai.sdk.model.ResponseMetadata;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 流式请求句柄
+ * 流结束时正常完成，出错时异常完成；收到响应头后可以通过 {@link #getMetadata()} 获取请求ID、
+ * 服务端处理耗时和限流信息，流结束后元数据中的耗时为请求发出到流结束的时间
+ */
+public class StreamHandle extends CompletableFuture<Void> {
+    private final CompletableFuture<ResponseMetadata> metadataFuture = new CompletableFuture<>();
+    private volatile ResponseMetadata metadata;
+    private volatile Runnable cancelAction;
+
+    /**
+     * 获取响应元数据
+     * @return 响应元数据，尚未收到响应头或请求未到达上游时为null
+     */
+    public ResponseMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * 获取响应元数据的Future，收到响应头时完成；流在收到响应头前结束时以null完成
+     */
+    public CompletableFuture<ResponseMetadata> getMetadataFuture() {
+        return metadataFuture;
+    }
+
+    /**
+     * 取消流式请求并关闭底层连接
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        Runnable action = cancelAction;
+        if (cancelled && action != null) {
+            action.run();
+        }
+        return cancelled;
+    }
+
+    void setMetadata(ResponseMetadata metadata) {
+        this.metadata = metadata;
+        metadataFuture.complete(metadata);
+    }
+
+    void setCancelAction(Runnable cancelAction) {
+        this.cancelAction = cancelAction;
+    }
+
+    /**
+     * 记录流结束时的耗时
+     */
+    void recordLatency(long startNanos) {
+        ResponseMetadata current = metadata;
+        if (current != null) {
+            current.setLatencyMs(java.util.concurrent.TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+    @Override
+    public boolean complete(Void value) {
+        metadataFuture.complete(metadata);
+        return super.complete(value);
+    }
+
+    @Override
+    public boolean completeExceptionally(Throwable ex) {
+        metadataFuture.complete(metadata);
+        return super.completeExceptionally(ex);
+    }
+}
@@ -0,0 +1,249 @@
+package io.github.twwch.openai.sdk.service;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.limit.Admission;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntToLongFunction;
+import java.util.function.Predicate;
+
+/**
+ * 流式请求的非阻塞重试
+ * 返回给调用方的句柄在多次尝试之间保持不变。一次尝试在送出第一个数据块前以可重试错误结束时，
+ * 下一次尝试挂到 {@link RetryScheduler} 上，退避期间不占用任何线程；错误回调只在放弃重试时调用一次。
+ * 取消句柄会取消进行中的尝试和尚未执行的重试。退避结束时已超过调用的截止时间则不再重试。
+ */
+final class StreamRetry {
+    private static final Logger logger = LoggerFactory.getLogger(StreamRetry.class);
+
+    /**
+     * 发起一次流式请求（不带重试）
+     */
+    interface Attempt {
+        StreamHandle start(Consumer<ChatCompletionChunk> onChunk, Runnable onComplete,
+                           Consumer<Throwable> onError) throws OpenAIException;
+    }
+
+    /**
+     * 决定重试前的回调，用于记录日志、指标或重建客户端
+     */
+    interface RetryListener {
+        void onRetry(int attempt, long delayMillis, Throwable error);
+    }
+
+    private final RetryScheduler scheduler;
+    private final int maxAttempts;
+    private final Admission admission;
+    private final Predicate<Throwable> retryable;
+    private final IntToLongFunction backoff;
+    private final RetryListener listener;
+    private final Attempt attempt;
+    private final Consumer<ChatCompletionChunk> onChunk;
+    private final Runnable onComplete;
+    private final Consumer<Throwable> onError;
+    private final StreamHandle handle = new StreamHandle();
+    private volatile StreamHandle current;
+    private volatile ScheduledFuture<?> pendingRetry;
+
+    StreamRetry(RetryScheduler scheduler, int maxAttempts, Admission admission, Predicate<Throwable> retryable,
+                IntToLongFunction backoff, RetryListener listener, Attempt attempt,
+                Consumer<ChatCompletionChunk> onChunk, Runnable onComplete, Consumer<Throwable> onError) {
+        this.scheduler = scheduler;
+        this.maxAttempts = maxAttempts;
+        this.admission = admission;
+        this.retryable = retryable;
+        this.backoff = backoff;
+        this.listener = listener;
+        this.attempt = attempt;
+        this.onChunk = onChunk;
+        this.onComplete = onComplete;
+        this.onError = onError;
+    }
+
+    /**
+     * 发起第一次尝试
+     * @return 跨越所有尝试的流式请求句柄
+     * @throws OpenAIException 如果第一次尝试同步失败且不可重试
+     */
+    StreamHandle start() throws OpenAIException {
+        handle.setCancelAction(this::cancelCurrent);
+        run(1);
+        return handle;
+    }
+
+    /**
+     * 在gate完成（无论成功与否）后发起第一次尝试，用于等待缓存预热等前置条件；等待期间可以取消
+     * 第一次尝试的同步错误通过错误回调和句柄通知，不再抛给调用方
+     * @return 跨越所有尝试的流式请求句柄
+     */
+    StreamHandle startAfter(CompletableFuture<?> gate) {
+        return startAfter(gate, 0);
+    }
+
+    /**
+     * 等待delayMillis（预算限流）后发起第一次尝试，等待挂到重试调度器上，不占用调用线程；等待期间可以取消
+     * 不需要等待时与 {@link #start()} 相同
+     * @return 跨越所有尝试的流式请求句柄
+     * @throws OpenAIException 如果不需要等待且第一次尝试同步失败
+     */
+    StreamHandle start(long delayMillis) throws OpenAIException {
+        return delayMillis > 0 ? startAfter(CompletableFuture.completedFuture(null), delayMillis) : start();
+    }
+
+    /**
+     * 在gate完成后再等待delayMillis发起第一次尝试，错误处理与 {@link #startAfter(CompletableFuture)} 相同
+     * @return 跨越所有尝试的流式请求句柄
+     */
+    StreamHandle startAfter(CompletableFuture<?> gate, long delayMillis) {
+        handle.setCancelAction(this::cancelCurrent);
+        gate.whenComplete((ignored, throwable) -> {
+            if (delayMillis <= 0) {
+                runFirst();
+                return;
+            }
+            try {
+                pendingRetry = scheduler.schedule(this::runFirst, delayMillis);
+            } catch (RuntimeException e) {
+                logger.warn("无法调度延迟启动，立即发起流式请求: {}", e.getMessage());
+                runFirst();
+                return;
+            }
+            if (handle.isCancelled()) {
+                pendingRetry.cancel(false);
+            }
+        });
+        return handle;
+    }
+
+    private void runFirst() {
+        try {
+            run(1);
+        } catch (RuntimeException e) {
+            logger.debug("流式请求启动失败: {}", e.getMessage());
+        }
+    }
+
+    private void run(int number) {
+        if (handle.isDone()) {
+            return;
+        }
+        AttemptState state = new AttemptState(number);
+        StreamHandle attemptHandle;
+        try {
+            attemptHandle = attempt.start(state::onChunk, onComplete, state::settle);
+        } catch (RuntimeException e) {
+            state.settle(e);
+            if (!state.retrying) {
+                handle.completeExceptionally(e);
+                if (number == 1) {
+                    // 与不带重试时一致，第一次尝试的同步错误直接抛给调用方
+                    throw e;
+                }
+            }
+            return;
+        }
+        current = attemptHandle;
+        attemptHandle.getMetadataFuture().thenAccept(metadata -> {
+            if (metadata != null) {
+                handle.setMetadata(metadata);
+            }
+        });
+        attemptHandle.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                handle.complete(null);
+                return;
+            }
+            state.settle(throwable);
+            if (!state.retrying) {
+                handle.completeExceptionally(throwable);
+            }
+        });
+        if (handle.isCancelled()) {
+            attemptHandle.cancel(true);
+        }
+    }
+
+    private void cancelCurrent() {
+        ScheduledFuture<?> retry = pendingRetry;
+        if (retry != null) {
+            retry.cancel(false);
+        }
+        StreamHandle attemptHandle = current;
+        if (attemptHandle != null) {
+            attemptHandle.cancel(true);
+        }
+    }
+
+    /**
+     * 单次尝试的状态：是否已送出数据块、是否已决定重试或放弃
+     */
+    private final class AttemptState {
+        private final int number;
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private volatile boolean chunked;
+        private volatile boolean retrying;
+
+        AttemptState(int number) {
+            this.number = number;
+        }
+
+        void onChunk(ChatCompletionChunk chunk) {
+            chunked = true;
+            if (onChunk != null) {
+                onChunk.accept(chunk);
+            }
+        }
+
+        /**
+         * 错误回调和句柄异常完成都会到这里，每次尝试只处理第一次
+         */
+        void settle(Throwable error) {
+            if (!settled.compareAndSet(false, true) || handle.isCancelled()) {
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            if (cause instanceof CancellationException) {
+                return;
+            }
+            boolean canRetry = !chunked && retryable.test(cause);
+            long delay = canRetry ? backoff.applyAsLong(number) : 0;
+            if (canRetry && number < maxAttempts && !handle.isDone() && admission.remainingMillis() > delay) {
+                retrying = true;
+                listener.onRetry(number, delay, cause);
+                try {
+                    pendingRetry = scheduler.schedule(() -> run(number + 1), delay);
+                    return;
+                } catch (RuntimeException e) {
+                    retrying = false;
+                    logger.warn("无法调度重试: {}", e.getMessage());
+                }
+            }
+            OpenAIException exception;
+            if (canRetry && number > 1) {
+                logger.error("流式请求达到最大重试次数 ({} 次)，放弃重试", maxAttempts);
+                exception = new OpenAIException("流式请求失败，已重试 " + number + " 次: " + cause.getMessage(), cause);
+            } else if (cause instanceof OpenAIException) {
+                exception = (OpenAIException) cause;
+            } else {
+                exception = new OpenAIException("流式请求失败: " + cause.getMessage(), cause);
+            }
+            if (onError != null) {
+                try {
+                    onError.accept(exception);
+                } catch (Exception e) {
+                    logger.error("错误回调执行失败", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import io.github.twwch.openai.sdk.leak.LeakDetector;
+import io.github.twwch.openai.sdk.leak.ResourceType;
+import io.github.twwch.openai.sdk.leak.TrackedResource;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bedrock异步客户端的分代管理
+ * 每个请求通过 {@link #acquire()} 租用当前代的客户端，结束时归还。重建客户端时新请求立即改用新一代，
+ * 旧一代在进行中的请求全部归还后关闭，超过排空期限仍未归还时强制关闭；
+ * 同一代只重建一次，且两次重建之间至少间隔 {@code minRebuildIntervalMillis}，避免连接错误引发连锁重建。
+ */
+public class BedrockClientGenerations implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BedrockClientGenerations.class);
+
+    private final Supplier<BedrockRuntimeAsyncClient> factory;
+    private final String description;
+    private final LeakDetector leakDetector;
+    private final RetryScheduler scheduler;
+    private final long drainTimeoutMillis;
+    private final long minRebuildIntervalMillis;
+    private final Object lock = new Object();
+    private final Set<Generation> draining = ConcurrentHashMap.newKeySet();
+    private volatile Generation current;
+    private volatile long lastRebuildNanos;
+    private volatile boolean closed;
+    private int nextId = 1;
+
+    /**
+     * @param factory 创建客户端
+     * @param description 日志和泄漏检测中使用的描述
+     * @param leakDetector 泄漏检测器
+     * @param scheduler 用于排空期限计时和在后台关闭旧客户端
+     * @param drainTimeoutMillis 旧一代等待进行中请求结束的最长时间
+     * @param minRebuildIntervalMillis 两次重建之间的最小间隔
+     */
+    public BedrockClientGenerations(Supplier<BedrockRuntimeAsyncClient> factory, String description,
+                                    LeakDetector leakDetector, RetryScheduler scheduler,
+                                    long drainTimeoutMillis, long minRebuildIntervalMillis) {
+        this.factory = factory;
+        this.description = description;
+        this.leakDetector = leakDetector;
+        this.scheduler = scheduler;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        this.minRebuildIntervalMillis = minRebuildIntervalMillis;
+        this.current = newGeneration();
+        this.lastRebuildNanos = System.nanoTime();
+    }
+
+    /**
+     * 租用当前代的客户端，请求结束（包括失败和取消）时必须调用 {@link Lease#close()}
+     * @throws IllegalStateException 如果已关闭
+     */
+    public Lease acquire() {
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("Bedrock客户端已关闭");
+            }
+            Generation generation = current;
+            generation.inFlight.incrementAndGet();
+            if (!generation.retired) {
+                return new Lease(generation);
+            }
+            // 租用时恰好被换代，归还后改用新一代
+            generation.release();
+        }
+    }
+
+    /**
+     * 因连接错误重建客户端
+     * @param generation 出错的请求所用的代，已经不是当前代时说明其他请求已触发重建
+     * @return 是否发生了重建
+     */
+    public boolean rebuild(int generation) {
+        synchronized (lock) {
+            Generation old = current;
+            if (closed || old.id != generation) {
+                return false;
+            }
+            long sinceLast = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastRebuildNanos);
+            if (sinceLast < minRebuildIntervalMillis) {
+                logger.info("距上次重建 {} ms，小于最小间隔 {} ms，跳过重建 {}", sinceLast, minRebuildIntervalMillis,
+                        description);
+                return false;
+            }
+            logger.info("重建 {}，第 {} 代仍有 {} 个进行中的请求，排空后关闭", description, old.id, old.inFlight.get());
+            current = newGeneration();
+            lastRebuildNanos = System.nanoTime();
+            retire(old);
+            return true;
+        }
+    }
+
+    /**
+     * 获取当前代编号
+     */
+    public int getGeneration() {
+        return current.id;
+    }
+
+    /**
+     * 获取当前代进行中的请求数
+     */
+    public int getInFlight() {
+        return current.inFlight.get();
+    }
+
+    /**
+     * 获取等待排空的旧一代数量
+     */
+    public int getDrainingCount() {
+        return draining.size();
+    }
+
+    /**
+     * 关闭所有代的客户端，不再等待排空
+     */
+    @Override
+    public void close() {
+        List<Generation> generations;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            generations = new ArrayList<>(draining);
+            generations.add(current);
+        }
+        for (Generation generation : generations) {
+            generation.retired = true;
+            closeWithTimeout(generation);
+        }
+        draining.clear();
+    }
+
+    private Generation newGeneration() {
+        int id = nextId++;
+        BedrockRuntimeAsyncClient client = factory.get();
+        TrackedResource resource = leakDetector.track(ResourceType.CLIENT, client, description + " 第" + id + "代");
+        return new Generation(id, client, resource);
+    }
+
+    private void retire(Generation generation) {
+        generation.retired = true;
+        draining.add(generation);
+        if (generation.inFlight.get() == 0) {
+            closeInBackground(generation, false);
+            return;
+        }
+        try {
+            generation.deadline = scheduler.schedule(() -> closeInBackground(generation, true), drainTimeoutMillis);
+        } catch (RuntimeException e) {
+            logger.warn("无法安排排空期限，立即关闭 {} 第 {} 代: {}", description, generation.id, e.getMessage());
+            closeInBackground(generation, true);
+        }
+    }
+
+    /**
+     * 在调度器的工作线程上关闭，避免在SDK的事件循环线程上关闭它自己的客户端
+     */
+    private void closeInBackground(Generation generation, boolean deadlineReached) {
+        if (deadlineReached) {
+            int remaining = generation.inFlight.get();
+            if (remaining > 0 && !generation.closed.get()) {
+                logger.warn("{} 第 {} 代排空超时（{} ms），强制关闭，{} 个请求将被中断", description, generation.id,
+                        drainTimeoutMillis, remaining);
+            }
+        }
+        try {
+            scheduler.schedule(() -> closeGeneration(generation), 0);
+        } catch (RuntimeException e) {
+            closeGeneration(generation);
+        }
+    }
+
+    private void closeGeneration(Generation generation) {
+        if (!generation.closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (generation.deadline != null) {
+            generation.deadline.cancel(false);
+        }
+        try {
+            generation.client.close();
+            logger.debug("{} 第 {} 代已关闭", description, generation.id);
+        } catch (Exception e) {
+            logger.warn("关闭旧客户端时出错: {}", e.getMessage());
+        } finally {
+            generation.resource.close();
+            draining.remove(generation);
+        }
+    }
+
+    private void closeWithTimeout(Generation generation) {
+        if (!generation.closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (generation.deadline != null) {
+            generation.deadline.cancel(false);
+        }
+        try {
+            // 使用异步方式关闭，避免阻塞
+            CompletableFuture<Void> closeFuture = CompletableFuture.runAsync(() -> {
+                try {
+                    generation.client.close();
+                } catch (Exception e) {
+                    logger.warn("关闭异步客户端时出现警告: {}", e.getMessage());
+                }
+            });
+
+            // 等待最多5秒
+            closeFuture.get(5, TimeUnit.SECONDS);
+            logger.debug("{} 第 {} 代已关闭", description, generation.id);
+        } catch (TimeoutException e) {
+            logger.warn("关闭异步客户端超时（5秒），可能有未完成的请求");
+        } catch (Exception e) {
+            logger.warn("关闭异步客户端时出现警告: {}", e.getMessage());
+        } finally {
+            generation.resource.close();
+        }
+    }
+
+    /**
+     * 一代客户端及其进行中的请求计数
+     */
+    private final class Generation {
+        private final int id;
+        private final BedrockRuntimeAsyncClient client;
+        private final TrackedResource resource;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean retired;
+        private volatile ScheduledFuture<?> deadline;
+
+        Generation(int id, BedrockRuntimeAsyncClient client, TrackedResource resource) {
+            this.id = id;
+            this.client = client;
+            this.resource = resource;
+        }
+
+        void release() {
+            if (inFlight.decrementAndGet() == 0 && retired && !closed.get() && !BedrockClientGenerations.this.closed) {
+                closeInBackground(this, false);
+            }
+        }
+    }
+
+    /**
+     * 对某一代客户端的租用，重复关闭会被忽略
+     */
+    public final class Lease implements AutoCloseable {
+        private final Generation generation;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(Generation generation) {
+            this.generation = generation;
+        }
+
+        public BedrockRuntimeAsyncClient client() {
+            return generation.client;
+        }
+
+        /**
+         * 租用的代编号，出错时传给 {@link #rebuild(int)}
+         */
+        public int generation() {
+            return generation.id;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                generation.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import io.github.twwch.openai.sdk.BedrockConfig;
+import io.github.twwch.openai.sdk.leak.LeakDetector;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import io.github.twwch.openai.sdk.service.bedrock.auth.BedrockCredentialsIsolator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bedrock运行时客户端共享池
+ * 按区域、凭证和连接池配置共享客户端：同一进程中使用相同区域和凭证的多个服务（不同模型）共用一组
+ * 连接池和事件循环，而不是每个服务各建一个。采用引用计数，最后一个使用者释放后才关闭客户端。
+ * 凭证只以访问密钥ID和密钥摘要的形式参与键的计算，不会在池中保留明文。
+ */
+public class BedrockClientPool {
+    private static final Logger logger = LoggerFactory.getLogger(BedrockClientPool.class);
+
+    private static final BedrockClientPool DEFAULT = new BedrockClientPool();
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 获取进程内共享的默认客户端池
+     */
+    public static BedrockClientPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 获取与配置匹配的共享客户端，不存在时创建
+     * @param config Bedrock配置
+     * @return 共享客户端的句柄，不再使用时必须关闭
+     */
+    public Handle acquire(BedrockConfig config) {
+        Key key = new Key(config);
+        Entry entry = entries.compute(key, (k, existing) -> {
+            if (existing != null) {
+                existing.references++;
+                return existing;
+            }
+            logger.info("创建共享的Bedrock异步客户端 - 区域: {}", config.getRegion());
+            Entry created = new Entry(new BedrockClientGenerations(
+                    () -> BedrockCredentialsIsolator.createIsolatedAsyncClient(config),
+                    "Bedrock异步客户端 " + config.getRegion(), config.getLeakDetector(), config.getRetryScheduler(),
+                    config.getClientDrainTimeoutMillis(), config.getMinClientRebuildIntervalMillis()));
+            created.references = 1;
+            return created;
+        });
+        return new Handle(key, entry);
+    }
+
+    /**
+     * 获取池中的客户端数量
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void release(Key key, Entry entry) {
+        AtomicBoolean last = new AtomicBoolean();
+        entries.computeIfPresent(key, (k, existing) -> {
+            if (existing != entry) {
+                return existing;
+            }
+            if (--existing.references > 0) {
+                return existing;
+            }
+            last.set(true);
+            return null;
+        });
+        if (last.get()) {
+            logger.debug("共享的Bedrock异步客户端已无使用者，关闭");
+            entry.clients.close();
+        }
+    }
+
+    /**
+     * 对共享客户端的引用，重复关闭会被忽略
+     */
+    public final class Handle implements AutoCloseable {
+        private final Key key;
+        private final Entry entry;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Handle(Key key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        /**
+         * 共享的分代客户端
+         */
+        public BedrockClientGenerations clients() {
+            return entry.clients;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                release(key, entry);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final BedrockClientGenerations clients;
+        // 只在 ConcurrentHashMap.compute 中读写
+        private int references;
+
+        Entry(BedrockClientGenerations clients) {
+            this.clients = clients;
+        }
+    }
+
+    /**
+     * 池的键：区域、凭证标识、连接池配置，以及泄漏检测器和调度器（按实例区分）
+     */
+    private static final class Key {
+        private final String settings;
+        private final LeakDetector leakDetector;
+        private final RetryScheduler scheduler;
+
+        Key(BedrockConfig config) {
+            String credentials = config.getAccessKeyId() == null || config.getSecretAccessKey() == null
+                    ? "default-chain"
+                    : config.getAccessKeyId() + ":" + fingerprint(config.getSecretAccessKey(), config.getSessionToken());
+            this.settings = String.join("|",
+                    config.getRegion(),
+                    credentials,
+                    String.valueOf(config.getMaxConcurrency()),
+                    String.valueOf(config.getMaxPendingAcquires()),
+                    String.valueOf(config.getConnectionTimeoutSeconds()),
+                    String.valueOf(config.getAcquireTimeoutSeconds()),
+                    String.valueOf(config.getReadTimeoutMinutes()),
+                    String.valueOf(config.getWriteTimeoutSeconds()),
+                    String.valueOf(config.getConnectionTtlMinutes()),
+                    String.valueOf(config.getMaxIdleSeconds()),
+                    String.valueOf(config.getApiCallAttemptTimeoutMinutes()),
+                    String.valueOf(config.getApiCallTimeoutMinutes()),
+                    String.valueOf(config.getClientDrainTimeoutMillis()),
+                    String.valueOf(config.getMinClientRebuildIntervalMillis()));
+            this.leakDetector = config.getLeakDetector();
+            this.scheduler = config.getRetryScheduler();
+        }
+
+        private static String fingerprint(String secretAccessKey, String sessionToken) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(secretAccessKey.getBytes(StandardCharsets.UTF_8));
+                if (sessionToken != null && !sessionToken.isEmpty()) {
+                    digest.update((byte) 0);
+                    digest.update(sessionToken.getBytes(StandardCharsets.UTF_8));
+                }
+                StringBuilder hex = new StringBuilder();
+                for (byte b : digest.digest()) {
+                    hex.append(String.format("%02x", b));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256不可用", e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return settings.equals(other.settings)
+                    && leakDetector == other.leakDetector
+                    && scheduler == other.scheduler;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(settings, System.identityHashCode(leakDetector), System.identityHashCode(scheduler));
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package io.github.twwch.openai.sdk.service.bedrock;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.limit.Admission;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /**
@@ -22,6 +24,29 @@ public interface BedrockModelAdapter {
      */
     String convertStreamRequest(ChatCompletionRequest request, ObjectMapper objectMapper) throws Exception;
     
+    /**
+     * 转换请求为Bedrock请求体字节
+     * 默认基于字符串转换实现，适配器可以覆盖以直接写出字节，避免中间字符串和复制
+     *
+     * @param stream 是否为流式请求
+     */
+    default byte[] convertRequestBytes(ChatCompletionRequest request, ObjectMapper objectMapper, boolean stream)
+            throws Exception {
+        String body = stream ? convertStreamRequest(request, objectMapper) : convertRequest(request, objectMapper);
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按调用的截止时间转换请求，转换期间的图片下载不超过截止时间
+     * 默认忽略截止时间，需要下载图片的适配器可以覆盖
+     *
+     * @param admission 调用的截止时间和超时（已合并配置的默认超时）
+     */
+    default byte[] convertRequestBytes(ChatCompletionRequest request, ObjectMapper objectMapper, boolean stream,
+                                       Admission admission) throws Exception {
+        return convertRequestBytes(request, objectMapper, stream);
+    }
+    
     /**
      * 转换Bedrock响应为OpenAI格式
      */
@@ -32,6 +57,16 @@ public interface BedrockModelAdapter {
      */
     List<ChatCompletionChunk> convertStreamChunk(String chunk, ObjectMapper objectMapper) throws Exception;
     
+    /**
+     * 为一个流创建解码器
+     * 默认逐块调用 {@link #convertStreamChunk}，适配器可以覆盖以直接解析字节并复用流内状态
+     *
+     * @param modelId 模型ID
+     */
+    default BedrockStreamDecoder newStreamDecoder(String modelId, ObjectMapper objectMapper) {
+        return new StringStreamDecoder(this, objectMapper);
+    }
+    
     /**
      * 是否支持指定的模型
      */
@@ -4,42 +4,47 @@ import io.github.twwch.openai.sdk.exception.OpenAIException;
 
 /**
  * Bedrock模型适配器工厂
+ * 按模型能力表中的模型系列选择适配器，无状态的适配器各服务共享同一个实例；
+ * Claude和Converse适配器带有模型的缓存断点上限，按模型能力创建
  */
 public class BedrockModelAdapterFactory {
-    
+    private static final LlamaModelAdapter LLAMA = new LlamaModelAdapter();
+    private static final TitanModelAdapter TITAN = new TitanModelAdapter();
+    private static final JurassicModelAdapter JURASSIC = new JurassicModelAdapter();
+    private static final CohereModelAdapter COHERE = new CohereModelAdapter();
+
     /**
-     * 根据模型ID创建适配器
+     * 根据模型ID创建InvokeModel适配器
      */
     public static BedrockModelAdapter createAdapter(String modelId) {
-        if (modelId == null || modelId.isEmpty()) {
-            throw new OpenAIException("模型ID不能为空");
-        }
-        
-        // Claude模型
-        if (modelId.contains("anthropic.claude")) {
-            return new ClaudeModelAdapter();
-        }
-        
-        // Llama模型
-        if (modelId.contains("meta.llama")) {
-            return new LlamaModelAdapter();
-        }
-        
-        // Amazon Titan模型
-        if (modelId.contains("amazon.titan")) {
-            return new TitanModelAdapter();
-        }
-        
-        // AI21 Jurassic模型
-        if (modelId.contains("ai21.j2")) {
-            return new JurassicModelAdapter();
-        }
-        
-        // Cohere模型
-        if (modelId.contains("cohere.")) {
-            return new CohereModelAdapter();
+        return createAdapter(ModelCapabilityRegistry.getDefault().resolve(modelId, false));
+    }
+
+    /**
+     * 根据模型能力创建InvokeModel适配器
+     */
+    public static BedrockModelAdapter createAdapter(ModelCapabilities capabilities) {
+        String family = capabilities.getFamily() != null ? capabilities.getFamily() : "";
+        switch (family) {
+            case "claude":
+                return new ClaudeModelAdapter(capabilities.getMaxCacheBlocks());
+            case "llama":
+                return LLAMA;
+            case "titan":
+                return TITAN;
+            case "jurassic":
+                return JURASSIC;
+            case "cohere":
+                return COHERE;
+            default:
+                throw new OpenAIException("不支持的Bedrock模型: " + capabilities.getId());
         }
-        
-        throw new OpenAIException("不支持的Bedrock模型: " + modelId);
     }
-}
\ No newline at end of file
+
+    /**
+     * 根据模型能力创建Converse API的适配器，所有模型系列共用一套转换
+     */
+    public static ConverseModelAdapter createConverseAdapter(ModelCapabilities capabilities) {
+        return new ConverseModelAdapter(capabilities.getMaxCacheBlocks());
+    }
+}
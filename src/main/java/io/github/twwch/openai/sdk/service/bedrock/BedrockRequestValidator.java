@@ -2,16 +2,22 @@ package io.github.twwch.openai.sdk.service.bedrock;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
 import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
  * Bedrock请求验证器
- * 用于验证和清理请求参数，避免METRIC_VALUES错误
+ * 用于验证和清理请求参数，避免METRIC_VALUES错误；
+ * 传入模型能力时在发送前按模型限制本地校验和调整请求，明显超限的请求不再等一次往返才失败。
  */
 public class BedrockRequestValidator {
     private static final Logger logger = LoggerFactory.getLogger(BedrockRequestValidator.class);
@@ -33,6 +39,180 @@ public class BedrockRequestValidator {
         SUPPORTED_PARAMS.add("anthropic_beta");
     }
     
+    /**
+     * 按模型能力验证并调整请求
+     * 可以自动调整的直接调整：max_tokens 和 temperature 超出上限时截断、不支持的工具和图片移除、超出数量或模型不支持的缓存断点移除；
+     * 图片数量超限、输入明显超过上下文长度时直接抛出异常。
+     *
+     * @param capabilities 模型能力，为null时只做通用清理
+     * @throws OpenAIException 请求无法在本地调整为合法请求
+     */
+    public static void validateAndCleanRequest(ChatCompletionRequest request, ModelCapabilities capabilities) {
+        Double temperature = request.getTemperature();
+        validateAndCleanRequest(request);
+        if (capabilities == null) {
+            return;
+        }
+        String modelId = capabilities.getId();
+
+        // 按模型的上限检查temperature，代替通用清理中的0-1范围
+        if (temperature != null && temperature >= 0) {
+            if (temperature > capabilities.getMaxTemperature()) {
+                logger.warn("temperature ({}) 超过模型 {} 的上限 ({})，已调整", temperature, modelId,
+                        capabilities.getMaxTemperature());
+                temperature = capabilities.getMaxTemperature();
+            }
+            request.setTemperature(temperature);
+        }
+
+        if (!capabilities.isSupportsTools() && request.getTools() != null && !request.getTools().isEmpty()) {
+            logger.warn("模型 {} 不支持工具调用，已移除 {} 个工具", modelId, request.getTools().size());
+            request.setTools(null);
+            request.setToolChoice(null);
+        }
+
+        int images = countImages(request);
+        if (images > 0 && !capabilities.isSupportsImages()) {
+            logger.warn("模型 {} 不支持图片输入，已移除 {} 张图片", modelId, images);
+            removeImages(request);
+        } else if (capabilities.getMaxImages() > 0 && images > capabilities.getMaxImages()) {
+            throw new OpenAIException(String.format("模型 %s 单次请求最多支持 %d 张图片，当前 %d 张",
+                    modelId, capabilities.getMaxImages(), images));
+        }
+
+        limitCacheBlocks(request, capabilities);
+
+        if (capabilities.getMaxOutputTokens() > 0 && request.getMaxTokens() != null
+                && request.getMaxTokens() > capabilities.getMaxOutputTokens()) {
+            logger.warn("max_tokens ({}) 超过模型 {} 的上限 ({})，已调整", request.getMaxTokens(), modelId,
+                    capabilities.getMaxOutputTokens());
+            request.setMaxTokens(capabilities.getMaxOutputTokens());
+        }
+
+        if (capabilities.getContextWindow() > 0) {
+            int inputTokens = estimateMinInputTokens(request);
+            if (inputTokens >= capabilities.getContextWindow()) {
+                throw new OpenAIException(String.format("输入至少约 %d tokens，超过模型 %s 的上下文长度 %d",
+                        inputTokens, modelId, capabilities.getContextWindow()));
+            }
+            int available = capabilities.getContextWindow() - inputTokens;
+            if (request.getMaxTokens() != null && request.getMaxTokens() > available) {
+                logger.warn("max_tokens ({}) 加上输入超过模型 {} 的上下文长度，已调整为 {}", request.getMaxTokens(),
+                        modelId, available);
+                request.setMaxTokens(available);
+            }
+        }
+    }
+
+    /**
+     * 输入token数的保守估计（下限）：按UTF-8字节数除以4，英文约4字节一个token，中文3字节至少一个token，
+     * 因此实际token数不会低于该值；只用于拒绝明显超限的请求
+     */
+    static int estimateMinInputTokens(ChatCompletionRequest request) {
+        long bytes = 0;
+        for (ChatMessage message : request.getMessages()) {
+            bytes += message.getContentAsString().getBytes(StandardCharsets.UTF_8).length;
+            if (message.getToolCalls() != null) {
+                for (ChatMessage.ToolCall toolCall : message.getToolCalls()) {
+                    if (toolCall.getFunction() != null && toolCall.getFunction().getArguments() != null) {
+                        bytes += toolCall.getFunction().getArguments().getBytes(StandardCharsets.UTF_8).length;
+                    }
+                }
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes / 4);
+    }
+
+    private static int countImages(ChatCompletionRequest request) {
+        int count = 0;
+        for (ChatMessage message : request.getMessages()) {
+            for (ChatMessage.ContentPart part : parts(message)) {
+                if ("image_url".equals(part.getType())) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void removeImages(ChatCompletionRequest request) {
+        for (ChatMessage message : request.getMessages()) {
+            List<ChatMessage.ContentPart> parts = parts(message);
+            if (parts.isEmpty()) {
+                continue;
+            }
+            List<ChatMessage.ContentPart> kept = new ArrayList<>(parts.size());
+            for (ChatMessage.ContentPart part : parts) {
+                if (!"image_url".equals(part.getType())) {
+                    kept.add(part);
+                }
+            }
+            if (kept.size() != parts.size()) {
+                message.setContent(kept.toArray(new ChatMessage.ContentPart[0]));
+            }
+        }
+    }
+
+    /**
+     * 模型不支持缓存时移除所有缓存断点，否则只保留前 max_cache_blocks 个（system缓存优先）
+     */
+    private static void limitCacheBlocks(ChatCompletionRequest request, ModelCapabilities capabilities) {
+        int limit = capabilities.isSupportsPromptCache() ? capabilities.getMaxCacheBlocks() : 0;
+        if (capabilities.isSupportsPromptCache() && limit <= 0) {
+            return;
+        }
+        int used = 0;
+        int removed = 0;
+        if (Boolean.TRUE.equals(request.getBedrockEnableSystemCache())) {
+            if (used < limit) {
+                used++;
+            } else {
+                request.setBedrockEnableSystemCache(null);
+                removed++;
+            }
+        }
+        for (ChatMessage message : request.getMessages()) {
+            for (ChatMessage.ContentPart part : parts(message)) {
+                if (part.getCacheControl() == null) {
+                    continue;
+                }
+                if (used < limit) {
+                    used++;
+                } else {
+                    part.setCacheControl(null);
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            if (limit == 0) {
+                logger.warn("模型 {} 不支持prompt缓存，已移除 {} 个缓存断点", capabilities.getId(), removed);
+            } else {
+                logger.warn("缓存断点数量 ({}) 超过模型 {} 的上限 ({})，已移除后面的 {} 个", used + removed,
+                        capabilities.getId(), limit, removed);
+            }
+        }
+    }
+
+    static List<ChatMessage.ContentPart> parts(ChatMessage message) {
+        List<ChatMessage.ContentPart> parts = new ArrayList<>();
+        Object content = message.getContent();
+        if (content instanceof ChatMessage.ContentPart[]) {
+            for (ChatMessage.ContentPart part : (ChatMessage.ContentPart[]) content) {
+                if (part != null) {
+                    parts.add(part);
+                }
+            }
+        } else if (content instanceof List) {
+            for (Object item : (List<?>) content) {
+                if (item instanceof ChatMessage.ContentPart) {
+                    parts.add((ChatMessage.ContentPart) item);
+                }
+            }
+        }
+        return parts;
+    }
+
     /**
      * 验证并清理请求
      */
@@ -44,7 +224,7 @@ public class BedrockRequestValidator {
         request.setLogprobs(null);
         request.setTopLogprobs(null);
         request.setLogitBias(null);
-        request.setUser(null);
+        // user字段不会被适配器写入Bedrock请求体，保留用于按租户记账
         request.setResponseFormat(null);
         request.setAudio(null);
         request.setMaxCompletionTokens(null);
@@ -0,0 +1,26 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
+
+import java.util.List;
+
+/**
+ * Bedrock流式响应解码器
+ * 每个流创建一个实例（非线程安全），按顺序解码每个PayloadPart的字节，
+ * 可以在同一个流内复用ID、时间戳等状态。
+ */
+public interface BedrockStreamDecoder {
+    /**
+     * 解码一个PayloadPart
+     *
+     * @param payload 数据块字节（调用方不再修改，可直接引用）
+     * @return 转换后的数据块，无需转发的事件返回空列表
+     */
+    List<ChatCompletionChunk> decode(byte[] payload) throws Exception;
+
+    /**
+     * 流最后一个数据块中的 amazon-bedrock-invocationMetrics（服务端统计的token数和耗时），未收到时为null
+     */
+    JsonNode getInvocationMetrics();
+}
@@ -0,0 +1,346 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Claude prompt缓存断点规划器
+ * 按Claude的缓存前缀顺序（tools、system、messages）逐段计算累积前缀的哈希，记录在有界的LRU索引中。
+ * 每个请求在断点上限内，把断点放在之前出现过、且达到模型最小可缓存长度的最长前缀上：
+ * 只出现过一次的前缀不写缓存，避免为不会复用的内容支付缓存写入溢价。
+ * 对话在延续（最长稳定前缀落在某条消息上）时，再在请求末尾放一个断点，供下一轮读取。
+ * 请求中手动设置的断点保留并计入上限。断点放在消息的副本上（请求的消息列表换成新列表），
+ * 调用方复用的消息对象和列表不会带上SDK放置的断点，下一轮不会被当作手动断点。
+ * 线程安全，一个服务（模型）使用一个实例。
+ */
+public class CacheBreakpointPlanner {
+    private static final Logger logger = LoggerFactory.getLogger(CacheBreakpointPlanner.class);
+
+    /** 索引中默认保留的前缀数 */
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final int maxEntries;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // 前缀哈希 -> 出现次数，按访问顺序淘汰
+    private final LinkedHashMap<Long, Integer> prefixes;
+
+    public CacheBreakpointPlanner() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries 索引中保留的前缀数上限
+     */
+    public CacheBreakpointPlanner(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries必须大于0");
+        }
+        this.maxEntries = maxEntries;
+        this.prefixes = new LinkedHashMap<Long, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+                return size() > CacheBreakpointPlanner.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 为请求规划缓存断点并写入请求（system缓存开关或消息副本最后一个文本块的cache_control），
+     * 同时把请求的各级前缀记入索引；放置了消息断点时请求的消息列表换成新列表，原列表和消息不变
+     *
+     * @return 新增的断点数
+     */
+    public int plan(ChatCompletionRequest request, ModelCapabilities capabilities) {
+        if (request.getMessages() == null || !capabilities.isSupportsPromptCache()
+                || capabilities.getMaxCacheBlocks() <= 0) {
+            return 0;
+        }
+        List<Boundary> boundaries = boundaries(request);
+        if (boundaries.isEmpty()) {
+            return 0;
+        }
+
+        synchronized (prefixes) {
+            for (Boundary boundary : boundaries) {
+                Integer count = prefixes.get(boundary.hash);
+                boundary.stable = count != null;
+                prefixes.put(boundary.hash, count == null ? 1 : count + 1);
+            }
+        }
+
+        int budget = capabilities.getMaxCacheBlocks() - countExisting(request);
+        if (budget <= 0) {
+            return 0;
+        }
+        List<Boundary> candidates = new ArrayList<>();
+        for (Boundary boundary : boundaries) {
+            if (boundary.markable && !boundary.marked && boundary.tokens >= capabilities.getMinCacheTokens()) {
+                candidates.add(boundary);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        // 候选按前缀从短到长排列，依次选择：最长稳定前缀、（对话延续时）请求末尾、system、其余稳定前缀（从长到短）
+        List<Boundary> picks = new ArrayList<>();
+        Boundary longestStable = null;
+        for (Boundary candidate : candidates) {
+            if (candidate.stable) {
+                longestStable = candidate;
+            }
+        }
+        if (longestStable != null) {
+            picks.add(longestStable);
+            Boundary last = candidates.get(candidates.size() - 1);
+            if (longestStable.message != null && last != longestStable) {
+                picks.add(last);
+            }
+        }
+        Boundary system = candidates.get(0);
+        if (system.message == null && system.stable && !picks.contains(system)) {
+            picks.add(system);
+        }
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            Boundary candidate = candidates.get(i);
+            if (candidate.stable && !picks.contains(candidate)) {
+                picks.add(candidate);
+            }
+        }
+
+        List<ChatMessage> messages = new ArrayList<>(request.getMessages());
+        int added = 0;
+        for (Boundary pick : picks) {
+            if (added >= budget) {
+                break;
+            }
+            mark(request, messages, pick);
+            added++;
+        }
+        request.setMessages(messages);
+        if (added > 0) {
+            logger.debug("自动放置了 {} 个缓存断点 (前缀数: {})", added, boundaries.size());
+        }
+        return added;
+    }
+
+    /**
+     * 索引中的前缀数
+     */
+    public int size() {
+        synchronized (prefixes) {
+            return prefixes.size();
+        }
+    }
+
+    /**
+     * 按缓存前缀顺序计算各级前缀：tools和system合为第一段，之后每条非system消息一段
+     */
+    private List<Boundary> boundaries(ChatCompletionRequest request) {
+        MessageDigest digest = sha256();
+        long bytes = 0;
+        List<Boundary> boundaries = new ArrayList<>();
+
+        if (request.getTools() != null && !request.getTools().isEmpty()) {
+            try {
+                byte[] tools = objectMapper.writeValueAsBytes(request.getTools());
+                digest.update(tools);
+                bytes += tools.length;
+            } catch (Exception e) {
+                // 无法序列化的工具定义不参与规划
+                logger.debug("工具定义序列化失败，跳过缓存断点规划: {}", e.getMessage());
+                return boundaries;
+            }
+        }
+        digest.update((byte) 0);
+        StringBuilder system = new StringBuilder();
+        for (ChatMessage message : request.getMessages()) {
+            if ("system".equals(message.getRole())) {
+                if (system.length() > 0) {
+                    system.append("\n\n");
+                }
+                system.append(message.getContentAsString());
+            }
+        }
+        if (system.length() > 0) {
+            byte[] text = system.toString().getBytes(StandardCharsets.UTF_8);
+            digest.update(text);
+            bytes += text.length;
+            boundaries.add(new Boundary(null, -1, chain(digest), bytes / 4, true,
+                    Boolean.TRUE.equals(request.getBedrockEnableSystemCache())));
+        }
+
+        List<ChatMessage> messages = request.getMessages();
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessage message = messages.get(i);
+            if ("system".equals(message.getRole())) {
+                continue;
+            }
+            bytes += update(digest, message);
+            boundaries.add(new Boundary(message, i, chain(digest), bytes / 4, isMarkable(message),
+                    isMarked(message)));
+        }
+        return boundaries;
+    }
+
+    /**
+     * 把一条消息计入摘要，返回计入token估计的字节数（图片只参与哈希）
+     */
+    private static long update(MessageDigest digest, ChatMessage message) {
+        long bytes = 0;
+        bytes += put(digest, message.getRole());
+        bytes += put(digest, message.getToolCallId());
+        Object content = message.getContent();
+        if (content instanceof String) {
+            bytes += put(digest, (String) content);
+        } else {
+            for (ChatMessage.ContentPart part : BedrockRequestValidator.parts(message)) {
+                if ("text".equals(part.getType())) {
+                    bytes += put(digest, part.getText());
+                } else if (part.getImageUrl() != null) {
+                    put(digest, part.getImageUrl().getUrl());
+                }
+            }
+        }
+        if (message.getToolCalls() != null) {
+            for (ChatMessage.ToolCall toolCall : message.getToolCalls()) {
+                put(digest, toolCall.getId());
+                if (toolCall.getFunction() != null) {
+                    bytes += put(digest, toolCall.getFunction().getName());
+                    bytes += put(digest, toolCall.getFunction().getArguments());
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static int put(MessageDigest digest, String value) {
+        // 每个字段后写入分隔符，避免相邻字段拼接后产生相同的哈希
+        digest.update((byte) 0);
+        if (value == null) {
+            return 0;
+        }
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(data);
+        return data.length;
+    }
+
+    /**
+     * 取当前累积摘要的前8字节作为前缀哈希，并把结果链入后续计算
+     */
+    private static long chain(MessageDigest digest) {
+        byte[] hash = digest.digest();
+        digest.update(hash);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (hash[i] & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * 只有写成普通内容的user/assistant消息能携带cache_control（tool结果和工具调用消息不能）
+     */
+    private static boolean isMarkable(ChatMessage message) {
+        if (!"user".equals(message.getRole()) && !"assistant".equals(message.getRole())) {
+            return false;
+        }
+        if (message.getToolCalls() != null && message.getToolCalls().length > 0) {
+            return false;
+        }
+        if (message.getContent() instanceof String) {
+            return !((String) message.getContent()).isEmpty();
+        }
+        return message.getContent() instanceof ChatMessage.ContentPart[] && lastText(message) != null;
+    }
+
+    private static boolean isMarked(ChatMessage message) {
+        for (ChatMessage.ContentPart part : BedrockRequestValidator.parts(message)) {
+            if (part.getCacheControl() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int countExisting(ChatCompletionRequest request) {
+        int count = Boolean.TRUE.equals(request.getBedrockEnableSystemCache()) ? 1 : 0;
+        for (ChatMessage message : request.getMessages()) {
+            for (ChatMessage.ContentPart part : BedrockRequestValidator.parts(message)) {
+                if (part.getCacheControl() != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 放置断点：消息断点放在消息的副本上，替换新列表中对应位置的消息
+     */
+    private static void mark(ChatCompletionRequest request, List<ChatMessage> messages, Boundary boundary) {
+        if (boundary.message == null) {
+            request.setBedrockEnableSystemCache(true);
+            return;
+        }
+        ChatMessage message = boundary.message.copy();
+        messages.set(boundary.index, message);
+        if (message.getContent() instanceof String) {
+            message.setContent(new ChatMessage.ContentPart[]{
+                    ChatMessage.ContentPart.textWithCache((String) message.getContent(), true)});
+        } else {
+            lastText(message).setCacheControl(ChatMessage.ContentPart.CacheControl.ephemeral());
+        }
+    }
+
+    private static ChatMessage.ContentPart lastText(ChatMessage message) {
+        ChatMessage.ContentPart last = null;
+        for (ChatMessage.ContentPart part : BedrockRequestValidator.parts(message)) {
+            if ("text".equals(part.getType()) && part.getText() != null && !part.getText().isEmpty()) {
+                last = part;
+            }
+        }
+        return last;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 一个可放置断点的前缀终点；message为null表示tools+system，index为消息在请求中的位置
+     */
+    private static final class Boundary {
+        private final ChatMessage message;
+        private final int index;
+        private final long hash;
+        private final long tokens;
+        private final boolean markable;
+        private final boolean marked;
+        private boolean stable;
+
+        Boundary(ChatMessage message, int index, long hash, long tokens, boolean markable, boolean marked) {
+            this.message = message;
+            this.index = index;
+            this.hash = hash;
+            this.tokens = tokens;
+            this.markable = markable;
+            this.marked = marked;
+        }
+    }
+}
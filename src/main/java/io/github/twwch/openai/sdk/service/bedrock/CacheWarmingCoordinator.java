@@ -0,0 +1,222 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import io.github.twwch.openai.sdk.service.PromptPrefix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Prompt缓存预热协调器
+ * 新的长system prompt上线时，并发请求互相看不到对方写入的缓存，每个请求都要支付缓存写入溢价。
+ * 协调器按缓存前缀的指纹（缓存断点之前的tools、system和消息）去重：某个前缀的第一个请求作为领头请求直接发出，
+ * 同一前缀的并发请求等待领头请求的用量（流式为message_start）确认缓存已写入后再发出，最多等待 maxWait；
+ * 确认后的前缀在缓存有效期内直接放行。没有缓存断点的请求不参与协调。
+ */
+public class CacheWarmingCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(CacheWarmingCoordinator.class);
+
+    /** 默认最多等待领头请求的时间 */
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 3_000L;
+    /** Claude prompt缓存的有效期（每次命中刷新） */
+    public static final long DEFAULT_CACHE_TTL_MILLIS = 5 * 60 * 1000L;
+
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    private static final CacheWarmingCoordinator DEFAULT = new CacheWarmingCoordinator(
+            DEFAULT_MAX_WAIT_MILLIS, DEFAULT_CACHE_TTL_MILLIS);
+    private static final CacheWarmingCoordinator DISABLED = new CacheWarmingCoordinator();
+
+    private final boolean enabled;
+    private final long maxWaitMillis;
+    private final long cacheTtlNanos;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxWaitMillis  同一前缀的并发请求最多等待领头请求的时间（毫秒）
+     * @param cacheTtlMillis 缓存确认写入后视为有效的时间（毫秒）
+     */
+    public CacheWarmingCoordinator(long maxWaitMillis, long cacheTtlMillis) {
+        this.enabled = true;
+        this.maxWaitMillis = maxWaitMillis;
+        this.cacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(cacheTtlMillis);
+    }
+
+    private CacheWarmingCoordinator() {
+        this.enabled = false;
+        this.maxWaitMillis = 0;
+        this.cacheTtlNanos = 0;
+    }
+
+    /**
+     * 获取进程内共享的协调器（默认参数）
+     */
+    public static CacheWarmingCoordinator getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 获取关闭状态的协调器，所有请求直接放行
+     */
+    public static CacheWarmingCoordinator disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 为请求申请放行
+     *
+     * @param fingerprint 缓存前缀指纹，为null时直接放行
+     * @param scheduler   等待超时使用的调度器
+     * @return 放行凭证，请求结束或拿到用量后必须调用 {@link Lease#complete}
+     */
+    public Lease admit(String fingerprint, RetryScheduler scheduler) {
+        if (!enabled || fingerprint == null) {
+            return Lease.PASS;
+        }
+        long now = System.nanoTime();
+        Lease[] lease = new Lease[1];
+        entries.compute(fingerprint, (k, entry) -> {
+            Entry current = entry != null ? entry : new Entry();
+            if (current.isWarm(now)) {
+                lease[0] = new Lease(this, k, null, CompletableFuture.completedFuture(null));
+            } else if (current.warming == null || current.warming.isDone()) {
+                current.warming = new CompletableFuture<>();
+                lease[0] = new Lease(this, k, current.warming, CompletableFuture.completedFuture(null));
+            } else {
+                lease[0] = new Lease(this, k, null, current.warming);
+            }
+            return current;
+        });
+        if (entries.size() > PURGE_THRESHOLD) {
+            purge(now);
+        }
+
+        Lease result = lease[0];
+        if (!result.ready.isDone()) {
+            // 等待领头请求，超时后照常发出
+            CompletableFuture<Void> ready = new CompletableFuture<>();
+            result.ready.whenComplete((v, t) -> ready.complete(null));
+            try {
+                scheduler.schedule(() -> {
+                    if (ready.complete(null)) {
+                        logger.debug("等待缓存预热超时 ({} ms)，直接发出请求", maxWaitMillis);
+                    }
+                }, maxWaitMillis);
+            } catch (RuntimeException e) {
+                ready.complete(null);
+            }
+            return new Lease(this, fingerprint, null, ready);
+        }
+        if (result.leader != null) {
+            logger.debug("缓存前缀 {} 尚未预热，作为领头请求发出", fingerprint);
+        }
+        return result;
+    }
+
+    /**
+     * 协调中的前缀数
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void onComplete(String fingerprint, CompletableFuture<Void> leader, ChatCompletionResponse.Usage usage) {
+        boolean cached = usage != null
+                && ((usage.getCacheCreationInputTokens() != null && usage.getCacheCreationInputTokens() > 0)
+                || (usage.getCacheReadInputTokens() != null && usage.getCacheReadInputTokens() > 0));
+        if (cached) {
+            long warmUntil = System.nanoTime() + cacheTtlNanos;
+            entries.compute(fingerprint, (k, entry) -> {
+                Entry current = entry != null ? entry : new Entry();
+                current.warm = true;
+                current.warmUntil = warmUntil;
+                return current;
+            });
+        }
+        if (leader != null) {
+            // 领头请求失败或没有写入缓存时同样放行等待的请求
+            leader.complete(null);
+        }
+    }
+
+    private void purge(long now) {
+        entries.entrySet().removeIf(e -> !e.getValue().isWarm(now)
+                && (e.getValue().warming == null || e.getValue().warming.isDone()));
+    }
+
+    /**
+     * 计算请求的缓存前缀指纹：最后一个缓存断点之前的tools、system和消息
+     *
+     * @param scope 区分缓存空间的标识（区域和模型）
+     * @return 请求没有缓存断点时返回null
+     */
+    public static String fingerprint(String scope, ChatCompletionRequest request) {
+        PromptPrefix prefix = PromptPrefix.ofCacheBreakpoints(scope, request);
+        return prefix != null ? prefix.getFingerprint() : null;
+    }
+
+    /**
+     * 放行凭证
+     */
+    public static final class Lease {
+        static final Lease PASS = new Lease(null, null, null, CompletableFuture.completedFuture(null));
+
+        private final CacheWarmingCoordinator coordinator;
+        private final String fingerprint;
+        private final CompletableFuture<Void> leader;
+        private final CompletableFuture<Void> ready;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Lease(CacheWarmingCoordinator coordinator, String fingerprint, CompletableFuture<Void> leader,
+                      CompletableFuture<Void> ready) {
+            this.coordinator = coordinator;
+            this.fingerprint = fingerprint;
+            this.leader = leader;
+            this.ready = ready;
+        }
+
+        /**
+         * 可以发出请求时完成（不会异常完成）
+         */
+        public CompletableFuture<Void> ready() {
+            return ready;
+        }
+
+        /**
+         * 是否是该前缀的领头请求
+         */
+        public boolean isLeader() {
+            return leader != null;
+        }
+
+        /**
+         * 报告请求的用量（流式为第一个带用量的数据块），失败时传入null；只有第一次调用有效
+         */
+        public void complete(ChatCompletionResponse.Usage usage) {
+            if (coordinator != null && completed.compareAndSet(false, true)) {
+                coordinator.onComplete(fingerprint, leader, usage);
+            }
+        }
+    }
+
+    private static final class Entry {
+        // 只在 ConcurrentHashMap.compute 中写入
+        private volatile boolean warm;
+        private volatile long warmUntil;
+        private volatile CompletableFuture<Void> warming;
+
+        boolean isWarm(long now) {
+            return warm && warmUntil - now > 0;
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.limit.Admission;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.util.ImageUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Claude请求体的流式写入器
+ * 使用JsonGenerator把Bedrock Claude请求直接写入字节缓冲区，不再为每条消息、图片和工具构建ObjectNode树；
+ * cache_control 断点在写入时计数，超过上限的直接跳过，无需写完后再递归遍历整棵树。
+ */
+final class ClaudeRequestWriter {
+    private static final Logger logger = LoggerFactory.getLogger(ClaudeRequestWriter.class);
+
+    /**
+     * 压缩后base64图片的目标大小，Bedrock限制是5MB（base64编码后），留100KB余量
+     */
+    static final int MAX_IMAGE_BASE64_SIZE = 5 * 1024 * 1024 - 100 * 1024;
+
+    private final ObjectMapper objectMapper;
+    private final JsonGenerator generator;
+    /** 下载图片的截止时间（epoch毫秒），为0时不限制 */
+    private final long deadlineMillis;
+    /** cache_control 块的数量上限（模型能力表的 max_cache_blocks），不大于0时不限制 */
+    private final int maxCacheBlocks;
+    private int cacheControlBlocks;
+    private int droppedCacheControlBlocks;
+
+    private ClaudeRequestWriter(ObjectMapper objectMapper, JsonGenerator generator, long deadlineMillis,
+                                int maxCacheBlocks) {
+        this.objectMapper = objectMapper;
+        this.generator = generator;
+        this.deadlineMillis = deadlineMillis;
+        this.maxCacheBlocks = maxCacheBlocks;
+    }
+
+    /**
+     * 把请求写为Bedrock Claude请求体，图片下载不超过请求自身的截止时间
+     *
+     * @param request      OpenAI格式的请求
+     * @param objectMapper 用于写入工具参数schema等任意对象
+     * @param maxCacheBlocks cache_control 块的数量上限，不大于0时不限制
+     * @return UTF-8编码的请求体
+     */
+    static byte[] write(ChatCompletionRequest request, ObjectMapper objectMapper, int maxCacheBlocks)
+            throws IOException {
+        return write(request, objectMapper, Admission.of(request).getDeadlineMillis(), maxCacheBlocks);
+    }
+
+    /**
+     * 把请求写为Bedrock Claude请求体
+     *
+     * @param request        OpenAI格式的请求
+     * @param objectMapper   用于写入工具参数schema等任意对象
+     * @param deadlineMillis 图片下载的截止时间（epoch毫秒），为0时不限制
+     * @param maxCacheBlocks cache_control 块的数量上限，不大于0时不限制
+     * @return UTF-8编码的请求体
+     */
+    static byte[] write(ChatCompletionRequest request, ObjectMapper objectMapper, long deadlineMillis,
+                        int maxCacheBlocks) throws IOException {
+        ByteArrayBuilder buffer = new ByteArrayBuilder(8 * 1024);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer, JsonEncoding.UTF8)) {
+            new ClaudeRequestWriter(objectMapper, generator, deadlineMillis, maxCacheBlocks).writeRequest(request);
+        }
+        return buffer.toByteArray();
+    }
+
+    private void writeRequest(ChatCompletionRequest request) throws IOException {
+        // system消息合并为一个系统提示，其他消息按顺序写入messages
+        StringBuilder systemPrompt = new StringBuilder();
+        for (ChatMessage message : request.getMessages()) {
+            if ("system".equals(message.getRole())) {
+                if (systemPrompt.length() > 0) {
+                    systemPrompt.append("\n\n");
+                }
+                systemPrompt.append(message.getContentAsString());
+            }
+        }
+
+        generator.writeStartObject();
+        // 必须设置的参数
+        generator.writeStringField("anthropic_version", "bedrock-2023-05-31");
+        // 添加 anthropic_beta 参数以支持细粒度工具流式传输
+        generator.writeArrayFieldStart("anthropic_beta");
+        generator.writeString("fine-grained-tool-streaming-2025-05-14");
+        generator.writeEndArray();
+
+        // max_tokens是必须的
+        generator.writeNumberField("max_tokens", request.getMaxTokens() != null ? request.getMaxTokens() : ClaudeModelAdapter.DEFAULT_MAX_TOKENS);
+
+        // system写在messages之前，cache_control 超出上限时优先保留 system prompt 的缓存
+        if (systemPrompt.length() > 0) {
+            writeSystem(systemPrompt.toString(), Boolean.TRUE.equals(request.getBedrockEnableSystemCache()));
+        }
+
+        // temperature - 范围 0-1，默认 1
+        if (request.getTemperature() != null && request.getTemperature() >= 0 && request.getTemperature() <= 1) {
+            generator.writeNumberField("temperature", request.getTemperature());
+        }
+        // top_p - 范围 0-1，默认 0.999
+        if (request.getTopP() != null && request.getTopP() >= 0 && request.getTopP() <= 1) {
+            generator.writeNumberField("top_p", request.getTopP());
+        }
+        if (request.getStop() != null && !request.getStop().isEmpty()) {
+            generator.writeArrayFieldStart("stop_sequences");
+            for (String stop : request.getStop()) {
+                generator.writeString(stop);
+            }
+            generator.writeEndArray();
+        }
+
+        if (request.getTools() != null && !request.getTools().isEmpty()) {
+            writeTools(request.getTools());
+            // 有tools时必须设置tool_choice
+            writeToolChoice(request.getToolChoice());
+        }
+
+        generator.writeArrayFieldStart("messages");
+        for (ChatMessage message : request.getMessages()) {
+            if (!"system".equals(message.getRole())) {
+                writeMessage(message);
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+
+        if (droppedCacheControlBlocks > 0) {
+            logger.warn("cache_control 块数量 ({}) 超过模型上限 ({})，已移除后面的 {} 个",
+                    cacheControlBlocks + droppedCacheControlBlocks, maxCacheBlocks, droppedCacheControlBlocks);
+        } else if (cacheControlBlocks > 0) {
+            logger.debug("cache_control 块数量: {}, 未超过限制 ({})", cacheControlBlocks, maxCacheBlocks);
+        }
+    }
+
+    private void writeSystem(String systemPrompt, boolean cache) throws IOException {
+        if (!cache) {
+            // 标准的字符串格式
+            generator.writeStringField("system", systemPrompt);
+            return;
+        }
+        // 启用了system缓存时使用数组格式
+        generator.writeArrayFieldStart("system");
+        generator.writeStartObject();
+        generator.writeStringField("type", "text");
+        generator.writeStringField("text", systemPrompt);
+        writeCacheControl("ephemeral");
+        generator.writeEndObject();
+        generator.writeEndArray();
+        logger.debug("启用了system prompt缓存,system长度: {} 字符", systemPrompt.length());
+    }
+
+    private void writeMessage(ChatMessage message) throws IOException {
+        generator.writeStartObject();
+        if ("tool".equals(message.getRole())) {
+            // Bedrock不支持tool角色，需要转换为tool_result格式的user消息
+            generator.writeStringField("role", "user");
+            generator.writeArrayFieldStart("content");
+            generator.writeStartObject();
+            generator.writeStringField("type", "tool_result");
+            generator.writeStringField("tool_use_id", message.getToolCallId());
+            generator.writeStringField("content", message.getContentAsString());
+            generator.writeEndObject();
+            generator.writeEndArray();
+        } else {
+            generator.writeStringField("role", message.getRole());
+            if (message.getToolCalls() != null && message.getToolCalls().length > 0) {
+                writeToolCalls(message);
+            } else {
+                writeContent(message.getContent());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeToolCalls(ChatMessage message) throws IOException {
+        generator.writeArrayFieldStart("content");
+        String textContent = message.getContentAsString();
+        if (textContent != null && !textContent.isEmpty()) {
+            writeText(textContent, null);
+        }
+        for (ChatMessage.ToolCall toolCall : message.getToolCalls()) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "tool_use");
+            generator.writeStringField("id", toolCall.getId());
+            generator.writeStringField("name", toolCall.getFunction().getName());
+            String arguments = toolCall.getFunction().getArguments();
+            if (arguments != null) {
+                generator.writeFieldName("input");
+                JsonNode args;
+                try {
+                    args = objectMapper.readTree(arguments);
+                } catch (Exception e) {
+                    // 如果解析失败，使用空对象
+                    args = null;
+                }
+                if (args != null && !args.isMissingNode()) {
+                    generator.writeTree(args);
+                } else {
+                    generator.writeStartObject();
+                    generator.writeEndObject();
+                }
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private void writeContent(Object content) throws IOException {
+        if (content instanceof String) {
+            generator.writeStringField("content", (String) content);
+        } else if (content instanceof ChatMessage.ContentPart[]) {
+            writeContentParts((ChatMessage.ContentPart[]) content);
+        } else if (content instanceof List) {
+            // Jackson反序列化可能将数组变成List
+            logger.warn("检测到content是List类型,尝试转换为ContentPart数组");
+            generator.writeArrayFieldStart("content");
+            for (Object item : (List<?>) content) {
+                if (item instanceof ChatMessage.ContentPart) {
+                    ChatMessage.ContentPart part = (ChatMessage.ContentPart) item;
+                    if ("text".equals(part.getType())) {
+                        writeText(part.getText(), part.getCacheControl());
+                    } else if ("image_url".equals(part.getType()) && part.getImageUrl() != null) {
+                        logger.warn("List中包含image类型,当前简化处理");
+                    }
+                } else {
+                    logger.warn("List中包含非ContentPart类型的对象: {}", item != null ? item.getClass().getName() : "null");
+                }
+            }
+            generator.writeEndArray();
+        } else if (content != null) {
+            logger.warn("content是未知类型,直接序列化: {}", content.getClass().getName());
+            generator.writeFieldName("content");
+            generator.writeObject(content);
+        }
+    }
+
+    private void writeContentParts(ChatMessage.ContentPart[] parts) throws IOException {
+        // 首先并发下载所有URL图片
+        List<String> urlsToDownload = new ArrayList<>();
+        for (ChatMessage.ContentPart part : parts) {
+            if ("image_url".equals(part.getType()) && part.getImageUrl() != null) {
+                String url = part.getImageUrl().getUrl();
+                if (!url.startsWith("data:image/")) {
+                    urlsToDownload.add(url);
+                }
+            }
+        }
+        Map<String, String> downloadedImages = new HashMap<>();
+        if (!urlsToDownload.isEmpty()) {
+            logger.info("Batch downloading {} images for Bedrock Claude", urlsToDownload.size());
+            downloadedImages = ImageUtils.downloadAndConvertBatch(urlsToDownload, deadlineMillis);
+        }
+
+        generator.writeArrayFieldStart("content");
+        int successfulImages = 0;
+        int failedImages = 0;
+        for (ChatMessage.ContentPart part : parts) {
+            if ("text".equals(part.getType())) {
+                writeText(part.getText(), part.getCacheControl());
+            } else if ("image_url".equals(part.getType()) && part.getImageUrl() != null) {
+                String url = part.getImageUrl().getUrl();
+                String base64Data;
+                if (url.startsWith("data:image/")) {
+                    // 已经是base64编码的图片，超出大小时压缩
+                    base64Data = ImageUtils.compressBase64Image(url, MAX_IMAGE_BASE64_SIZE);
+                    if (!base64Data.equals(url)) {
+                        logger.info("Compressed base64 image for Claude");
+                    }
+                } else {
+                    // 下载时已经压缩过
+                    base64Data = downloadedImages.get(url);
+                    if (base64Data == null) {
+                        logger.error("Failed to download image: {}. Image might be too large or network error occurred.", url);
+                        failedImages++;
+                        // 添加一个文本说明，告知图片下载失败
+                        writeText("[图片下载失败: " + url.substring(url.lastIndexOf('/') + 1) + "]", null);
+                        continue;
+                    }
+                }
+                if (writeImage(base64Data)) {
+                    successfulImages++;
+                } else {
+                    logger.error("Failed to parse base64 data for image: {}", url);
+                    failedImages++;
+                }
+            }
+        }
+        generator.writeEndArray();
+
+        if (failedImages > 0) {
+            logger.warn("Successfully processed {} images, {} images failed to download or process",
+                    successfulImages, failedImages);
+        }
+    }
+
+    /**
+     * 写入base64图片块，图片数据从data URL中直接流式写出，不再拆分复制数MB的字符串
+     *
+     * @return data URL格式无效时返回false
+     */
+    private boolean writeImage(String dataUrl) throws IOException {
+        int comma = dataUrl.indexOf(',');
+        int semicolon = dataUrl.indexOf(';');
+        if (comma < 0 || semicolon < 5 || semicolon > comma) {
+            return false;
+        }
+        generator.writeStartObject();
+        generator.writeStringField("type", "image");
+        generator.writeObjectFieldStart("source");
+        generator.writeStringField("type", "base64");
+        generator.writeStringField("media_type", dataUrl.substring(5, semicolon));
+        generator.writeFieldName("data");
+        StringReader data = new StringReader(dataUrl);
+        data.skip(comma + 1);
+        generator.writeString(data, dataUrl.length() - comma - 1);
+        generator.writeEndObject();
+        generator.writeEndObject();
+        return true;
+    }
+
+    private void writeText(String text, ChatMessage.ContentPart.CacheControl cacheControl) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "text");
+        generator.writeStringField("text", text);
+        if (cacheControl != null) {
+            writeCacheControl(cacheControl.getType());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * 写入 cache_control，超过 {@link #maxCacheBlocks} 的断点直接跳过（保留前面的）
+     */
+    private void writeCacheControl(String type) throws IOException {
+        if (maxCacheBlocks > 0 && cacheControlBlocks >= maxCacheBlocks) {
+            droppedCacheControlBlocks++;
+            return;
+        }
+        cacheControlBlocks++;
+        generator.writeObjectFieldStart("cache_control");
+        generator.writeStringField("type", type);
+        generator.writeEndObject();
+    }
+
+    private void writeTools(List<ChatCompletionRequest.Tool> tools) throws IOException {
+        generator.writeArrayFieldStart("tools");
+        int count = 0;
+        for (ChatCompletionRequest.Tool tool : tools) {
+            if ("function".equals(tool.getType()) && tool.getFunction() != null) {
+                ChatCompletionRequest.Function function = tool.getFunction();
+                generator.writeStartObject();
+                generator.writeStringField("name", function.getName());
+                generator.writeStringField("description", function.getDescription());
+                if (function.getParameters() != null) {
+                    generator.writeFieldName("input_schema");
+                    generator.writeObject(function.getParameters());
+                }
+                generator.writeEndObject();
+                count++;
+            }
+        }
+        generator.writeEndArray();
+        logger.debug("添加了 {} 个工具到请求中", count);
+    }
+
+    private void writeToolChoice(Object toolChoice) throws IOException {
+        ToolChoiceSpec spec = ToolChoiceSpec.resolve(toolChoice);
+        generator.writeObjectFieldStart("tool_choice");
+        if (spec.type != null) {
+            generator.writeStringField("type", spec.type);
+        }
+        if (spec.name != null) {
+            generator.writeStringField("name", spec.name);
+        }
+        generator.writeEndObject();
+        logger.debug("设置 tool_choice: type={}, name={}", spec.type, spec.name);
+    }
+
+    /**
+     * 解析后的 tool_choice，type 取值 auto、none、any、tool（指定工具时 name 为工具名）
+     */
+    static final class ToolChoiceSpec {
+        final String type;
+        final String name;
+
+        private ToolChoiceSpec(String type, String name) {
+            this.type = type;
+            this.name = name;
+        }
+
+        /**
+         * 同时接受OpenAI格式和Bedrock格式的 tool_choice
+         */
+        @SuppressWarnings("unchecked")
+        static ToolChoiceSpec resolve(Object toolChoice) {
+            String type = null;
+            String name = null;
+            if (toolChoice == null || "auto".equals(toolChoice)) {
+                // 如果没有指定，默认为 auto
+                type = "auto";
+            } else if ("none".equals(toolChoice)) {
+                type = "none";
+            } else if ("required".equals(toolChoice)) {
+                type = "any";
+            } else if (toolChoice instanceof String) {
+                // 字符串形式，假定是工具名称
+                type = "tool";
+                name = (String) toolChoice;
+            } else if (toolChoice instanceof Map) {
+                Map<String, Object> tcMap = (Map<String, Object>) toolChoice;
+                // OpenAI 格式: {"type": "function", "function": {"name": "my_function"}}
+                if ("function".equals(tcMap.get("type")) && tcMap.containsKey("function")) {
+                    Map<String, Object> functionMap = (Map<String, Object>) tcMap.get("function");
+                    if (functionMap != null && functionMap.containsKey("name")) {
+                        type = "tool";
+                        name = (String) functionMap.get("name");
+                    }
+                } else if (tcMap.containsKey("type")) {
+                    // Bedrock 格式: {"type": "tool", "name": "my_function"} 或 {"type": "auto"}
+                    String tcType = (String) tcMap.get("type");
+                    if ("auto".equals(tcType) || "none".equals(tcType) || "any".equals(tcType)) {
+                        type = tcType;
+                    } else if ("tool".equals(tcType) && tcMap.containsKey("name")) {
+                        type = "tool";
+                        name = (String) tcMap.get("name");
+                    }
+                }
+            }
+            return new ToolChoiceSpec(type, name);
+        }
+    }
+}
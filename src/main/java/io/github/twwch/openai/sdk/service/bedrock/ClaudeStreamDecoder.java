@@ -0,0 +1,311 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Claude流式响应解码器
+ * 用流式解析器直接解析PayloadPart字节，不再转换字符串、按行拆分和构建JsonNode树；
+ * 同一个流的所有数据块复用一个ID和时间戳，content_block_stop、ping等不携带内容的事件直接跳过。
+ */
+class ClaudeStreamDecoder implements BedrockStreamDecoder {
+    private static final Logger logger = LoggerFactory.getLogger(ClaudeStreamDecoder.class);
+    private static final String INVOCATION_METRICS_FIELD = "amazon-bedrock-invocationMetrics";
+
+    private final ObjectMapper objectMapper;
+    private final String id;
+    private final long created;
+    private final String model;
+    private final Event event = new Event();
+    private JsonNode invocationMetrics;
+
+    ClaudeStreamDecoder(String model, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.model = model;
+        this.id = "chatcmpl-" + UUID.randomUUID();
+        this.created = System.currentTimeMillis() / 1000;
+    }
+
+    @Override
+    public List<ChatCompletionChunk> decode(byte[] payload) throws Exception {
+        List<ChatCompletionChunk> chunks = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(payload)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                ChatCompletionChunk chunk = decodeEvent(parser);
+                if (chunk != null) {
+                    if (chunks == null) {
+                        chunks = new ArrayList<>(1);
+                    }
+                    chunks.add(chunk);
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("忽略无法解析的流式事件: {}", e.getMessage());
+        }
+        return chunks != null ? chunks : Collections.emptyList();
+    }
+
+    @Override
+    public JsonNode getInvocationMetrics() {
+        return invocationMetrics;
+    }
+
+    private ChatCompletionChunk decodeEvent(JsonParser parser) throws IOException {
+        Event e = event;
+        e.clear();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "type":
+                    e.type = parser.getValueAsString();
+                    break;
+                case "index":
+                    e.index = parser.getValueAsInt();
+                    e.hasIndex = true;
+                    break;
+                case "delta":
+                    readDelta(parser, e);
+                    break;
+                case "content_block":
+                    readContentBlock(parser, e);
+                    break;
+                case "message":
+                    readMessage(parser, e);
+                    break;
+                case "usage":
+                    e.usage = readUsage(parser);
+                    break;
+                case INVOCATION_METRICS_FIELD:
+                    invocationMetrics = parser.readValueAsTree();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return toChunk(e);
+    }
+
+    private void readDelta(JsonParser parser, Event e) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "text":
+                    e.text = parser.getValueAsString();
+                    break;
+                case "partial_json":
+                    e.partialJson = parser.getValueAsString();
+                    break;
+                case "stop_reason":
+                    e.stopReason = parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    private void readContentBlock(JsonParser parser, Event e) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        String type = null;
+        String blockId = null;
+        String name = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "type":
+                    type = parser.getValueAsString();
+                    break;
+                case "id":
+                    blockId = parser.getValueAsString();
+                    break;
+                case "name":
+                    name = parser.getValueAsString();
+                    break;
+                default:
+                    // input等内容通过后续的delta事件增量给出
+                    parser.skipChildren();
+            }
+        }
+        if ("tool_use".equals(type)) {
+            if (e.toolCalls == null) {
+                e.toolCalls = new ArrayList<>(1);
+            }
+            e.toolCalls.add(toolCall(blockId, name));
+        }
+    }
+
+    private void readMessage(JsonParser parser, Event e) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("usage".equals(field)) {
+                e.usage = readUsage(parser);
+            } else if ("content".equals(field) && value == JsonToken.START_ARRAY) {
+                // message_start 中的 content 数组可能包含工具调用
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readContentBlock(parser, e);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private ChatCompletionResponse.Usage readUsage(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        ChatCompletionResponse.Usage usage = parser.readValueAs(ChatCompletionResponse.Usage.class);
+        usage.setTotalTokens(usage.getPromptTokens() + usage.getCompletionTokens());
+        if (usage.getCacheReadInputTokens() != null && usage.getCacheReadInputTokens() > 0) {
+            logger.info("流式响应缓存命中! 从缓存读取了 {} tokens", usage.getCacheReadInputTokens());
+        }
+        if (usage.getCacheCreationInputTokens() != null && usage.getCacheCreationInputTokens() > 0) {
+            logger.info("流式响应创建缓存: {} tokens", usage.getCacheCreationInputTokens());
+        }
+        return usage;
+    }
+
+    /**
+     * 把事件转换为数据块，不携带内容的事件返回null
+     */
+    private ChatCompletionChunk toChunk(Event e) {
+        if (e.type == null) {
+            return null;
+        }
+        ChatCompletionChunk.Delta delta = new ChatCompletionChunk.Delta();
+        String finishReason = null;
+        switch (e.type) {
+            case "message_start":
+                delta.setRole("assistant");
+                if (e.toolCalls != null) {
+                    delta.setToolCalls(e.toolCalls);
+                }
+                break;
+            case "content_block_start":
+                // 文本块的开始事件不携带内容
+                if (e.toolCalls == null) {
+                    return null;
+                }
+                delta.setToolCalls(e.toolCalls);
+                break;
+            case "content_block_delta":
+                if (e.text != null) {
+                    delta.setContent(e.text);
+                } else if (e.partialJson != null && e.hasIndex) {
+                    // 工具调用参数的增量更新
+                    ChatMessage.ToolCall toolCall = new ChatMessage.ToolCall();
+                    toolCall.setIndex(e.index);
+                    ChatMessage.ToolCall.Function function = new ChatMessage.ToolCall.Function();
+                    function.setArguments(e.partialJson);
+                    toolCall.setFunction(function);
+                    List<ChatMessage.ToolCall> toolCalls = new ArrayList<>(1);
+                    toolCalls.add(toolCall);
+                    delta.setToolCalls(toolCalls);
+                } else {
+                    return null;
+                }
+                break;
+            case "message_delta":
+                if (e.stopReason != null) {
+                    finishReason = ClaudeModelAdapter.convertFinishReason(e.stopReason);
+                }
+                if (e.usage == null && finishReason == null) {
+                    return null;
+                }
+                break;
+            case "message_stop":
+                finishReason = "stop";
+                break;
+            default:
+                // content_block_stop、ping等
+                return null;
+        }
+
+        ChatCompletionChunk.Choice choice = new ChatCompletionChunk.Choice();
+        choice.setIndex(0);
+        choice.setDelta(delta);
+        choice.setFinishReason(finishReason);
+        List<ChatCompletionChunk.Choice> choices = new ArrayList<>(1);
+        choices.add(choice);
+
+        ChatCompletionChunk chunk = new ChatCompletionChunk();
+        chunk.setId(id);
+        chunk.setObject("chat.completion.chunk");
+        chunk.setCreated(created);
+        chunk.setModel(model);
+        chunk.setChoices(choices);
+        chunk.setUsage(e.usage);
+        return chunk;
+    }
+
+    private static ChatMessage.ToolCall toolCall(String id, String name) {
+        ChatMessage.ToolCall toolCall = new ChatMessage.ToolCall();
+        toolCall.setId(id);
+        toolCall.setType("function");
+        ChatMessage.ToolCall.Function function = new ChatMessage.ToolCall.Function();
+        function.setName(name);
+        // 初始参数为空，后续通过 content_block_delta 更新
+        function.setArguments("");
+        toolCall.setFunction(function);
+        return toolCall;
+    }
+
+    /**
+     * 当前事件中用到的字段，同一个解码器内复用
+     */
+    private static final class Event {
+        private String type;
+        private int index;
+        private boolean hasIndex;
+        private String text;
+        private String partialJson;
+        private String stopReason;
+        private ChatCompletionResponse.Usage usage;
+        private List<ChatMessage.ToolCall> toolCalls;
+
+        void clear() {
+            type = null;
+            index = 0;
+            hasIndex = false;
+            text = null;
+            partialJson = null;
+            stopReason = null;
+            usage = null;
+            toolCalls = null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import software.amazon.awssdk.core.document.Document;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jackson树与SDK Document之间的转换（工具参数schema和工具调用参数）
+ */
+final class ConverseDocuments {
+
+    private ConverseDocuments() {
+    }
+
+    static Document toDocument(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return Document.fromNull();
+        }
+        if (node.isObject()) {
+            Map<String, Document> map = new LinkedHashMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                map.put(field.getKey(), toDocument(field.getValue()));
+            }
+            return Document.fromMap(map);
+        }
+        if (node.isArray()) {
+            List<Document> list = new ArrayList<>(node.size());
+            for (JsonNode item : node) {
+                list.add(toDocument(item));
+            }
+            return Document.fromList(list);
+        }
+        if (node.isBoolean()) {
+            return Document.fromBoolean(node.booleanValue());
+        }
+        if (node.isNumber()) {
+            return Document.fromNumber(node.decimalValue());
+        }
+        return Document.fromString(node.asText());
+    }
+
+    static JsonNode toJsonNode(Document document) {
+        JsonNodeFactory factory = JsonNodeFactory.instance;
+        if (document == null || document.isNull()) {
+            return factory.nullNode();
+        }
+        if (document.isMap()) {
+            ObjectNode object = factory.objectNode();
+            for (Map.Entry<String, Document> entry : document.asMap().entrySet()) {
+                object.set(entry.getKey(), toJsonNode(entry.getValue()));
+            }
+            return object;
+        }
+        if (document.isList()) {
+            ArrayNode array = factory.arrayNode();
+            for (Document item : document.asList()) {
+                array.add(toJsonNode(item));
+            }
+            return array;
+        }
+        if (document.isBoolean()) {
+            return factory.booleanNode(document.asBoolean());
+        }
+        if (document.isNumber()) {
+            return factory.numberNode(document.asNumber().bigDecimalValue());
+        }
+        return factory.textNode(document.asString());
+    }
+
+    static String toJson(Document document, ObjectMapper objectMapper) {
+        try {
+            return objectMapper.writeValueAsString(toJsonNode(document));
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+}
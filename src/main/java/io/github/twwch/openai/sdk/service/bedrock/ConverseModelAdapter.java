@@ -0,0 +1,483 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.limit.Admission;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.util.ImageUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.document.Document;
+import software.amazon.awssdk.services.bedrockruntime.model.AnyToolChoice;
+import software.amazon.awssdk.services.bedrockruntime.model.AutoToolChoice;
+import software.amazon.awssdk.services.bedrockruntime.model.CachePointBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.CachePointType;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.ImageBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ImageSource;
+import software.amazon.awssdk.services.bedrockruntime.model.InferenceConfiguration;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+import software.amazon.awssdk.services.bedrockruntime.model.SpecificToolChoice;
+import software.amazon.awssdk.services.bedrockruntime.model.SystemContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.Tool;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolChoice;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolConfiguration;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolInputSchema;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolResultContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolSpecification;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolUseBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.TokenUsage;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 基于Converse/ConverseStream API的模型适配器
+ * 直接把OpenAI格式的请求映射为SDK的类型化模型对象，不再生成中间JSON字符串，各模型系列统一使用一套转换，
+ * 支持工具调用、图片和prompt缓存（cache_control 映射为 cachePoint 块）。
+ * 该适配器不生成InvokeModel请求体，因此不实现 {@link BedrockModelAdapter}；
+ * 配置使用Converse API时 BedrockService 改用它走 Converse/ConverseStream 调用。
+ */
+public class ConverseModelAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(ConverseModelAdapter.class);
+
+    private static final CachePointBlock CACHE_POINT = CachePointBlock.builder().type(CachePointType.DEFAULT).build();
+
+    /** cachePoint 块的数量上限，不大于0时不限制 */
+    private final int maxCacheBlocks;
+
+    /**
+     * 使用能力表中Claude系列的缓存断点上限
+     */
+    public ConverseModelAdapter() {
+        this(ModelCapabilityRegistry.getDefault().resolve("anthropic.claude", false).getMaxCacheBlocks());
+    }
+
+    /**
+     * @param maxCacheBlocks cachePoint 块的数量上限（模型能力表的 max_cache_blocks），不大于0时不限制
+     */
+    public ConverseModelAdapter(int maxCacheBlocks) {
+        this.maxCacheBlocks = maxCacheBlocks;
+    }
+
+    /**
+     * 是否支持指定的模型
+     */
+    public boolean supports(String modelId) {
+        // Converse API 对所有支持消息格式的模型统一可用
+        return modelId != null && !modelId.isEmpty();
+    }
+
+    /**
+     * 转换为Converse请求
+     */
+    public ConverseRequest toConverseRequest(String modelId, ChatCompletionRequest request, ObjectMapper objectMapper) {
+        return toConverseRequest(modelId, request, objectMapper, Admission.of(request));
+    }
+
+    /**
+     * 按调用的截止时间转换为Converse请求，图片下载不超过截止时间
+     */
+    public ConverseRequest toConverseRequest(String modelId, ChatCompletionRequest request, ObjectMapper objectMapper,
+                                             Admission admission) {
+        Conversation conversation = new Conversation(request, objectMapper, admission.getDeadlineMillis(),
+                maxCacheBlocks);
+        return ConverseRequest.builder()
+                .modelId(modelId)
+                .messages(conversation.messages)
+                .system(conversation.system)
+                .inferenceConfig(conversation.inferenceConfig)
+                .toolConfig(conversation.toolConfig)
+                .build();
+    }
+
+    /**
+     * 转换为ConverseStream请求
+     */
+    public ConverseStreamRequest toConverseStreamRequest(String modelId, ChatCompletionRequest request,
+                                                         ObjectMapper objectMapper) {
+        return toConverseStreamRequest(modelId, request, objectMapper, Admission.of(request));
+    }
+
+    /**
+     * 按调用的截止时间转换为ConverseStream请求，图片下载不超过截止时间
+     */
+    public ConverseStreamRequest toConverseStreamRequest(String modelId, ChatCompletionRequest request,
+                                                         ObjectMapper objectMapper, Admission admission) {
+        Conversation conversation = new Conversation(request, objectMapper, admission.getDeadlineMillis(),
+                maxCacheBlocks);
+        return ConverseStreamRequest.builder()
+                .modelId(modelId)
+                .messages(conversation.messages)
+                .system(conversation.system)
+                .inferenceConfig(conversation.inferenceConfig)
+                .toolConfig(conversation.toolConfig)
+                .build();
+    }
+
+    /**
+     * 转换Converse响应为OpenAI格式
+     */
+    public ChatCompletionResponse convertResponse(ConverseResponse converseResponse,
+                                                  ChatCompletionRequest originalRequest, ObjectMapper objectMapper) {
+        ChatCompletionResponse response = new ChatCompletionResponse();
+        response.setId("chatcmpl-" + UUID.randomUUID());
+        response.setObject("chat.completion");
+        response.setCreated(System.currentTimeMillis() / 1000);
+        response.setModel(originalRequest.getModel());
+
+        ChatMessage message = new ChatMessage();
+        message.setRole("assistant");
+        StringBuilder textContent = new StringBuilder();
+        List<ChatMessage.ToolCall> toolCalls = new ArrayList<>();
+        if (converseResponse.output() != null && converseResponse.output().message() != null) {
+            for (ContentBlock block : converseResponse.output().message().content()) {
+                if (block.text() != null) {
+                    textContent.append(block.text());
+                } else if (block.toolUse() != null) {
+                    ToolUseBlock toolUse = block.toolUse();
+                    ChatMessage.ToolCall toolCall = new ChatMessage.ToolCall();
+                    toolCall.setId(toolUse.toolUseId());
+                    toolCall.setType("function");
+                    ChatMessage.ToolCall.Function function = new ChatMessage.ToolCall.Function();
+                    function.setName(toolUse.name());
+                    function.setArguments(toolUse.input() != null
+                            ? ConverseDocuments.toJson(toolUse.input(), objectMapper) : "{}");
+                    toolCall.setFunction(function);
+                    toolCalls.add(toolCall);
+                }
+            }
+        }
+        message.setContent(textContent.toString());
+        if (!toolCalls.isEmpty()) {
+            message.setToolCalls(toolCalls.toArray(new ChatMessage.ToolCall[0]));
+        }
+
+        ChatCompletionResponse.Choice choice = new ChatCompletionResponse.Choice();
+        choice.setIndex(0);
+        choice.setMessage(message);
+        if (converseResponse.stopReasonAsString() != null) {
+            choice.setFinishReason(convertFinishReason(converseResponse.stopReasonAsString()));
+        }
+        List<ChatCompletionResponse.Choice> choices = new ArrayList<>(1);
+        choices.add(choice);
+        response.setChoices(choices);
+        response.setUsage(convertUsage(converseResponse.usage()));
+        return response;
+    }
+
+    /**
+     * 为一个流创建解码器
+     */
+    public ConverseStreamDecoder newConverseStreamDecoder(String modelId, ObjectMapper objectMapper) {
+        return new ConverseStreamDecoder(modelId);
+    }
+
+    static String convertFinishReason(String stopReason) {
+        switch (stopReason) {
+            case "guardrail_intervened":
+            case "content_filtered":
+                return "content_filter";
+            default:
+                return ClaudeModelAdapter.convertFinishReason(stopReason);
+        }
+    }
+
+    static ChatCompletionResponse.Usage convertUsage(TokenUsage tokenUsage) {
+        ChatCompletionResponse.Usage usage = new ChatCompletionResponse.Usage();
+        if (tokenUsage == null) {
+            return usage;
+        }
+        int input = tokenUsage.inputTokens() != null ? tokenUsage.inputTokens() : 0;
+        int output = tokenUsage.outputTokens() != null ? tokenUsage.outputTokens() : 0;
+        usage.setPromptTokens(input);
+        usage.setCompletionTokens(output);
+        usage.setTotalTokens(tokenUsage.totalTokens() != null ? tokenUsage.totalTokens() : input + output);
+        if (tokenUsage.cacheReadInputTokens() != null) {
+            usage.setCacheReadInputTokens(tokenUsage.cacheReadInputTokens());
+            if (tokenUsage.cacheReadInputTokens() > 0) {
+                logger.info("✅ 缓存命中! 从缓存读取了 {} tokens", tokenUsage.cacheReadInputTokens());
+            }
+        }
+        if (tokenUsage.cacheWriteInputTokens() != null) {
+            usage.setCacheCreationInputTokens(tokenUsage.cacheWriteInputTokens());
+            if (tokenUsage.cacheWriteInputTokens() > 0) {
+                logger.info("创建缓存: {} tokens 已写入缓存", tokenUsage.cacheWriteInputTokens());
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * 一次请求转换的中间结果，Converse 和 ConverseStream 请求共用
+     */
+    private static final class Conversation {
+        private final ObjectMapper objectMapper;
+        private final List<Message> messages = new ArrayList<>();
+        private final List<SystemContentBlock> system = new ArrayList<>();
+        private final InferenceConfiguration inferenceConfig;
+        private final ToolConfiguration toolConfig;
+        private final int maxCacheBlocks;
+        private int cachePoints;
+        private int droppedCachePoints;
+
+        Conversation(ChatCompletionRequest request, ObjectMapper objectMapper, long deadlineMillis,
+                     int maxCacheBlocks) {
+            this.objectMapper = objectMapper;
+            this.maxCacheBlocks = maxCacheBlocks;
+            Map<String, String> images = downloadImages(request.getMessages(), deadlineMillis);
+
+            // system消息合并为一个系统提示，写在消息之前，cachePoint 超出上限时优先保留 system prompt 的缓存
+            StringBuilder systemPrompt = new StringBuilder();
+            for (ChatMessage message : request.getMessages()) {
+                if ("system".equals(message.getRole())) {
+                    if (systemPrompt.length() > 0) {
+                        systemPrompt.append("\n\n");
+                    }
+                    systemPrompt.append(message.getContentAsString());
+                }
+            }
+            if (systemPrompt.length() > 0) {
+                system.add(SystemContentBlock.fromText(systemPrompt.toString()));
+                if (Boolean.TRUE.equals(request.getBedrockEnableSystemCache()) && reserveCachePoint()) {
+                    system.add(SystemContentBlock.fromCachePoint(CACHE_POINT));
+                }
+            }
+
+            for (ChatMessage message : request.getMessages()) {
+                if (!"system".equals(message.getRole())) {
+                    addMessage(message, images);
+                }
+            }
+
+            InferenceConfiguration.Builder inference = InferenceConfiguration.builder()
+                    .maxTokens(request.getMaxTokens() != null ? request.getMaxTokens() : ClaudeModelAdapter.DEFAULT_MAX_TOKENS);
+            // temperature 和 top_p 范围 0-1
+            if (request.getTemperature() != null && request.getTemperature() >= 0 && request.getTemperature() <= 1) {
+                inference.temperature(request.getTemperature().floatValue());
+            }
+            if (request.getTopP() != null && request.getTopP() >= 0 && request.getTopP() <= 1) {
+                inference.topP(request.getTopP().floatValue());
+            }
+            if (request.getStop() != null && !request.getStop().isEmpty()) {
+                inference.stopSequences(request.getStop());
+            }
+            this.inferenceConfig = inference.build();
+            this.toolConfig = toolConfiguration(request);
+
+            if (droppedCachePoints > 0) {
+                logger.warn("cachePoint 数量 ({}) 超过模型上限 ({})，已移除后面的 {} 个",
+                        cachePoints + droppedCachePoints, maxCacheBlocks, droppedCachePoints);
+            }
+        }
+
+        /**
+         * 添加一条消息，Converse要求角色交替，相邻的同角色消息（如多个工具结果）合并为一条
+         */
+        private void addMessage(ChatMessage message, Map<String, String> images) {
+            ConversationRole role = "assistant".equals(message.getRole())
+                    ? ConversationRole.ASSISTANT : ConversationRole.USER;
+            List<ContentBlock> content = new ArrayList<>();
+            if ("tool".equals(message.getRole())) {
+                // Bedrock不支持tool角色，转换为toolResult块
+                content.add(ContentBlock.fromToolResult(ToolResultBlock.builder()
+                        .toolUseId(message.getToolCallId())
+                        .content(ToolResultContentBlock.fromText(message.getContentAsString()))
+                        .build()));
+            } else {
+                addContent(message.getContent(), content, images);
+                if (message.getToolCalls() != null) {
+                    for (ChatMessage.ToolCall toolCall : message.getToolCalls()) {
+                        content.add(ContentBlock.fromToolUse(ToolUseBlock.builder()
+                                .toolUseId(toolCall.getId())
+                                .name(toolCall.getFunction().getName())
+                                .input(toolInput(toolCall.getFunction().getArguments()))
+                                .build()));
+                    }
+                }
+            }
+            if (content.isEmpty()) {
+                return;
+            }
+            int last = messages.size() - 1;
+            if (last >= 0 && messages.get(last).role() == role) {
+                List<ContentBlock> merged = new ArrayList<>(messages.get(last).content());
+                merged.addAll(content);
+                messages.set(last, Message.builder().role(role).content(merged).build());
+            } else {
+                messages.add(Message.builder().role(role).content(content).build());
+            }
+        }
+
+        private void addContent(Object content, List<ContentBlock> blocks, Map<String, String> images) {
+            if (content instanceof String) {
+                if (!((String) content).isEmpty()) {
+                    blocks.add(ContentBlock.fromText((String) content));
+                }
+            } else if (content instanceof ChatMessage.ContentPart[]) {
+                for (ChatMessage.ContentPart part : (ChatMessage.ContentPart[]) content) {
+                    addPart(part, blocks, images);
+                }
+            } else if (content instanceof List) {
+                // Jackson反序列化可能将数组变成List
+                for (Object item : (List<?>) content) {
+                    if (item instanceof ChatMessage.ContentPart) {
+                        addPart((ChatMessage.ContentPart) item, blocks, images);
+                    } else {
+                        logger.warn("List中包含非ContentPart类型的对象: {}",
+                                item != null ? item.getClass().getName() : "null");
+                    }
+                }
+            } else if (content != null) {
+                logger.warn("content是未知类型,按字符串处理: {}", content.getClass().getName());
+                blocks.add(ContentBlock.fromText(String.valueOf(content)));
+            }
+        }
+
+        private void addPart(ChatMessage.ContentPart part, List<ContentBlock> blocks, Map<String, String> images) {
+            if ("text".equals(part.getType())) {
+                blocks.add(ContentBlock.fromText(part.getText()));
+                // cachePoint 是独立的块，缓存它之前的所有内容
+                if (part.getCacheControl() != null && reserveCachePoint()) {
+                    blocks.add(ContentBlock.fromCachePoint(CACHE_POINT));
+                }
+            } else if ("image_url".equals(part.getType()) && part.getImageUrl() != null) {
+                String url = part.getImageUrl().getUrl();
+                String dataUrl = url.startsWith("data:image/")
+                        ? ImageUtils.compressBase64Image(url, ClaudeRequestWriter.MAX_IMAGE_BASE64_SIZE)
+                        : images.get(url);
+                ImageBlock image = dataUrl != null ? imageBlock(dataUrl) : null;
+                if (image != null) {
+                    blocks.add(ContentBlock.fromImage(image));
+                } else {
+                    logger.error("Failed to download or parse image: {}", url);
+                    blocks.add(ContentBlock.fromText("[图片下载失败: " + url.substring(url.lastIndexOf('/') + 1) + "]"));
+                }
+            }
+        }
+
+        /**
+         * 图片以原始字节交给SDK，不再保留base64字符串
+         */
+        private ImageBlock imageBlock(String dataUrl) {
+            int comma = dataUrl.indexOf(',');
+            int semicolon = dataUrl.indexOf(';');
+            if (comma < 0 || semicolon < 5 || semicolon > comma) {
+                return null;
+            }
+            String mediaType = dataUrl.substring(5, semicolon);
+            String format = mediaType.substring(mediaType.indexOf('/') + 1);
+            if ("jpg".equals(format)) {
+                format = "jpeg";
+            }
+            byte[] bytes;
+            try {
+                bytes = Base64.getMimeDecoder().decode(dataUrl.substring(comma + 1));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            return ImageBlock.builder()
+                    .format(format)
+                    .source(ImageSource.fromBytes(SdkBytes.fromByteArrayUnsafe(bytes)))
+                    .build();
+        }
+
+        /**
+         * 并发下载所有URL图片（下载时已压缩），不超过请求的截止时间
+         */
+        private static Map<String, String> downloadImages(List<ChatMessage> messages, long deadlineMillis) {
+            List<String> urls = new ArrayList<>();
+            for (ChatMessage message : messages) {
+                if (message.getContent() instanceof ChatMessage.ContentPart[]) {
+                    for (ChatMessage.ContentPart part : (ChatMessage.ContentPart[]) message.getContent()) {
+                        if ("image_url".equals(part.getType()) && part.getImageUrl() != null
+                                && !part.getImageUrl().getUrl().startsWith("data:image/")) {
+                            urls.add(part.getImageUrl().getUrl());
+                        }
+                    }
+                }
+            }
+            if (urls.isEmpty()) {
+                return new HashMap<>();
+            }
+            logger.info("Batch downloading {} images for Bedrock Converse", urls.size());
+            return ImageUtils.downloadAndConvertBatch(urls, deadlineMillis);
+        }
+
+        private Document toolInput(String arguments) {
+            if (arguments != null && !arguments.isEmpty()) {
+                try {
+                    JsonNode args = objectMapper.readTree(arguments);
+                    if (args != null && args.isObject()) {
+                        return ConverseDocuments.toDocument(args);
+                    }
+                } catch (Exception e) {
+                    // 如果解析失败，使用空对象
+                    logger.debug("工具参数不是有效的JSON对象: {}", e.getMessage());
+                }
+            }
+            return Document.mapBuilder().build();
+        }
+
+        private ToolConfiguration toolConfiguration(ChatCompletionRequest request) {
+            if (request.getTools() == null || request.getTools().isEmpty()) {
+                return null;
+            }
+            List<Tool> tools = new ArrayList<>();
+            for (ChatCompletionRequest.Tool tool : request.getTools()) {
+                if ("function".equals(tool.getType()) && tool.getFunction() != null) {
+                    ChatCompletionRequest.Function function = tool.getFunction();
+                    Document schema = function.getParameters() != null
+                            ? ConverseDocuments.toDocument(objectMapper.valueToTree(function.getParameters()))
+                            : Document.mapBuilder().putString("type", "object").build();
+                    tools.add(Tool.fromToolSpec(ToolSpecification.builder()
+                            .name(function.getName())
+                            .description(function.getDescription())
+                            .inputSchema(ToolInputSchema.fromJson(schema))
+                            .build()));
+                }
+            }
+            if (tools.isEmpty()) {
+                return null;
+            }
+            ToolConfiguration.Builder builder = ToolConfiguration.builder().tools(tools);
+            ClaudeRequestWriter.ToolChoiceSpec spec = ClaudeRequestWriter.ToolChoiceSpec.resolve(request.getToolChoice());
+            if ("any".equals(spec.type)) {
+                builder.toolChoice(ToolChoice.fromAny(AnyToolChoice.builder().build()));
+            } else if ("tool".equals(spec.type) && spec.name != null) {
+                builder.toolChoice(ToolChoice.fromTool(SpecificToolChoice.builder().name(spec.name).build()));
+            } else if ("auto".equals(spec.type)) {
+                builder.toolChoice(ToolChoice.fromAuto(AutoToolChoice.builder().build()));
+            } else {
+                // Converse没有none选项，历史消息中有工具调用时又必须提供工具定义，只能退化为auto
+                logger.debug("Converse不支持 tool_choice={}，使用默认的auto", spec.type);
+            }
+            logger.debug("添加了 {} 个工具到请求中", tools.size());
+            return builder.build();
+        }
+
+        /**
+         * 占用一个 cachePoint 名额，超过上限的直接跳过（保留前面的）
+         */
+        private boolean reserveCachePoint() {
+            if (maxCacheBlocks > 0 && cachePoints >= maxCacheBlocks) {
+                droppedCachePoints++;
+                return false;
+            }
+            cachePoints++;
+            return true;
+        }
+    }
+}
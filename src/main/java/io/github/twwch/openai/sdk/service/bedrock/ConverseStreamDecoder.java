@@ -0,0 +1,123 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlockDeltaEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlockStartEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamMetadataEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamOutput;
+import software.amazon.awssdk.services.bedrockruntime.model.MessageStartEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.MessageStopEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolUseBlockStart;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * ConverseStream事件解码器
+ * 每个流创建一个实例（非线程安全），把SDK已经解析好的类型化事件转换为OpenAI格式的数据块，
+ * 同一个流的所有数据块复用一个ID和时间戳。用量和服务端耗时在最后的metadata事件中给出。
+ */
+public class ConverseStreamDecoder {
+    private final String id;
+    private final long created;
+    private final String model;
+    private ConverseStreamMetadataEvent metadata;
+
+    ConverseStreamDecoder(String model) {
+        this.model = model;
+        this.id = "chatcmpl-" + UUID.randomUUID();
+        this.created = System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * 解码一个流事件
+     *
+     * @return 转换后的数据块，无需转发的事件返回空列表
+     */
+    public List<ChatCompletionChunk> decode(ConverseStreamOutput event) {
+        ChatCompletionChunk.Delta delta = new ChatCompletionChunk.Delta();
+        String finishReason = null;
+        ChatCompletionResponse.Usage usage = null;
+        if (event instanceof MessageStartEvent) {
+            delta.setRole("assistant");
+        } else if (event instanceof ContentBlockStartEvent) {
+            ContentBlockStartEvent start = (ContentBlockStartEvent) event;
+            // 文本块的开始事件不携带内容
+            if (start.start() == null || start.start().toolUse() == null) {
+                return Collections.emptyList();
+            }
+            ToolUseBlockStart toolUse = start.start().toolUse();
+            ChatMessage.ToolCall toolCall = toolCall(start.contentBlockIndex());
+            toolCall.setId(toolUse.toolUseId());
+            toolCall.setType("function");
+            toolCall.getFunction().setName(toolUse.name());
+            // 初始参数为空，后续通过增量事件更新
+            toolCall.getFunction().setArguments("");
+            delta.setToolCalls(Collections.singletonList(toolCall));
+        } else if (event instanceof ContentBlockDeltaEvent) {
+            ContentBlockDeltaEvent blockDelta = (ContentBlockDeltaEvent) event;
+            if (blockDelta.delta() == null) {
+                return Collections.emptyList();
+            }
+            if (blockDelta.delta().text() != null) {
+                delta.setContent(blockDelta.delta().text());
+            } else if (blockDelta.delta().toolUse() != null) {
+                // 工具调用参数的增量更新
+                ChatMessage.ToolCall toolCall = toolCall(blockDelta.contentBlockIndex());
+                toolCall.getFunction().setArguments(blockDelta.delta().toolUse().input());
+                delta.setToolCalls(Collections.singletonList(toolCall));
+            } else {
+                return Collections.emptyList();
+            }
+        } else if (event instanceof MessageStopEvent) {
+            MessageStopEvent stop = (MessageStopEvent) event;
+            finishReason = stop.stopReasonAsString() != null
+                    ? ConverseModelAdapter.convertFinishReason(stop.stopReasonAsString()) : "stop";
+        } else if (event instanceof ConverseStreamMetadataEvent) {
+            metadata = (ConverseStreamMetadataEvent) event;
+            if (metadata.usage() == null) {
+                return Collections.emptyList();
+            }
+            usage = ConverseModelAdapter.convertUsage(metadata.usage());
+        } else {
+            // contentBlockStop等
+            return Collections.emptyList();
+        }
+
+        ChatCompletionChunk.Choice choice = new ChatCompletionChunk.Choice();
+        choice.setIndex(0);
+        choice.setDelta(delta);
+        choice.setFinishReason(finishReason);
+        List<ChatCompletionChunk.Choice> choices = new ArrayList<>(1);
+        choices.add(choice);
+
+        ChatCompletionChunk chunk = new ChatCompletionChunk();
+        chunk.setId(id);
+        chunk.setObject("chat.completion.chunk");
+        chunk.setCreated(created);
+        chunk.setModel(model);
+        chunk.setChoices(choices);
+        chunk.setUsage(usage);
+        return Collections.singletonList(chunk);
+    }
+
+    /**
+     * 流最后的metadata事件（用量和服务端耗时），未收到时为null
+     */
+    public ConverseStreamMetadataEvent getMetadata() {
+        return metadata;
+    }
+
+    private static ChatMessage.ToolCall toolCall(Integer index) {
+        ChatMessage.ToolCall toolCall = new ChatMessage.ToolCall();
+        if (index != null) {
+            toolCall.setIndex(index);
+        }
+        toolCall.setFunction(new ChatMessage.ToolCall.Function());
+        return toolCall;
+    }
+}
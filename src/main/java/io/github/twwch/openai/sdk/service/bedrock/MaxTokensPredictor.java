@@ -0,0 +1,189 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.service.PromptPrefix;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * max_tokens预测器
+ * Bedrock按请求的max_tokens预占每分钟token配额，调用方不设置max_tokens时Claude请求按4096预占，
+ * 远高于实际输出，配额会提前耗尽而被限流。预测器按模型和请求分类记录最近的输出token数，
+ * 样本足够后按分位数加余量给出较小的max_tokens；输出因max_tokens截断（finish_reason=length）时，
+ * 服务会以已生成的内容作为assistant前缀继续生成，直到达到原本的上限，调用方拿到的是完整输出。
+ * 请求分类默认为tools和system的指纹，也可以通过请求metadata中的 {@link #TAG_METADATA_KEY} 指定。线程安全。
+ */
+public class MaxTokensPredictor {
+    /** 请求metadata中指定分类的键 */
+    public static final String TAG_METADATA_KEY = "max_tokens_tag";
+
+    /** 默认分位数 */
+    public static final double DEFAULT_PERCENTILE = 0.95;
+    /** 默认余量倍数 */
+    public static final double DEFAULT_HEADROOM = 1.25;
+    /** 默认预测的最小值 */
+    public static final int DEFAULT_MIN_TOKENS = 256;
+    /** 默认开始预测需要的样本数 */
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+    /** 默认截断后最多继续生成的次数 */
+    public static final int DEFAULT_MAX_CONTINUATIONS = 2;
+
+    private static final int WINDOW = 200;
+    private static final int MAX_KEYS = 10_000;
+
+    private static final MaxTokensPredictor DEFAULT = new MaxTokensPredictor(DEFAULT_PERCENTILE, DEFAULT_HEADROOM,
+            DEFAULT_MIN_TOKENS, DEFAULT_MIN_SAMPLES);
+    private static final MaxTokensPredictor DISABLED = new MaxTokensPredictor();
+
+    private final boolean enabled;
+    private final double percentile;
+    private final double headroom;
+    private final int minTokens;
+    private final int minSamples;
+    private volatile int maxContinuations = DEFAULT_MAX_CONTINUATIONS;
+    // 分类 -> 最近的输出token数，按访问顺序淘汰
+    private final LinkedHashMap<String, Samples> samples = new LinkedHashMap<String, Samples>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Samples> eldest) {
+            return size() > MAX_KEYS;
+        }
+    };
+
+    /**
+     * @param percentile 预测使用的输出token分位数（0-1）
+     * @param headroom   在分位数上乘的余量倍数
+     * @param minTokens  预测的最小值
+     * @param minSamples 分类累计到该样本数后才开始预测
+     */
+    public MaxTokensPredictor(double percentile, double headroom, int minTokens, int minSamples) {
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("percentile必须在(0, 1]之间");
+        }
+        if (headroom < 1) {
+            throw new IllegalArgumentException("headroom不能小于1");
+        }
+        this.enabled = true;
+        this.percentile = percentile;
+        this.headroom = headroom;
+        this.minTokens = Math.max(1, minTokens);
+        this.minSamples = Math.max(1, minSamples);
+    }
+
+    private MaxTokensPredictor() {
+        this.enabled = false;
+        this.percentile = 1;
+        this.headroom = 1;
+        this.minTokens = 1;
+        this.minSamples = 1;
+    }
+
+    /**
+     * 获取进程内共享的预测器（默认参数）
+     */
+    public static MaxTokensPredictor getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 获取关闭状态的预测器，不修改请求的max_tokens
+     */
+    public static MaxTokensPredictor disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 请求的分类：模型加上metadata中的分类标签，没有标签时为tools和system的指纹
+     */
+    public static String key(String modelId, ChatCompletionRequest request) {
+        String tag = request.getMetadata() != null ? request.getMetadata().get(TAG_METADATA_KEY) : null;
+        if (tag != null && !tag.isEmpty()) {
+            return modelId + "|tag:" + tag;
+        }
+        PromptPrefix prefix = PromptPrefix.ofLeadingMessages(request, 0);
+        return modelId + "|" + (prefix != null ? prefix.getFingerprint() : "none");
+    }
+
+    /**
+     * 预测分类的max_tokens
+     *
+     * @param ceiling 不预测时使用的max_tokens，预测值不超过该值
+     * @return 预测的max_tokens；样本不足时返回ceiling
+     */
+    public int predict(String key, int ceiling) {
+        if (!enabled) {
+            return ceiling;
+        }
+        int[] recent;
+        synchronized (samples) {
+            Samples entry = samples.get(key);
+            if (entry == null || entry.count < minSamples) {
+                return ceiling;
+            }
+            recent = entry.values();
+        }
+        Arrays.sort(recent);
+        int index = Math.min(recent.length - 1, (int) Math.ceil(percentile * recent.length) - 1);
+        long predicted = (long) Math.ceil(recent[Math.max(0, index)] * headroom);
+        return (int) Math.min(ceiling, Math.max(minTokens, predicted));
+    }
+
+    /**
+     * 记录分类一次完整输出（包括继续生成的部分）的token数
+     */
+    public void record(String key, int outputTokens) {
+        if (!enabled || outputTokens <= 0) {
+            return;
+        }
+        synchronized (samples) {
+            samples.computeIfAbsent(key, k -> new Samples()).add(outputTokens);
+        }
+    }
+
+    /**
+     * 截断后最多继续生成的次数
+     */
+    public int getMaxContinuations() {
+        return maxContinuations;
+    }
+
+    /**
+     * 设置截断后最多继续生成的次数，为0时截断的输出直接返回给调用方
+     */
+    public void setMaxContinuations(int maxContinuations) {
+        this.maxContinuations = Math.max(0, maxContinuations);
+    }
+
+    /**
+     * 有样本的分类数
+     */
+    public int size() {
+        synchronized (samples) {
+            return samples.size();
+        }
+    }
+
+    /**
+     * 分类最近的输出token数（环形缓冲区）
+     */
+    private static final class Samples {
+        private final int[] ring = new int[WINDOW];
+        private int next;
+        private int count;
+
+        void add(int value) {
+            ring[next] = value;
+            next = (next + 1) % ring.length;
+            count = Math.min(count + 1, ring.length);
+        }
+
+        int[] values() {
+            return Arrays.copyOf(ring, count);
+        }
+    }
+}
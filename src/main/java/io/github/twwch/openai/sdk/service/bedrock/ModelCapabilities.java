@@ -0,0 +1,203 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Bedrock模型能力和限制
+ * 数值为0表示未知或不限制，此时不做本地校验，交给服务端判断。
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ModelCapabilities {
+    /**
+     * 模型ID或模型ID前缀，按最长前缀匹配
+     */
+    @JsonProperty("id")
+    private String id;
+
+    /**
+     * 模型系列，决定使用哪个适配器：claude、llama、titan、jurassic、cohere
+     */
+    @JsonProperty("family")
+    private String family;
+
+    /**
+     * 模型提供方
+     */
+    @JsonProperty("provider")
+    private String provider;
+
+    @JsonProperty("context_window")
+    private int contextWindow;
+
+    @JsonProperty("max_output_tokens")
+    private int maxOutputTokens;
+
+    @JsonProperty("max_temperature")
+    private double maxTemperature = 1.0;
+
+    @JsonProperty("supports_tools")
+    private boolean supportsTools = true;
+
+    @JsonProperty("supports_images")
+    private boolean supportsImages = true;
+
+    @JsonProperty("max_images")
+    private int maxImages;
+
+    @JsonProperty("supports_prompt_cache")
+    private boolean supportsPromptCache = true;
+
+    @JsonProperty("max_cache_blocks")
+    private int maxCacheBlocks;
+
+    @JsonProperty("min_cache_tokens")
+    private int minCacheTokens;
+
+    /**
+     * 是否出现在模型列表中，系列的兜底条目不列出
+     */
+    @JsonProperty("listed")
+    private boolean listed = true;
+
+    public ModelCapabilities() {
+    }
+
+    /**
+     * 未登记模型使用的能力（不做本地限制），只在Converse API下使用
+     */
+    public static ModelCapabilities unrestricted(String modelId) {
+        ModelCapabilities capabilities = new ModelCapabilities();
+        capabilities.setId(modelId);
+        capabilities.setListed(false);
+        return capabilities;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getFamily() {
+        return family;
+    }
+
+    public void setFamily(String family) {
+        this.family = family;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * 上下文长度（token）
+     */
+    public int getContextWindow() {
+        return contextWindow;
+    }
+
+    public void setContextWindow(int contextWindow) {
+        this.contextWindow = contextWindow;
+    }
+
+    /**
+     * 最大输出token数
+     */
+    public int getMaxOutputTokens() {
+        return maxOutputTokens;
+    }
+
+    public void setMaxOutputTokens(int maxOutputTokens) {
+        this.maxOutputTokens = maxOutputTokens;
+    }
+
+    /**
+     * temperature上限（默认1）
+     */
+    public double getMaxTemperature() {
+        return maxTemperature;
+    }
+
+    public void setMaxTemperature(double maxTemperature) {
+        this.maxTemperature = maxTemperature;
+    }
+
+    public boolean isSupportsTools() {
+        return supportsTools;
+    }
+
+    public void setSupportsTools(boolean supportsTools) {
+        this.supportsTools = supportsTools;
+    }
+
+    public boolean isSupportsImages() {
+        return supportsImages;
+    }
+
+    public void setSupportsImages(boolean supportsImages) {
+        this.supportsImages = supportsImages;
+    }
+
+    /**
+     * 单个请求的最大图片数
+     */
+    public int getMaxImages() {
+        return maxImages;
+    }
+
+    public void setMaxImages(int maxImages) {
+        this.maxImages = maxImages;
+    }
+
+    public boolean isSupportsPromptCache() {
+        return supportsPromptCache;
+    }
+
+    public void setSupportsPromptCache(boolean supportsPromptCache) {
+        this.supportsPromptCache = supportsPromptCache;
+    }
+
+    /**
+     * 单个请求的最大缓存断点数（cache_control 块）
+     */
+    public int getMaxCacheBlocks() {
+        return maxCacheBlocks;
+    }
+
+    public void setMaxCacheBlocks(int maxCacheBlocks) {
+        this.maxCacheBlocks = maxCacheBlocks;
+    }
+
+    /**
+     * 可缓存前缀的最小token数，短于该长度的断点不生效
+     */
+    public int getMinCacheTokens() {
+        return minCacheTokens;
+    }
+
+    public void setMinCacheTokens(int minCacheTokens) {
+        this.minCacheTokens = minCacheTokens;
+    }
+
+    public boolean isListed() {
+        return listed;
+    }
+
+    public void setListed(boolean listed) {
+        this.listed = listed;
+    }
+
+    @Override
+    public String toString() {
+        return "ModelCapabilities{id='" + id + "', family='" + family + "', contextWindow=" + contextWindow
+                + ", maxOutputTokens=" + maxOutputTokens + "}";
+    }
+}
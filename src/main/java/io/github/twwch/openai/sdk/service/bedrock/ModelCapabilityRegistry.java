@@ -0,0 +1,162 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Bedrock模型能力注册表
+ * 默认从随包发布的 bedrock-models.json 加载，可以通过 {@link #load(InputStream)} 或 {@link #register} 覆盖或补充。
+ * 模型ID先去掉ARN和跨区域推理配置前缀（如 us.、eu.），再按最长前缀匹配条目；查找结果会被缓存。
+ */
+public class ModelCapabilityRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(ModelCapabilityRegistry.class);
+
+    /** 随包发布的模型能力表 */
+    public static final String BUNDLED_RESOURCE = "/io/github/twwch/openai/sdk/bedrock-models.json";
+
+    private static final Pattern INFERENCE_PROFILE_PREFIX = Pattern.compile("^(us|us-gov|eu|apac|jp|au|ca|global)\\.");
+
+    private static final ModelCapabilityRegistry DEFAULT = bundled();
+
+    private final Map<String, ModelCapabilities> entries = new ConcurrentHashMap<>();
+    private final Map<String, ModelCapabilities> resolved = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 创建空的注册表
+     */
+    public ModelCapabilityRegistry() {
+    }
+
+    /**
+     * 获取进程内共享的默认注册表（已加载随包发布的模型能力表）
+     */
+    public static ModelCapabilityRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 创建加载了随包发布的模型能力表的新注册表
+     */
+    public static ModelCapabilityRegistry bundled() {
+        ModelCapabilityRegistry registry = new ModelCapabilityRegistry();
+        try (InputStream in = ModelCapabilityRegistry.class.getResourceAsStream(BUNDLED_RESOURCE)) {
+            if (in == null) {
+                logger.warn("未找到Bedrock模型能力表: {}", BUNDLED_RESOURCE);
+            } else {
+                registry.load(in);
+            }
+        } catch (IOException e) {
+            logger.warn("加载Bedrock模型能力表失败: {}", e.getMessage());
+        }
+        return registry;
+    }
+
+    /**
+     * 从JSON数组加载模型能力，相同ID的条目覆盖已有条目
+     * @param in JSON数组，每个元素对应一个 {@link ModelCapabilities}
+     */
+    public void load(InputStream in) throws IOException {
+        List<ModelCapabilities> loaded = objectMapper.readValue(in, new TypeReference<List<ModelCapabilities>>() {
+        });
+        for (ModelCapabilities capabilities : loaded) {
+            register(capabilities);
+        }
+        logger.debug("加载了 {} 个Bedrock模型能力条目", loaded.size());
+    }
+
+    /**
+     * 登记或覆盖一个模型（或模型ID前缀）的能力
+     */
+    public void register(ModelCapabilities capabilities) {
+        if (capabilities == null || capabilities.getId() == null || capabilities.getId().isEmpty()) {
+            throw new IllegalArgumentException("模型能力必须包含id");
+        }
+        entries.put(capabilities.getId(), capabilities);
+        resolved.clear();
+    }
+
+    /**
+     * 查找模型能力
+     * @return 未登记时返回null
+     */
+    public ModelCapabilities find(String modelId) {
+        if (modelId == null || modelId.isEmpty()) {
+            return null;
+        }
+        ModelCapabilities cached = resolved.get(modelId);
+        if (cached != null) {
+            return cached;
+        }
+        String normalized = normalize(modelId);
+        ModelCapabilities best = null;
+        for (ModelCapabilities capabilities : entries.values()) {
+            if (normalized.startsWith(capabilities.getId())
+                    && (best == null || capabilities.getId().length() > best.getId().length())) {
+                best = capabilities;
+            }
+        }
+        if (best != null) {
+            resolved.put(modelId, best);
+        }
+        return best;
+    }
+
+    /**
+     * 获取模型能力
+     * @param allowUnknown 未登记的模型是否返回不做限制的能力（Converse API对所有模型可用）
+     * @throws OpenAIException 模型ID为空，或模型未登记且不允许未知模型
+     */
+    public ModelCapabilities resolve(String modelId, boolean allowUnknown) {
+        if (modelId == null || modelId.isEmpty()) {
+            throw new OpenAIException("模型ID不能为空");
+        }
+        ModelCapabilities capabilities = find(modelId);
+        if (capabilities != null) {
+            return capabilities;
+        }
+        if (allowUnknown) {
+            logger.info("模型 {} 未在能力表中登记，不做本地限制", modelId);
+            return ModelCapabilities.unrestricted(modelId);
+        }
+        throw new OpenAIException("不支持的Bedrock模型: " + modelId);
+    }
+
+    /**
+     * 列出登记的模型（不含系列兜底条目），按ID排序
+     */
+    public List<ModelCapabilities> listModels() {
+        List<ModelCapabilities> models = new ArrayList<>();
+        for (ModelCapabilities capabilities : entries.values()) {
+            if (capabilities.isListed()) {
+                models.add(capabilities);
+            }
+        }
+        models.sort(Comparator.comparing(ModelCapabilities::getId));
+        return models;
+    }
+
+    /**
+     * 去掉ARN前缀和跨区域推理配置前缀
+     */
+    static String normalize(String modelId) {
+        String id = modelId;
+        int slash = id.lastIndexOf('/');
+        if (id.startsWith("arn:") && slash >= 0) {
+            id = id.substring(slash + 1);
+        }
+        return INFERENCE_PROFILE_PREFIX.matcher(id).replaceFirst("");
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.twwch.openai.sdk.service.bedrock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 基于 {@link BedrockModelAdapter#convertStreamChunk} 的默认解码器，供没有专用解码器的模型使用
+ */
+class StringStreamDecoder implements BedrockStreamDecoder {
+    private static final String INVOCATION_METRICS_FIELD = "amazon-bedrock-invocationMetrics";
+
+    private final BedrockModelAdapter adapter;
+    private final ObjectMapper objectMapper;
+    private JsonNode invocationMetrics;
+
+    StringStreamDecoder(BedrockModelAdapter adapter, ObjectMapper objectMapper) {
+        this.adapter = adapter;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public List<ChatCompletionChunk> decode(byte[] payload) throws Exception {
+        String chunk = new String(payload, StandardCharsets.UTF_8);
+        if (chunk.contains(INVOCATION_METRICS_FIELD)) {
+            try {
+                JsonNode metrics = objectMapper.readTree(chunk).path(INVOCATION_METRICS_FIELD);
+                if (!metrics.isMissingNode()) {
+                    invocationMetrics = metrics;
+                }
+            } catch (Exception e) {
+                // 调用指标只用于元数据，解析失败不影响数据块转换
+            }
+        }
+        return adapter.convertStreamChunk(chunk, objectMapper);
+    }
+
+    @Override
+    public JsonNode getInvocationMetrics() {
+        return invocationMetrics;
+    }
+}
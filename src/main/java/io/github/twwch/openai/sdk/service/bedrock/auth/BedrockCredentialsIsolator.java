@@ -1,5 +1,6 @@
 package io.github.twwch.openai.sdk.service.bedrock.auth;
 
+import io.github.twwch.openai.sdk.BedrockConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
@@ -103,50 +104,7 @@ public class BedrockCredentialsIsolator {
      * 创建隔离的异步客户端（使用默认凭证链）
      */
     public static BedrockRuntimeAsyncClient createIsolatedAsyncClientWithDefaultCredentials(String region) {
-        logger.info("创建使用默认凭证链的Bedrock异步客户端 - 区域: {}", region);
-
-        // 使用默认凭证链（支持 ~/.aws/credentials, 环境变量, IAM角色等）
-        AwsCredentialsProvider credentialsProvider = DefaultCredentialsProvider.create();
-
-        // 构建隔离的异步客户端
-        // 优化连接池配置以支持高并发流式请求
-        // 允许通过系统属性覆盖异步HTTP客户端配置
-        int maxConcurrency = Integer.getInteger("bedrock.http.maxConcurrency", 5000);
-        int connectionTimeoutSeconds = Integer.getInteger("bedrock.http.connectionTimeoutSeconds", 60);
-        int acquireTimeoutSeconds = Integer.getInteger("bedrock.http.acquireTimeoutSeconds", 60);
-        int maxPending = Integer.getInteger("bedrock.http.maxPendingAcquires", 2000);
-        int readTimeoutMinutes = Integer.getInteger("bedrock.http.readTimeoutMinutes", 15);
-        int writeTimeoutSeconds = Integer.getInteger("bedrock.http.writeTimeoutSeconds", 30);
-        int ttlMinutes = Integer.getInteger("bedrock.http.ttlMinutes", 3);
-        int maxIdleSeconds = Integer.getInteger("bedrock.http.maxIdleSeconds", 20);
-
-        // 允许通过系统属性配置API超时时间
-        int apiCallAttemptTimeoutMinutes = Integer.getInteger("bedrock.api.attemptTimeoutMinutes", 5);
-        int apiCallTimeoutMinutes = Integer.getInteger("bedrock.api.callTimeoutMinutes", 10);
-
-        BedrockRuntimeAsyncClientBuilder builder = BedrockRuntimeAsyncClient.builder()
-                .region(Region.of(region))
-                .overrideConfiguration(o -> o
-                        .apiCallAttemptTimeout(Duration.ofMinutes(apiCallAttemptTimeoutMinutes)) // 单次尝试超时（默认5分钟）
-                        .apiCallTimeout(Duration.ofMinutes(apiCallTimeoutMinutes)))       // 总超时（默认10分钟）
-                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
-                        // 连接池配置（可通过系统属性覆盖）
-                        .maxConcurrency(maxConcurrency)                            // bedrock.http.maxConcurrency（默认20）
-                        .connectionTimeout(Duration.ofSeconds(connectionTimeoutSeconds))     // bedrock.http.connectionTimeoutSeconds（默认15）
-                        .connectionAcquisitionTimeout(Duration.ofSeconds(acquireTimeoutSeconds))  // bedrock.http.acquireTimeoutSeconds（默认60）
-                        .maxPendingConnectionAcquires(maxPending)              // bedrock.http.maxPendingAcquires（默认50）
-
-                        // 流式响应超时配置
-                        .readTimeout(Duration.ofMinutes(readTimeoutMinutes))           // bedrock.http.readTimeoutMinutes（默认15）
-                        .writeTimeout(Duration.ofSeconds(writeTimeoutSeconds))          // bedrock.http.writeTimeoutSeconds（默认30）
-
-                        // 连接复用和清理策略
-                        .connectionTimeToLive(Duration.ofMinutes(ttlMinutes))   // bedrock.http.ttlMinutes（默认3）
-                        .connectionMaxIdleTime(Duration.ofSeconds(maxIdleSeconds)) // bedrock.http.maxIdleSeconds（默认20）
-                        .useIdleConnectionReaper(true))                // 启用空闲连接清理
-                .credentialsProvider(credentialsProvider);
-
-        return builder.build();
+        return createIsolatedAsyncClient(new BedrockConfig(region, null));
     }
 
     /**
@@ -156,64 +114,60 @@ public class BedrockCredentialsIsolator {
                                                                       String accessKeyId,
                                                                       String secretAccessKey,
                                                                       String sessionToken) {
+        return createIsolatedAsyncClient(new BedrockConfig(region, accessKeyId, secretAccessKey, sessionToken, null));
+    }
 
-        // 创建标准AWS凭证提供者
+    /**
+     * 按配置创建隔离的异步客户端
+     * 未提供AK/SK时使用默认凭证链，连接池和超时取自配置（默认值兼容 bedrock.http.* 系统属性）
+     */
+    public static BedrockRuntimeAsyncClient createIsolatedAsyncClient(BedrockConfig config) {
         AwsCredentialsProvider credentialsProvider;
-        if (sessionToken != null && !sessionToken.isEmpty()) {
-            credentialsProvider = StaticCredentialsProvider.create(
-                    AwsSessionCredentials.create(accessKeyId, secretAccessKey, sessionToken)
-            );
+        if (config.getAccessKeyId() == null || config.getSecretAccessKey() == null) {
+            logger.info("创建使用默认凭证链的Bedrock异步客户端 - 区域: {}", config.getRegion());
+            // 使用默认凭证链（支持 ~/.aws/credentials, 环境变量, IAM角色等）
+            credentialsProvider = DefaultCredentialsProvider.create();
         } else {
-
-            credentialsProvider = StaticCredentialsProvider.create(
-                    AwsBasicCredentials.create(accessKeyId, secretAccessKey)
-            );
+            logger.info("创建隔离的Bedrock异步客户端 - 区域: {}", config.getRegion());
+            credentialsProvider = staticCredentials(config.getAccessKeyId(), config.getSecretAccessKey(),
+                    config.getSessionToken());
         }
 
-
-        logger.info("创建隔离的Bedrock异步客户端 - 区域: {}", region);
-
-        // 构建隔离的异步客户端
         // 优化连接池配置以支持高并发流式请求
-        // 允许通过系统属性覆盖异步HTTP客户端配置
-        int maxConcurrency = Integer.getInteger("bedrock.http.maxConcurrency", 5000);
-        int connectionTimeoutSeconds = Integer.getInteger("bedrock.http.connectionTimeoutSeconds", 60);
-        int acquireTimeoutSeconds = Integer.getInteger("bedrock.http.acquireTimeoutSeconds", 60);
-        int maxPending = Integer.getInteger("bedrock.http.maxPendingAcquires", 2000);
-        int readTimeoutMinutes = Integer.getInteger("bedrock.http.readTimeoutMinutes", 15);
-        int writeTimeoutSeconds = Integer.getInteger("bedrock.http.writeTimeoutSeconds", 30);
-        int ttlMinutes = Integer.getInteger("bedrock.http.ttlMinutes", 3);
-        int maxIdleSeconds = Integer.getInteger("bedrock.http.maxIdleSeconds", 20);
-
-        // 允许通过系统属性配置API超时时间
-        int apiCallAttemptTimeoutMinutes = Integer.getInteger("bedrock.api.attemptTimeoutMinutes", 5);
-        int apiCallTimeoutMinutes = Integer.getInteger("bedrock.api.callTimeoutMinutes", 10);
-
         BedrockRuntimeAsyncClientBuilder builder = BedrockRuntimeAsyncClient.builder()
-                .region(Region.of(region))
+                .region(Region.of(config.getRegion()))
                 .overrideConfiguration(o -> o
-                        .apiCallAttemptTimeout(Duration.ofMinutes(apiCallAttemptTimeoutMinutes)) // 单次尝试超时（默认5分钟）
-                        .apiCallTimeout(Duration.ofMinutes(apiCallTimeoutMinutes)))       // 总超时（默认10分钟）
+                        .apiCallAttemptTimeout(Duration.ofMinutes(config.getApiCallAttemptTimeoutMinutes())) // 单次尝试超时（默认5分钟）
+                        .apiCallTimeout(Duration.ofMinutes(config.getApiCallTimeoutMinutes())))              // 总超时（默认10分钟）
                 .httpClientBuilder(NettyNioAsyncHttpClient.builder()
-                        // 连接池配置：进一步降低并发数，确保稳定性
-
-                        .maxConcurrency(maxConcurrency)                            // 进一步降低最大并发连接数
-                        .connectionTimeout(Duration.ofSeconds(connectionTimeoutSeconds))     // 增加建立连接超时：15秒
-                        .connectionAcquisitionTimeout(Duration.ofSeconds(acquireTimeoutSeconds))  // 增加获取连接超时：60秒
-                        .maxPendingConnectionAcquires(maxPending)              // 进一步降低等待队列大小
+                        // 连接池配置
+                        .maxConcurrency(config.getMaxConcurrency())                                          // 默认5000
+                        .connectionTimeout(Duration.ofSeconds(config.getConnectionTimeoutSeconds()))         // 默认60秒
+                        .connectionAcquisitionTimeout(Duration.ofSeconds(config.getAcquireTimeoutSeconds())) // 默认60秒
+                        .maxPendingConnectionAcquires(config.getMaxPendingAcquires())                        // 默认2000
 
                         // 流式响应超时配置
-                        .readTimeout(Duration.ofMinutes(readTimeoutMinutes))           // 增加读取超时：15min（支持更长时间流式响应）
-                        .writeTimeout(Duration.ofSeconds(writeTimeoutSeconds))          // 增加写入超时：30秒
+                        .readTimeout(Duration.ofMinutes(config.getReadTimeoutMinutes()))     // 默认15分钟（支持更长时间流式响应）
+                        .writeTimeout(Duration.ofSeconds(config.getWriteTimeoutSeconds()))   // 默认30秒
 
-                        // 连接复用和清理策略（更保守的配置）
-                        .connectionTimeToLive(Duration.ofMinutes(ttlMinutes))   // 进一步降低连接生存时间：3分钟
-                        .connectionMaxIdleTime(Duration.ofSeconds(maxIdleSeconds)) // 降低空闲连接保持：30秒
+                        // 连接复用和清理策略
+                        .connectionTimeToLive(Duration.ofMinutes(config.getConnectionTtlMinutes()))   // 默认3分钟
+                        .connectionMaxIdleTime(Duration.ofSeconds(config.getMaxIdleSeconds()))        // 默认20秒
                         .useIdleConnectionReaper(true))                // 启用空闲连接清理
                 .credentialsProvider(credentialsProvider);
 
         return builder.build();
     }
 
-
-}
\ No newline at end of file
+    private static AwsCredentialsProvider staticCredentials(String accessKeyId, String secretAccessKey,
+                                                            String sessionToken) {
+        if (sessionToken != null && !sessionToken.isEmpty()) {
+            return StaticCredentialsProvider.create(
+                    AwsSessionCredentials.create(accessKeyId, secretAccessKey, sessionToken)
+            );
+        }
+        return StaticCredentialsProvider.create(
+                AwsBasicCredentials.create(accessKeyId, secretAccessKey)
+        );
+    }
+}
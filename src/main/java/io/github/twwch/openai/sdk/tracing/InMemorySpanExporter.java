@@ -0,0 +1,40 @@
+package io.github.twwch.openai.sdk.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 内存Span导出器，保存已结束的Span，用于调试和测试
+ */
+public class InMemorySpanExporter implements SpanExporter {
+    private final ConcurrentLinkedQueue<SpanData> spans = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void export(SpanData span) {
+        spans.add(span);
+    }
+
+    /**
+     * 获取已导出的Span（按结束顺序）
+     */
+    public List<SpanData> getFinishedSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    /**
+     * 按名称查找第一个已导出的Span
+     */
+    public SpanData find(String name) {
+        for (SpanData span : spans) {
+            if (span.getName().equals(name)) {
+                return span;
+            }
+        }
+        return null;
+    }
+
+    public void reset() {
+        spans.clear();
+    }
+}
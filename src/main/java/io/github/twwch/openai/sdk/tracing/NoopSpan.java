@@ -0,0 +1,62 @@
+package io.github.twwch.openai.sdk.tracing;
+
+import java.util.Map;
+
+/**
+ * 不记录任何数据的Span
+ */
+final class NoopSpan implements Span {
+    static final NoopSpan INSTANCE = new NoopSpan();
+
+    private NoopSpan() {
+    }
+
+    @Override
+    public SpanContext getContext() {
+        return SpanContext.INVALID;
+    }
+
+    @Override
+    public boolean isRecording() {
+        return false;
+    }
+
+    @Override
+    public Span setAttribute(String key, String value) {
+        return this;
+    }
+
+    @Override
+    public Span setAttribute(String key, long value) {
+        return this;
+    }
+
+    @Override
+    public Span setAttribute(String key, boolean value) {
+        return this;
+    }
+
+    @Override
+    public Span addEvent(String name, Map<String, Object> attributes) {
+        return this;
+    }
+
+    @Override
+    public Span recordException(Throwable throwable) {
+        return this;
+    }
+
+    @Override
+    public Span setStatus(SpanStatus status, String description) {
+        return this;
+    }
+
+    @Override
+    public Span startChild(String name, SpanKind kind) {
+        return this;
+    }
+
+    @Override
+    public void end() {
+    }
+}
@@ -0,0 +1,9 @@
+package io.github.twwch.openai.sdk.tracing;
+
+/**
+ * 当前Span作用域，关闭时恢复之前的当前Span
+ */
+public interface Scope extends AutoCloseable {
+    @Override
+    void close();
+}
@@ -0,0 +1,166 @@
+package io.github.twwch.openai.sdk.tracing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 内置的记录型追踪器
+ * Span结束时转换为 {@link SpanData} 交给 {@link SpanExporter}
+ */
+public class SdkTracer implements Tracer {
+    private static final Logger logger = LoggerFactory.getLogger(SdkTracer.class);
+
+    /** 纳秒时钟基准：epoch时间 = EPOCH_BASE + (nanoTime - NANO_BASE) */
+    private static final long EPOCH_BASE_NANOS = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private static final long NANO_BASE = System.nanoTime();
+
+    private final SpanExporter exporter;
+
+    public SdkTracer(SpanExporter exporter) {
+        this.exporter = Objects.requireNonNull(exporter, "exporter");
+    }
+
+    @Override
+    public Span startSpan(String name, SpanKind kind, Span parent) {
+        SpanContext parentContext = parent != null ? parent.getContext() : SpanContext.INVALID;
+        SpanContext context = parentContext.isValid() ? parentContext.newChild() : SpanContext.newRoot();
+        String parentSpanId = parentContext.isValid() ? parentContext.getSpanId() : null;
+        return new RecordingSpan(this, name, kind, context, parentSpanId);
+    }
+
+    static long nowEpochNanos() {
+        return EPOCH_BASE_NANOS + (System.nanoTime() - NANO_BASE);
+    }
+
+    void export(SpanData data) {
+        try {
+            exporter.export(data);
+        } catch (Exception e) {
+            logger.debug("导出Span失败: {}", data.getName(), e);
+        }
+    }
+
+    /**
+     * 记录型Span
+     */
+    static final class RecordingSpan implements Span {
+        private final SdkTracer tracer;
+        private final String name;
+        private final SpanKind kind;
+        private final SpanContext context;
+        private final String parentSpanId;
+        private final long startEpochNanos;
+        private final Map<String, Object> attributes = new LinkedHashMap<>();
+        private final List<SpanData.Event> events = new ArrayList<>();
+        private final AtomicBoolean ended = new AtomicBoolean(false);
+        private SpanStatus status = SpanStatus.UNSET;
+        private String statusDescription;
+
+        RecordingSpan(SdkTracer tracer, String name, SpanKind kind, SpanContext context, String parentSpanId) {
+            this.tracer = tracer;
+            this.name = name;
+            this.kind = kind;
+            this.context = context;
+            this.parentSpanId = parentSpanId;
+            this.startEpochNanos = nowEpochNanos();
+        }
+
+        @Override
+        public SpanContext getContext() {
+            return context;
+        }
+
+        @Override
+        public boolean isRecording() {
+            return !ended.get();
+        }
+
+        @Override
+        public synchronized Span setAttribute(String key, String value) {
+            if (value != null) {
+                attributes.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public synchronized Span setAttribute(String key, long value) {
+            attributes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Span setAttribute(String key, boolean value) {
+            attributes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Span addEvent(String name, Map<String, Object> eventAttributes) {
+            events.add(new SpanData.Event(name, nowEpochNanos(),
+                    eventAttributes != null ? new LinkedHashMap<>(eventAttributes) : null));
+            return this;
+        }
+
+        @Override
+        public Span recordException(Throwable throwable) {
+            if (throwable == null) {
+                return this;
+            }
+            Map<String, Object> eventAttributes = new LinkedHashMap<>();
+            eventAttributes.put(TraceAttributes.EXCEPTION_TYPE, throwable.getClass().getName());
+            if (throwable.getMessage() != null) {
+                eventAttributes.put(TraceAttributes.EXCEPTION_MESSAGE, throwable.getMessage());
+            }
+            StringWriter stackTrace = new StringWriter();
+            throwable.printStackTrace(new PrintWriter(stackTrace));
+            eventAttributes.put(TraceAttributes.EXCEPTION_STACKTRACE, stackTrace.toString());
+            addEvent("exception", eventAttributes);
+            return setStatus(SpanStatus.ERROR, throwable.getMessage());
+        }
+
+        @Override
+        public synchronized Span setStatus(SpanStatus status, String description) {
+            // ERROR之后不再被覆盖为OK
+            if (this.status != SpanStatus.ERROR || status == SpanStatus.ERROR) {
+                this.status = status;
+                this.statusDescription = description;
+            }
+            return this;
+        }
+
+        @Override
+        public Span startChild(String name, SpanKind kind) {
+            return tracer.startSpan(name, kind, this);
+        }
+
+        @Override
+        public void end() {
+            if (!ended.compareAndSet(false, true)) {
+                return;
+            }
+            long endEpochNanos = nowEpochNanos();
+            SpanData data;
+            synchronized (this) {
+                data = new SpanData(name, kind, context, parentSpanId, startEpochNanos, endEpochNanos,
+                        new LinkedHashMap<>(attributes), new ArrayList<>(events), status, statusDescription);
+            }
+            tracer.export(data);
+        }
+
+        @Override
+        public String toString() {
+            return name + "{" + context + "}";
+        }
+    }
+}
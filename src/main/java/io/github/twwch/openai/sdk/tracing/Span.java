@@ -0,0 +1,71 @@
+package io.github.twwch.openai.sdk.tracing;
+
+import java.util.Map;
+
+/**
+ * 追踪Span，模型与OpenTelemetry兼容（名称、类型、属性、事件、状态）
+ * 实现需要保证线程安全：流式请求的Span会在回调线程中结束
+ */
+public interface Span {
+
+    /**
+     * 返回no-op Span
+     */
+    static Span noop() {
+        return NoopSpan.INSTANCE;
+    }
+
+    SpanContext getContext();
+
+    /**
+     * 是否在记录数据（no-op Span返回false，调用方可据此跳过属性计算）
+     */
+    boolean isRecording();
+
+    Span setAttribute(String key, String value);
+
+    Span setAttribute(String key, long value);
+
+    Span setAttribute(String key, boolean value);
+
+    /**
+     * 添加带时间戳的事件
+     */
+    Span addEvent(String name, Map<String, Object> attributes);
+
+    default Span addEvent(String name) {
+        return addEvent(name, null);
+    }
+
+    /**
+     * 记录异常（作为exception事件），并将状态设为ERROR
+     */
+    Span recordException(Throwable throwable);
+
+    Span setStatus(SpanStatus status, String description);
+
+    default Span setStatus(SpanStatus status) {
+        return setStatus(status, null);
+    }
+
+    /**
+     * 以当前Span为父创建子Span，no-op实现返回no-op Span
+     */
+    Span startChild(String name, SpanKind kind);
+
+    default Span startChild(String name) {
+        return startChild(name, SpanKind.INTERNAL);
+    }
+
+    /**
+     * 结束Span，重复调用会被忽略
+     */
+    void end();
+
+    /**
+     * 将当前Span设为线程的当前Span，关闭返回的Scope时恢复
+     */
+    default Scope makeCurrent() {
+        return Tracing.makeCurrent(this);
+    }
+}
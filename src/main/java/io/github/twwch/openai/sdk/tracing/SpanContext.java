@@ -0,0 +1,143 @@
+package io.github.twwch.openai.sdk.tracing;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Span上下文，遵循W3C Trace Context格式
+ * traceId为32位十六进制，spanId为16位十六进制
+ */
+public final class SpanContext {
+    private static final String VERSION = "00";
+    private static final String INVALID_TRACE_ID = "00000000000000000000000000000000";
+    private static final String INVALID_SPAN_ID = "0000000000000000";
+
+    /** 无效上下文，no-op Span使用 */
+    public static final SpanContext INVALID = new SpanContext(INVALID_TRACE_ID, INVALID_SPAN_ID, false);
+
+    private final String traceId;
+    private final String spanId;
+    private final boolean sampled;
+
+    private SpanContext(String traceId, String spanId, boolean sampled) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.sampled = sampled;
+    }
+
+    /**
+     * 创建上下文
+     *
+     * @param traceId 32位十六进制traceId
+     * @param spanId 16位十六进制spanId
+     * @param sampled 是否采样
+     */
+    public static SpanContext create(String traceId, String spanId, boolean sampled) {
+        if (!isHex(traceId, 32) || INVALID_TRACE_ID.equals(traceId)
+                || !isHex(spanId, 16) || INVALID_SPAN_ID.equals(spanId)) {
+            return INVALID;
+        }
+        return new SpanContext(traceId, spanId, sampled);
+    }
+
+    /**
+     * 生成新trace的根上下文
+     */
+    static SpanContext newRoot() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new SpanContext(toHex(random.nextLong() | 1L) + toHex(random.nextLong()), newSpanId(), true);
+    }
+
+    /**
+     * 在同一trace下生成子上下文
+     */
+    SpanContext newChild() {
+        return new SpanContext(traceId, newSpanId(), sampled);
+    }
+
+    /**
+     * 解析W3C traceparent请求头，格式不合法时返回 {@link #INVALID}
+     */
+    public static SpanContext fromTraceparent(String traceparent) {
+        if (traceparent == null) {
+            return INVALID;
+        }
+        String[] parts = traceparent.trim().split("-");
+        if (parts.length < 4 || !isHex(parts[0], 2) || "ff".equals(parts[0]) || !isHex(parts[3], 2)) {
+            return INVALID;
+        }
+        boolean sampled = (Integer.parseInt(parts[3], 16) & 0x01) != 0;
+        return create(parts[1], parts[2], sampled);
+    }
+
+    /**
+     * 转换为W3C traceparent请求头的值
+     */
+    public String toTraceparent() {
+        return VERSION + "-" + traceId + "-" + spanId + "-" + (sampled ? "01" : "00");
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public boolean isValid() {
+        return this != INVALID && !INVALID_TRACE_ID.equals(traceId);
+    }
+
+    private static String newSpanId() {
+        return toHex(ThreadLocalRandom.current().nextLong() | 1L);
+    }
+
+    private static String toHex(long value) {
+        String hex = Long.toHexString(value);
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++) {
+            sb.append('0');
+        }
+        return sb.append(hex).toString();
+    }
+
+    private static boolean isHex(String value, int length) {
+        if (value == null || value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SpanContext)) {
+            return false;
+        }
+        SpanContext that = (SpanContext) o;
+        return sampled == that.sampled && traceId.equals(that.traceId) && spanId.equals(that.spanId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(traceId, spanId, sampled);
+    }
+
+    @Override
+    public String toString() {
+        return toTraceparent();
+    }
+}
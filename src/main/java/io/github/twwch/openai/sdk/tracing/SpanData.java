@@ -0,0 +1,146 @@
+package io.github.twwch.openai.sdk.tracing;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 已结束Span的不可变数据，字段与OpenTelemetry的SpanData对应
+ */
+public final class SpanData {
+    private final String name;
+    private final SpanKind kind;
+    private final SpanContext context;
+    private final String parentSpanId;
+    private final long startEpochNanos;
+    private final long endEpochNanos;
+    private final Map<String, Object> attributes;
+    private final List<Event> events;
+    private final SpanStatus status;
+    private final String statusDescription;
+
+    SpanData(String name, SpanKind kind, SpanContext context, String parentSpanId, long startEpochNanos,
+             long endEpochNanos, Map<String, Object> attributes, List<Event> events, SpanStatus status,
+             String statusDescription) {
+        this.name = name;
+        this.kind = kind;
+        this.context = context;
+        this.parentSpanId = parentSpanId;
+        this.startEpochNanos = startEpochNanos;
+        this.endEpochNanos = endEpochNanos;
+        this.attributes = Collections.unmodifiableMap(attributes);
+        this.events = Collections.unmodifiableList(events);
+        this.status = status;
+        this.statusDescription = statusDescription;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SpanKind getKind() {
+        return kind;
+    }
+
+    public SpanContext getContext() {
+        return context;
+    }
+
+    public String getTraceId() {
+        return context.getTraceId();
+    }
+
+    public String getSpanId() {
+        return context.getSpanId();
+    }
+
+    /**
+     * 父Span的ID，根Span为null
+     */
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public long getStartEpochNanos() {
+        return startEpochNanos;
+    }
+
+    public long getEndEpochNanos() {
+        return endEpochNanos;
+    }
+
+    public long getDurationNanos() {
+        return endEpochNanos - startEpochNanos;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    public Object getAttribute(String key) {
+        return attributes.get(key);
+    }
+
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * 按名称查找第一个事件
+     */
+    public Event getEvent(String name) {
+        for (Event event : events) {
+            if (event.getName().equals(name)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    public SpanStatus getStatus() {
+        return status;
+    }
+
+    public String getStatusDescription() {
+        return statusDescription;
+    }
+
+    @Override
+    public String toString() {
+        return name + "{traceId=" + getTraceId() + ", spanId=" + getSpanId() + ", parent=" + parentSpanId
+                + ", durationMs=" + getDurationNanos() / 1_000_000.0 + ", status=" + status
+                + ", attributes=" + attributes + ", events=" + events.size() + "}";
+    }
+
+    /**
+     * Span事件
+     */
+    public static final class Event {
+        private final String name;
+        private final long epochNanos;
+        private final Map<String, Object> attributes;
+
+        Event(String name, long epochNanos, Map<String, Object> attributes) {
+            this.name = name;
+            this.epochNanos = epochNanos;
+            this.attributes = attributes != null ? Collections.unmodifiableMap(attributes) : Collections.emptyMap();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getEpochNanos() {
+            return epochNanos;
+        }
+
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public String toString() {
+            return name + attributes;
+        }
+    }
+}
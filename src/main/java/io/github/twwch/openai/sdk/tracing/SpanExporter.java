@@ -0,0 +1,9 @@
+package io.github.twwch.openai.sdk.tracing;
+
+/**
+ * Span导出器，Span结束时在结束它的线程上调用，实现应尽快返回
+ */
+public interface SpanExporter {
+
+    void export(SpanData span);
+}
@@ -0,0 +1,11 @@
+package io.github.twwch.openai.sdk.tracing;
+
+/**
+ * Span类型，与OpenTelemetry的SpanKind一致
+ */
+public enum SpanKind {
+    /** SDK内部处理阶段 */
+    INTERNAL,
+    /** 对上游服务的调用 */
+    CLIENT
+}
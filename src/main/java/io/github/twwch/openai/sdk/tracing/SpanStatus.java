@@ -0,0 +1,10 @@
+package io.github.twwch.openai.sdk.tracing;
+
+/**
+ * Span状态，与OpenTelemetry的StatusCode一致
+ */
+public enum SpanStatus {
+    UNSET,
+    OK,
+    ERROR
+}
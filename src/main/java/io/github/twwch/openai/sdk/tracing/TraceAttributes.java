@@ -0,0 +1,64 @@
+package io.github.twwch.openai.sdk.tracing;
+
+/**
+ * Span名称与属性键
+ * 属性键沿用OpenTelemetry语义约定（gen_ai.*、http.*、exception.*）
+ */
+public final class TraceAttributes {
+    /** 非流式聊天请求 */
+    public static final String SPAN_CHAT = "chat";
+    /** 流式聊天请求，Span覆盖整个流的生命周期 */
+    public static final String SPAN_CHAT_STREAM = "chat.stream";
+    /** 一次HTTP请求（含重试中的每一次） */
+    public static final String SPAN_HTTP_REQUEST = "http.request";
+    /** 批量下载图片 */
+    public static final String SPAN_IMAGE_DOWNLOAD = "image.download";
+    /** 压缩图片 */
+    public static final String SPAN_IMAGE_COMPRESS = "image.compress";
+    /** Bedrock适配器转换请求 */
+    public static final String SPAN_CONVERT_REQUEST = "bedrock.convert_request";
+    /** 调用Bedrock模型 */
+    public static final String SPAN_INVOKE_MODEL = "bedrock.invoke_model";
+    /** Bedrock适配器转换响应 */
+    public static final String SPAN_CONVERT_RESPONSE = "bedrock.convert_response";
+
+    /** 事件：获取到连接 */
+    public static final String EVENT_CONNECTION_ACQUIRED = "connection.acquired";
+    /** 事件：请求发送完毕 */
+    public static final String EVENT_REQUEST_SENT = "request.sent";
+    /** 事件：收到响应头 */
+    public static final String EVENT_RESPONSE_HEADERS = "response.headers";
+    /** 事件：收到第一个token */
+    public static final String EVENT_FIRST_TOKEN = "gen_ai.first_token";
+    /** 事件：流结束时的token统计 */
+    public static final String EVENT_TOKEN_SUMMARY = "gen_ai.token_summary";
+    /** 事件：重试 */
+    public static final String EVENT_RETRY = "retry";
+
+    public static final String GEN_AI_SYSTEM = "gen_ai.system";
+    public static final String GEN_AI_REQUEST_MODEL = "gen_ai.request.model";
+    public static final String GEN_AI_OPERATION = "gen_ai.operation.name";
+    public static final String GEN_AI_INPUT_TOKENS = "gen_ai.usage.input_tokens";
+    public static final String GEN_AI_OUTPUT_TOKENS = "gen_ai.usage.output_tokens";
+    public static final String GEN_AI_CACHE_READ_TOKENS = "gen_ai.usage.cache_read_input_tokens";
+    public static final String GEN_AI_CACHE_WRITE_TOKENS = "gen_ai.usage.cache_creation_input_tokens";
+    public static final String HTTP_METHOD = "http.request.method";
+    public static final String HTTP_STATUS_CODE = "http.response.status_code";
+    public static final String PROVIDER_REQUEST_ID = "gen_ai.provider.request_id";
+    public static final String PROVIDER_PROCESSING_MS = "gen_ai.provider.processing_ms";
+    public static final String SERVER_ADDRESS = "server.address";
+    public static final String URL_PATH = "url.path";
+    public static final String NETWORK_NEW_CONNECTION = "network.new_connection";
+    public static final String TIME_TO_FIRST_TOKEN_MS = "gen_ai.time_to_first_token_ms";
+    public static final String TOKEN_CHUNKS = "gen_ai.token_chunks";
+    public static final String MEAN_INTER_TOKEN_MS = "gen_ai.mean_inter_token_ms";
+    public static final String IMAGE_COUNT = "image.count";
+    public static final String IMAGE_DOWNLOADED = "image.downloaded";
+    public static final String RETRY_ATTEMPT = "retry.attempt";
+    public static final String EXCEPTION_TYPE = "exception.type";
+    public static final String EXCEPTION_MESSAGE = "exception.message";
+    public static final String EXCEPTION_STACKTRACE = "exception.stacktrace";
+
+    private TraceAttributes() {
+    }
+}
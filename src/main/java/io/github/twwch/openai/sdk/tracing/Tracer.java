@@ -0,0 +1,33 @@
+package io.github.twwch.openai.sdk.tracing;
+
+/**
+ * 追踪器SPI
+ * 默认使用 {@link #noop()}；使用 {@link SdkTracer} 导出到自定义 {@link SpanExporter}，
+ * 或实现本接口桥接到OpenTelemetry等追踪系统
+ */
+public interface Tracer {
+
+    /**
+     * 返回不记录任何数据的追踪器
+     */
+    static Tracer noop() {
+        return (name, kind, parent) -> Span.noop();
+    }
+
+    /**
+     * 创建Span
+     *
+     * @param name Span名称
+     * @param kind Span类型
+     * @param parent 父Span，为null或no-op时创建新的trace
+     * @return 已开始的Span
+     */
+    Span startSpan(String name, SpanKind kind, Span parent);
+
+    /**
+     * 以线程当前Span为父创建Span
+     */
+    default Span startSpan(String name, SpanKind kind) {
+        return startSpan(name, kind, Tracing.current());
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.twwch.openai.sdk.tracing;
+
+import io.github.twwch.openai.sdk.OpenAIConfig;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.metrics.SdkMetrics;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+
+/**
+ * 线程当前Span的管理工具
+ * SDK在调用上游前把请求Span设为当前Span，内部阶段（如图片下载）以当前Span为父创建子Span；
+ * 调用方也可以先把自己的Span设为当前Span，使SDK的Span挂在其下
+ */
+public final class Tracing {
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    private Tracing() {
+    }
+
+    /**
+     * 获取线程当前Span，没有时返回no-op Span
+     */
+    public static Span current() {
+        Span span = CURRENT.get();
+        return span != null ? span : Span.noop();
+    }
+
+    /**
+     * 以线程当前Span为父创建内部阶段的子Span，没有当前Span时返回no-op Span
+     */
+    public static Span startChild(String name) {
+        return current().startChild(name, SpanKind.INTERNAL);
+    }
+
+    /**
+     * 设置线程当前Span
+     *
+     * @return 关闭时恢复之前的当前Span
+     */
+    public static Scope makeCurrent(Span span) {
+        Span previous = CURRENT.get();
+        CURRENT.set(span);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /**
+     * 以线程当前Span为父，创建一次聊天请求的Span，并设置provider和模型属性
+     *
+     * @param config 客户端配置（提供追踪器）
+     * @param name Span名称
+     * @param model 模型ID
+     */
+    public static Span startRequestSpan(OpenAIConfig config, String name, String model) {
+        Span span = config.getTracer().startSpan(name, SpanKind.CLIENT);
+        if (span.isRecording()) {
+            OpenAIException.Provider provider = SdkMetrics.providerOf(config);
+            span.setAttribute(TraceAttributes.GEN_AI_SYSTEM, provider.name().toLowerCase());
+            span.setAttribute(TraceAttributes.GEN_AI_OPERATION, "chat");
+            span.setAttribute(TraceAttributes.GEN_AI_REQUEST_MODEL, model);
+        }
+        return span;
+    }
+
+    /**
+     * 把token用量写入Span属性
+     */
+    public static void setUsage(Span span, ChatCompletionResponse.Usage usage) {
+        if (usage == null || !span.isRecording()) {
+            return;
+        }
+        span.setAttribute(TraceAttributes.GEN_AI_INPUT_TOKENS, usage.getPromptTokens());
+        span.setAttribute(TraceAttributes.GEN_AI_OUTPUT_TOKENS, usage.getCompletionTokens());
+        if (usage.getCacheReadInputTokens() != null) {
+            span.setAttribute(TraceAttributes.GEN_AI_CACHE_READ_TOKENS, usage.getCacheReadInputTokens());
+        }
+        if (usage.getCacheCreationInputTokens() != null) {
+            span.setAttribute(TraceAttributes.GEN_AI_CACHE_WRITE_TOKENS, usage.getCacheCreationInputTokens());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.twwch.openai.sdk.usage;
+
+/**
+ * 模型价格（美元/百万token），不可变
+ */
+public final class ModelPrice {
+    private final double inputPerMillion;
+    private final double outputPerMillion;
+    private final double cacheReadPerMillion;
+    private final double cacheWritePerMillion;
+
+    /**
+     * @param inputPerMillion      未命中缓存的输入token单价
+     * @param outputPerMillion     输出token单价
+     * @param cacheReadPerMillion  缓存读取token单价
+     * @param cacheWritePerMillion 缓存写入token单价
+     */
+    public ModelPrice(double inputPerMillion, double outputPerMillion, double cacheReadPerMillion,
+                      double cacheWritePerMillion) {
+        this.inputPerMillion = inputPerMillion;
+        this.outputPerMillion = outputPerMillion;
+        this.cacheReadPerMillion = cacheReadPerMillion;
+        this.cacheWritePerMillion = cacheWritePerMillion;
+    }
+
+    /**
+     * 不区分缓存的价格：缓存读取按输入单价的10%，缓存写入按输入单价的125%（Anthropic的计价方式）
+     */
+    public static ModelPrice of(double inputPerMillion, double outputPerMillion) {
+        return new ModelPrice(inputPerMillion, outputPerMillion, inputPerMillion * 0.1, inputPerMillion * 1.25);
+    }
+
+    public double getInputPerMillion() {
+        return inputPerMillion;
+    }
+
+    public double getOutputPerMillion() {
+        return outputPerMillion;
+    }
+
+    public double getCacheReadPerMillion() {
+        return cacheReadPerMillion;
+    }
+
+    public double getCacheWritePerMillion() {
+        return cacheWritePerMillion;
+    }
+
+    /**
+     * 计算费用，单位为纳美元（1e-9美元），便于用整数无锁累加
+     */
+    long costNanos(long inputTokens, long outputTokens, long cacheReadTokens, long cacheWriteTokens) {
+        // 美元/百万token × token数 × 1e9 / 1e6 = 纳美元
+        double nanos = (inputTokens * inputPerMillion
+                + outputTokens * outputPerMillion
+                + cacheReadTokens * cacheReadPerMillion
+                + cacheWriteTokens * cacheWritePerMillion) * 1000;
+        return Math.round(nanos);
+    }
+
+    @Override
+    public String toString() {
+        return "ModelPrice{input=" + inputPerMillion + ", output=" + outputPerMillion
+                + ", cacheRead=" + cacheReadPerMillion + ", cacheWrite=" + cacheWritePerMillion + "}";
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.twwch.openai.sdk.usage;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 价格表
+ * 按模型名称匹配价格：先精确匹配，再取模型ID中包含的最长名称，
+ * 因此 "anthropic.claude-3-5-haiku" 可以匹配 "us.anthropic.claude-3-5-haiku-20241022-v1:0" 这类带区域前缀和版本的Bedrock模型ID。
+ * 默认为空，未配置价格的模型只统计token不计费用。
+ */
+public class PriceTable {
+    private final Map<String, ModelPrice> prices = new ConcurrentHashMap<>();
+
+    /**
+     * 设置模型价格
+     *
+     * @param model 模型名称或模型ID片段
+     * @param price 价格
+     * @return 当前价格表，便于链式配置
+     */
+    public PriceTable put(String model, ModelPrice price) {
+        prices.put(model, price);
+        return this;
+    }
+
+    public void remove(String model) {
+        prices.remove(model);
+    }
+
+    /**
+     * 查找模型价格
+     *
+     * @return 价格，未配置时返回null
+     */
+    public ModelPrice find(String model) {
+        if (model == null) {
+            return null;
+        }
+        ModelPrice exact = prices.get(model);
+        if (exact != null) {
+            return exact;
+        }
+        String bestName = null;
+        for (String name : prices.keySet()) {
+            if (model.contains(name) && (bestName == null || name.length() > bestName.length())) {
+                bestName = name;
+            }
+        }
+        return bestName != null ? prices.get(bestName) : null;
+    }
+
+    public Map<String, ModelPrice> getPrices() {
+        return Collections.unmodifiableMap(prices);
+    }
+}
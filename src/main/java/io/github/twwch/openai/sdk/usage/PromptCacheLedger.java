@@ -0,0 +1,201 @@
+package io.github.twwch.openai.sdk.usage;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.service.PromptPrefix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prompt缓存效果账本
+ * 按服务提供商、模型、接口和缓存前缀指纹汇总缓存读取、缓存写入和未命中缓存的输入token，
+ * 用于查看每个前缀的命中率、节省的前缀字节数，以及反复写入却很少被读取的前缀（缓存断点放置不当或前缀不稳定）。
+ * 计数基于LongAdder；不同前缀数超过上限后新的前缀记入 {@link #OTHER_PREFIX}，避免前缀不稳定时无限增长。
+ */
+public class PromptCacheLedger {
+    private static final Logger logger = LoggerFactory.getLogger(PromptCacheLedger.class);
+
+    /** 请求没有可缓存前缀时记录的前缀 */
+    public static final String NO_PREFIX = "none";
+    /** 前缀数超过上限后记录的前缀 */
+    public static final String OTHER_PREFIX = "other";
+    /** 默认最多记录的前缀数 */
+    public static final int DEFAULT_MAX_PREFIXES = 10_000;
+
+    private static final PromptCacheLedger DEFAULT = new PromptCacheLedger(DEFAULT_MAX_PREFIXES);
+
+    private final int maxPrefixes;
+    private final ConcurrentHashMap<CacheKey, CacheCounters> entries = new ConcurrentHashMap<>();
+    private volatile boolean enabled = true;
+    private volatile boolean overflowLogged;
+
+    /**
+     * @param maxPrefixes 最多记录的前缀数
+     */
+    public PromptCacheLedger(int maxPrefixes) {
+        this.maxPrefixes = Math.max(1, maxPrefixes);
+    }
+
+    /**
+     * 获取进程内共享的默认账本
+     */
+    public static PromptCacheLedger getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 记录一次调用的缓存用量
+     * Bedrock的输入token不包含缓存读写部分；OpenAI/Azure的prompt_tokens包含缓存命中部分，记录时会扣除。
+     *
+     * @param provider 服务提供商
+     * @param model    模型
+     * @param endpoint 接口
+     * @param prefix   请求的可缓存前缀，为null时记为 {@link #NO_PREFIX}
+     * @param usage    用量（流式调用为合并后的用量）
+     */
+    public void record(OpenAIException.Provider provider, String model, String endpoint, PromptPrefix prefix,
+                       ChatCompletionResponse.Usage usage) {
+        if (!enabled || usage == null) {
+            return;
+        }
+        long cacheRead = usage.getCacheReadInputTokens() != null ? usage.getCacheReadInputTokens() : 0;
+        long cacheWrite = usage.getCacheCreationInputTokens() != null ? usage.getCacheCreationInputTokens() : 0;
+        long uncached = usage.getPromptTokens();
+        if (provider != OpenAIException.Provider.BEDROCK) {
+            uncached = Math.max(0, uncached - cacheRead);
+        }
+
+        String fingerprint = prefix != null ? prefix.getFingerprint() : NO_PREFIX;
+        CacheKey key = new CacheKey(provider, model, endpoint, fingerprint);
+        CacheCounters counters = entries.get(key);
+        if (counters == null) {
+            if (entries.size() >= maxPrefixes) {
+                if (!overflowLogged) {
+                    overflowLogged = true;
+                    logger.warn("Prompt缓存账本前缀数超过 {}，新的前缀记入 {}，请检查前缀是否稳定", maxPrefixes,
+                            OTHER_PREFIX);
+                }
+                key = new CacheKey(provider, model, endpoint, OTHER_PREFIX);
+            }
+            counters = entries.computeIfAbsent(key, k -> new CacheCounters());
+        }
+        counters.add(prefix != null ? prefix.getBytes() : 0, cacheRead, cacheWrite, uncached);
+    }
+
+    /**
+     * 获取当前所有前缀的汇总记录，按缓存写入token降序
+     */
+    public List<PromptCacheRecord> snapshot() {
+        List<PromptCacheRecord> records = new ArrayList<>();
+        for (Map.Entry<CacheKey, CacheCounters> entry : entries.entrySet()) {
+            CacheKey key = entry.getKey();
+            CacheCounters c = entry.getValue();
+            records.add(new PromptCacheRecord(key.provider, key.model, key.endpoint, key.fingerprint,
+                    c.prefixBytes, c.requests.sum(), c.readRequests.sum(), c.writeRequests.sum(),
+                    c.cacheReadTokens.sum(), c.cacheWriteTokens.sum(), c.uncachedTokens.sum()));
+        }
+        records.sort(Comparator.comparingLong(PromptCacheRecord::getCacheWriteTokens).reversed()
+                .thenComparing(PromptCacheRecord::getFingerprint));
+        return records;
+    }
+
+    /**
+     * 查找反复写入缓存却很少被读取的前缀
+     *
+     * @param minWrites        至少写入缓存的请求数
+     * @param maxReadsPerWrite 每次写入对应的读取次数不超过该值时视为浪费
+     * @return 按缓存写入token降序的记录
+     */
+    public List<PromptCacheRecord> findWastefulPrefixes(long minWrites, double maxReadsPerWrite) {
+        List<PromptCacheRecord> result = new ArrayList<>();
+        for (PromptCacheRecord record : snapshot()) {
+            if (record.getWriteRequests() >= minWrites && record.getReadsPerWrite() <= maxReadsPerWrite) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 清空所有记录
+     */
+    public void reset() {
+        entries.clear();
+        overflowLogged = false;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    private static final class CacheKey {
+        private final OpenAIException.Provider provider;
+        private final String model;
+        private final String endpoint;
+        private final String fingerprint;
+        private final int hash;
+
+        CacheKey(OpenAIException.Provider provider, String model, String endpoint, String fingerprint) {
+            this.provider = provider;
+            this.model = model;
+            this.endpoint = endpoint;
+            this.fingerprint = fingerprint;
+            this.hash = Objects.hash(provider, model, endpoint, fingerprint);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return provider == other.provider && Objects.equals(model, other.model)
+                    && Objects.equals(endpoint, other.endpoint) && fingerprint.equals(other.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class CacheCounters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder readRequests = new LongAdder();
+        private final LongAdder writeRequests = new LongAdder();
+        private final LongAdder cacheReadTokens = new LongAdder();
+        private final LongAdder cacheWriteTokens = new LongAdder();
+        private final LongAdder uncachedTokens = new LongAdder();
+        // 同一前缀的大小相同，记录最近一次即可
+        private volatile long prefixBytes;
+
+        void add(long bytes, long cacheRead, long cacheWrite, long uncached) {
+            prefixBytes = bytes;
+            requests.increment();
+            if (cacheRead > 0) {
+                readRequests.increment();
+            }
+            if (cacheWrite > 0) {
+                writeRequests.increment();
+            }
+            cacheReadTokens.add(cacheRead);
+            cacheWriteTokens.add(cacheWrite);
+            uncachedTokens.add(uncached);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.twwch.openai.sdk.usage;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+
+/**
+ * Prompt缓存效果汇总记录（按服务提供商、模型、接口和缓存前缀）
+ * 未命中缓存的输入token不包含缓存读写部分
+ */
+public class PromptCacheRecord {
+    private final OpenAIException.Provider provider;
+    private final String model;
+    private final String endpoint;
+    private final String fingerprint;
+    private final long prefixBytes;
+    private final long requests;
+    private final long readRequests;
+    private final long writeRequests;
+    private final long cacheReadTokens;
+    private final long cacheWriteTokens;
+    private final long uncachedTokens;
+
+    PromptCacheRecord(OpenAIException.Provider provider, String model, String endpoint, String fingerprint,
+                      long prefixBytes, long requests, long readRequests, long writeRequests, long cacheReadTokens,
+                      long cacheWriteTokens, long uncachedTokens) {
+        this.provider = provider;
+        this.model = model;
+        this.endpoint = endpoint;
+        this.fingerprint = fingerprint;
+        this.prefixBytes = prefixBytes;
+        this.requests = requests;
+        this.readRequests = readRequests;
+        this.writeRequests = writeRequests;
+        this.cacheReadTokens = cacheReadTokens;
+        this.cacheWriteTokens = cacheWriteTokens;
+        this.uncachedTokens = uncachedTokens;
+    }
+
+    public OpenAIException.Provider getProvider() {
+        return provider;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * 缓存前缀指纹，没有可缓存前缀时为 {@link PromptCacheLedger#NO_PREFIX}
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * 前缀序列化后的字节数
+     */
+    public long getPrefixBytes() {
+        return prefixBytes;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * 命中缓存（缓存读取token大于0）的请求数
+     */
+    public long getReadRequests() {
+        return readRequests;
+    }
+
+    /**
+     * 写入缓存（缓存写入token大于0）的请求数
+     */
+    public long getWriteRequests() {
+        return writeRequests;
+    }
+
+    public long getCacheReadTokens() {
+        return cacheReadTokens;
+    }
+
+    public long getCacheWriteTokens() {
+        return cacheWriteTokens;
+    }
+
+    public long getUncachedTokens() {
+        return uncachedTokens;
+    }
+
+    /**
+     * 缓存命中率：缓存读取token / 全部输入token，没有输入时为0
+     */
+    public double getHitRatio() {
+        long input = cacheReadTokens + cacheWriteTokens + uncachedTokens;
+        return input > 0 ? cacheReadTokens / (double) input : 0;
+    }
+
+    /**
+     * 每次缓存写入对应的命中次数，没有写入时为命中次数
+     */
+    public double getReadsPerWrite() {
+        return writeRequests > 0 ? readRequests / (double) writeRequests : readRequests;
+    }
+
+    /**
+     * 命中缓存而无需重新处理的前缀字节数
+     */
+    public long getBytesSaved() {
+        return prefixBytes * readRequests;
+    }
+
+    @Override
+    public String toString() {
+        return provider + "/" + model + "/" + endpoint + "/" + fingerprint + "{requests=" + requests
+                + ", reads=" + readRequests + ", writes=" + writeRequests + ", cacheRead=" + cacheReadTokens
+                + ", cacheWrite=" + cacheWriteTokens + ", uncached=" + uncachedTokens
+                + ", hitRatio=" + String.format("%.3f", getHitRatio()) + ", bytesSaved=" + getBytesSaved() + "}";
+    }
+}
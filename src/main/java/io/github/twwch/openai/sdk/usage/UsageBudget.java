@@ -0,0 +1,91 @@
+package io.github.twwch.openai.sdk.usage;
+
+/**
+ * 用量预算
+ * 达到上限后拒绝调用；超过限流比例（默认80%）后每次调用前等待一段时间，降低消耗速度。
+ * 费用和token上限为0时表示不限制。
+ */
+public class UsageBudget {
+    private final String tenant;
+    private double maxCostUsd;
+    private long maxTokens;
+    private double throttleRatio = 0.8;
+    private long throttleDelayMillis = 1000;
+
+    /**
+     * @param tenant 租户（请求的user字段），为null时表示全局预算
+     */
+    public UsageBudget(String tenant) {
+        this.tenant = tenant;
+    }
+
+    /**
+     * 创建全局预算（所有租户合计）
+     */
+    public static UsageBudget global() {
+        return new UsageBudget(null);
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public boolean isGlobal() {
+        return tenant == null;
+    }
+
+    public double getMaxCostUsd() {
+        return maxCostUsd;
+    }
+
+    public void setMaxCostUsd(double maxCostUsd) {
+        this.maxCostUsd = maxCostUsd;
+    }
+
+    public long getMaxTokens() {
+        return maxTokens;
+    }
+
+    public void setMaxTokens(long maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
+    public double getThrottleRatio() {
+        return throttleRatio;
+    }
+
+    /**
+     * 设置开始限流的比例（0~1），设置为1或更大时不限流只拒绝
+     */
+    public void setThrottleRatio(double throttleRatio) {
+        this.throttleRatio = throttleRatio;
+    }
+
+    public long getThrottleDelayMillis() {
+        return throttleDelayMillis;
+    }
+
+    public void setThrottleDelayMillis(long throttleDelayMillis) {
+        this.throttleDelayMillis = throttleDelayMillis;
+    }
+
+    /**
+     * 计算当前用量占预算的比例（取费用和token中较高者）
+     */
+    double usageRatio(double costUsd, long tokens) {
+        double ratio = 0;
+        if (maxCostUsd > 0) {
+            ratio = Math.max(ratio, costUsd / maxCostUsd);
+        }
+        if (maxTokens > 0) {
+            ratio = Math.max(ratio, tokens / (double) maxTokens);
+        }
+        return ratio;
+    }
+
+    @Override
+    public String toString() {
+        return "UsageBudget{tenant=" + (tenant != null ? tenant : "*") + ", maxCostUsd=" + maxCostUsd
+                + ", maxTokens=" + maxTokens + "}";
+    }
+}
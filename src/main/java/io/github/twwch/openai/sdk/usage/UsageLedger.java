@@ -0,0 +1,462 @@
+package io.github.twwch.openai.sdk.usage;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.limit.QuotaCoordination;
+import io.github.twwch.openai.sdk.limit.QuotaLease;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 用量与费用账本
+ * 按租户（请求的user字段）、服务提供商和模型汇总每次同步和流式调用的token用量，
+ * 计数基于LongAdder，高并发写入不会相互竞争；按 {@link PriceTable} 计算费用，并支持按预算限流或拒绝调用。
+ * 默认所有客户端共享 {@link #getDefault()}，也可以为每个配置单独指定。
+ * 设置 {@link #setQuotaCoordination} 后预算为集群合计：各进程从协调器分批租用费用和token额度，
+ * 剩余不到半批时提前租用下一批，检查预算时不等待协调器；集群额度用完时拒绝调用，
+ * 还没有租到额度或协调器不可用时退回按本进程的用量检查。
+ */
+public class UsageLedger {
+    private static final Logger logger = LoggerFactory.getLogger(UsageLedger.class);
+
+    /** 请求未设置user字段时使用的租户 */
+    public static final String DEFAULT_TENANT = "default";
+    /** 预算被拒绝时异常的错误类型 */
+    public static final String ERROR_TYPE_BUDGET_EXCEEDED = "budget_exceeded";
+
+    private static final UsageLedger DEFAULT = new UsageLedger();
+    private static final String GLOBAL_BUDGET = "*";
+
+    private final ConcurrentHashMap<UsageKey, UsageCounters> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, UsageCounters> tenants = new ConcurrentHashMap<>();
+    private final UsageCounters total = new UsageCounters();
+    private final ConcurrentHashMap<String, UsageBudget> budgets = new ConcurrentHashMap<>();
+    private volatile PriceTable priceTable = new PriceTable();
+    private volatile boolean enabled = true;
+    private volatile QuotaCoordination quotaCoordination;
+    private final ConcurrentHashMap<String, BudgetAllowance> allowances = new ConcurrentHashMap<>();
+
+    /**
+     * 获取进程内共享的默认账本
+     */
+    public static UsageLedger getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 记录一次调用的用量
+     * Bedrock的输入token不包含缓存读写部分；OpenAI/Azure的prompt_tokens包含缓存命中部分，记录时会扣除，
+     * 因此账本中的输入token始终是未命中缓存的部分。
+     *
+     * @param tenant   租户（请求的user字段），为null时记为 {@link #DEFAULT_TENANT}
+     * @param provider 服务提供商
+     * @param model    模型
+     * @param usage    用量（流式调用为合并后的用量）
+     */
+    public void record(String tenant, OpenAIException.Provider provider, String model,
+                       ChatCompletionResponse.Usage usage) {
+        if (!enabled || usage == null) {
+            return;
+        }
+        long cacheRead = usage.getCacheReadInputTokens() != null ? usage.getCacheReadInputTokens() : 0;
+        long cacheWrite = usage.getCacheCreationInputTokens() != null ? usage.getCacheCreationInputTokens() : 0;
+        long input = usage.getPromptTokens();
+        if (provider != OpenAIException.Provider.BEDROCK) {
+            input = Math.max(0, input - cacheRead);
+        }
+        long output = usage.getCompletionTokens();
+        ModelPrice price = priceTable.find(model);
+        long costNanos = price != null ? price.costNanos(input, output, cacheRead, cacheWrite) : 0;
+
+        String tenantKey = tenant != null && !tenant.isEmpty() ? tenant : DEFAULT_TENANT;
+        entries.computeIfAbsent(new UsageKey(tenantKey, provider, model), k -> new UsageCounters())
+                .add(input, output, cacheRead, cacheWrite, costNanos);
+        tenants.computeIfAbsent(tenantKey, k -> new UsageCounters())
+                .add(input, output, cacheRead, cacheWrite, costNanos);
+        total.add(input, output, cacheRead, cacheWrite, costNanos);
+
+        if (quotaCoordination != null) {
+            long tokens = input + output + cacheRead + cacheWrite;
+            debit(allowances.get(tenantKey), costNanos, tokens);
+            debit(allowances.get(GLOBAL_BUDGET), costNanos, tokens);
+        }
+    }
+
+    private static void debit(BudgetAllowance allowance, long costNanos, long tokens) {
+        if (allowance != null) {
+            allowance.cost.debit(costNanos);
+            allowance.tokens.debit(tokens);
+        }
+    }
+
+    /**
+     * 调用前检查预算：超过上限时抛出异常，超过限流比例时在调用线程上等待
+     *
+     * @param tenant 租户（请求的user字段）
+     * @throws OpenAIException 超过预算上限（状态码429，错误类型 {@link #ERROR_TYPE_BUDGET_EXCEEDED}）
+     * @deprecated 限流等待会占用调用线程，SDK内部已不再使用；请使用 {@link #checkBudgetDelay(String)}，
+     *             把返回的等待时间交给调度器
+     */
+    @Deprecated
+    public void checkBudget(String tenant) throws OpenAIException {
+        long delay = checkBudgetDelay(tenant);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OpenAIException("预算限流等待被中断", e);
+            }
+        }
+    }
+
+    /**
+     * 调用前检查预算，不阻塞：超过上限时抛出异常，超过限流比例时返回调用前需要等待的时间
+     *
+     * @param tenant 租户（请求的user字段）
+     * @return 限流等待的毫秒数，未限流时为0
+     * @throws OpenAIException 超过预算上限（状态码429，错误类型 {@link #ERROR_TYPE_BUDGET_EXCEEDED}）
+     */
+    public long checkBudgetDelay(String tenant) throws OpenAIException {
+        if (!enabled || budgets.isEmpty()) {
+            return 0;
+        }
+        String tenantKey = tenant != null && !tenant.isEmpty() ? tenant : DEFAULT_TENANT;
+        long delay = Math.max(check(tenantKey, budgets.get(tenantKey), tenants.get(tenantKey)),
+                check(GLOBAL_BUDGET, budgets.get(GLOBAL_BUDGET), total));
+        if (delay > 0) {
+            logger.debug("租户 {} 用量接近预算，限流等待 {} ms", tenantKey, delay);
+        }
+        return delay;
+    }
+
+    /**
+     * @return 需要等待的毫秒数
+     */
+    private long check(String key, UsageBudget budget, UsageCounters counters) {
+        if (budget == null) {
+            return 0;
+        }
+        QuotaCoordination coordination = quotaCoordination;
+        if (coordination != null) {
+            BudgetAllowance allowance = allowances.compute(key, (k, current) ->
+                    current != null && current.budget == budget && current.coordination == coordination
+                            ? current : new BudgetAllowance(key, budget, coordination));
+            long delay = checkCluster(allowance);
+            if (delay >= 0) {
+                return delay;
+            }
+        }
+        double costUsd = counters != null ? counters.costNanos.sum() / 1e9 : 0;
+        long tokens = counters != null ? counters.totalTokens() : 0;
+        double ratio = budget.usageRatio(costUsd, tokens);
+        if (ratio >= 1) {
+            logger.warn("超出用量预算，拒绝调用: {}, 已用费用: {} 美元, 已用token: {}", budget,
+                    String.format("%.6f", costUsd), tokens);
+            throw OpenAIException.builder("超出用量预算: " + budget)
+                    .statusCode(429)
+                    .errorType(ERROR_TYPE_BUDGET_EXCEEDED)
+                    .build();
+        }
+        return ratio >= budget.getThrottleRatio() ? budget.getThrottleDelayMillis() : 0;
+    }
+
+    /**
+     * 按集群额度检查预算：先按需提前租用下一批，集群额度用完时拒绝调用
+     *
+     * @return 需要等待的毫秒数；还没有租到额度或协调器不可用时为-1，由调用方按本进程的用量检查
+     */
+    private static long checkCluster(BudgetAllowance allowance) {
+        UsageBudget budget = allowance.budget;
+        allowance.cost.lease();
+        allowance.tokens.lease();
+        if (allowance.cost.exhausted() || allowance.tokens.exhausted()) {
+            logger.warn("超出集群用量预算，拒绝调用: {}, 集群已用费用: {} 美元, 集群已用token: {}", budget,
+                    String.format("%.6f", allowance.cost.clusterUsed() / 1e9), allowance.tokens.clusterUsed());
+            throw OpenAIException.builder("超出用量预算: " + budget)
+                    .statusCode(429)
+                    .errorType(ERROR_TYPE_BUDGET_EXCEEDED)
+                    .build();
+        }
+        if (allowance.cost.local() || allowance.tokens.local()) {
+            return -1;
+        }
+        double ratio = budget.usageRatio(allowance.cost.clusterUsed() / 1e9, allowance.tokens.clusterUsed());
+        return ratio >= budget.getThrottleRatio() ? budget.getThrottleDelayMillis() : 0;
+    }
+
+    /**
+     * 设置预算，同一租户的预算会被替换
+     */
+    public void setBudget(UsageBudget budget) {
+        budgets.put(budget.isGlobal() ? GLOBAL_BUDGET : budget.getTenant(), budget);
+    }
+
+    /**
+     * 移除租户预算
+     *
+     * @param tenant 租户，为null时移除全局预算
+     */
+    public void removeBudget(String tenant) {
+        budgets.remove(tenant != null ? tenant : GLOBAL_BUDGET);
+    }
+
+    /**
+     * 租户累计费用（美元）
+     */
+    public double getTenantCostUsd(String tenant) {
+        UsageCounters counters = tenants.get(tenant != null ? tenant : DEFAULT_TENANT);
+        return counters != null ? counters.costNanos.sum() / 1e9 : 0;
+    }
+
+    /**
+     * 租户累计token数
+     */
+    public long getTenantTokens(String tenant) {
+        UsageCounters counters = tenants.get(tenant != null ? tenant : DEFAULT_TENANT);
+        return counters != null ? counters.totalTokens() : 0;
+    }
+
+    /**
+     * 获取当前用量快照
+     */
+    public UsageSnapshot snapshot() {
+        List<UsageRecord> records = new ArrayList<>();
+        for (Map.Entry<UsageKey, UsageCounters> entry : entries.entrySet()) {
+            UsageKey key = entry.getKey();
+            UsageCounters c = entry.getValue();
+            records.add(new UsageRecord(key.tenant, key.provider, key.model, c.requests.sum(), c.inputTokens.sum(),
+                    c.outputTokens.sum(), c.cacheReadTokens.sum(), c.cacheWriteTokens.sum(), c.costNanos.sum()));
+        }
+        return new UsageSnapshot(records);
+    }
+
+    /**
+     * 清空所有用量（预算和价格表保留）
+     */
+    public void reset() {
+        entries.clear();
+        tenants.clear();
+        total.reset();
+    }
+
+    public PriceTable getPriceTable() {
+        return priceTable;
+    }
+
+    public void setPriceTable(PriceTable priceTable) {
+        this.priceTable = priceTable != null ? priceTable : new PriceTable();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public QuotaCoordination getQuotaCoordination() {
+        return quotaCoordination;
+    }
+
+    /**
+     * 设置集群额度协调，预算改为共享同一个命名空间的所有进程合计；为null时只按本进程的用量检查。
+     * 集群用量从设置后开始累计，之前的本地用量不计入
+     */
+    public void setQuotaCoordination(QuotaCoordination quotaCoordination) {
+        this.quotaCoordination = quotaCoordination;
+        allowances.clear();
+    }
+
+    /**
+     * 一个预算从协调器租到的费用（纳秒美元）和token额度
+     */
+    private static final class BudgetAllowance {
+        private final UsageBudget budget;
+        private final QuotaCoordination coordination;
+        private final Allowance cost;
+        private final Allowance tokens;
+
+        BudgetAllowance(String key, UsageBudget budget, QuotaCoordination coordination) {
+            this.budget = budget;
+            this.coordination = coordination;
+            this.cost = new Allowance("budget:" + key + ":cost",
+                    (long) Math.ceil(budget.getMaxCostUsd() * 1e9), coordination);
+            this.tokens = new Allowance("budget:" + key + ":tokens", budget.getMaxTokens(), coordination);
+        }
+    }
+
+    /**
+     * 一项预算额度，在对象的锁内读写；向协调器租用时不持有锁，租用完成后在完成的线程上更新
+     */
+    private static final class Allowance {
+        private final String name;
+        private final long limit;
+        private final QuotaCoordination coordination;
+        /** 本进程租到还没用掉的额度，负数为透支 */
+        private double available;
+        /** 集群已租出的总量 */
+        private long leased;
+        private boolean leasing;
+        /** 协调器不可用，按本进程的用量检查 */
+        private boolean local;
+        /** 最近一次租用没有拿到申请的数量，集群额度已用完 */
+        private boolean denied;
+        /** 协调器不可用或集群额度用完时，在此之前不再租用 */
+        private long retryAtMillis;
+
+        Allowance(String name, long limit, QuotaCoordination coordination) {
+            this.name = name;
+            this.limit = limit;
+            this.coordination = coordination;
+        }
+
+        synchronized void debit(long amount) {
+            available -= amount;
+        }
+
+        /**
+         * 剩余不到半批时（协调器不可用时到了重试时间）租用下一批（上限的一小部分加上透支的部分），不等待结果
+         */
+        void lease() {
+            long requested;
+            synchronized (this) {
+                if (limit <= 0 || leasing || System.currentTimeMillis() < retryAtMillis) {
+                    return;
+                }
+                long batch = coordination.batchSize(limit);
+                if (!local && available >= batch / 2.0) {
+                    return;
+                }
+                requested = batch + (long) Math.ceil(Math.max(0, -available));
+                leasing = true;
+            }
+            CompletableFuture<QuotaLease> future;
+            try {
+                future = coordination.getCoordinator().lease(coordination.key(name), limit, 0, requested)
+                        .toCompletableFuture();
+            } catch (RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            future.orTimeout(coordination.getLeaseTimeoutMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((lease, throwable) -> onLease(lease, throwable, requested));
+        }
+
+        private synchronized void onLease(QuotaLease lease, Throwable throwable, long requested) {
+            leasing = false;
+            long now = System.currentTimeMillis();
+            if (throwable != null || lease == null) {
+                if (!local) {
+                    logger.warn("额度协调器不可用，预算额度 {} 暂时按本进程用量检查: {}", name,
+                            throwable != null ? throwable.toString() : "没有返回租约");
+                    local = true;
+                }
+                retryAtMillis = now + coordination.getRetryMillis();
+                return;
+            }
+            if (local) {
+                logger.info("额度协调器已恢复: {}", name);
+                local = false;
+            }
+            available += lease.getGranted();
+            leased = lease.getUsed();
+            denied = lease.getGranted() < requested;
+            // 集群额度不足时间隔一段时间再申请，期间按已知的集群用量拒绝
+            retryAtMillis = denied ? now + coordination.getRetryMillis() : 0;
+        }
+
+        /**
+         * 集群额度已用完：本进程的额度用完，且最近一次租用没有拿到申请的数量
+         */
+        synchronized boolean exhausted() {
+            return limit > 0 && !local && available <= 0 && denied;
+        }
+
+        /**
+         * 协调器不可用，或者本进程的额度用完、下一批还在租用中（包括第一次租用）
+         */
+        synchronized boolean local() {
+            return limit > 0 && (local || (available <= 0 && !denied));
+        }
+
+        /**
+         * 集群已用量的估计：已租出的总量减去本进程未用掉的部分
+         */
+        synchronized long clusterUsed() {
+            return Math.max(0, leased - (long) Math.max(0, available));
+        }
+    }
+
+    private static final class UsageKey {
+        private final String tenant;
+        private final OpenAIException.Provider provider;
+        private final String model;
+        private final int hash;
+
+        UsageKey(String tenant, OpenAIException.Provider provider, String model) {
+            this.tenant = tenant;
+            this.provider = provider;
+            this.model = model;
+            this.hash = Objects.hash(tenant, provider, model);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof UsageKey)) {
+                return false;
+            }
+            UsageKey other = (UsageKey) o;
+            return tenant.equals(other.tenant) && provider == other.provider && Objects.equals(model, other.model);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class UsageCounters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder inputTokens = new LongAdder();
+        private final LongAdder outputTokens = new LongAdder();
+        private final LongAdder cacheReadTokens = new LongAdder();
+        private final LongAdder cacheWriteTokens = new LongAdder();
+        private final LongAdder costNanos = new LongAdder();
+
+        void add(long input, long output, long cacheRead, long cacheWrite, long cost) {
+            requests.increment();
+            inputTokens.add(input);
+            outputTokens.add(output);
+            cacheReadTokens.add(cacheRead);
+            cacheWriteTokens.add(cacheWrite);
+            costNanos.add(cost);
+        }
+
+        long totalTokens() {
+            return inputTokens.sum() + outputTokens.sum() + cacheReadTokens.sum() + cacheWriteTokens.sum();
+        }
+
+        void reset() {
+            requests.reset();
+            inputTokens.reset();
+            outputTokens.reset();
+            cacheReadTokens.reset();
+            cacheWriteTokens.reset();
+            costNanos.reset();
+        }
+    }
+}
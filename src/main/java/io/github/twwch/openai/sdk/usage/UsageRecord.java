@@ -0,0 +1,88 @@
+package io.github.twwch.openai.sdk.usage;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+
+/**
+ * 用量汇总记录（按租户、服务提供商和模型）
+ * 输入token均为未命中缓存的部分，缓存读取和写入单独统计
+ */
+public class UsageRecord {
+    private final String tenant;
+    private final OpenAIException.Provider provider;
+    private final String model;
+    private final long requests;
+    private final long inputTokens;
+    private final long outputTokens;
+    private final long cacheReadTokens;
+    private final long cacheWriteTokens;
+    private final long costNanos;
+
+    UsageRecord(String tenant, OpenAIException.Provider provider, String model, long requests, long inputTokens,
+                long outputTokens, long cacheReadTokens, long cacheWriteTokens, long costNanos) {
+        this.tenant = tenant;
+        this.provider = provider;
+        this.model = model;
+        this.requests = requests;
+        this.inputTokens = inputTokens;
+        this.outputTokens = outputTokens;
+        this.cacheReadTokens = cacheReadTokens;
+        this.cacheWriteTokens = cacheWriteTokens;
+        this.costNanos = costNanos;
+    }
+
+    /**
+     * 租户（请求的user字段），未设置时为 {@link UsageLedger#DEFAULT_TENANT}
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    public OpenAIException.Provider getProvider() {
+        return provider;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getInputTokens() {
+        return inputTokens;
+    }
+
+    public long getOutputTokens() {
+        return outputTokens;
+    }
+
+    public long getCacheReadTokens() {
+        return cacheReadTokens;
+    }
+
+    public long getCacheWriteTokens() {
+        return cacheWriteTokens;
+    }
+
+    /**
+     * 全部token（输入 + 输出 + 缓存读写）
+     */
+    public long getTotalTokens() {
+        return inputTokens + outputTokens + cacheReadTokens + cacheWriteTokens;
+    }
+
+    /**
+     * 费用（美元），模型未配置价格时为0
+     */
+    public double getCostUsd() {
+        return costNanos / 1e9;
+    }
+
+    @Override
+    public String toString() {
+        return tenant + "/" + provider + "/" + model + "{requests=" + requests + ", input=" + inputTokens
+                + ", output=" + outputTokens + ", cacheRead=" + cacheReadTokens + ", cacheWrite=" + cacheWriteTokens
+                + ", costUsd=" + String.format("%.6f", getCostUsd()) + "}";
+    }
+}
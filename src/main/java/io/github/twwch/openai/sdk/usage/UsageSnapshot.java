@@ -0,0 +1,99 @@
+package io.github.twwch.openai.sdk.usage;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 用量快照
+ * 某一时刻账本中所有汇总记录的只读视图
+ */
+public class UsageSnapshot {
+    private static final String CSV_HEADER =
+            "tenant,provider,model,requests,input_tokens,output_tokens,cache_read_tokens,cache_write_tokens,cost_usd";
+
+    private final List<UsageRecord> records;
+
+    UsageSnapshot(List<UsageRecord> records) {
+        records.sort(Comparator.comparing(UsageRecord::getTenant)
+                .thenComparing(r -> String.valueOf(r.getProvider()))
+                .thenComparing(r -> String.valueOf(r.getModel())));
+        this.records = Collections.unmodifiableList(records);
+    }
+
+    public List<UsageRecord> getRecords() {
+        return records;
+    }
+
+    /**
+     * 总费用（美元）
+     */
+    public double getTotalCostUsd() {
+        double total = 0;
+        for (UsageRecord record : records) {
+            total += record.getCostUsd();
+        }
+        return total;
+    }
+
+    /**
+     * 总token数
+     */
+    public long getTotalTokens() {
+        long total = 0;
+        for (UsageRecord record : records) {
+            total += record.getTotalTokens();
+        }
+        return total;
+    }
+
+    /**
+     * 查找指定租户和模型的记录
+     */
+    public UsageRecord find(String tenant, String model) {
+        for (UsageRecord record : records) {
+            if (record.getTenant().equals(tenant) && String.valueOf(record.getModel()).equals(model)) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 导出为CSV（含表头）
+     */
+    public String toCsv() {
+        StringBuilder sb = new StringBuilder(CSV_HEADER).append('\n');
+        for (UsageRecord record : records) {
+            sb.append(csv(record.getTenant())).append(',')
+                    .append(record.getProvider()).append(',')
+                    .append(csv(record.getModel())).append(',')
+                    .append(record.getRequests()).append(',')
+                    .append(record.getInputTokens()).append(',')
+                    .append(record.getOutputTokens()).append(',')
+                    .append(record.getCacheReadTokens()).append(',')
+                    .append(record.getCacheWriteTokens()).append(',')
+                    .append(String.format("%.9f", record.getCostUsd())).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (UsageRecord record : records) {
+            sb.append(record).append('\n');
+        }
+        return sb.toString();
+    }
+}
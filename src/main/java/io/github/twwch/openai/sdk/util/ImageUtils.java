@@ -1,5 +1,9 @@
 package io.github.twwch.openai.sdk.util;
 
+import io.github.twwch.openai.sdk.jfr.ImageProcessingEvent;
+import io.github.twwch.openai.sdk.tracing.Span;
+import io.github.twwch.openai.sdk.tracing.TraceAttributes;
+import io.github.twwch.openai.sdk.tracing.Tracing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +57,11 @@ public class ImageUtils {
      * @throws IOException 如果下载或转换失败
      */
     public static String downloadAndConvertToBase64(String imageUrl) throws IOException {
+        return downloadAndConvertToBase64(imageUrl, CONNECT_TIMEOUT, READ_TIMEOUT);
+    }
+
+    private static String downloadAndConvertToBase64(String imageUrl, int connectTimeout, int readTimeout)
+            throws IOException {
         if (imageUrl == null || imageUrl.isEmpty()) {
             throw new IllegalArgumentException("Image URL cannot be null or empty");
         }
@@ -74,8 +83,8 @@ public class ImageUtils {
             URL url = new URL(imageUrl);
             connection = (HttpURLConnection) url.openConnection();
             connection.setRequestMethod("GET");
-            connection.setConnectTimeout(CONNECT_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
             
             // 设置User-Agent，避免被某些服务器拒绝
             connection.setRequestProperty("User-Agent", "OpenAI-SDK/1.0");
@@ -251,6 +260,18 @@ public class ImageUtils {
      * @return URL到base64数据的映射，如果下载失败则值为null
      */
     public static Map<String, String> downloadAndConvertBatch(List<String> imageUrls) {
+        return downloadAndConvertBatch(imageUrls, 0);
+    }
+
+    /**
+     * 批量并发下载和转换图片，不超过请求的截止时间
+     * 等待时间和每个连接的连接、读取超时都不超过剩余时间，超过截止时间仍未完成的图片不出现在结果中
+     *
+     * @param imageUrls      图片URL列表
+     * @param deadlineMillis 截止时间（epoch毫秒），为0时不限制
+     * @return URL到base64数据的映射
+     */
+    public static Map<String, String> downloadAndConvertBatch(List<String> imageUrls, long deadlineMillis) {
         if (imageUrls == null || imageUrls.isEmpty()) {
             return new ConcurrentHashMap<>();
         }
@@ -266,6 +287,10 @@ public class ImageUtils {
         }
         
         logger.debug("Starting batch download of {} images", uniqueUrls.size());
+        ImageProcessingEvent event = new ImageProcessingEvent();
+        event.begin();
+        Span span = Tracing.startChild(TraceAttributes.SPAN_IMAGE_DOWNLOAD);
+        span.setAttribute(TraceAttributes.IMAGE_COUNT, uniqueUrls.size());
         
         ConcurrentHashMap<String, String> results = new ConcurrentHashMap<>();
         List<CompletableFuture<Void>> futures = new ArrayList<>();
@@ -274,7 +299,8 @@ public class ImageUtils {
             CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
                 try {
                     String trimmedUrl = url.trim(); // 确保URL没有空格
-                    String base64Data = downloadAndConvertToBase64(trimmedUrl);
+                    String base64Data = downloadAndConvertToBase64(trimmedUrl,
+                            capTimeout(CONNECT_TIMEOUT, deadlineMillis), capTimeout(READ_TIMEOUT, deadlineMillis));
                     if (base64Data != null) {
                         // 使用原始URL作为key，以便调用者能找到结果
                         results.put(url, base64Data);
@@ -305,6 +331,9 @@ public class ImageUtils {
             );
             // 总超时时间 = 基础时间 + 每张图片额外时间
             long timeoutMs = 10000 + (uniqueUrls.size() * 2000L);
+            if (deadlineMillis > 0) {
+                timeoutMs = Math.max(1, Math.min(timeoutMs, deadlineMillis - System.currentTimeMillis()));
+            }
             allFutures.get(timeoutMs, TimeUnit.MILLISECONDS);
         } catch (TimeoutException e) {
             logger.warn("Batch download timed out, some images may not have been downloaded");
@@ -316,9 +345,29 @@ public class ImageUtils {
         logger.debug("Batch download completed. Successfully downloaded {} out of {} images", 
             results.values().stream().filter(v -> v != null).count(), uniqueUrls.size());
         
+        long outputSize = 0;
+        if (event.isEnabled()) {
+            for (String value : results.values()) {
+                outputSize += value.length();
+            }
+        }
+        event.complete(ImageProcessingEvent.DOWNLOAD, uniqueUrls.size(), 0, outputSize);
+        span.setAttribute(TraceAttributes.IMAGE_DOWNLOADED, results.size());
+        span.end();
         return results;
     }
     
+    /**
+     * 超时不超过截止时间前的剩余时间（至少1毫秒，0在HttpURLConnection中表示不限制）
+     */
+    private static int capTimeout(int timeoutMs, long deadlineMillis) {
+        if (deadlineMillis <= 0) {
+            return timeoutMs;
+        }
+        long remaining = deadlineMillis - System.currentTimeMillis();
+        return (int) Math.max(1, Math.min(timeoutMs, remaining));
+    }
+
     /**
      * 关闭线程池（应在应用关闭时调用）
      */
@@ -453,6 +502,16 @@ public class ImageUtils {
             return imageBytes;
         }
         
+        ImageProcessingEvent event = new ImageProcessingEvent();
+        event.begin();
+        Span span = Tracing.startChild(TraceAttributes.SPAN_IMAGE_COMPRESS);
+        byte[] result = doCompressImage(imageBytes, maxSizeBytes);
+        event.complete(ImageProcessingEvent.COMPRESS, 1, imageBytes.length, result != null ? result.length : 0);
+        span.end();
+        return result;
+    }
+    
+    private static byte[] doCompressImage(byte[] imageBytes, int maxSizeBytes) {
         logger.info("Starting image compression: {} MB -> target {} MB", 
             imageBytes.length / (1024 * 1024), maxSizeBytes / (1024 * 1024));
         
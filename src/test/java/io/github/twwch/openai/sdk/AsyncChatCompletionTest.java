@@ -0,0 +1,119 @@
+package io.github.twwch.openai.sdk;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试异步聊天完成接口
+ */
+public class AsyncChatCompletionTest {
+
+    private static final String RESPONSE_JSON = "{"
+            + "\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"gpt-4o\","
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"你好\"},\"finish_reason\":\"stop\"}],"
+            + "\"usage\":{\"prompt_tokens\":5,\"completion_tokens\":2,\"total_tokens\":7}"
+            + "}";
+
+    private static final String ERROR_JSON =
+            "{\"error\":{\"message\":\"Invalid value for messages\",\"type\":\"invalid_request_error\",\"code\":null}}";
+
+    private static ChatCompletionRequest request() {
+        return new ChatCompletionRequest("gpt-4o", Collections.singletonList(ChatMessage.user("你好")));
+    }
+
+    @Test
+    public void testAsyncCompletion() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            byte[] body = RESPONSE_JSON.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("x-request-id", "req_async");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        try (OpenAI client = new OpenAI(config)) {
+            ChatCompletionResponse response = client.createChatCompletionAsync(request()).get(10, TimeUnit.SECONDS);
+            assertEquals("你好", response.getContent());
+            assertEquals(7, response.getUsage().getTotalTokens());
+            assertEquals("req_async", response.getResponseMetadata().getRequestId());
+            System.out.println("✅ 异步请求完成: " + response.getResponseMetadata());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testAsyncErrorCompletesExceptionally() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            byte[] body = ERROR_JSON.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(400, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        try (OpenAI client = new OpenAI(config)) {
+            CompletableFuture<ChatCompletionResponse> future = client.createChatCompletionAsync(request());
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+            Throwable cause = e.getCause();
+            while (!(cause instanceof OpenAIException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            assertTrue(cause instanceof OpenAIException);
+            assertEquals(400, ((OpenAIException) cause).getStatusCode());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testCancelDoesNotBlockCaller() throws Exception {
+        CountDownLatch received = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            received.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        server.start();
+
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        try (OpenAI client = new OpenAI(config)) {
+            CompletableFuture<ChatCompletionResponse> future = client.createChatCompletionAsync(request());
+            assertTrue(received.await(10, TimeUnit.SECONDS), "请求应已发出");
+            assertFalse(future.isDone(), "上游未响应时不应完成");
+
+            assertTrue(future.cancel(true));
+            assertTrue(future.isCancelled());
+        } finally {
+            release.countDown();
+            server.stop(0);
+        }
+    }
+}
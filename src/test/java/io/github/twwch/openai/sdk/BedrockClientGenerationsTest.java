@@ -0,0 +1,97 @@
+package io.github.twwch.openai.sdk;
+
+import io.github.twwch.openai.sdk.leak.LeakDetector;
+import io.github.twwch.openai.sdk.leak.ResourceType;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import io.github.twwch.openai.sdk.service.bedrock.BedrockClientGenerations;
+import io.github.twwch.openai.sdk.service.bedrock.auth.BedrockCredentialsIsolator;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试Bedrock异步客户端的分代重建和排空
+ */
+public class BedrockClientGenerationsTest {
+
+    private static BedrockClientGenerations generations(LeakDetector detector, RetryScheduler scheduler,
+                                                        AtomicInteger created, long drainMillis,
+                                                        long minIntervalMillis) {
+        return new BedrockClientGenerations(() -> {
+            created.incrementAndGet();
+            return BedrockCredentialsIsolator.createIsolatedAsyncClient("us-east-1", "AKIDEXAMPLE", "secret", null);
+        }, "测试客户端", detector, scheduler, drainMillis, minIntervalMillis);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testOldGenerationClosedAfterDrain() throws Exception {
+        LeakDetector detector = new LeakDetector();
+        RetryScheduler scheduler = new RetryScheduler("test-drain");
+        AtomicInteger created = new AtomicInteger();
+        BedrockClientGenerations clients = generations(detector, scheduler, created, 60_000, 0);
+        try {
+            BedrockClientGenerations.Lease inFlight = clients.acquire();
+            assertEquals(1, inFlight.generation());
+
+            assertTrue(clients.rebuild(1));
+            assertEquals(2, clients.getGeneration());
+            assertFalse(clients.rebuild(1), "同一代只重建一次");
+            assertEquals(2, created.get());
+
+            BedrockClientGenerations.Lease next = clients.acquire();
+            assertEquals(2, next.generation(), "新请求使用新一代客户端");
+            assertEquals(1, clients.getDrainingCount(), "旧一代仍有进行中的请求，不应关闭");
+            assertEquals(2, detector.getLiveCount(ResourceType.CLIENT));
+
+            inFlight.close();
+            inFlight.close();
+            await(() -> clients.getDrainingCount() == 0);
+            assertEquals(0, clients.getDrainingCount(), "请求归还后关闭旧一代");
+            assertEquals(1, detector.getLiveCount(ResourceType.CLIENT));
+            assertEquals(1, clients.getInFlight());
+            next.close();
+            System.out.println("✅ 旧一代排空后关闭，当前第 " + clients.getGeneration() + " 代");
+        } finally {
+            clients.close();
+            scheduler.shutdown();
+        }
+        assertEquals(0, detector.getLiveCount(ResourceType.CLIENT));
+    }
+
+    @Test
+    public void testDrainDeadlineAndRateLimit() throws Exception {
+        LeakDetector detector = new LeakDetector();
+        RetryScheduler scheduler = new RetryScheduler("test-drain");
+        AtomicInteger created = new AtomicInteger();
+        BedrockClientGenerations clients = generations(detector, scheduler, created, 200, 0);
+        try {
+            BedrockClientGenerations.Lease stuck = clients.acquire();
+            assertTrue(clients.rebuild(stuck.generation()));
+            await(() -> clients.getDrainingCount() == 0);
+            assertEquals(0, clients.getDrainingCount(), "超过排空期限后强制关闭");
+            stuck.close();
+        } finally {
+            clients.close();
+        }
+
+        BedrockClientGenerations limited = generations(detector, scheduler, created, 60_000, 60_000);
+        try {
+            assertFalse(limited.rebuild(1), "最小间隔内不重建");
+            assertEquals(1, limited.getGeneration());
+        } finally {
+            limited.close();
+            scheduler.shutdown();
+        }
+        assertThrows(IllegalStateException.class, limited::acquire);
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.twwch.openai.sdk;
+
+import io.github.twwch.openai.sdk.leak.LeakDetector;
+import io.github.twwch.openai.sdk.leak.ResourceType;
+import io.github.twwch.openai.sdk.service.bedrock.BedrockClientGenerations;
+import io.github.twwch.openai.sdk.service.bedrock.BedrockClientPool;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试按区域和凭证共享的Bedrock客户端池
+ */
+public class BedrockClientPoolTest {
+
+    private static BedrockConfig config(LeakDetector detector, String accessKeyId, String secretAccessKey,
+                                        String modelId) {
+        BedrockConfig config = new BedrockConfig("us-east-1", accessKeyId, secretAccessKey, modelId);
+        config.setLeakDetector(detector);
+        return config;
+    }
+
+    @Test
+    public void testSharedByRegionAndCredentials() {
+        LeakDetector detector = new LeakDetector();
+        BedrockClientPool pool = new BedrockClientPool();
+
+        BedrockClientPool.Handle sonnet = pool.acquire(
+                config(detector, "AKIDEXAMPLE", "secret", "anthropic.claude-3-sonnet-20240229-v1:0"));
+        BedrockClientPool.Handle haiku = pool.acquire(
+                config(detector, "AKIDEXAMPLE", "secret", "anthropic.claude-3-haiku-20240307-v1:0"));
+        BedrockClientPool.Handle other = pool.acquire(
+                config(detector, "AKIDEXAMPLE", "another-secret", "anthropic.claude-3-haiku-20240307-v1:0"));
+
+        assertSame(sonnet.clients(), haiku.clients(), "相同区域和凭证的不同模型应共享客户端");
+        assertNotSame(sonnet.clients(), other.clients(), "不同凭证不应共享客户端");
+        assertEquals(2, pool.size());
+        assertEquals(2, detector.getLiveCount(ResourceType.CLIENT));
+
+        sonnet.close();
+        sonnet.close();
+        assertEquals(2, pool.size(), "仍有使用者时不关闭");
+        try (BedrockClientGenerations.Lease lease = haiku.clients().acquire()) {
+            assertEquals(1, lease.generation());
+        }
+
+        haiku.close();
+        other.close();
+        assertEquals(0, pool.size());
+        assertEquals(0, detector.getLiveCount(ResourceType.CLIENT));
+        System.out.println("✅ 共享客户端在最后一个使用者释放后关闭");
+    }
+
+    @Test
+    public void testPoolSettingsArePartOfKey() {
+        LeakDetector detector = new LeakDetector();
+        BedrockClientPool pool = new BedrockClientPool();
+
+        BedrockConfig small = config(detector, "AKIDEXAMPLE", "secret", null);
+        small.setMaxConcurrency(50);
+        BedrockClientPool.Handle first = pool.acquire(small);
+        BedrockClientPool.Handle second = pool.acquire(config(detector, "AKIDEXAMPLE", "secret", null));
+        try {
+            assertNotSame(first.clients(), second.clients(), "连接池配置不同不应共享客户端");
+        } finally {
+            first.close();
+            second.close();
+        }
+        assertEquals(0, pool.size());
+    }
+}
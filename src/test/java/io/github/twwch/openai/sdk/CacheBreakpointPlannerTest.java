@@ -0,0 +1,150 @@
+package io.github.twwch.openai.sdk;
+
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.service.bedrock.CacheBreakpointPlanner;
+import io.github.twwch.openai.sdk.service.bedrock.ModelCapabilities;
+import io.github.twwch.openai.sdk.service.bedrock.ModelCapabilityRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试Claude prompt缓存断点的自动规划
+ */
+public class CacheBreakpointPlannerTest {
+
+    private static final ModelCapabilities SONNET =
+            ModelCapabilityRegistry.getDefault().find("anthropic.claude-sonnet-4-20250514-v1:0");
+
+    private static String text(String seed, int tokens) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < tokens * 4) {
+            sb.append(seed).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static ChatCompletionRequest request(List<ChatMessage> messages) {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setMessages(new ArrayList<>(messages));
+        return request;
+    }
+
+    private static boolean cached(ChatMessage message) {
+        if (!(message.getContent() instanceof ChatMessage.ContentPart[])) {
+            return false;
+        }
+        for (ChatMessage.ContentPart part : (ChatMessage.ContentPart[]) message.getContent()) {
+            if (part.getCacheControl() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testSystemPromptCachedOnlyAfterRepeat() {
+        CacheBreakpointPlanner planner = new CacheBreakpointPlanner();
+        String system = text("You are a careful assistant.", 1500);
+
+        ChatCompletionRequest first = request(Arrays.asList(
+                ChatMessage.system(system), ChatMessage.user("问题一")));
+        assertEquals(0, planner.plan(first, SONNET), "第一次出现的前缀不写缓存");
+        assertNull(first.getBedrockEnableSystemCache());
+
+        ChatCompletionRequest second = request(Arrays.asList(
+                ChatMessage.system(system), ChatMessage.user("问题二")));
+        assertEquals(1, planner.plan(second, SONNET));
+        assertEquals(Boolean.TRUE, second.getBedrockEnableSystemCache(), "重复出现的system前缀放置断点");
+        assertFalse(cached(second.getMessages().get(1)), "新问题不是稳定前缀");
+
+        System.out.println("✅ system前缀重复出现后才放置断点");
+    }
+
+    @Test
+    public void testShortPrefixNotCached() {
+        CacheBreakpointPlanner planner = new CacheBreakpointPlanner();
+        for (int i = 0; i < 3; i++) {
+            ChatCompletionRequest request = request(Arrays.asList(
+                    ChatMessage.system("短的system"), ChatMessage.user("你好")));
+            assertEquals(0, planner.plan(request, SONNET), "低于最小可缓存长度的前缀不放置断点");
+        }
+        System.out.println("✅ 短前缀不放置断点");
+    }
+
+    @Test
+    public void testConversationTailCached() {
+        CacheBreakpointPlanner planner = new CacheBreakpointPlanner();
+        String document = text("contract clause", 3000);
+        List<ChatMessage> history = new ArrayList<>();
+        history.add(ChatMessage.system("简短的system"));
+        history.add(ChatMessage.user(document));
+
+        planner.plan(request(history), SONNET);
+
+        history.add(ChatMessage.assistant("第一轮回答"));
+        history.add(ChatMessage.user("第二个问题"));
+        ChatCompletionRequest second = request(history);
+        assertEquals(2, planner.plan(second, SONNET));
+        assertTrue(cached(second.getMessages().get(1)), "上一轮的最长前缀放置断点");
+        assertTrue(cached(second.getMessages().get(3)), "对话延续时在末尾放置断点供下一轮读取");
+        assertEquals(document, second.getMessages().get(1).getContentAsString(), "文本内容不变");
+        assertNull(second.getBedrockEnableSystemCache(), "system太短不放置断点");
+
+        System.out.println("✅ 对话历史和末尾放置断点");
+    }
+
+    @Test
+    public void testReusedHistoryKeepsTailCached() {
+        CacheBreakpointPlanner planner = new CacheBreakpointPlanner();
+        String document = text("contract clause", 3000);
+        List<ChatMessage> history = new ArrayList<>();
+        history.add(ChatMessage.system("简短的system"));
+        history.add(ChatMessage.user(document));
+        planner.plan(request(history), SONNET);
+
+        // 多轮对话复用同一个消息列表，每一轮的末尾都应放置断点
+        for (int turn = 1; turn <= 6; turn++) {
+            history.add(ChatMessage.assistant("第" + turn + "轮回答"));
+            history.add(ChatMessage.user("第" + (turn + 1) + "个问题"));
+            ChatCompletionRequest request = request(history);
+            assertTrue(planner.plan(request, SONNET) > 0, "第" + turn + "轮放置断点");
+            List<ChatMessage> planned = request.getMessages();
+            assertTrue(cached(planned.get(planned.size() - 1)), "第" + turn + "轮末尾放置断点");
+            for (ChatMessage message : history) {
+                assertFalse(cached(message), "调用方的消息不带SDK放置的断点");
+            }
+        }
+        System.out.println("✅ 复用消息列表的多轮对话末尾持续放置断点");
+    }
+
+        @Test
+    public void testManualBreakpointsCountTowardsLimit() {
+        CacheBreakpointPlanner planner = new CacheBreakpointPlanner();
+        ModelCapabilities capabilities = new ModelCapabilities();
+        capabilities.setMaxCacheBlocks(2);
+        capabilities.setMinCacheTokens(1024);
+        String system = text("shared instructions", 2000);
+
+        planner.plan(request(Arrays.asList(ChatMessage.system(system), ChatMessage.user("a"))), capabilities);
+
+        ChatCompletionRequest request = request(Arrays.asList(
+                ChatMessage.system(system),
+                ChatMessage.user(ChatMessage.ContentPart.textWithCache("手动断点一", true)),
+                ChatMessage.user(ChatMessage.ContentPart.textWithCache("手动断点二", true))));
+        assertEquals(0, planner.plan(request, capabilities), "手动断点已用满上限");
+        assertNull(request.getBedrockEnableSystemCache());
+
+        ModelCapabilities noCache = new ModelCapabilities();
+        noCache.setSupportsPromptCache(false);
+        ChatCompletionRequest unsupported = request(Arrays.asList(ChatMessage.system(system), ChatMessage.user("b")));
+        assertEquals(0, planner.plan(unsupported, noCache), "不支持缓存的模型不规划");
+
+        System.out.println("✅ 手动断点计入上限");
+    }
+}
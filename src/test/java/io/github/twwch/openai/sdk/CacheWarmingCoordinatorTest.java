@@ -0,0 +1,127 @@
+package io.github.twwch.openai.sdk;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import io.github.twwch.openai.sdk.service.bedrock.CacheWarmingCoordinator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试prompt缓存预热协调：同一前缀的并发请求等待领头请求写入缓存
+ */
+public class CacheWarmingCoordinatorTest {
+
+    private static final String SCOPE = "us-east-1|anthropic.claude-sonnet-4-20250514-v1:0";
+
+    private static ChatCompletionRequest request(String system, String user, boolean cacheSystem) {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setMessages(new ArrayList<>(Arrays.asList(ChatMessage.system(system), ChatMessage.user(user))));
+        if (cacheSystem) {
+            request.setBedrockEnableSystemCache(true);
+        }
+        return request;
+    }
+
+    private static ChatCompletionResponse.Usage usage(int cacheWrite, int cacheRead) {
+        ChatCompletionResponse.Usage usage = new ChatCompletionResponse.Usage();
+        usage.setPromptTokens(10);
+        usage.setCacheCreationInputTokens(cacheWrite);
+        usage.setCacheReadInputTokens(cacheRead);
+        return usage;
+    }
+
+    @Test
+    public void testFingerprint() {
+        String a = CacheWarmingCoordinator.fingerprint(SCOPE, request("长system", "问题一", true));
+        String b = CacheWarmingCoordinator.fingerprint(SCOPE, request("长system", "问题二", true));
+        assertNotNull(a);
+        assertEquals(a, b, "断点之后的内容不影响指纹");
+        assertNotEquals(a, CacheWarmingCoordinator.fingerprint(SCOPE, request("另一个system", "问题一", true)));
+        assertNotEquals(a, CacheWarmingCoordinator.fingerprint("eu-west-1|x", request("长system", "问题一", true)));
+        assertNull(CacheWarmingCoordinator.fingerprint(SCOPE, request("长system", "问题一", false)), "没有断点不参与协调");
+
+        ChatCompletionRequest marked = request("长system", "问题一", false);
+        marked.getMessages().set(1, ChatMessage.user(ChatMessage.ContentPart.textWithCache("长文档", true)));
+        assertNotNull(CacheWarmingCoordinator.fingerprint(SCOPE, marked));
+
+        System.out.println("✅ 缓存前缀指纹: " + a);
+    }
+
+    @Test
+    public void testFollowersWaitForLeader() throws Exception {
+        RetryScheduler scheduler = new RetryScheduler("warming-test");
+        try {
+            CacheWarmingCoordinator coordinator = new CacheWarmingCoordinator(10_000, 60_000);
+            String fingerprint = CacheWarmingCoordinator.fingerprint(SCOPE, request("长system", "q", true));
+
+            CacheWarmingCoordinator.Lease leader = coordinator.admit(fingerprint, scheduler);
+            assertTrue(leader.isLeader());
+            assertTrue(leader.ready().isDone(), "领头请求直接发出");
+
+            CacheWarmingCoordinator.Lease follower1 = coordinator.admit(fingerprint, scheduler);
+            CacheWarmingCoordinator.Lease follower2 = coordinator.admit(fingerprint, scheduler);
+            assertFalse(follower1.isLeader());
+            assertFalse(follower1.ready().isDone(), "并发请求等待领头请求");
+            assertFalse(follower2.ready().isDone());
+
+            // message_start中的用量确认缓存已写入
+            leader.complete(usage(1800, 0));
+            follower1.ready().get(1, TimeUnit.SECONDS);
+            follower2.ready().get(1, TimeUnit.SECONDS);
+            follower1.complete(usage(0, 1800));
+            follower2.complete(null);
+
+            CacheWarmingCoordinator.Lease later = coordinator.admit(fingerprint, scheduler);
+            assertFalse(later.isLeader(), "缓存有效期内直接放行");
+            assertTrue(later.ready().isDone());
+
+            assertFalse(CacheWarmingCoordinator.disabled().admit(fingerprint, scheduler).isLeader());
+            System.out.println("✅ 并发请求在缓存写入后放行");
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testFollowerTimesOutAndFailedLeaderReleases() throws Exception {
+        RetryScheduler scheduler = new RetryScheduler("warming-test");
+        try {
+            CacheWarmingCoordinator coordinator = new CacheWarmingCoordinator(100, 60_000);
+            String fingerprint = CacheWarmingCoordinator.fingerprint(SCOPE, request("system", "q", true));
+
+            CacheWarmingCoordinator.Lease leader = coordinator.admit(fingerprint, scheduler);
+            CacheWarmingCoordinator.Lease follower = coordinator.admit(fingerprint, scheduler);
+            long start = System.nanoTime();
+            follower.ready().get(5, TimeUnit.SECONDS);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50, "等待到超时");
+
+            // 领头请求失败：放行等待者，下一个请求重新成为领头请求
+            CacheWarmingCoordinator.Lease waiting = coordinator.admit(fingerprint, scheduler);
+            leader.complete(null);
+            waiting.ready().get(1, TimeUnit.SECONDS);
+            assertTrue(coordinator.admit(fingerprint, scheduler).isLeader());
+
+            System.out.println("✅ 等待超时和领头请求失败后放行");
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testPrewarmRequiresBedrock() {
+        try (OpenAI client = new OpenAI("test-key")) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> client.prewarmCache(request("system", "q", true)).get(1, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof OpenAIException);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.twwch.openai.sdk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.service.bedrock.ClaudeModelAdapter;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试Claude请求体的流式写入
+ */
+public class ClaudeRequestWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ClaudeModelAdapter adapter = new ClaudeModelAdapter();
+
+    @Test
+    public void testWritesFullRequest() throws Exception {
+        ChatMessage.ToolCall toolCall = new ChatMessage.ToolCall();
+        toolCall.setId("toolu_1");
+        toolCall.setType("function");
+        ChatMessage.ToolCall.Function call = new ChatMessage.ToolCall.Function();
+        call.setName("get_weather");
+        call.setArguments("{\"city\":\"北京\"}");
+        toolCall.setFunction(call);
+        ChatMessage assistant = ChatMessage.assistant("查询天气");
+        assistant.setToolCalls(new ChatMessage.ToolCall[]{toolCall});
+        ChatMessage toolResult = new ChatMessage();
+        toolResult.setRole("tool");
+        toolResult.setToolCallId("toolu_1");
+        toolResult.setContent("晴");
+
+        byte[] image = new byte[3000];
+        Arrays.fill(image, (byte) 7);
+        String dataUrl = "data:image/png;base64," + Base64.getEncoder().encodeToString(image);
+        ChatMessage parts = new ChatMessage();
+        parts.setRole("user");
+        parts.setContent(new ChatMessage.ContentPart[]{
+                ChatMessage.ContentPart.textWithCache("长文档", true),
+                ChatMessage.ContentPart.imageUrl(dataUrl)
+        });
+
+        ChatCompletionRequest request = new ChatCompletionRequest("anthropic.claude-3-5-haiku", new ArrayList<>(
+                Arrays.asList(ChatMessage.system("你是助手"), ChatMessage.user("天气\"怎么样\"\n"), assistant,
+                        toolResult, parts)));
+        request.setTemperature(0.3);
+        request.setStop(Collections.singletonList("END"));
+        ChatCompletionRequest.Function function = new ChatCompletionRequest.Function();
+        function.setName("get_weather");
+        function.setDescription("查询天气");
+        Map<String, Object> schema = new HashMap<>();
+        schema.put("type", "object");
+        function.setParameters(schema);
+        ChatCompletionRequest.Tool tool = new ChatCompletionRequest.Tool();
+        tool.setType("function");
+        tool.setFunction(function);
+        request.setTools(Collections.singletonList(tool));
+        Map<String, Object> toolChoice = new HashMap<>();
+        toolChoice.put("type", "function");
+        toolChoice.put("function", Collections.singletonMap("name", "get_weather"));
+        request.setToolChoice(toolChoice);
+
+        byte[] body = adapter.convertRequestBytes(request, objectMapper, true);
+        assertArrayEquals(body, adapter.convertRequest(request, objectMapper).getBytes(StandardCharsets.UTF_8));
+
+        JsonNode root = objectMapper.readTree(body);
+        assertEquals("bedrock-2023-05-31", root.get("anthropic_version").asText());
+        assertEquals(4096, root.get("max_tokens").asInt());
+        assertEquals("你是助手", root.get("system").asText());
+        assertEquals("END", root.get("stop_sequences").get(0).asText());
+        assertEquals("object", root.get("tools").get(0).get("input_schema").get("type").asText());
+        assertEquals("tool", root.get("tool_choice").get("type").asText());
+        assertEquals("get_weather", root.get("tool_choice").get("name").asText());
+
+        JsonNode messages = root.get("messages");
+        assertEquals(4, messages.size(), "system消息不应出现在messages中");
+        assertEquals("天气\"怎么样\"\n", messages.get(0).get("content").asText());
+        assertEquals("北京", messages.get(1).get("content").get(1).get("input").get("city").asText());
+        assertEquals("tool_result", messages.get(2).get("content").get(0).get("type").asText());
+        assertEquals("user", messages.get(2).get("role").asText());
+        JsonNode content = messages.get(3).get("content");
+        assertEquals("ephemeral", content.get(0).get("cache_control").get("type").asText());
+        JsonNode source = content.get(1).get("source");
+        assertEquals("image/png", source.get("media_type").asText());
+        assertArrayEquals(image, Base64.getDecoder().decode(source.get("data").asText()));
+        System.out.println("✅ 请求体大小: " + body.length + " bytes");
+    }
+
+    @Test
+    public void testLimitsCacheControlWhileWriting() throws Exception {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(ChatMessage.system("系统提示"));
+        for (int i = 0; i < 6; i++) {
+            ChatMessage message = new ChatMessage();
+            message.setRole(i % 2 == 0 ? "user" : "assistant");
+            message.setContent(new ChatMessage.ContentPart[]{ChatMessage.ContentPart.textWithCache("消息" + i, true)});
+            messages.add(message);
+        }
+        ChatCompletionRequest request = new ChatCompletionRequest("anthropic.claude-3-5-haiku", messages);
+        request.setBedrockEnableSystemCache(true);
+
+        JsonNode root = objectMapper.readTree(adapter.convertRequestBytes(request, objectMapper, false));
+        assertTrue(root.get("system").get(0).has("cache_control"), "优先保留system prompt的缓存");
+        int kept = 0;
+        for (JsonNode message : root.get("messages")) {
+            if (message.get("content").get(0).has("cache_control")) {
+                kept++;
+            }
+        }
+        assertEquals(3, kept, "加上system最多保留4个cache_control");
+        assertTrue(root.get("messages").get(0).get("content").get(0).has("cache_control"));
+        assertFalse(root.get("messages").get(5).get("content").get(0).has("cache_control"));
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.twwch.openai.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
+import io.github.twwch.openai.sdk.service.bedrock.BedrockStreamDecoder;
+import io.github.twwch.openai.sdk.service.bedrock.ClaudeModelAdapter;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试Claude流式响应解码器
+ */
+public class ClaudeStreamDecoderTest {
+
+    private static final String MODEL = "us.anthropic.claude-3-5-haiku-20241022-v1:0";
+
+    private static final String[] EVENTS = {
+            "{\"type\":\"message_start\",\"message\":{\"id\":\"msg_bdrk_1\",\"type\":\"message\",\"role\":\"assistant\","
+                    + "\"model\":\"claude\",\"content\":[],\"stop_reason\":null,"
+                    + "\"usage\":{\"input_tokens\":12,\"cache_read_input_tokens\":2048,\"output_tokens\":1}}}",
+            "{\"type\":\"content_block_start\",\"index\":0,\"content_block\":{\"type\":\"text\",\"text\":\"\"}}",
+            "{\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\"你好\"}}",
+            "{\"type\":\"ping\"}",
+            "{\"type\":\"content_block_stop\",\"index\":0}",
+            "{\"index\":1,\"type\":\"content_block_start\",\"content_block\":{\"type\":\"tool_use\",\"id\":\"toolu_1\","
+                    + "\"name\":\"get_weather\",\"input\":{}}}",
+            "{\"type\":\"content_block_delta\",\"index\":1,\"delta\":{\"type\":\"input_json_delta\","
+                    + "\"partial_json\":\"{\\\"city\\\":\"}}",
+            "{\"type\":\"content_block_stop\",\"index\":1}",
+            "{\"type\":\"message_delta\",\"delta\":{\"stop_reason\":\"max_tokens\",\"stop_sequence\":null},"
+                    + "\"usage\":{\"output_tokens\":15}}",
+            "{\"type\":\"message_stop\",\"amazon-bedrock-invocationMetrics\":{\"inputTokenCount\":12,"
+                    + "\"outputTokenCount\":15,\"invocationLatency\":812,\"firstByteLatency\":301}}"
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testDecodeEventSequence() throws Exception {
+        BedrockStreamDecoder decoder = new ClaudeModelAdapter().newStreamDecoder(MODEL, objectMapper);
+        List<ChatCompletionChunk> chunks = new ArrayList<>();
+        for (String event : EVENTS) {
+            chunks.addAll(decoder.decode(event.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        assertEquals(6, chunks.size(), "ping、content_block_stop和文本块开始事件应被跳过");
+        for (ChatCompletionChunk chunk : chunks) {
+            assertEquals(chunks.get(0).getId(), chunk.getId(), "同一个流复用一个ID");
+            assertEquals(chunks.get(0).getCreated(), chunk.getCreated());
+            assertEquals(MODEL, chunk.getModel());
+        }
+
+        ChatCompletionChunk start = chunks.get(0);
+        assertEquals("assistant", start.getChoices().get(0).getDelta().getRole());
+        assertEquals(12, start.getUsage().getPromptTokens());
+        assertEquals(2048, start.getUsage().getCacheReadInputTokens());
+
+        assertEquals("你好", chunks.get(1).getContent());
+
+        ChatCompletionChunk toolStart = chunks.get(2);
+        assertEquals("toolu_1", toolStart.getChoices().get(0).getDelta().getToolCalls().get(0).getId());
+        assertEquals("get_weather", toolStart.getChoices().get(0).getDelta().getToolCalls().get(0).getFunction().getName());
+
+        ChatCompletionChunk toolDelta = chunks.get(3);
+        assertEquals(Integer.valueOf(1), toolDelta.getChoices().get(0).getDelta().getToolCalls().get(0).getIndex());
+        assertEquals("{\"city\":",
+                toolDelta.getChoices().get(0).getDelta().getToolCalls().get(0).getFunction().getArguments());
+
+        ChatCompletionChunk messageDelta = chunks.get(4);
+        assertEquals("length", messageDelta.getChoices().get(0).getFinishReason());
+        assertEquals(15, messageDelta.getUsage().getCompletionTokens());
+
+        assertEquals("stop", chunks.get(5).getChoices().get(0).getFinishReason());
+        assertNotNull(decoder.getInvocationMetrics());
+        assertEquals(812, decoder.getInvocationMetrics().get("invocationLatency").asInt());
+        System.out.println("✅ 解码 " + EVENTS.length + " 个事件得到 " + chunks.size() + " 个数据块");
+    }
+
+    @Test
+    public void testConvertStreamChunkHandlesMultipleLines() throws Exception {
+        String payload = EVENTS[2] + "\n" + EVENTS[4] + "\n\n" + EVENTS[8] + "\n";
+        List<ChatCompletionChunk> chunks = new ClaudeModelAdapter().convertStreamChunk(payload, objectMapper);
+        assertEquals(2, chunks.size());
+        assertEquals("你好", chunks.get(0).getContent());
+        assertEquals("length", chunks.get(1).getChoices().get(0).getFinishReason());
+
+        assertTrue(new ClaudeModelAdapter().convertStreamChunk("not json", objectMapper).isEmpty(),
+                "无法解析的事件应被忽略");
+    }
+}
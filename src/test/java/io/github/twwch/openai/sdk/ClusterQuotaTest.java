@@ -0,0 +1,292 @@
+package io.github.twwch.openai.sdk;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.limit.Admission;
+import io.github.twwch.openai.sdk.limit.ConcurrencyLimiter;
+import io.github.twwch.openai.sdk.limit.InMemoryQuotaCoordinator;
+import io.github.twwch.openai.sdk.limit.QuotaCoordination;
+import io.github.twwch.openai.sdk.limit.QuotaCoordinator;
+import io.github.twwch.openai.sdk.limit.QuotaLease;
+import io.github.twwch.openai.sdk.limit.RequestPriority;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import io.github.twwch.openai.sdk.usage.UsageBudget;
+import io.github.twwch.openai.sdk.usage.UsageLedger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试集群额度协调：多个限制器和账本通过协调器共享每分钟额度和预算，协调器不可用时退回本地限制
+ */
+public class ClusterQuotaTest {
+
+    private static final String KEY = "api.openai.com/v1/chat/completions";
+
+    private RetryScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new RetryScheduler("test-quota");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private static ConcurrencyLimiter limiter() {
+        return new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD, 100, 1, 100, 100, 10_000);
+    }
+
+    private static Admission tenant(String tenant) {
+        return new Admission(RequestPriority.NORMAL, 0, tenant);
+    }
+
+    /**
+     * 每分钟额度按整分钟的窗口计算，快到窗口结束时等到下一个窗口，避免测试中途额度重置
+     */
+    private static void awaitFreshWindow() throws InterruptedException {
+        long remaining = 60_000 - System.currentTimeMillis() % 60_000;
+        if (remaining < 5_000) {
+            Thread.sleep(remaining + 50);
+        }
+    }
+
+    @Test
+    public void testInMemoryCoordinator() {
+        InMemoryQuotaCoordinator coordinator = new InMemoryQuotaCoordinator();
+        QuotaLease first = coordinator.lease("k", 10, 60_000, 4).toCompletableFuture().join();
+        assertEquals(4, first.getGranted());
+        assertEquals(4, first.getUsed());
+        assertTrue(first.getWindowEndMillis() > System.currentTimeMillis());
+        assertEquals(0, first.getWindowEndMillis() % 60_000, "窗口对齐到整分钟");
+
+        assertEquals(6, coordinator.lease("k", 10, 60_000, 10).toCompletableFuture().join().getGranted(),
+                "只授予剩余的额度");
+        assertEquals(0, coordinator.lease("k", 10, 60_000, 1).toCompletableFuture().join().getGranted());
+        assertEquals(10, coordinator.getUsed("k"));
+
+        QuotaLease budget = coordinator.lease("b", 100, 0, 30).toCompletableFuture().join();
+        assertEquals(30, budget.getGranted());
+        assertEquals(Long.MAX_VALUE, budget.getWindowEndMillis(), "不按窗口恢复");
+
+        coordinator.reset();
+        assertEquals(0, coordinator.getUsed("k"));
+        System.out.println("✅ 内存协调器: " + first);
+    }
+
+    @Test
+    public void testRequestsPerMinuteSharedAcrossLimiters() throws Exception {
+        awaitFreshWindow();
+        InMemoryQuotaCoordinator coordinator = new InMemoryQuotaCoordinator();
+        QuotaCoordination coordination = new QuotaCoordination(coordinator, "org");
+        coordination.setBatchFraction(0.25);
+        ConcurrencyLimiter a = limiter();
+        ConcurrencyLimiter b = limiter();
+        for (ConcurrencyLimiter limiter : new ConcurrencyLimiter[]{a, b}) {
+            limiter.setRequestsPerMinute(20);
+            limiter.setQuotaCoordination(coordination);
+        }
+
+        int granted = 0;
+        int grantedA = 0;
+        for (int i = 0; i < 30; i++) {
+            ConcurrencyLimiter limiter = i % 2 == 0 ? a : b;
+            CompletableFuture<ConcurrencyLimiter.Permit> future = limiter.acquire(KEY, scheduler);
+            if (future.isDone()) {
+                future.join().success();
+                granted++;
+                if (limiter == a) {
+                    grantedA++;
+                }
+            }
+        }
+        assertEquals(20, granted, "两个限制器合计不超过集群的每分钟请求数");
+        assertTrue(grantedA > 0 && grantedA < 20, "额度在限制器之间分配: " + grantedA);
+        assertEquals(20, coordinator.getUsed("org:requests"));
+        System.out.println("✅ 共享每分钟请求数: 合计放行 " + granted + "，其中A " + grantedA);
+    }
+
+    @Test
+    public void testTokenOverdraftChargedToCluster() throws Exception {
+        awaitFreshWindow();
+        InMemoryQuotaCoordinator coordinator = new InMemoryQuotaCoordinator();
+        QuotaCoordination coordination = new QuotaCoordination(coordinator, "org");
+        coordination.setBatchFraction(0.1);
+        ConcurrencyLimiter a = limiter();
+        ConcurrencyLimiter b = limiter();
+        for (ConcurrencyLimiter limiter : new ConcurrencyLimiter[]{a, b}) {
+            limiter.setTokensPerMinute(1000);
+            limiter.setQuotaCoordination(coordination);
+        }
+
+        a.acquire(KEY, tenant("alice"), scheduler).join().success();
+        // 一次调用用掉1200个token，透支的部分向协调器补申请，集群额度被用完
+        a.recordTokens("alice", 1200);
+        assertEquals(1000, coordinator.getUsed("org:tokens"));
+
+        CompletableFuture<ConcurrencyLimiter.Permit> blocked = b.acquire(KEY, tenant("bob"), scheduler);
+        assertFalse(blocked.isDone(), "集群token额度用完后另一个限制器也排队");
+        assertEquals(1, b.getQueued(KEY));
+        blocked.cancel(false);
+        System.out.println("✅ token透支计入集群: " + coordinator.getUsed("org:tokens"));
+    }
+
+    @Test
+    public void testFallbackToLocalLimitWhenCoordinatorFails() {
+        QuotaCoordinator failing = (key, limit, windowMillis, requested) ->
+                CompletableFuture.failedFuture(new IllegalStateException("协调器不可用"));
+        QuotaCoordination coordination = new QuotaCoordination(failing, "org");
+        coordination.setFallbackShare(0.5);
+        coordination.setRetryMillis(60_000);
+        ConcurrencyLimiter limiter = limiter();
+        limiter.setRequestsPerMinute(10);
+        limiter.setQuotaCoordination(coordination);
+
+        int granted = 0;
+        for (int i = 0; i < 8; i++) {
+            CompletableFuture<ConcurrencyLimiter.Permit> future = limiter.acquire(KEY, scheduler);
+            if (future.isDone()) {
+                future.join().success();
+                granted++;
+            }
+        }
+        assertEquals(5, granted, "按集群上限的一半在本地限制");
+        System.out.println("✅ 协调器失败退回本地限制: 放行 " + granted);
+    }
+
+    @Test
+    public void testLeaseTimeoutFallsBackAndRecovers() throws Exception {
+        awaitFreshWindow();
+        InMemoryQuotaCoordinator backend = new InMemoryQuotaCoordinator();
+        AtomicBoolean hang = new AtomicBoolean(true);
+        QuotaCoordinator flaky = (key, limit, windowMillis, requested) -> hang.get()
+                ? new CompletableFuture<>()
+                : backend.lease(key, limit, windowMillis, requested);
+        QuotaCoordination coordination = new QuotaCoordination(flaky, "org");
+        coordination.setLeaseTimeoutMillis(100);
+        coordination.setRetryMillis(200);
+        ConcurrencyLimiter limiter = limiter();
+        limiter.setRequestsPerMinute(600);
+        limiter.setQuotaCoordination(coordination);
+
+        long start = System.nanoTime();
+        CompletableFuture<ConcurrencyLimiter.Permit> first = limiter.acquire(KEY, scheduler);
+        assertFalse(first.isDone(), "等待协调器时排队");
+        first.get(3, TimeUnit.SECONDS).success();
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waitedMillis >= 80, "租用超时后按本地限制放行: " + waitedMillis + " ms");
+        assertEquals(0, backend.getUsed("org:requests"));
+
+        hang.set(false);
+        Thread.sleep(300);
+        limiter.acquire(KEY, scheduler).get(3, TimeUnit.SECONDS).success();
+        assertEquals(coordination.batchSize(600), backend.getUsed("org:requests"), "恢复后重新从协调器租用");
+        System.out.println("✅ 租用超时: 等待 " + waitedMillis + " ms 后本地放行，恢复后租用 "
+                + backend.getUsed("org:requests"));
+    }
+
+    @Test
+    public void testBudgetSharedAcrossLedgers() {
+        InMemoryQuotaCoordinator coordinator = new InMemoryQuotaCoordinator();
+        QuotaCoordination coordination = new QuotaCoordination(coordinator, "org");
+        coordination.setBatchFraction(0.1);
+        UsageLedger a = ledger(coordination);
+        UsageLedger b = ledger(coordination);
+
+        a.checkBudget("alice");
+        a.record("alice", OpenAIException.Provider.OPENAI, "gpt-4o", usage(500, 100));
+        b.checkBudget("bob");
+        b.record("bob", OpenAIException.Provider.OPENAI, "gpt-4o", usage(250, 50));
+        // A补上透支后集群累计800
+        a.checkBudget("alice");
+        assertEquals(800, coordinator.getUsed("org:budget:*:tokens"));
+
+        OpenAIException e = assertThrows(OpenAIException.class, () -> b.checkBudget("bob"));
+        assertEquals(429, e.getStatusCode());
+        assertEquals(UsageLedger.ERROR_TYPE_BUDGET_EXCEEDED, e.getErrorType());
+        assertEquals(300, b.getTenantTokens("bob"), "本进程的用量远低于预算，按集群合计拒绝");
+        System.out.println("✅ 集群预算: " + e.getMessage());
+    }
+
+    @Test
+    public void testBudgetFallsBackToLocalUsage() {
+        QuotaCoordinator failing = (key, limit, windowMillis, requested) -> {
+            throw new IllegalStateException("协调器不可用");
+        };
+        UsageLedger ledger = ledger(new QuotaCoordination(failing, "org"));
+
+        ledger.checkBudget("alice");
+        ledger.record("alice", OpenAIException.Provider.OPENAI, "gpt-4o", usage(900, 200));
+        OpenAIException e = assertThrows(OpenAIException.class, () -> ledger.checkBudget("alice"));
+        assertEquals(UsageLedger.ERROR_TYPE_BUDGET_EXCEEDED, e.getErrorType());
+        System.out.println("✅ 协调器失败按本进程用量检查: " + e.getMessage());
+    }
+
+    @Test
+    public void testBudgetCheckDoesNotWaitForCoordinator() throws Exception {
+        InMemoryQuotaCoordinator backend = new InMemoryQuotaCoordinator();
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        QuotaCoordinator slow = (key, limit, windowMillis, requested) ->
+                release.thenCompose(v -> backend.lease(key, limit, windowMillis, requested));
+        QuotaCoordination coordination = new QuotaCoordination(slow, "org");
+        coordination.setBatchFraction(0.1);
+        coordination.setLeaseTimeoutMillis(5_000);
+        UsageLedger ledger = ledger(coordination);
+
+        long start = System.nanoTime();
+        ledger.checkBudget("alice");
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000, "租用中不等待协调器");
+        ledger.record("alice", OpenAIException.Provider.OPENAI, "gpt-4o", usage(900, 200));
+        assertThrows(OpenAIException.class, () -> ledger.checkBudget("alice"), "租用中按本进程用量检查");
+
+        // 租约返回后按集群额度检查，本地超出的部分在下一次租用时补申请
+        release.complete(null);
+        assertEquals(100, backend.getUsed("org:budget:*:tokens"));
+        OpenAIException e = assertThrows(OpenAIException.class, () -> ledger.checkBudget("alice"));
+        assertEquals(UsageLedger.ERROR_TYPE_BUDGET_EXCEEDED, e.getErrorType());
+        assertEquals(1000, backend.getUsed("org:budget:*:tokens"));
+        System.out.println("✅ 预算检查不等待协调器: " + e.getMessage());
+    }
+
+    @Test
+    public void testBudgetPrefetchesNextBatch() {
+        InMemoryQuotaCoordinator coordinator = new InMemoryQuotaCoordinator();
+        QuotaCoordination coordination = new QuotaCoordination(coordinator, "org");
+        coordination.setBatchFraction(0.1);
+        UsageLedger ledger = ledger(coordination);
+
+        ledger.checkBudget("alice");
+        assertEquals(100, coordinator.getUsed("org:budget:*:tokens"));
+        ledger.record("alice", OpenAIException.Provider.OPENAI, "gpt-4o", usage(50, 10));
+        ledger.checkBudget("alice");
+        assertEquals(200, coordinator.getUsed("org:budget:*:tokens"), "剩余不到半批时提前租用下一批");
+        System.out.println("✅ 预算提前租用: " + coordinator.getUsed("org:budget:*:tokens"));
+    }
+
+    private static UsageLedger ledger(QuotaCoordination coordination) {
+        UsageLedger ledger = new UsageLedger();
+        UsageBudget budget = UsageBudget.global();
+        budget.setMaxTokens(1000);
+        budget.setThrottleRatio(1);
+        budget.setThrottleDelayMillis(0);
+        ledger.setBudget(budget);
+        ledger.setQuotaCoordination(coordination);
+        return ledger;
+    }
+
+    private static ChatCompletionResponse.Usage usage(int prompt, int completion) {
+        ChatCompletionResponse.Usage usage = new ChatCompletionResponse.Usage();
+        usage.setPromptTokens(prompt);
+        usage.setCompletionTokens(completion);
+        usage.setTotalTokens(prompt + completion);
+        return usage;
+    }
+}
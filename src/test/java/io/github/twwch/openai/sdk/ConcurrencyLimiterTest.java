@@ -0,0 +1,228 @@
+package io.github.twwch.openai.sdk;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.limit.ConcurrencyLimiter;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试按端点自适应调整的并发限制器
+ */
+public class ConcurrencyLimiterTest {
+
+    private static final String KEY = "api.openai.com/v1/chat/completions";
+    private static final String CHUNK_JSON = "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1,"
+            + "\"model\":\"gpt-4o\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"好\"},\"finish_reason\":null}]}";
+
+    private RetryScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new RetryScheduler("test-limiter");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private List<ConcurrencyLimiter.Permit> acquireAll(ConcurrencyLimiter limiter, int count) {
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<ConcurrencyLimiter.Permit> future = limiter.acquire(KEY, scheduler);
+            assertTrue(future.isDone(), "未超过上限时立即放行");
+            permits.add(future.join());
+        }
+        return permits;
+    }
+
+    @Test
+    public void testQueueAndReject() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD, 2, 1, 10, 2, 200);
+        List<ConcurrencyLimiter.Permit> permits = acquireAll(limiter, 2);
+        assertEquals(2, limiter.getInFlight(KEY));
+
+        CompletableFuture<ConcurrencyLimiter.Permit> first = limiter.acquire(KEY, scheduler);
+        CompletableFuture<ConcurrencyLimiter.Permit> second = limiter.acquire(KEY, scheduler);
+        assertFalse(first.isDone());
+        assertEquals(2, limiter.getQueued(KEY));
+
+        // 排队已满时直接拒绝
+        CompletableFuture<ConcurrencyLimiter.Permit> full = limiter.acquire(KEY, scheduler);
+        ExecutionException rejected = assertThrows(ExecutionException.class, full::get);
+        OpenAIException exception = (OpenAIException) rejected.getCause();
+        assertEquals(429, exception.getStatusCode());
+        assertEquals(ConcurrencyLimiter.ERROR_TYPE_CONCURRENCY_LIMITED, exception.getErrorType());
+
+        // 释放许可后按先后顺序放行排队的请求
+        permits.get(0).success();
+        permits.get(0).success();
+        ConcurrencyLimiter.Permit granted = first.get(1, TimeUnit.SECONDS);
+        assertTrue(granted.getQueueWaitNanos() > 0);
+        assertFalse(second.isDone());
+        assertEquals(2, limiter.getInFlight(KEY), "重复释放只有第一次有效");
+
+        // 排队超时
+        ExecutionException timeout = assertThrows(ExecutionException.class, () -> second.get(2, TimeUnit.SECONDS));
+        assertEquals(429, ((OpenAIException) timeout.getCause()).getStatusCode());
+        assertEquals(0, limiter.getQueued(KEY));
+        assertEquals(2, limiter.getRejections(KEY));
+
+        granted.ignore();
+        permits.get(1).ignore();
+        assertEquals(0, limiter.getInFlight(KEY));
+        System.out.println("✅ 排队和拒绝: 拒绝数 " + limiter.getRejections(KEY));
+    }
+
+    @Test
+    public void testCancelLeavesQueue() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD, 1, 1, 10, 10, 10_000);
+        ConcurrencyLimiter.Permit permit = acquireAll(limiter, 1).get(0);
+        CompletableFuture<ConcurrencyLimiter.Permit> queued = limiter.acquire(KEY, scheduler);
+        queued.cancel(true);
+        assertEquals(0, limiter.getQueued(KEY));
+        permit.success();
+        assertEquals(0, limiter.getInFlight(KEY));
+        assertEquals(0, limiter.getRejections(KEY), "取消不计入拒绝");
+    }
+
+    @Test
+    public void testAimd() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD, 10, 2, 100, 0, 1000);
+
+        // 请求数接近上限时成功请求逐步增大上限
+        for (int round = 0; round < 20; round++) {
+            for (ConcurrencyLimiter.Permit permit : acquireAll(limiter, limiter.getLimit(KEY))) {
+                permit.success();
+            }
+        }
+        int grown = limiter.getLimit(KEY);
+        assertTrue(grown > 10, "上限应增大: " + grown);
+
+        // 空闲时不增长
+        for (int i = 0; i < 100; i++) {
+            acquireAll(limiter, 1).get(0).success();
+        }
+        assertEquals(grown, limiter.getLimit(KEY));
+
+        // 同一窗口内的多个限流只减小一次
+        List<ConcurrencyLimiter.Permit> permits = acquireAll(limiter, 4);
+        for (ConcurrencyLimiter.Permit permit : permits) {
+            permit.throttled();
+        }
+        int decreased = limiter.getLimit(KEY);
+        assertEquals((int) (grown * 0.75), decreased, 1);
+
+        for (int i = 0; i < 20; i++) {
+            acquireAll(limiter, 1).get(0).throttled();
+        }
+        assertEquals(2, limiter.getLimit(KEY), "不低于最小上限");
+        System.out.println("✅ AIMD: " + grown + " -> " + decreased + " -> " + limiter.getLimit(KEY));
+    }
+
+    @Test
+    public void testVegas() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.VEGAS, 10, 2, 200, 0, 1000);
+        long fast = TimeUnit.MILLISECONDS.toNanos(10);
+        for (int round = 0; round < 10; round++) {
+            for (ConcurrencyLimiter.Permit permit : acquireAll(limiter, limiter.getLimit(KEY))) {
+                permit.success(fast);
+            }
+        }
+        int grown = limiter.getLimit(KEY);
+        assertTrue(grown > 10, "延迟不变时上限应增大: " + grown);
+
+        // 延迟上升说明请求在服务端排队，上限减小
+        long slow = TimeUnit.MILLISECONDS.toNanos(100);
+        for (int round = 0; round < 10; round++) {
+            for (ConcurrencyLimiter.Permit permit : acquireAll(limiter, limiter.getLimit(KEY))) {
+                permit.success(slow);
+            }
+        }
+        int shrunk = limiter.getLimit(KEY);
+        assertTrue(shrunk < grown, "延迟上升时上限应减小: " + grown + " -> " + shrunk);
+        System.out.println("✅ Vegas: 10 -> " + grown + " -> " + shrunk);
+    }
+
+    @Test
+    public void testStreamToDoneGrowsLimit() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(("data: " + CHUNK_JSON + "\n\ndata: [DONE]\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                // 连接保持打开，流由客户端收到[DONE]后取消
+                Thread.sleep(500);
+            } catch (IOException | InterruptedException e) {
+                // 客户端已取消
+            }
+        });
+        server.start();
+
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD, 1, 1, 10, 10, 10_000);
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        config.setConcurrencyLimiter(limiter);
+        try (OpenAI client = new OpenAI(config)) {
+            for (int i = 0; i < 5; i++) {
+                client.streamChatCompletion(new ChatCompletionRequest("gpt-4o",
+                                Collections.singletonList(ChatMessage.user("你好"))), chunk -> { }, () -> { }, error -> { })
+                        .get(5, TimeUnit.SECONDS);
+                String key = limiter.getKeys().iterator().next();
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (limiter.getInFlight(key) > 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(0, limiter.getInFlight(key), "流取消后交还许可");
+            }
+            String key = limiter.getKeys().iterator().next();
+            assertTrue(limiter.getLimit(key) > 1, "正常结束的流按成功记录，上限增大: " + limiter.getLimit(key));
+            System.out.println("✅ 流式调用成功样本: 上限 1 -> " + limiter.getLimit(key));
+        } finally {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDisabledAndConfig() {
+        ConcurrencyLimiter disabled = ConcurrencyLimiter.disabled();
+        assertFalse(disabled.isEnabled());
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(disabled.acquire(KEY, scheduler).isDone());
+        }
+        assertTrue(disabled.getKeys().isEmpty());
+
+        OpenAIConfig config = new OpenAIConfig("test-key");
+        assertSame(ConcurrencyLimiter.disabled(), config.getConcurrencyLimiter());
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.VEGAS);
+        config.setConcurrencyLimiter(limiter);
+        assertSame(limiter, config.getConcurrencyLimiter());
+        config.setConcurrencyLimiter(null);
+        assertSame(ConcurrencyLimiter.disabled(), config.getConcurrencyLimiter());
+    }
+}
@@ -0,0 +1,200 @@
+package io.github.twwch.openai.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.service.bedrock.BedrockModelAdapterFactory;
+import io.github.twwch.openai.sdk.service.bedrock.ConverseModelAdapter;
+import io.github.twwch.openai.sdk.service.bedrock.ConverseStreamDecoder;
+import io.github.twwch.openai.sdk.service.bedrock.LlamaModelAdapter;
+import io.github.twwch.openai.sdk.service.bedrock.ModelCapabilityRegistry;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.document.Document;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlockDelta;
+import software.amazon.awssdk.services.bedrockruntime.model.ContentBlockStart;
+import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseOutput;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamMetadataEvent;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamOutput;
+import software.amazon.awssdk.services.bedrockruntime.model.Message;
+import software.amazon.awssdk.services.bedrockruntime.model.StopReason;
+import software.amazon.awssdk.services.bedrockruntime.model.TokenUsage;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolUseBlock;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolUseBlockDelta;
+import software.amazon.awssdk.services.bedrockruntime.model.ToolUseBlockStart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试基于Converse API的Bedrock模型适配器
+ */
+public class ConverseModelAdapterTest {
+
+    private static final String PNG_DATA_URL = "data:image/png;base64,"
+            + "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNkYPhfDwAChwGA60e6kgAAAABJRU5ErkJggg==";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static ChatCompletionRequest.Tool weatherTool() {
+        Map<String, Object> city = new HashMap<>();
+        city.put("type", "string");
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("city", city);
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("type", "object");
+        parameters.put("properties", properties);
+        parameters.put("required", Collections.singletonList("city"));
+
+        ChatCompletionRequest.Function function = new ChatCompletionRequest.Function();
+        function.setName("get_weather");
+        function.setDescription("查询天气");
+        function.setParameters(parameters);
+        ChatCompletionRequest.Tool tool = new ChatCompletionRequest.Tool();
+        tool.setType("function");
+        tool.setFunction(function);
+        return tool;
+    }
+
+    private static ChatMessage.ToolCall toolCall(String id, String arguments) {
+        ChatMessage.ToolCall toolCall = new ChatMessage.ToolCall();
+        toolCall.setId(id);
+        toolCall.setType("function");
+        ChatMessage.ToolCall.Function function = new ChatMessage.ToolCall.Function();
+        function.setName("get_weather");
+        function.setArguments(arguments);
+        toolCall.setFunction(function);
+        return toolCall;
+    }
+
+    @Test
+    public void testRequestMapping() {
+        ChatMessage assistant = ChatMessage.assistant("我来查一下");
+        assistant.setToolCalls(new ChatMessage.ToolCall[]{
+                toolCall("call_1", "{\"city\":\"北京\"}"),
+                toolCall("call_2", "{\"city\":\"上海\"}")});
+        List<ChatMessage> messages = new ArrayList<>(Arrays.asList(
+                ChatMessage.system("你是天气助手"),
+                ChatMessage.user(ChatMessage.ContentPart.textWithCache("很长的参考资料", true),
+                        ChatMessage.ContentPart.imageUrl(PNG_DATA_URL)),
+                assistant,
+                ChatMessage.tool("call_1", "晴"),
+                ChatMessage.tool("call_2", "小雨")));
+        ChatCompletionRequest request = new ChatCompletionRequest("claude", messages);
+        request.setBedrockEnableSystemCache(true);
+        request.setTools(Collections.singletonList(weatherTool()));
+        request.setToolChoice("required");
+        request.setMaxTokens(512);
+        request.setTemperature(0.3);
+
+        ConverseRequest converse = new ConverseModelAdapter()
+                .toConverseRequest("anthropic.claude-3-haiku-20240307-v1:0", request, objectMapper);
+
+        assertEquals(2, converse.system().size(), "system文本后跟一个cachePoint");
+        assertNotNull(converse.system().get(1).cachePoint());
+        assertEquals(512, converse.inferenceConfig().maxTokens());
+        assertEquals(0.3f, converse.inferenceConfig().temperature(), 1e-6);
+        assertNotNull(converse.toolConfig().toolChoice().any(), "required映射为any");
+        Document schema = converse.toolConfig().tools().get(0).toolSpec().inputSchema().json();
+        assertEquals("object", schema.asMap().get("type").asString());
+
+        assertEquals(3, converse.messages().size(), "两个工具结果合并为一条user消息");
+        List<ContentBlock> user = converse.messages().get(0).content();
+        assertEquals("很长的参考资料", user.get(0).text());
+        assertNotNull(user.get(1).cachePoint());
+        assertEquals("png", user.get(2).image().formatAsString());
+        assertTrue(user.get(2).image().source().bytes().asByteArray().length > 0);
+
+        Message assistantMessage = converse.messages().get(1);
+        assertEquals(ConversationRole.ASSISTANT, assistantMessage.role());
+        assertEquals("北京", assistantMessage.content().get(1).toolUse().input().asMap().get("city").asString());
+
+        Message toolResults = converse.messages().get(2);
+        assertEquals(ConversationRole.USER, toolResults.role());
+        assertEquals(2, toolResults.content().size());
+        assertEquals("call_2", toolResults.content().get(1).toolResult().toolUseId());
+        System.out.println("✅ 请求直接映射为Converse模型对象，消息数: " + converse.messages().size());
+    }
+
+    @Test
+    public void testResponseConversion() {
+        ConverseResponse converseResponse = ConverseResponse.builder()
+                .output(ConverseOutput.fromMessage(Message.builder()
+                        .role(ConversationRole.ASSISTANT)
+                        .content(ContentBlock.fromText("好的"),
+                                ContentBlock.fromToolUse(ToolUseBlock.builder()
+                                        .toolUseId("tooluse_1").name("get_weather")
+                                        .input(Document.mapBuilder().putString("city", "北京").putNumber("days", 3).build())
+                                        .build()))
+                        .build()))
+                .stopReason(StopReason.TOOL_USE)
+                .usage(TokenUsage.builder().inputTokens(100).outputTokens(20).totalTokens(120)
+                        .cacheReadInputTokens(80).cacheWriteInputTokens(0).build())
+                .build();
+        ChatCompletionRequest request = new ChatCompletionRequest("claude",
+                Collections.singletonList(ChatMessage.user("北京天气")));
+
+        ChatCompletionResponse response = new ConverseModelAdapter().convertResponse(converseResponse, request, objectMapper);
+
+        assertEquals("好的", response.getContent());
+        ChatMessage.ToolCall call = response.getChoices().get(0).getMessage().getToolCalls()[0];
+        assertEquals("tooluse_1", call.getId());
+        assertEquals("{\"city\":\"北京\",\"days\":3}", call.getFunction().getArguments());
+        assertEquals(120, response.getUsage().getTotalTokens());
+        assertEquals(80, response.getUsage().getCacheReadInputTokens());
+    }
+
+    @Test
+    public void testStreamDecoding() {
+        ConverseStreamDecoder decoder = new ConverseModelAdapter().newConverseStreamDecoder("claude", objectMapper);
+        List<ChatCompletionChunk> chunks = new ArrayList<>();
+        for (ConverseStreamOutput event : Arrays.asList(
+                ConverseStreamOutput.messageStartBuilder().role(ConversationRole.ASSISTANT).build(),
+                ConverseStreamOutput.contentBlockDeltaBuilder().contentBlockIndex(0)
+                        .delta(ContentBlockDelta.fromText("你好")).build(),
+                ConverseStreamOutput.contentBlockStopBuilder().contentBlockIndex(0).build(),
+                ConverseStreamOutput.contentBlockStartBuilder().contentBlockIndex(1)
+                        .start(ContentBlockStart.fromToolUse(ToolUseBlockStart.builder()
+                                .toolUseId("tooluse_1").name("get_weather").build())).build(),
+                ConverseStreamOutput.contentBlockDeltaBuilder().contentBlockIndex(1)
+                        .delta(ContentBlockDelta.fromToolUse(ToolUseBlockDelta.builder().input("{\"city\":").build())).build(),
+                ConverseStreamOutput.messageStopBuilder().stopReason(StopReason.END_TURN).build(),
+                ConverseStreamOutput.metadataBuilder()
+                        .usage(TokenUsage.builder().inputTokens(10).outputTokens(5).totalTokens(15).build()).build())) {
+            chunks.addAll(decoder.decode(event));
+        }
+
+        assertEquals(6, chunks.size(), "contentBlockStop不产生数据块");
+        assertEquals("assistant", chunks.get(0).getChoices().get(0).getDelta().getRole());
+        assertEquals("你好", chunks.get(1).getContent());
+        ChatMessage.ToolCall start = chunks.get(2).getChoices().get(0).getDelta().getToolCalls().get(0);
+        assertEquals("get_weather", start.getFunction().getName());
+        assertEquals(1, start.getIndex());
+        assertEquals("{\"city\":", chunks.get(3).getChoices().get(0).getDelta().getToolCalls().get(0)
+                .getFunction().getArguments());
+        assertEquals("stop", chunks.get(4).getChoices().get(0).getFinishReason());
+        assertEquals(15, chunks.get(5).getUsage().getTotalTokens());
+        assertTrue(decoder.getMetadata() instanceof ConverseStreamMetadataEvent);
+        assertEquals(chunks.get(0).getId(), chunks.get(5).getId(), "同一个流复用ID");
+    }
+
+    @Test
+    public void testFactorySelectsConverse() {
+        assertTrue(BedrockModelAdapterFactory.createConverseAdapter(
+                ModelCapabilityRegistry.getDefault().resolve("meta.llama3-70b-instruct-v1:0", true))
+                .supports("meta.llama3-70b-instruct-v1:0"));
+        assertTrue(BedrockModelAdapterFactory.createAdapter("meta.llama3-70b-instruct-v1:0")
+                instanceof LlamaModelAdapter);
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.twwch.openai.sdk;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.twwch.openai.sdk.exception.LogThrottler;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.exception.PayloadSample;
+import io.github.twwch.openai.sdk.exception.PayloadSampler;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试错误日志限流去重和错误现场采样
+ */
+public class ErrorLoggingTest {
+
+    private static final String ERROR_JSON =
+            "{\"error\":{\"message\":\"Invalid value for messages\",\"type\":\"invalid_request_error\",\"code\":null}}";
+
+    @Test
+    public void testThrottlerSuppressesAndCounts() throws Exception {
+        LogThrottler throttler = new LogThrottler();
+        throttler.setWindowMillis(200);
+
+        assertEquals(0, throttler.tryAcquire("429"));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(-1, throttler.tryAcquire("429"));
+        }
+        assertEquals(0, throttler.tryAcquire("500"), "不同的键互不影响");
+        assertEquals(5, throttler.getSuppressedCount());
+
+        Thread.sleep(250);
+        assertEquals(5, throttler.tryAcquire("429"), "窗口结束后报告被抑制的次数");
+        assertEquals(0, throttler.getSuppressedCount());
+
+        throttler.setEnabled(false);
+        assertEquals(0, throttler.tryAcquire("429"));
+        System.out.println("✅ 日志限流:" + LogThrottler.suppressedSuffix(5));
+    }
+
+    @Test
+    public void testSamplerRingAndLazySerialization() {
+        PayloadSampler sampler = new PayloadSampler(3);
+        sampler.setMinIntervalMillis(0);
+        for (int i = 0; i < 5; i++) {
+            int n = i;
+            assertTrue(sampler.record(OpenAIException.Provider.OPENAI, "gpt-4o", 500, "错误" + n,
+                    () -> "request-" + n, "response-" + n));
+        }
+        List<PayloadSample> samples = sampler.getSamples();
+        assertEquals(3, samples.size(), "环形缓冲区只保留最近的样本");
+        assertEquals("request-2", samples.get(0).getRequest());
+        assertEquals("response-4", samples.get(2).getResponse());
+
+        AtomicInteger serialized = new AtomicInteger();
+        sampler.setSampleRate(0);
+        assertFalse(sampler.record(OpenAIException.Provider.OPENAI, "gpt-4o", 500, "错误",
+                () -> "request-" + serialized.incrementAndGet(), null));
+        assertEquals(0, serialized.get(), "未被采样时不应序列化请求体");
+        assertEquals(1, sampler.getDroppedCount());
+
+        sampler.setSampleRate(1);
+        sampler.setMinIntervalMillis(60_000);
+        sampler.clear();
+        assertTrue(sampler.record(OpenAIException.Provider.OPENAI, "gpt-4o", 500, "错误", null, null));
+        assertFalse(sampler.record(OpenAIException.Provider.OPENAI, "gpt-4o", 500, "错误", null, null),
+                "最小间隔内只采样一次");
+    }
+
+    @Test
+    public void testSamplerTruncatesPayload() {
+        PayloadSampler sampler = new PayloadSampler(1);
+        sampler.setMaxPayloadChars(10);
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            large.append("0123456789");
+        }
+        sampler.record(OpenAIException.Provider.BEDROCK, "claude", 400, "错误", large::toString, "短响应");
+        PayloadSample sample = sampler.getSamples().get(0);
+        assertTrue(sample.getRequest().startsWith("0123456789..."));
+        assertTrue(sample.getRequest().contains("1000"));
+        assertEquals("短响应", sample.getResponse());
+    }
+
+    @Test
+    public void testHttpErrorSampled() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            byte[] body = ERROR_JSON.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(400, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        PayloadSampler sampler = PayloadSampler.getDefault();
+        long minInterval = sampler.getMinIntervalMillis();
+        sampler.clear();
+        sampler.setMinIntervalMillis(0);
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        try (OpenAI client = new OpenAI(config)) {
+            ChatCompletionRequest request = new ChatCompletionRequest("gpt-4o",
+                    Collections.singletonList(ChatMessage.user("采样的请求")));
+            OpenAIException e = assertThrows(OpenAIException.class, () -> client.createChatCompletion(request));
+            assertEquals(400, e.getStatusCode());
+            assertTrue(e.getMessage().contains("详细错误: " + ERROR_JSON), "异常中保留原始错误响应");
+
+            PayloadSample sample = sampler.getSamples().get(0);
+            assertEquals("gpt-4o", sample.getModel());
+            assertEquals(400, sample.getStatusCode());
+            assertTrue(sample.getRequest().contains("采样的请求"));
+            assertEquals(ERROR_JSON, sample.getResponse());
+            System.out.println("✅ 错误采样: " + sample);
+        } finally {
+            sampler.setMinIntervalMillis(minInterval);
+            sampler.clear();
+            server.stop(0);
+        }
+    }
+}
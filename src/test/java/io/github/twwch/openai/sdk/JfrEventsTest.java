@@ -0,0 +1,103 @@
+package io.github.twwch.openai.sdk;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.jfr.ChunkDecodeEvent;
+import io.github.twwch.openai.sdk.jfr.ImageProcessingEvent;
+import io.github.twwch.openai.sdk.jfr.RequestSerializationEvent;
+import io.github.twwch.openai.sdk.util.ImageUtils;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试SDK的JFR事件在录制时被提交，未录制时不产生数据
+ */
+public class JfrEventsTest {
+
+    @Test
+    public void testEventsRecorded() throws Exception {
+        Path file = Files.createTempFile("openai-sdk", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("io.github.twwch.openai.sdk.RequestSerialization").withThreshold(java.time.Duration.ZERO);
+            recording.enable("io.github.twwch.openai.sdk.ChunkDecode").withThreshold(java.time.Duration.ZERO);
+            recording.enable("io.github.twwch.openai.sdk.ImageProcessing").withThreshold(java.time.Duration.ZERO);
+            recording.start();
+
+            RequestSerializationEvent serialization = new RequestSerializationEvent();
+            serialization.begin();
+            serialization.complete(OpenAIException.Provider.OPENAI, "gpt-4o", "/chat/completions", 128);
+
+            ChunkDecodeEvent decode = new ChunkDecodeEvent();
+            decode.begin();
+            decode.complete(OpenAIException.Provider.BEDROCK, "claude", 64, 2);
+
+            byte[] image = noisyPng(400, 400);
+            byte[] compressed = ImageUtils.compressImage(image, image.length / 4);
+            assertNotNull(compressed);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.deleteIfExists(file);
+
+        RecordedEvent serialization = find(events, "io.github.twwch.openai.sdk.RequestSerialization");
+        assertNotNull(serialization);
+        assertEquals("OpenAI", serialization.getString("provider"));
+        assertEquals("/chat/completions", serialization.getString("endpoint"));
+        assertEquals(128L, serialization.getLong("size"));
+
+        RecordedEvent decode = find(events, "io.github.twwch.openai.sdk.ChunkDecode");
+        assertNotNull(decode);
+        assertEquals(2, decode.getInt("chunkCount"));
+
+        RecordedEvent imageEvent = find(events, "io.github.twwch.openai.sdk.ImageProcessing");
+        assertNotNull(imageEvent);
+        assertEquals(ImageProcessingEvent.COMPRESS, imageEvent.getString("operation"));
+
+        System.out.println("✅ 录制到 " + events.size() + " 个SDK事件");
+    }
+
+    @Test
+    public void testEventsSkippedWhenNotRecording() {
+        RequestSerializationEvent event = new RequestSerializationEvent();
+        assertFalse(event.isEnabled(), "未开启录制时事件不应启用");
+        event.begin();
+        event.complete(OpenAIException.Provider.OPENAI, "gpt-4o", "/chat/completions", 1);
+        assertFalse(event.shouldCommit());
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] noisyPng(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
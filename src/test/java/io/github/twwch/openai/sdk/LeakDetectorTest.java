@@ -0,0 +1,115 @@
+package io.github.twwch.openai.sdk;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.twwch.openai.sdk.leak.LeakDetector;
+import io.github.twwch.openai.sdk.leak.LeakRecord;
+import io.github.twwch.openai.sdk.leak.ResourceType;
+import io.github.twwch.openai.sdk.leak.TrackedResource;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试泄漏检测器对客户端、流和响应的跟踪
+ */
+public class LeakDetectorTest {
+
+    private static final String STREAM_BODY =
+            "data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1,\"model\":\"gpt-4o\","
+                    + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\"你好\"}}]}\n\n"
+                    + "data: [DONE]\n\n";
+
+    @Test
+    public void testTrackAndLongLived() throws Exception {
+        LeakDetector detector = new LeakDetector();
+        Object owner = new Object();
+        TrackedResource stream = detector.track(ResourceType.STREAM, owner, "stream-1");
+        TrackedResource client = detector.track(ResourceType.CLIENT, owner, "client-1");
+        assertEquals(2, detector.getLiveCount());
+        assertEquals(1, detector.getLiveCount(ResourceType.STREAM));
+
+        detector.setMaxLifetimeMillis(10);
+        Thread.sleep(30);
+        List<LeakRecord> longLived = detector.findLongLived();
+        assertEquals(2, longLived.size());
+        assertNotNull(longLived.get(0).getAllocationSite(), "应采集分配位置调用栈");
+        assertFalse(detector.report());
+
+        stream.close();
+        stream.close(); // 重复关闭应被忽略
+        client.close();
+        assertEquals(0, detector.getLiveCount());
+        assertTrue(detector.report());
+
+        assertSame(TrackedResource.NOOP, LeakDetector.disabled().track(ResourceType.STREAM, owner, "noop"));
+        System.out.println("✅ 跟踪与长期存活检测通过");
+    }
+
+    @Test
+    public void testLeakDetectedAfterOwnerCollected() throws Exception {
+        LeakDetector detector = new LeakDetector();
+        trackAndForget(detector);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (detector.getLeakedCount() == 0 && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(1L, detector.getLeakedCount());
+        assertEquals(0, detector.getLiveCount());
+        LeakRecord leak = detector.getLeaks().get(0);
+        assertTrue(leak.isLeaked());
+        assertEquals("forgotten", leak.getDescription());
+        System.out.println("✅ 检测到泄漏: " + leak);
+    }
+
+    @Test
+    public void testClientsAndStreamsReleased() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            byte[] bytes = STREAM_BODY.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+
+        LeakDetector detector = new LeakDetector();
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        config.setLeakDetector(detector);
+        try {
+            OpenAI client = new OpenAI(config);
+            assertEquals(1, detector.getLiveCount(ResourceType.CLIENT));
+
+            ChatCompletionRequest request = new ChatCompletionRequest("gpt-4o",
+                    Collections.singletonList(ChatMessage.user("你好")));
+            client.streamChatCompletion(request, chunk -> { }, null, null).get(10, TimeUnit.SECONDS);
+
+            // 流在[DONE]后取消，OkHttp回调结束后释放
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (detector.getLiveCount(ResourceType.STREAM) > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, detector.getLiveCount(ResourceType.STREAM));
+
+            client.close();
+            assertEquals(0, detector.getLiveCount());
+        } finally {
+            server.stop(0);
+        }
+        System.out.println("✅ 客户端和流均已释放");
+    }
+
+    private static void trackAndForget(LeakDetector detector) {
+        detector.track(ResourceType.RESPONSE, new Object(), "forgotten");
+    }
+}
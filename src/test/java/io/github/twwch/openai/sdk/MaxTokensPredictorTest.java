@@ -0,0 +1,237 @@
+package io.github.twwch.openai.sdk;
+
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.service.BedrockService;
+import io.github.twwch.openai.sdk.service.OutputContinuation;
+import io.github.twwch.openai.sdk.service.StreamHandle;
+import io.github.twwch.openai.sdk.service.bedrock.MaxTokensPredictor;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试按历史输出长度预测max_tokens
+ */
+public class MaxTokensPredictorTest {
+
+    private static final String MODEL = "anthropic.claude-sonnet-4-20250514-v1:0";
+
+    private static ChatCompletionRequest request(String system, String user) {
+        return new ChatCompletionRequest(null, Arrays.asList(ChatMessage.system(system), ChatMessage.user(user)));
+    }
+
+    @Test
+    public void testPredictFromPercentile() {
+        MaxTokensPredictor predictor = new MaxTokensPredictor(0.95, 1.25, 64, 10);
+        String key = MaxTokensPredictor.key(MODEL, request("摘要助手", "文章一"));
+        assertEquals(4096, predictor.predict(key, 4096), "样本不足时使用默认值");
+
+        for (int i = 1; i <= 100; i++) {
+            predictor.record(key, i * 4);
+        }
+        // p95 = 380，余量1.25
+        assertEquals(475, predictor.predict(key, 4096));
+        assertEquals(300, predictor.predict(key, 300), "不超过默认值");
+        System.out.println("✅ 预测max_tokens: " + predictor.predict(key, 4096));
+    }
+
+    @Test
+    public void testMinTokensAndWindow() {
+        MaxTokensPredictor predictor = new MaxTokensPredictor(0.95, 1.25, 256, 5);
+        String key = "k";
+        for (int i = 0; i < 10; i++) {
+            predictor.record(key, 20);
+        }
+        assertEquals(256, predictor.predict(key, 4096), "不低于最小值");
+
+        // 只保留最近的样本，输出变长后预测随之变大
+        for (int i = 0; i < 500; i++) {
+            predictor.record(key, 1000);
+        }
+        assertEquals(1250, predictor.predict(key, 4096));
+        predictor.record(key, 0);
+        assertEquals(1, predictor.size());
+    }
+
+    @Test
+    public void testKey() {
+        String a = MaxTokensPredictor.key(MODEL, request("摘要助手", "文章一"));
+        assertEquals(a, MaxTokensPredictor.key(MODEL, request("摘要助手", "文章二")), "相同system属于同一分类");
+        assertNotEquals(a, MaxTokensPredictor.key(MODEL, request("翻译助手", "文章一")));
+
+        ChatCompletionRequest tagged = request("摘要助手", "文章一");
+        tagged.setMetadata(Collections.singletonMap(MaxTokensPredictor.TAG_METADATA_KEY, "summary"));
+        assertEquals(MODEL + "|tag:summary", MaxTokensPredictor.key(MODEL, tagged));
+    }
+
+    @Test
+    public void testDisabledAndConfig() {
+        MaxTokensPredictor disabled = MaxTokensPredictor.disabled();
+        for (int i = 0; i < 100; i++) {
+            disabled.record("k", 10);
+        }
+        assertEquals(4096, disabled.predict("k", 4096));
+
+        BedrockConfig config = new BedrockConfig("us-east-1", "ak", "sk", MODEL);
+        assertFalse(config.getMaxTokensPredictor().isEnabled(), "默认关闭");
+        config.setMaxTokensPredictor(MaxTokensPredictor.getDefault());
+        assertTrue(config.getMaxTokensPredictor().isEnabled());
+        config.setMaxTokensPredictor(null);
+        assertFalse(config.getMaxTokensPredictor().isEnabled());
+
+        assertThrows(IllegalArgumentException.class, () -> new MaxTokensPredictor(1.5, 1.25, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new MaxTokensPredictor(0.9, 0.5, 1, 1));
+    }
+
+    @Test
+    public void testPredictionLeavesCallerRequestUnchanged() {
+        ChatCompletionRequest original = request("摘要助手", "文章一");
+        original.setUser("alice");
+        original.setDeadline(12345L);
+        ChatCompletionRequest copy = original.copy();
+        assertNotSame(original, copy);
+        assertSame(original.getMessages(), copy.getMessages());
+        assertEquals("alice", copy.getUser());
+        assertEquals(12345L, copy.getDeadline(), "SDK内部字段一并复制");
+        copy.setMaxTokens(100);
+        assertNull(original.getMaxTokens());
+
+        BedrockConfig config = new BedrockConfig("us-east-1", "ak", "sk", MODEL);
+        config.setMaxTokensPredictor(new MaxTokensPredictor(0.95, 1.25, 64, 1));
+        try (BedrockService service = new BedrockService(config)) {
+            for (int i = 0; i < 2; i++) {
+                CompletableFuture<ChatCompletionResponse> future = service.createChatCompletionAsync(original);
+                future.cancel(true);
+                // 预测值只写在发出的副本上，重复使用请求时仍按预测发出并允许继续生成
+                assertNull(original.getMaxTokens(), "调用方的max_tokens保持未设置");
+            }
+        }
+        System.out.println("✅ 预测不改动调用方请求");
+    }
+
+    private static ChatCompletionResponse response(String text, String finishReason, int completionTokens) {
+        ChatCompletionResponse.Choice choice = new ChatCompletionResponse.Choice();
+        choice.setMessage(ChatMessage.assistant(text));
+        choice.setFinishReason(finishReason);
+        ChatCompletionResponse.Usage usage = new ChatCompletionResponse.Usage();
+        usage.setPromptTokens(100);
+        usage.setCompletionTokens(completionTokens);
+        usage.setTotalTokens(100 + completionTokens);
+        ChatCompletionResponse response = new ChatCompletionResponse();
+        response.setChoices(new ArrayList<>(Collections.singletonList(choice)));
+        response.setUsage(usage);
+        return response;
+    }
+
+    @Test
+    public void testContinuationMerge() {
+        ChatCompletionRequest original = request("写作助手", "写一段话");
+        original.setUser("alice");
+        ChatCompletionResponse truncated = response("第一部分，接着 ", OutputContinuation.FINISH_REASON_LENGTH, 50);
+        assertTrue(OutputContinuation.canContinue(truncated));
+        assertFalse(OutputContinuation.canContinue(response("完整", "stop", 5)));
+
+        ChatCompletionRequest next = OutputContinuation.request(original, truncated.getContent(), 200);
+        assertEquals(3, next.getMessages().size());
+        assertEquals("第一部分，接着", next.getMessages().get(2).getContentAsString(), "预填充去掉末尾空白");
+        assertEquals("assistant", next.getMessages().get(2).getRole());
+        assertEquals(200, next.getMaxTokens());
+        assertEquals("alice", next.getUser());
+        assertEquals(2, original.getMessages().size(), "原请求的消息不变");
+
+        ChatCompletionResponse merged = OutputContinuation.merge(truncated, response("第二部分。", "stop", 20));
+        assertEquals("第一部分，接着第二部分。", merged.getContent());
+        assertEquals("stop", merged.getChoices().get(0).getFinishReason());
+        assertEquals(70, merged.getUsage().getCompletionTokens());
+        assertEquals(200, merged.getUsage().getPromptTokens());
+        System.out.println("✅ 继续生成合并: " + merged.getContent());
+    }
+
+    private static ChatCompletionChunk chunk(String role, String content, String finishReason,
+                                             Integer completionTokens) {
+        ChatCompletionChunk.Delta delta = new ChatCompletionChunk.Delta();
+        delta.setRole(role);
+        delta.setContent(content);
+        ChatCompletionChunk.Choice choice = new ChatCompletionChunk.Choice();
+        choice.setDelta(delta);
+        choice.setFinishReason(finishReason);
+        ChatCompletionChunk chunk = new ChatCompletionChunk();
+        chunk.setChoices(new ArrayList<>(Collections.singletonList(choice)));
+        if (completionTokens != null) {
+            ChatCompletionResponse.Usage usage = new ChatCompletionResponse.Usage();
+            usage.setCompletionTokens(completionTokens);
+            chunk.setUsage(usage);
+        }
+        return chunk;
+    }
+
+    @Test
+    public void testStreamHoldsBackTruncatedSegments() throws Exception {
+        // 每段按Claude解码器的顺序送出：message_start、文本、message_delta（finish_reason和用量）、message_stop
+        List<List<ChatCompletionChunk>> segments = Arrays.asList(
+                Arrays.asList(chunk("assistant", null, null, null), chunk(null, "第一段 ", null, null),
+                        chunk(null, null, OutputContinuation.FINISH_REASON_LENGTH, 10), chunk(null, null, "stop", null)),
+                Arrays.asList(chunk("assistant", null, null, null), chunk(null, "第二段", null, null),
+                        chunk(null, null, OutputContinuation.FINISH_REASON_LENGTH, 10), chunk(null, null, "stop", null)),
+                Arrays.asList(chunk("assistant", null, null, null), chunk(null, "。", null, null),
+                        chunk(null, null, "stop", 2), chunk(null, null, "stop", null)));
+        List<ChatCompletionRequest> requests = new ArrayList<>();
+        List<ChatCompletionChunk> received = new ArrayList<>();
+        AtomicInteger completions = new AtomicInteger();
+        AtomicInteger output = new AtomicInteger();
+
+        OutputContinuation.Stream stream = new OutputContinuation.Stream(request("写作助手", "写一段话"), 1000, 3,
+                (segmentRequest, onChunk, onComplete, onError) -> {
+                    requests.add(segmentRequest);
+                    StreamHandle handle = new StreamHandle();
+                    segments.get(requests.size() - 1).forEach(onChunk);
+                    onComplete.run();
+                    handle.complete(null);
+                    return handle;
+                },
+                received::add, completions::incrementAndGet, error -> fail(error.toString()), output::set);
+        stream.start().get(1, TimeUnit.SECONDS);
+
+        assertEquals(3, requests.size());
+        assertEquals("第一段", requests.get(1).getMessages().get(2).getContentAsString());
+        assertEquals("第一段第二段", requests.get(2).getMessages().get(2).getContentAsString());
+
+        StringBuilder text = new StringBuilder();
+        int roles = 0;
+        List<String> finishReasons = new ArrayList<>();
+        for (ChatCompletionChunk chunk : received) {
+            ChatCompletionChunk.Choice choice = chunk.getChoices().get(0);
+            assertTrue(finishReasons.isEmpty(), "结束数据块之后不再有数据块: " + finishReasons);
+            if (choice.getDelta().getRole() != null) {
+                roles++;
+            }
+            if (choice.getDelta().getContent() != null) {
+                text.append(choice.getDelta().getContent());
+            }
+            if (choice.getFinishReason() != null && chunk.getUsage() == null) {
+                finishReasons.add(choice.getFinishReason());
+            }
+        }
+        assertEquals(1, roles, "只有第一段的开始数据块送出");
+        assertEquals("第一段 第二段。", text.toString());
+        assertEquals(Collections.singletonList("stop"), finishReasons, "只有最后一段的结束数据块送出");
+        for (ChatCompletionChunk chunk : received) {
+            String reason = chunk.getChoices().get(0).getFinishReason();
+            assertNotEquals(OutputContinuation.FINISH_REASON_LENGTH, reason, "调用方看不到截断");
+        }
+        assertEquals(1, completions.get());
+        assertEquals(22, output.get());
+        System.out.println("✅ 继续生成的流: " + text + "，数据块 " + received.size());
+    }
+}
@@ -0,0 +1,176 @@
+package io.github.twwch.openai.sdk;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.metrics.Histogram;
+import io.github.twwch.openai.sdk.metrics.MetricKey;
+import io.github.twwch.openai.sdk.metrics.MetricsListener;
+import io.github.twwch.openai.sdk.metrics.MetricsRegistry;
+import io.github.twwch.openai.sdk.metrics.MetricsSnapshot;
+import io.github.twwch.openai.sdk.metrics.SdkMetrics;
+import io.github.twwch.openai.sdk.metrics.StreamMetrics;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试指标注册表、直方图和流式指标
+ */
+public class MetricsRegistryTest {
+
+    private static final String MODEL = "anthropic.claude-3-haiku-20240307-v1:0";
+
+    @Test
+    public void testHistogramPercentiles() {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricKey key = MetricKey.of("test.latency");
+        for (int i = 1; i <= 1000; i++) {
+            registry.record(key, i);
+        }
+
+        Histogram.HistogramSnapshot snapshot = registry.snapshot().getHistogram(key);
+        assertNotNull(snapshot);
+        assertEquals(1000L, snapshot.getCount());
+        assertEquals(1L, snapshot.getMin());
+        assertEquals(1000L, snapshot.getMax());
+        // 分桶精度约为 1/32，允许 4% 误差
+        assertTrue(Math.abs(snapshot.getP50() - 500) <= 20, "p50: " + snapshot.getP50());
+        assertTrue(Math.abs(snapshot.getP99() - 990) <= 40, "p99: " + snapshot.getP99());
+        assertTrue(snapshot.getP999() <= 1000, "p999不应超过最大值: " + snapshot.getP999());
+
+        System.out.println("✅ 直方图分位数: " + snapshot);
+    }
+
+    @Test
+    public void testCountersAndListener() {
+        MetricsRegistry registry = new MetricsRegistry();
+        AtomicLong observed = new AtomicLong();
+        registry.addListener(new MetricsListener() {
+            @Override
+            public void onCounter(MetricKey key, long delta) {
+                observed.addAndGet(delta);
+            }
+        });
+
+        long start = System.nanoTime();
+        SdkMetrics.recordRequest(registry, OpenAIException.Provider.OPENAI, "gpt-4o",
+                SdkMetrics.ENDPOINT_CHAT_COMPLETIONS, start, true);
+        SdkMetrics.recordRequest(registry, OpenAIException.Provider.OPENAI, "gpt-4o",
+                SdkMetrics.ENDPOINT_CHAT_COMPLETIONS, start, false);
+        SdkMetrics.recordRetry(registry, OpenAIException.Provider.OPENAI, "gpt-4o", SdkMetrics.ENDPOINT_CHAT_COMPLETIONS);
+
+        MetricsSnapshot snapshot = registry.snapshot();
+        assertEquals(2L, snapshot.sumCounters(SdkMetrics.REQUESTS));
+        assertEquals(1L, snapshot.sumCounters(SdkMetrics.RETRIES));
+        assertEquals(3L, observed.get());
+
+        MetricKey errorKey = MetricKey.of(SdkMetrics.REQUEST_LATENCY, OpenAIException.Provider.OPENAI, "gpt-4o",
+                SdkMetrics.ENDPOINT_CHAT_COMPLETIONS).withTag(SdkMetrics.TAG_OUTCOME, SdkMetrics.OUTCOME_ERROR);
+        assertNotNull(snapshot.getHistogram(errorKey));
+
+        // 禁用后不再记录
+        registry.setEnabled(false);
+        SdkMetrics.recordRetry(registry, OpenAIException.Provider.OPENAI, "gpt-4o", SdkMetrics.ENDPOINT_CHAT_COMPLETIONS);
+        assertEquals(1L, registry.snapshot().sumCounters(SdkMetrics.RETRIES));
+
+        System.out.println("✅ 计数器与监听器测试通过");
+    }
+
+    @Test
+    public void testSharedGaugeRemovedOnlyByOwner() {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricKey key = MetricKey.of(SdkMetrics.POOL_CONNECTIONS, OpenAIException.Provider.OPENAI, null, "api.openai.com");
+        LongSupplier first = () -> 1;
+        LongSupplier second = () -> 2;
+        registry.gauge(key, first);
+        registry.gauge(key, second);
+        assertEquals(2L, gaugeValue(registry, key));
+
+        // 后注册的客户端关闭，恢复先注册的客户端的仪表
+        registry.removeGauge(key, second);
+        assertEquals(1L, gaugeValue(registry, key));
+        // 非注册者移除不影响仪表
+        registry.removeGauge(key, () -> 3);
+        assertEquals(1L, gaugeValue(registry, key));
+
+        registry.gauge(key, second);
+        registry.removeGauge(key, first);
+        assertEquals(2L, gaugeValue(registry, key), "先注册的客户端关闭不影响正在使用的仪表");
+        registry.removeGauge(key, second);
+        assertEquals(-1L, gaugeValue(registry, key), "所有注册者关闭后移除仪表");
+
+        System.out.println("✅ 共享仪表按注册者移除");
+    }
+
+    private static long gaugeValue(MetricsRegistry registry, MetricKey key) {
+        for (MetricsSnapshot.CounterValue gauge : registry.snapshot().getGauges()) {
+            if (gauge.getKey().equals(key)) {
+                return gauge.getValue();
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testStreamMetricsMergesBedrockUsage() {
+        MetricsRegistry registry = new MetricsRegistry();
+        StreamMetrics stream = SdkMetrics.startStream(registry, OpenAIException.Provider.BEDROCK, MODEL,
+                SdkMetrics.ENDPOINT_INVOKE_MODEL_STREAM);
+
+        // message_start: 输入和缓存token
+        ChatCompletionResponse.Usage startUsage = new ChatCompletionResponse.Usage();
+        startUsage.setPromptTokens(120);
+        startUsage.setCacheReadInputTokens(2048);
+        ChatCompletionChunk start = new ChatCompletionChunk();
+        start.setUsage(startUsage);
+        stream.onChunk(start);
+
+        stream.onChunk(contentChunk("你好"));
+        stream.onChunk(contentChunk("，世界"));
+
+        // message_delta: 输出token
+        ChatCompletionResponse.Usage deltaUsage = new ChatCompletionResponse.Usage();
+        deltaUsage.setCompletionTokens(7);
+        ChatCompletionChunk delta = new ChatCompletionChunk();
+        delta.setUsage(deltaUsage);
+        stream.onChunk(delta);
+
+        stream.finish(true);
+        stream.finish(false); // 重复结束应被忽略
+
+        ChatCompletionResponse.Usage merged = stream.getUsage();
+        assertEquals(120, merged.getPromptTokens());
+        assertEquals(7, merged.getCompletionTokens());
+        assertEquals(127, merged.getTotalTokens());
+        assertEquals(2048, merged.getCacheReadInputTokens());
+
+        MetricsSnapshot snapshot = registry.snapshot();
+        assertEquals(1L, snapshot.sumCounters(SdkMetrics.REQUESTS));
+        assertEquals(1L, snapshot.sumCounters(SdkMetrics.CACHE_HITS));
+        assertEquals(2048L, snapshot.sumCounters(SdkMetrics.CACHE_READ_TOKENS));
+
+        MetricKey ttftKey = MetricKey.of(SdkMetrics.TIME_TO_FIRST_TOKEN, OpenAIException.Provider.BEDROCK, MODEL,
+                SdkMetrics.ENDPOINT_INVOKE_MODEL_STREAM);
+        MetricKey interKey = ttftKey.withName(SdkMetrics.INTER_TOKEN_LATENCY);
+        assertEquals(1L, snapshot.getHistogram(ttftKey).getCount());
+        assertEquals(1L, snapshot.getHistogram(interKey).getCount());
+
+        System.out.println("✅ 流式指标测试通过");
+        System.out.println(snapshot);
+    }
+
+    private static ChatCompletionChunk contentChunk(String content) {
+        ChatCompletionChunk.Delta delta = new ChatCompletionChunk.Delta();
+        delta.setContent(content);
+        ChatCompletionChunk.Choice choice = new ChatCompletionChunk.Choice();
+        choice.setDelta(delta);
+        ChatCompletionChunk chunk = new ChatCompletionChunk();
+        chunk.setChoices(Collections.singletonList(choice));
+        return chunk;
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.twwch.openai.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.service.bedrock.BedrockModelAdapterFactory;
+import io.github.twwch.openai.sdk.service.bedrock.BedrockRequestValidator;
+import io.github.twwch.openai.sdk.service.bedrock.ClaudeModelAdapter;
+import io.github.twwch.openai.sdk.service.bedrock.LlamaModelAdapter;
+import io.github.twwch.openai.sdk.service.bedrock.ModelCapabilities;
+import io.github.twwch.openai.sdk.service.bedrock.ModelCapabilityRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试Bedrock模型能力注册表和发送前的本地校验
+ */
+public class ModelCapabilityRegistryTest {
+
+    @Test
+    public void testLookup() {
+        ModelCapabilityRegistry registry = ModelCapabilityRegistry.getDefault();
+
+        ModelCapabilities haiku = registry.find("anthropic.claude-3-5-haiku-20241022-v1:0");
+        assertEquals("anthropic.claude-3-5-haiku-20241022", haiku.getId(), "按最长前缀匹配");
+        assertSame(haiku, registry.find("us.anthropic.claude-3-5-haiku-20241022-v1:0"), "去掉跨区域推理前缀");
+        assertSame(haiku, registry.find(
+                "arn:aws:bedrock:us-east-1:123456789012:inference-profile/us.anthropic.claude-3-5-haiku-20241022-v1:0"));
+
+        ModelCapabilities unknownClaude = registry.find("anthropic.claude-5-future-v1:0");
+        assertEquals("claude", unknownClaude.getFamily(), "未登记的版本使用系列兜底条目");
+        assertNull(registry.find("mistral.mistral-large-2402-v1:0"));
+        assertThrows(OpenAIException.class, () -> registry.resolve("mistral.mistral-large-2402-v1:0", false));
+        assertNotNull(registry.resolve("mistral.mistral-large-2402-v1:0", true), "Converse下允许未登记的模型");
+
+        assertTrue(BedrockModelAdapterFactory.createAdapter("us.anthropic.claude-sonnet-4-20250514-v1:0")
+                instanceof ClaudeModelAdapter);
+        assertTrue(BedrockModelAdapterFactory.createAdapter("meta.llama3-1-70b-instruct-v1:0")
+                instanceof LlamaModelAdapter);
+
+        assertTrue(registry.listModels().stream().noneMatch(m -> m.getId().equals("anthropic.claude")),
+                "系列兜底条目不出现在模型列表中");
+        System.out.println("✅ 能力表中登记了 " + registry.listModels().size() + " 个模型");
+    }
+
+    @Test
+    public void testOverride() throws Exception {
+        ModelCapabilityRegistry registry = ModelCapabilityRegistry.bundled();
+        String json = "[{\"id\":\"anthropic.claude-3-haiku-20240307\",\"family\":\"claude\",\"provider\":\"anthropic\","
+                + "\"context_window\":200000,\"max_output_tokens\":1000,\"unknown_field\":1}]";
+        registry.load(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(1000, registry.find("anthropic.claude-3-haiku-20240307-v1:0").getMaxOutputTokens());
+        assertEquals(4096, ModelCapabilityRegistry.getDefault()
+                .find("anthropic.claude-3-haiku-20240307-v1:0").getMaxOutputTokens(), "不影响默认注册表");
+    }
+
+    @Test
+    public void testPreflightAdjustments() {
+        ModelCapabilities sonnet = ModelCapabilityRegistry.getDefault().find("anthropic.claude-3-5-sonnet-20241022-v2:0");
+        List<ChatMessage.ContentPart> parts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            parts.add(ChatMessage.ContentPart.textWithCache("资料" + i, true));
+        }
+        ChatCompletionRequest request = new ChatCompletionRequest("claude", new ArrayList<>(Arrays.asList(
+                ChatMessage.system("系统提示"),
+                ChatMessage.user(parts.toArray(new ChatMessage.ContentPart[0])))));
+        request.setBedrockEnableSystemCache(true);
+        request.setMaxTokens(100000);
+        request.setTemperature(1.5);
+
+        BedrockRequestValidator.validateAndCleanRequest(request, sonnet);
+
+        assertEquals(8192, request.getMaxTokens(), "max_tokens 截断到模型上限");
+        assertEquals(1.0, request.getTemperature(), "temperature 截断到模型上限");
+        assertEquals(Boolean.TRUE, request.getBedrockEnableSystemCache(), "system缓存优先保留");
+        long cached = parts.stream().filter(p -> p.getCacheControl() != null).count();
+        assertEquals(3, cached, "加上system共保留4个缓存断点");
+
+        ModelCapabilities llama = ModelCapabilityRegistry.getDefault().find("meta.llama3-8b-instruct-v1:0");
+        ChatCompletionRequest imageRequest = new ChatCompletionRequest("llama", new ArrayList<>(Collections.singletonList(
+                ChatMessage.userWithImage("这是什么", "https://example.com/a.png"))));
+        BedrockRequestValidator.validateAndCleanRequest(imageRequest, llama);
+        ChatMessage.ContentPart[] remaining = (ChatMessage.ContentPart[]) imageRequest.getMessages().get(0).getContent();
+        assertEquals(1, remaining.length, "不支持图片的模型移除图片");
+        assertEquals("text", remaining[0].getType());
+    }
+
+    @Test
+    public void testCacheBlockLimitFromCapabilities() throws Exception {
+        ModelCapabilityRegistry registry = ModelCapabilityRegistry.bundled();
+        String json = "[{\"id\":\"anthropic.claude-3-haiku-20240307\",\"family\":\"claude\",\"provider\":\"anthropic\","
+                + "\"context_window\":200000,\"max_output_tokens\":4096,\"max_cache_blocks\":2}]";
+        registry.load(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        ModelCapabilities haiku = registry.find("anthropic.claude-3-haiku-20240307-v1:0");
+
+        List<ChatMessage.ContentPart> parts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            parts.add(ChatMessage.ContentPart.textWithCache("资料" + i, true));
+        }
+        ChatCompletionRequest request = new ChatCompletionRequest("claude", new ArrayList<>(Collections.singletonList(
+                ChatMessage.user(parts.toArray(new ChatMessage.ContentPart[0])))));
+
+        String body = BedrockModelAdapterFactory.createAdapter(haiku).convertRequest(request, new ObjectMapper());
+        assertEquals(2, body.split("\"cache_control\"", -1).length - 1, "按模型能力表的上限保留缓存断点");
+        long cachePoints = BedrockModelAdapterFactory.createConverseAdapter(haiku)
+                .toConverseRequest("claude", request, new ObjectMapper())
+                .messages().get(0).content().stream().filter(block -> block.cachePoint() != null).count();
+        assertEquals(2, cachePoints, "Converse同样按模型上限保留cachePoint");
+        System.out.println("✅ 缓存断点上限取自模型能力: " + haiku.getMaxCacheBlocks());
+    }
+
+    @Test
+    public void testPreflightRejections() {
+        ModelCapabilities sonnet = ModelCapabilityRegistry.getDefault().find("anthropic.claude-3-5-sonnet-20241022-v2:0");
+        String[] urls = new String[21];
+        Arrays.fill(urls, "https://example.com/a.png");
+        ChatCompletionRequest tooManyImages = new ChatCompletionRequest("claude", new ArrayList<>(Collections.singletonList(
+                ChatMessage.userWithImages("比较这些图片", urls))));
+        assertThrows(OpenAIException.class, () -> BedrockRequestValidator.validateAndCleanRequest(tooManyImages, sonnet));
+
+        ModelCapabilities lite = ModelCapabilityRegistry.getDefault().find("amazon.titan-text-lite-v1");
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            longText.append("word ");
+        }
+        ChatCompletionRequest tooLong = new ChatCompletionRequest("titan", new ArrayList<>(Collections.singletonList(
+                ChatMessage.user(longText.toString()))));
+        OpenAIException e = assertThrows(OpenAIException.class,
+                () -> BedrockRequestValidator.validateAndCleanRequest(tooLong, lite));
+        assertTrue(e.getMessage().contains("上下文长度"));
+    }
+}
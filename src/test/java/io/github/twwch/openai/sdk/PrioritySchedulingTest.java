@@ -0,0 +1,178 @@
+package io.github.twwch.openai.sdk;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.limit.Admission;
+import io.github.twwch.openai.sdk.limit.ConcurrencyLimiter;
+import io.github.twwch.openai.sdk.limit.RequestPriority;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试按优先级和截止时间调度排队的请求
+ */
+public class PrioritySchedulingTest {
+
+    private static final String KEY = "api.openai.com/v1/chat/completions";
+    private static final String RESPONSE_JSON = "{"
+            + "\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"gpt-4o\","
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"好的\"},\"finish_reason\":\"stop\"}],"
+            + "\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":2,\"total_tokens\":12}"
+            + "}";
+
+    private RetryScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new RetryScheduler("test-priority");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testPriorityThenEarliestDeadline() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD, 1, 1, 1, 10, 10_000);
+        ConcurrencyLimiter.Permit running = limiter.acquire(KEY, scheduler).join();
+
+        long now = System.currentTimeMillis();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        Map<String, CompletableFuture<ConcurrencyLimiter.Permit>> queued = new HashMap<>();
+        queued.put("batch", limiter.acquire(KEY, new Admission(RequestPriority.BATCH, 0), scheduler));
+        queued.put("normal", limiter.acquire(KEY, Admission.DEFAULT, scheduler));
+        queued.put("normal-5s", limiter.acquire(KEY, new Admission(RequestPriority.NORMAL, now + 5_000), scheduler));
+        queued.put("normal-2s", limiter.acquire(KEY, new Admission(RequestPriority.NORMAL, now + 2_000), scheduler));
+        queued.put("interactive", limiter.acquire(KEY, new Admission(RequestPriority.INTERACTIVE, 0), scheduler));
+        queued.forEach((name, future) -> future.thenAccept(permit -> order.add(name)));
+        assertEquals(5, limiter.getQueued(KEY));
+
+        // 每释放一个许可放行一个排队的请求
+        running.success();
+        for (int i = 0; i < queued.size(); i++) {
+            assertEquals(i + 1, order.size());
+            queued.get(order.get(i)).join().success();
+        }
+        assertEquals(List.of("interactive", "normal-2s", "normal-5s", "normal", "batch"), order);
+        assertEquals(RequestPriority.INTERACTIVE, queued.get("interactive").join().getPriority());
+        assertEquals(0, limiter.getInFlight(KEY));
+        System.out.println("✅ 放行顺序: " + order);
+    }
+
+    @Test
+    public void testHigherPriorityEvictsWhenQueueFull() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD, 1, 1, 1, 1, 10_000);
+        ConcurrencyLimiter.Permit running = limiter.acquire(KEY, scheduler).join();
+
+        CompletableFuture<ConcurrencyLimiter.Permit> batch = limiter.acquire(KEY,
+                new Admission(RequestPriority.BATCH, 0), scheduler);
+        CompletableFuture<ConcurrencyLimiter.Permit> interactive = limiter.acquire(KEY,
+                new Admission(RequestPriority.INTERACTIVE, 0), scheduler);
+        ExecutionException evicted = assertThrows(ExecutionException.class, () -> batch.get(1, TimeUnit.SECONDS));
+        assertEquals(429, ((OpenAIException) evicted.getCause()).getStatusCode());
+        assertFalse(interactive.isDone());
+
+        // 同等或更低优先级的请求不能挤掉排队中的请求
+        CompletableFuture<ConcurrencyLimiter.Permit> another = limiter.acquire(KEY,
+                new Admission(RequestPriority.INTERACTIVE, 0), scheduler);
+        assertTrue(another.isCompletedExceptionally());
+        assertEquals(2, limiter.getRejections(KEY));
+
+        running.success();
+        interactive.get(1, TimeUnit.SECONDS).success();
+        assertEquals(0, limiter.getInFlight(KEY));
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        // 限制器关闭时同样丢弃已超过截止时间的请求
+        Admission expired = new Admission(RequestPriority.NORMAL, System.currentTimeMillis() - 10);
+        ExecutionException dropped = assertThrows(ExecutionException.class,
+                () -> ConcurrencyLimiter.disabled().acquire(KEY, expired, scheduler).get());
+        assertEquals(Admission.ERROR_TYPE_DEADLINE_EXCEEDED, ((OpenAIException) dropped.getCause()).getErrorType());
+
+        // 排队到截止时间后失败，不计入并发拒绝
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD, 1, 1, 1, 10, 10_000);
+        ConcurrencyLimiter.Permit running = limiter.acquire(KEY, scheduler).join();
+        CompletableFuture<ConcurrencyLimiter.Permit> queued = limiter.acquire(KEY,
+                new Admission(RequestPriority.INTERACTIVE, System.currentTimeMillis() + 100), scheduler);
+        ExecutionException timeout = assertThrows(ExecutionException.class, () -> queued.get(2, TimeUnit.SECONDS));
+        assertEquals(Admission.ERROR_TYPE_DEADLINE_EXCEEDED, ((OpenAIException) timeout.getCause()).getErrorType());
+        assertEquals(0, limiter.getRejections(KEY));
+        assertEquals(0, limiter.getQueued(KEY));
+        running.success();
+        System.out.println("✅ 截止时间: " + timeout.getCause().getMessage());
+    }
+
+    @Test
+    public void testBatchServiceTierAndExpiredRequestNotSent() throws Exception {
+        AtomicReference<String> body = new AtomicReference<>();
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            calls.incrementAndGet();
+            try (InputStream in = exchange.getRequestBody()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                in.transferTo(out);
+                body.set(out.toString(StandardCharsets.UTF_8.name()));
+            }
+            byte[] response = RESPONSE_JSON.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        config.setBatchServiceTier("flex");
+        try (OpenAI client = new OpenAI(config)) {
+            ChatCompletionRequest batch = new ChatCompletionRequest("gpt-4o",
+                    Collections.singletonList(ChatMessage.user("总结这篇文章")));
+            batch.setPriority(RequestPriority.BATCH);
+            batch.setDeadline(System.currentTimeMillis() + 60_000);
+            client.createChatCompletion(batch);
+            assertTrue(body.get().contains("\"service_tier\":\"flex\""), body.get());
+            assertFalse(body.get().contains("priority"), "调度参数不发送给服务端");
+            assertFalse(body.get().contains("deadline"), "调度参数不发送给服务端");
+
+            ChatCompletionRequest interactive = new ChatCompletionRequest("gpt-4o",
+                    Collections.singletonList(ChatMessage.user("你好")));
+            interactive.setPriority(RequestPriority.INTERACTIVE);
+            client.createChatCompletion(interactive);
+            assertFalse(body.get().contains("service_tier"), body.get());
+
+            ChatCompletionRequest late = new ChatCompletionRequest("gpt-4o",
+                    Collections.singletonList(ChatMessage.user("你好")));
+            late.setDeadline(System.currentTimeMillis() - 1);
+            OpenAIException e = assertThrows(OpenAIException.class, () -> client.createChatCompletion(late));
+            assertEquals(Admission.ERROR_TYPE_DEADLINE_EXCEEDED, e.getErrorType());
+            assertEquals(2, calls.get(), "超过截止时间的请求不发出");
+        } finally {
+            server.stop(0);
+        }
+        System.out.println("✅ 批处理请求使用flex，过期请求在发出前丢弃");
+    }
+}
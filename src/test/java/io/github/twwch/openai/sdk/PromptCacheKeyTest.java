@@ -0,0 +1,118 @@
+package io.github.twwch.openai.sdk;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.metrics.MetricsRegistry;
+import io.github.twwch.openai.sdk.metrics.SdkMetrics;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.service.PromptCacheKeys;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试OpenAI/Azure prompt_cache_key 的自动推导和缓存命中率统计
+ */
+public class PromptCacheKeyTest {
+
+    private static final String RESPONSE_JSON = "{"
+            + "\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"gpt-4o\","
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"好的\"},\"finish_reason\":\"stop\"}],"
+            + "\"usage\":{\"prompt_tokens\":2000,\"completion_tokens\":2,\"total_tokens\":2002,"
+            + "\"prompt_tokens_details\":{\"cached_tokens\":1536}}"
+            + "}";
+
+    private static ChatCompletionRequest request(String system, String user) {
+        return new ChatCompletionRequest("gpt-4o", Arrays.asList(ChatMessage.system(system), ChatMessage.user(user)));
+    }
+
+    @Test
+    public void testDerive() {
+        String a = PromptCacheKeys.derive(request("你是客服助手", "问题一"), 0);
+        String b = PromptCacheKeys.derive(request("你是客服助手", "问题二"), 0);
+        String c = PromptCacheKeys.derive(request("你是翻译助手", "问题一"), 0);
+
+        assertNotNull(a);
+        assertTrue(a.startsWith(PromptCacheKeys.PREFIX));
+        assertTrue(a.length() <= 64, "key长度不超过64");
+        assertEquals(a, b, "相同system前缀得到相同的key");
+        assertNotEquals(a, c, "不同system前缀得到不同的key");
+        assertNotEquals(a, PromptCacheKeys.derive(request("你是客服助手", "问题二"), 1), "计入第一条消息后按会话区分");
+
+        ChatCompletionRequest noPrefix = new ChatCompletionRequest("gpt-4o",
+                Collections.singletonList(ChatMessage.user("你好")));
+        assertNull(PromptCacheKeys.derive(noPrefix, 0), "没有可缓存前缀时不设置key");
+
+        System.out.println("✅ prompt_cache_key 推导: " + a);
+    }
+
+    @Test
+    public void testAutoKeySentAndHitRateRecorded() throws Exception {
+        AtomicReference<String> body = new AtomicReference<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                in.transferTo(out);
+                body.set(out.toString(StandardCharsets.UTF_8.name()));
+            }
+            byte[] response = RESPONSE_JSON.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+
+        MetricsRegistry registry = new MetricsRegistry();
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        config.setMetricsRegistry(registry);
+        config.setAutoPromptCacheKey(true);
+        try (OpenAI client = new OpenAI(config)) {
+            ChatCompletionRequest request = request("你是客服助手", "问题一");
+            ChatCompletionResponse response = client.createChatCompletion(request);
+
+            String expected = PromptCacheKeys.derive(request("你是客服助手", "其他问题"), 0);
+            assertTrue(body.get().contains("\"prompt_cache_key\":\"" + expected + "\""), body.get());
+            assertEquals(1536, response.getUsage().getCacheReadInputTokens());
+            assertNull(request.getPromptCacheKey(), "推导的key只写在发出的请求上，不改动调用方的请求");
+
+            // 复用同一个请求对象时按当前的前缀重新推导
+            request.getMessages().set(0, ChatMessage.system("你是翻译助手"));
+            client.createChatCompletion(request);
+            String translated = PromptCacheKeys.derive(request("你是翻译助手", "问题一"), 0);
+            assertNotEquals(expected, translated);
+            assertTrue(body.get().contains("\"prompt_cache_key\":\"" + translated + "\""), body.get());
+
+            ChatCompletionRequest manual = request("你是客服助手", "问题二");
+            manual.setPromptCacheKey("tenant-42");
+            client.createChatCompletion(manual);
+            assertTrue(body.get().contains("\"prompt_cache_key\":\"tenant-42\""), "调用方设置的key不被覆盖");
+        } finally {
+            server.stop(0);
+        }
+
+        assertEquals(0.768, SdkMetrics.cacheHitRate(registry.snapshot()), 1e-9);
+
+        // Bedrock的输入token不包含缓存读取部分
+        MetricsRegistry bedrock = new MetricsRegistry();
+        ChatCompletionResponse.Usage usage = new ChatCompletionResponse.Usage();
+        usage.setPromptTokens(100);
+        usage.setCacheReadInputTokens(300);
+        SdkMetrics.recordUsage(bedrock, OpenAIException.Provider.BEDROCK, "claude", SdkMetrics.ENDPOINT_INVOKE_MODEL,
+                usage);
+        assertEquals(0.75, SdkMetrics.cacheHitRate(bedrock.snapshot()), 1e-9);
+
+        System.out.println("✅ 自动设置prompt_cache_key，缓存命中率: " + SdkMetrics.cacheHitRate(registry.snapshot()));
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.twwch.openai.sdk;
+
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.metrics.SdkMetrics;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.service.PromptPrefix;
+import io.github.twwch.openai.sdk.usage.PromptCacheLedger;
+import io.github.twwch.openai.sdk.usage.PromptCacheRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试按缓存前缀统计的prompt缓存效果
+ */
+public class PromptCacheLedgerTest {
+
+    private static final String MODEL = "anthropic.claude-sonnet-4-20250514-v1:0";
+
+    private static ChatCompletionRequest request(String system, String user) {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setMessages(new ArrayList<>(Arrays.asList(ChatMessage.system(system), ChatMessage.user(user))));
+        request.setBedrockEnableSystemCache(true);
+        return request;
+    }
+
+    private static ChatCompletionResponse.Usage usage(int prompt, int cacheWrite, int cacheRead) {
+        ChatCompletionResponse.Usage usage = new ChatCompletionResponse.Usage();
+        usage.setPromptTokens(prompt);
+        usage.setCacheCreationInputTokens(cacheWrite);
+        usage.setCacheReadInputTokens(cacheRead);
+        return usage;
+    }
+
+    @Test
+    public void testPrefix() {
+        PromptPrefix a = PromptPrefix.ofCacheBreakpoints("us-east-1|claude", request("长system", "问题一"));
+        PromptPrefix b = PromptPrefix.ofCacheBreakpoints("us-east-1|claude", request("长system", "问题二"));
+        assertEquals(a.getFingerprint(), b.getFingerprint());
+        assertEquals(32, a.getFingerprint().length());
+        assertTrue(a.getBytes() > 0);
+        assertEquals(a.getBytes(), b.getBytes(), "前缀大小只计算断点之前的内容");
+
+        PromptPrefix leading = PromptPrefix.ofLeadingMessages(request("长system", "问题一"), 1);
+        assertTrue(leading.getBytes() > a.getBytes(), "计入第一条消息");
+        System.out.println("✅ 缓存前缀: " + a);
+    }
+
+    @Test
+    public void testHitRatioAndBytesSaved() {
+        PromptCacheLedger ledger = new PromptCacheLedger(100);
+        PromptPrefix prefix = PromptPrefix.ofCacheBreakpoints("us-east-1|claude", request("长system", "q"));
+
+        ledger.record(OpenAIException.Provider.BEDROCK, MODEL, SdkMetrics.ENDPOINT_INVOKE_MODEL, prefix,
+                usage(20, 1000, 0));
+        ledger.record(OpenAIException.Provider.BEDROCK, MODEL, SdkMetrics.ENDPOINT_INVOKE_MODEL, prefix,
+                usage(20, 0, 1000));
+        ledger.record(OpenAIException.Provider.BEDROCK, MODEL, SdkMetrics.ENDPOINT_INVOKE_MODEL, prefix,
+                usage(20, 0, 1000));
+        // OpenAI的prompt_tokens包含缓存命中部分
+        ledger.record(OpenAIException.Provider.OPENAI, "gpt-4o", SdkMetrics.ENDPOINT_CHAT_COMPLETIONS, null,
+                usage(2000, 0, 1536));
+
+        List<PromptCacheRecord> records = ledger.snapshot();
+        assertEquals(2, records.size());
+        PromptCacheRecord bedrock = records.get(0);
+        assertEquals(prefix.getFingerprint(), bedrock.getFingerprint());
+        assertEquals(3, bedrock.getRequests());
+        assertEquals(2, bedrock.getReadRequests());
+        assertEquals(1, bedrock.getWriteRequests());
+        assertEquals(60, bedrock.getUncachedTokens());
+        assertEquals(2000.0 / 3060, bedrock.getHitRatio(), 1e-9);
+        assertEquals(prefix.getBytes() * 2, bedrock.getBytesSaved());
+
+        PromptCacheRecord openai = records.get(1);
+        assertEquals(PromptCacheLedger.NO_PREFIX, openai.getFingerprint());
+        assertEquals(464, openai.getUncachedTokens());
+        assertEquals(0.768, openai.getHitRatio(), 1e-9);
+
+        System.out.println("✅ 前缀缓存效果: " + bedrock);
+    }
+
+    @Test
+    public void testWastefulPrefixesAndOverflow() {
+        PromptCacheLedger ledger = new PromptCacheLedger(2);
+        PromptPrefix unstable = PromptPrefix.ofCacheBreakpoints("s", request("带时间戳的system 1", "q"));
+        PromptPrefix stable = PromptPrefix.ofCacheBreakpoints("s", request("稳定的system", "q"));
+        for (int i = 0; i < 5; i++) {
+            ledger.record(OpenAIException.Provider.BEDROCK, MODEL, SdkMetrics.ENDPOINT_INVOKE_MODEL, unstable,
+                    usage(10, 1000, 0));
+        }
+        ledger.record(OpenAIException.Provider.BEDROCK, MODEL, SdkMetrics.ENDPOINT_INVOKE_MODEL, stable,
+                usage(10, 1000, 0));
+        for (int i = 0; i < 5; i++) {
+            ledger.record(OpenAIException.Provider.BEDROCK, MODEL, SdkMetrics.ENDPOINT_INVOKE_MODEL, stable,
+                    usage(10, 0, 1000));
+        }
+
+        List<PromptCacheRecord> wasteful = ledger.findWastefulPrefixes(3, 0.5);
+        assertEquals(1, wasteful.size());
+        assertEquals(unstable.getFingerprint(), wasteful.get(0).getFingerprint());
+
+        PromptPrefix third = PromptPrefix.ofCacheBreakpoints("s", request("第三个system", "q"));
+        ledger.record(OpenAIException.Provider.BEDROCK, MODEL, SdkMetrics.ENDPOINT_INVOKE_MODEL, third,
+                usage(10, 1000, 0));
+        assertTrue(ledger.snapshot().stream().anyMatch(r -> PromptCacheLedger.OTHER_PREFIX.equals(r.getFingerprint())),
+                "超过上限的前缀记入other");
+
+        ledger.setEnabled(false);
+        ledger.reset();
+        ledger.record(OpenAIException.Provider.BEDROCK, MODEL, SdkMetrics.ENDPOINT_INVOKE_MODEL, stable,
+                usage(10, 0, 1000));
+        assertTrue(ledger.snapshot().isEmpty());
+        System.out.println("✅ 反复写入很少读取的前缀: " + wasteful.get(0));
+    }
+}
@@ -0,0 +1,343 @@
+package io.github.twwch.openai.sdk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.http.OpenAIHttpClient;
+import io.github.twwch.openai.sdk.limit.Admission;
+import io.github.twwch.openai.sdk.limit.RequestPriority;
+import io.github.twwch.openai.sdk.limit.StreamWatchdog;
+import io.github.twwch.openai.sdk.limit.Timeouts;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import io.github.twwch.openai.sdk.service.StreamHandle;
+import io.github.twwch.openai.sdk.service.bedrock.ClaudeModelAdapter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试分段超时（首字节、空闲、总超时）和跨重试的截止时间
+ */
+public class RequestTimeoutsTest {
+
+    private static final String CHUNK_JSON = "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1,"
+            + "\"model\":\"gpt-4o\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"好\"},\"finish_reason\":null}]}";
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private final AtomicInteger hits = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // 处理器会阻塞，每个请求使用单独的线程
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    private static ChatCompletionRequest request() {
+        return new ChatCompletionRequest("gpt-4o", Collections.singletonList(ChatMessage.user("你好")));
+    }
+
+    private static Timeouts timeouts(long firstByte, long idle, long total) {
+        Timeouts timeouts = new Timeouts();
+        timeouts.setFirstByteTimeoutMillis(firstByte);
+        timeouts.setIdleTimeoutMillis(idle);
+        timeouts.setTotalTimeoutMillis(total);
+        return timeouts;
+    }
+
+    /**
+     * 收到请求后等待指定时间再返回
+     */
+    private void slowResponse(long delayMillis) {
+        server.createContext("/v1/chat/completions", exchange -> {
+            hits.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            sleep(delayMillis);
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    /**
+     * 按给定的间隔依次发送SSE事件，最后发送[DONE]
+     */
+    private void sseResponse(long... gaps) {
+        server.createContext("/v1/chat/completions", exchange -> {
+            hits.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (long gap : gaps) {
+                    sleep(gap);
+                    write(exchange, out, "data: " + CHUNK_JSON + "\n\n");
+                }
+                write(exchange, out, "data: [DONE]\n\n");
+            } catch (IOException e) {
+                // 客户端超时后关闭了连接
+            }
+        });
+        server.start();
+    }
+
+    private static void write(HttpExchange exchange, OutputStream out, String data) throws IOException {
+        out.write(data.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void testTimeoutsMergeAndDefaults() {
+        Timeouts base = Timeouts.ofSeconds(30);
+        assertEquals(30_000, base.getConnectTimeoutMillis());
+        assertEquals(30_000, base.getFirstByteTimeoutMillis());
+        assertEquals(30_000, base.getIdleTimeoutMillis());
+        assertEquals(0, base.getTotalTimeoutMillis());
+
+        Timeouts merged = base.merge(timeouts(500, 0, 2000));
+        assertEquals(30_000, merged.getConnectTimeoutMillis(), "请求中为0的字段沿用配置");
+        assertEquals(500, merged.getFirstByteTimeoutMillis());
+        assertEquals(30_000, merged.getIdleTimeoutMillis());
+        assertEquals(2000, merged.getTotalTimeoutMillis());
+        assertEquals(30_000, base.getFirstByteTimeoutMillis(), "合并不修改原对象");
+
+        OpenAIConfig config = new OpenAIConfig("test-key");
+        assertEquals(config.getTimeout() * 1000L, config.getTimeouts().getFirstByteTimeoutMillis(),
+                "未设置时沿用单一超时");
+        config.setTimeouts(timeouts(100, 200, 300));
+        assertEquals(200, config.getTimeouts().getIdleTimeoutMillis());
+        config.setTimeouts(null);
+        assertEquals(config.getTimeout() * 1000L, config.getTimeouts().getIdleTimeoutMillis());
+
+        BedrockConfig bedrock = new BedrockConfig("us-east-1", "ak", "sk", "anthropic.claude-3-haiku-20240307-v1:0");
+        bedrock.setConnectionTimeoutSeconds(7);
+        bedrock.setReadTimeoutMinutes(2);
+        assertEquals(7_000, bedrock.getTimeouts().getConnectTimeoutMillis());
+        assertEquals(120_000, bedrock.getTimeouts().getIdleTimeoutMillis());
+        assertEquals(0, bedrock.getTimeouts().getTotalTimeoutMillis());
+        System.out.println("✅ 超时合并和默认值: " + merged);
+    }
+
+    @Test
+    public void testTotalTimeoutSetsDeadline() {
+        ChatCompletionRequest request = request();
+        assertNull(Admission.of(request).getTimeouts());
+
+        long before = System.currentTimeMillis();
+        request.setTimeouts(timeouts(0, 0, 1000));
+        Admission admission = Admission.of(request, Timeouts.ofSeconds(60));
+        assertTrue(admission.hasDeadline());
+        assertTrue(admission.getDeadlineMillis() >= before + 1000
+                && admission.getDeadlineMillis() <= System.currentTimeMillis() + 1000);
+        assertEquals(60_000, admission.getTimeouts().getFirstByteTimeoutMillis());
+
+        // 请求的截止时间更早时以截止时间为准
+        request.setDeadline(before + 200);
+        assertEquals(before + 200, Admission.of(request, Timeouts.ofSeconds(60)).getDeadlineMillis());
+        System.out.println("✅ 总超时换算为截止时间: " + admission);
+    }
+
+    @Test
+    public void testFirstByteTimeout() throws Exception {
+        slowResponse(2000);
+        OpenAIConfig config = new OpenAIConfig("test-key", baseUrl());
+        OpenAIHttpClient httpClient = new OpenAIHttpClient(config);
+        try {
+            Admission admission = new Admission(RequestPriority.NORMAL, 0, null, timeouts(300, 0, 0));
+            long start = System.nanoTime();
+            OpenAIException e = assertThrows(OpenAIException.class,
+                    () -> httpClient.postForResult("/chat/completions", request(), admission));
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertEquals(Timeouts.ERROR_TYPE_FIRST_BYTE_TIMEOUT, e.getErrorType());
+            assertEquals(408, e.getStatusCode());
+            assertTrue(elapsed < 1500, "按首字节超时失败: " + elapsed + " ms");
+            System.out.println("✅ 首字节超时: " + elapsed + " ms - " + e.getMessage());
+        } finally {
+            httpClient.close();
+        }
+    }
+
+    @Test
+    public void testDeadlineSpansRetries() throws Exception {
+        slowResponse(3000);
+        OpenAIConfig config = new OpenAIConfig("test-key", baseUrl());
+        ChatCompletionRequest request = request();
+        // 第一次尝试300 ms后首字节超时，1秒后重试，第二次尝试在总超时处结束，不再重试
+        request.setTimeouts(timeouts(300, 0, 1500));
+        long start = System.nanoTime();
+        try (OpenAI client = new OpenAI(config)) {
+            CompletableFuture<?> future = client.createChatCompletionAsync(request);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(Timeouts.isDeadlineExceeded(e.getCause()), "以超过截止时间失败: " + e.getCause());
+            assertEquals(2, hits.get());
+            assertTrue(elapsed >= 1300 && elapsed < 2500, "在总超时附近结束: " + elapsed + " ms");
+            System.out.println("✅ 截止时间覆盖重试: " + elapsed + " ms, 尝试 " + hits.get() + " 次");
+        }
+    }
+
+    @Test
+    public void testStreamIdleTimeout() throws Exception {
+        sseResponse(0, 3000);
+        OpenAIConfig config = new OpenAIConfig("test-key", baseUrl());
+        ChatCompletionRequest request = request();
+        request.setTimeouts(timeouts(1000, 300, 0));
+        AtomicInteger chunks = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        long start = System.nanoTime();
+        try (OpenAI client = new OpenAI(config)) {
+            StreamHandle handle = client.streamChatCompletion(request, chunk -> chunks.incrementAndGet(),
+                    () -> { }, error::set);
+            assertThrows(ExecutionException.class, () -> handle.get(5, TimeUnit.SECONDS));
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(1, chunks.get());
+        assertTrue(Timeouts.isTimeout(error.get()), "以空闲超时失败: " + error.get());
+        assertFalse(Timeouts.isDeadlineExceeded(error.get()));
+        assertTrue(elapsed < 2000, "事件间隔超过空闲超时后结束: " + elapsed + " ms");
+        assertEquals(1, hits.get(), "送出数据块后不再重试");
+        System.out.println("✅ 流式空闲超时: " + elapsed + " ms - " + error.get().getMessage());
+    }
+
+    @Test
+    public void testSteadyStreamNotCutOff() throws Exception {
+        sseResponse(100, 150, 150, 150, 150, 150, 150, 150);
+        OpenAIConfig config = new OpenAIConfig("test-key", baseUrl());
+        ChatCompletionRequest request = request();
+        request.setTimeouts(timeouts(400, 400, 0));
+        AtomicInteger chunks = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        long start = System.nanoTime();
+        try (OpenAI client = new OpenAI(config)) {
+            client.streamChatCompletion(request, chunk -> chunks.incrementAndGet(), () -> { }, error::set)
+                    .get(5, TimeUnit.SECONDS);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertNull(error.get());
+        assertEquals(8, chunks.get());
+        assertTrue(elapsed > 1000, "流的总时长超过首字节和空闲超时: " + elapsed + " ms");
+        System.out.println("✅ 持续输出的长流不被截断: " + elapsed + " ms, " + chunks.get() + " 个数据块");
+    }
+
+    @Test
+    public void testStreamWatchdog() throws Exception {
+        RetryScheduler scheduler = new RetryScheduler("test-watchdog");
+        try {
+            Admission admission = new Admission(RequestPriority.NORMAL, 0, null, timeouts(200, 200, 0));
+            CompletableFuture<OpenAIException> silent = new CompletableFuture<>();
+            StreamWatchdog.start(admission, scheduler, "silent", silent::complete);
+            assertEquals(Timeouts.ERROR_TYPE_FIRST_BYTE_TIMEOUT, silent.get(2, TimeUnit.SECONDS).getErrorType());
+
+            // 持续收到数据时不超时，停止后不再通知
+            CompletableFuture<OpenAIException> active = new CompletableFuture<>();
+            StreamWatchdog watchdog = StreamWatchdog.start(admission, scheduler, "active", active::complete);
+            for (int i = 0; i < 6; i++) {
+                watchdog.onData();
+                Thread.sleep(100);
+            }
+            assertFalse(active.isDone());
+            watchdog.stop();
+            assertTrue(watchdog.isStopped());
+            Thread.sleep(400);
+            assertFalse(active.isDone());
+
+            CompletableFuture<OpenAIException> stalled = new CompletableFuture<>();
+            StreamWatchdog.start(admission, scheduler, "stalled", stalled::complete).onData();
+            assertEquals(Timeouts.ERROR_TYPE_IDLE_TIMEOUT, stalled.get(2, TimeUnit.SECONDS).getErrorType());
+
+            Admission deadline = new Admission(RequestPriority.NORMAL, System.currentTimeMillis() + 150, null,
+                    timeouts(0, 0, 0));
+            CompletableFuture<OpenAIException> expired = new CompletableFuture<>();
+            StreamWatchdog.start(deadline, scheduler, "deadline", expired::complete).onData();
+            assertEquals(Admission.ERROR_TYPE_DEADLINE_EXCEEDED, expired.get(2, TimeUnit.SECONDS).getErrorType());
+            System.out.println("✅ 流式看门狗: 首字节、空闲和截止时间");
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testImageDownloadStopsAtTotalTimeout() throws Exception {
+        server.createContext("/slow.png", exchange -> {
+            sleep(3000);
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.createContext("/v1/chat/completions", exchange -> {
+            hits.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = ("{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"gemini\","
+                    + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"好\"},"
+                    + "\"finish_reason\":\"stop\"}]}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        String imageUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/slow.png";
+
+        // 只设置总超时，请求本身没有截止时间
+        Admission admission = Admission.of(new ChatCompletionRequest("claude",
+                Collections.singletonList(ChatMessage.userWithImage("图里是什么", imageUrl))), timeouts(0, 0, 500));
+        long start = System.nanoTime();
+        new ClaudeModelAdapter().convertRequestBytes(new ChatCompletionRequest("claude",
+                        Collections.singletonList(ChatMessage.userWithImage("图里是什么", imageUrl))),
+                new ObjectMapper(), false, admission);
+        long bedrockMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(bedrockMillis < 2000, "Bedrock图片下载在总超时处停止: " + bedrockMillis + " ms");
+
+        GeminiConfig config = new GeminiConfig("test-key", baseUrl());
+        config.setTimeouts(timeouts(0, 0, 500));
+        try (OpenAI client = new OpenAI(config)) {
+            start = System.nanoTime();
+            try {
+                client.createChatCompletion(new ChatCompletionRequest("gemini-2.0-flash",
+                        Collections.singletonList(ChatMessage.userWithImage("图里是什么", imageUrl))));
+            } catch (OpenAIException e) {
+                assertTrue(Timeouts.isDeadlineExceeded(e) || Timeouts.isTimeout(e), "超时失败: " + e.getMessage());
+            }
+            long geminiMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(geminiMillis < 2000, "Gemini图片下载在配置的总超时处停止: " + geminiMillis + " ms");
+            System.out.println("✅ 图片下载按总超时停止: Bedrock " + bedrockMillis + " ms, Gemini " + geminiMillis + " ms");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package io.github.twwch.openai.sdk;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.model.ResponseMetadata;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.service.StreamHandle;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试从响应头提取请求ID、服务端处理耗时和限流信息
+ */
+public class ResponseMetadataTest {
+
+    private static final String RESPONSE_JSON = "{"
+            + "\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"gpt-4o\","
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"你好\"},\"finish_reason\":\"stop\"}]"
+            + "}";
+
+    private static final String STREAM_BODY =
+            "data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1,\"model\":\"gpt-4o\","
+                    + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\"你好\"}}]}\n\n"
+                    + "data: [DONE]\n\n";
+
+    @Test
+    public void testParseHeaders() {
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("X-Request-Id", Collections.singletonList("req_123"));
+        headers.put("openai-processing-ms", Collections.singletonList("850"));
+        headers.put("x-ratelimit-limit-requests", Collections.singletonList("5000"));
+        headers.put("x-ratelimit-remaining-tokens", Collections.singletonList("159000"));
+        headers.put("x-ratelimit-reset-requests", Collections.singletonList("12ms"));
+        headers.put("x-ratelimit-reset-tokens", Collections.singletonList("6m0s"));
+        headers.put("retry-after", Collections.singletonList("2"));
+
+        ResponseMetadata metadata = ResponseMetadata.fromHeaders(OpenAIException.Provider.OPENAI, 200, headers, 1000L);
+        assertEquals("req_123", metadata.getRequestId());
+        assertEquals(850L, metadata.getProcessingMs());
+        assertEquals(150L, metadata.getOverheadMs());
+        assertEquals(5000L, metadata.getLimitRequests());
+        assertEquals(159000L, metadata.getRemainingTokens());
+        assertEquals(12L, metadata.getResetRequestsMs());
+        assertEquals(360_000L, metadata.getResetTokensMs());
+        assertEquals(2000L, metadata.getRetryAfterMs());
+        assertEquals("850", metadata.getHeader("OpenAI-Processing-Ms"));
+
+        assertEquals(1500L, ResponseMetadata.parseDurationMs("1.5s"));
+        assertEquals(3_723_500L, ResponseMetadata.parseDurationMs("1h2m3.5s"));
+        assertNull(ResponseMetadata.parseDurationMs("soon"));
+
+        Map<String, List<String>> bedrockHeaders = new HashMap<>();
+        bedrockHeaders.put("x-amzn-RequestId", Collections.singletonList("b-1"));
+        bedrockHeaders.put("X-Amzn-Bedrock-Invocation-Latency", Collections.singletonList("420"));
+        bedrockHeaders.put("X-Amzn-Bedrock-Output-Token-Count", Collections.singletonList("17"));
+        ResponseMetadata bedrock = ResponseMetadata.fromHeaders(OpenAIException.Provider.BEDROCK, 200,
+                bedrockHeaders, null);
+        assertEquals("b-1", bedrock.getRequestId());
+        assertEquals(420L, bedrock.getProcessingMs());
+        assertEquals(17, bedrock.getOutputTokenCount());
+        assertNull(bedrock.getOverheadMs());
+
+        System.out.println("✅ " + metadata);
+    }
+
+    @Test
+    public void testMetadataOnResponseAndStreamHandle() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            boolean stream = body.contains("\"stream\":true");
+            byte[] bytes = (stream ? STREAM_BODY : RESPONSE_JSON).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", stream ? "text/event-stream" : "application/json");
+            exchange.getResponseHeaders().add("x-request-id", "req_" + requests.incrementAndGet());
+            exchange.getResponseHeaders().add("openai-processing-ms", "5");
+            exchange.getResponseHeaders().add("x-ratelimit-remaining-requests", "99");
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        try (OpenAI client = new OpenAI(config)) {
+            ChatCompletionRequest request = new ChatCompletionRequest();
+            request.setModel("gpt-4o");
+            request.setMessages(Collections.singletonList(ChatMessage.user("你好")));
+            ChatCompletionResponse response = client.createChatCompletion(request);
+
+            ResponseMetadata metadata = response.getResponseMetadata();
+            assertNotNull(metadata);
+            assertEquals("req_1", metadata.getRequestId());
+            assertEquals(5L, metadata.getProcessingMs());
+            assertEquals(99L, metadata.getRemainingRequests());
+            assertNotNull(metadata.getLatencyMs());
+
+            StringBuilder content = new StringBuilder();
+            ChatCompletionRequest streamRequest = new ChatCompletionRequest("gpt-4o",
+                    Arrays.asList(ChatMessage.user("你好")));
+            StreamHandle handle = client.streamChatCompletion(streamRequest,
+                    chunk -> {
+                        if (chunk.getContent() != null) {
+                            content.append(chunk.getContent());
+                        }
+                    }, null, null);
+            handle.get(10, TimeUnit.SECONDS);
+
+            assertEquals("你好", content.toString());
+            assertEquals("req_2", handle.getMetadata().getRequestId());
+            assertSame(handle.getMetadata(), handle.getMetadataFuture().get());
+            assertNotNull(handle.getMetadata().getLatencyMs());
+        } finally {
+            server.stop(0);
+        }
+        System.out.println("✅ 非流式和流式响应均带有元数据");
+    }
+}
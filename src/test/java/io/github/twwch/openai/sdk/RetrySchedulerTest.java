@@ -0,0 +1,136 @@
+package io.github.twwch.openai.sdk;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import io.github.twwch.openai.sdk.service.StreamHandle;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试在重试调度器上进行的非阻塞重试
+ */
+public class RetrySchedulerTest {
+
+    private static final String RESPONSE_JSON = "{"
+            + "\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"gpt-4o\","
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"你好\"},\"finish_reason\":\"stop\"}]"
+            + "}";
+
+    private static final String STREAM_BODY =
+            "data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1,\"model\":\"gpt-4o\","
+                    + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\"你好\"}}]}\n\n"
+                    + "data: [DONE]\n\n";
+
+    private static final String UNAVAILABLE_JSON =
+            "{\"error\":{\"message\":\"The server is overloaded\",\"type\":\"server_error\",\"code\":null}}";
+
+    /**
+     * 前failures次请求返回503，之后返回正常响应
+     */
+    private static HttpServer server(AtomicInteger hits, int failures, String contentType, String body)
+            throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            boolean fail = hits.incrementAndGet() <= failures;
+            byte[] bytes = (fail ? UNAVAILABLE_JSON : body).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", fail ? "application/json" : contentType);
+            exchange.sendResponseHeaders(fail ? 503 : 200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+        return server;
+    }
+
+    private static ChatCompletionRequest request() {
+        return new ChatCompletionRequest("gpt-4o", Collections.singletonList(ChatMessage.user("你好")));
+    }
+
+    @Test
+    public void testAsyncRetryDoesNotBlockCaller() throws Exception {
+        AtomicInteger hits = new AtomicInteger();
+        HttpServer server = server(hits, 1, "application/json", RESPONSE_JSON);
+        RetryScheduler scheduler = new RetryScheduler("test-retry");
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        config.setRetryScheduler(scheduler);
+        try (OpenAI client = new OpenAI(config)) {
+            CompletableFuture<ChatCompletionResponse> future = client.createChatCompletionAsync(request());
+            assertFalse(future.isDone(), "调用方不应等待请求和退避");
+
+            ChatCompletionResponse response = future.get(10, TimeUnit.SECONDS);
+            assertEquals("你好", response.getContent());
+            assertEquals(2, hits.get());
+            assertEquals(0, scheduler.getPendingCount());
+            System.out.println("✅ 第 " + hits.get() + " 次尝试成功");
+        } finally {
+            scheduler.shutdown();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testCancelDropsPendingRetry() throws Exception {
+        AtomicInteger hits = new AtomicInteger();
+        HttpServer server = server(hits, Integer.MAX_VALUE, "application/json", RESPONSE_JSON);
+        RetryScheduler scheduler = new RetryScheduler("test-retry");
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        config.setRetryScheduler(scheduler);
+        try (OpenAI client = new OpenAI(config)) {
+            CompletableFuture<ChatCompletionResponse> future = client.createChatCompletionAsync(request());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (scheduler.getPendingCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, scheduler.getPendingCount(), "第一次失败后应有一个等待中的重试");
+
+            assertTrue(future.cancel(true));
+            deadline = System.currentTimeMillis() + 1000;
+            while (scheduler.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, scheduler.getPendingCount(), "取消后不应再有等待中的重试");
+            Thread.sleep(1500);
+            assertEquals(1, hits.get(), "取消后不应再发起请求");
+        } finally {
+            scheduler.shutdown();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testStreamRetriedBeforeFirstChunk() throws Exception {
+        AtomicInteger hits = new AtomicInteger();
+        HttpServer server = server(hits, 1, "text/event-stream", STREAM_BODY);
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        List<String> contents = new CopyOnWriteArrayList<>();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        AtomicInteger completions = new AtomicInteger();
+        try (OpenAI client = new OpenAI(config)) {
+            StreamHandle handle = client.streamChatCompletion(request(),
+                    chunk -> contents.add(chunk.getContent()), completions::incrementAndGet, errors::add);
+            handle.get(10, TimeUnit.SECONDS);
+
+            assertEquals(2, hits.get());
+            assertTrue(errors.isEmpty(), "被重试的错误不应交给错误回调");
+            assertEquals(Collections.singletonList("你好"), contents);
+            assertEquals(1, completions.get());
+            assertNotNull(handle.getMetadata(), "句柄应带有成功那次尝试的元数据");
+            assertEquals(200, handle.getMetadata().getStatusCode());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
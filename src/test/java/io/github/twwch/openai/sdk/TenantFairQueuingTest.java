@@ -0,0 +1,216 @@
+package io.github.twwch.openai.sdk;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.twwch.openai.sdk.limit.Admission;
+import io.github.twwch.openai.sdk.limit.ConcurrencyLimiter;
+import io.github.twwch.openai.sdk.limit.RequestPriority;
+import io.github.twwch.openai.sdk.limit.TenantPolicy;
+import io.github.twwch.openai.sdk.limit.TenantStats;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.retry.RetryScheduler;
+import io.github.twwch.openai.sdk.service.BedrockService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试租户之间的加权公平排队、租户并发上限和token额度
+ */
+public class TenantFairQueuingTest {
+
+    private static final String KEY = "api.openai.com/v1/chat/completions";
+    private static final String RESPONSE_JSON = "{"
+            + "\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"gpt-4o\","
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"好的\"},\"finish_reason\":\"stop\"}],"
+            + "\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":2,\"total_tokens\":12}"
+            + "}";
+
+    private RetryScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new RetryScheduler("test-tenant");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private static Admission tenant(String tenant) {
+        return new Admission(RequestPriority.NORMAL, 0, tenant);
+    }
+
+    private static TenantPolicy policy(String tenant) {
+        return new TenantPolicy(tenant);
+    }
+
+    private static TenantStats stats(ConcurrencyLimiter limiter, String tenant) {
+        return limiter.getTenantStats().stream()
+                .filter(s -> s.getTenant().equals(tenant))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("没有租户统计: " + tenant));
+    }
+
+    @Test
+    public void testWeightedShare() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD, 1, 1, 1, 100, 10_000);
+        TenantPolicy heavy = policy("heavy");
+        heavy.setWeight(3);
+        limiter.setTenantPolicy(heavy);
+        ConcurrencyLimiter.Permit running = limiter.acquire(KEY, scheduler).join();
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<ConcurrencyLimiter.Permit> permits = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<ConcurrencyLimiter.Permit>> queued = new ArrayList<>();
+        for (String name : List.of("heavy", "light")) {
+            for (int i = 0; i < 8; i++) {
+                CompletableFuture<ConcurrencyLimiter.Permit> future = limiter.acquire(KEY, tenant(name), scheduler);
+                future.thenAccept(permit -> {
+                    order.add(name);
+                    permits.add(permit);
+                });
+                queued.add(future);
+            }
+        }
+        assertEquals(16, limiter.getQueued(KEY));
+
+        // 每释放一个许可放行一个排队的请求
+        running.success();
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i + 1, order.size());
+            permits.get(i).ignore();
+        }
+        List<String> first = new ArrayList<>(order.subList(0, 8));
+        assertEquals(6, Collections.frequency(first, "heavy"), "按3:1的权重放行: " + first);
+        assertEquals(2, Collections.frequency(first, "light"), "轻量租户不会被饿死: " + first);
+
+        queued.forEach(f -> f.cancel(true));
+        queued.stream().filter(f -> !f.isCancelled()).map(CompletableFuture::join)
+                .forEach(ConcurrencyLimiter.Permit::ignore);
+        System.out.println("✅ 加权公平排队: " + first);
+    }
+
+    @Test
+    public void testTenantConcurrencyCap() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD, 10, 1, 10, 100, 10_000);
+        TenantPolicy capped = policy("noisy");
+        capped.setMaxConcurrency(2);
+        limiter.setTenantPolicy(capped);
+
+        ConcurrencyLimiter.Permit first = limiter.acquire(KEY, tenant("noisy"), scheduler).join();
+        limiter.acquire(KEY, tenant("noisy"), scheduler).join();
+        CompletableFuture<ConcurrencyLimiter.Permit> third = limiter.acquire(KEY, tenant("noisy"), scheduler);
+        assertFalse(third.isDone(), "租户达到并发上限后排队");
+
+        // 其他租户不受影响
+        CompletableFuture<ConcurrencyLimiter.Permit> other = limiter.acquire(KEY, tenant("quiet"), scheduler);
+        assertTrue(other.isDone());
+        assertEquals(3, limiter.getInFlight(KEY));
+
+        first.success();
+        ConcurrencyLimiter.Permit granted = third.get(1, TimeUnit.SECONDS);
+        assertTrue(granted.getQueueWaitNanos() > 0);
+
+        TenantStats noisy = stats(limiter, "noisy");
+        assertEquals(3, noisy.getGranted());
+        assertEquals(2, noisy.getInFlight());
+        assertEquals(0, noisy.getQueued());
+        assertTrue(noisy.getQueueWaitNanos() > 0);
+        assertEquals(1, stats(limiter, "quiet").getGranted());
+        assertEquals(2, limiter.getTenantPolicy("noisy").getMaxConcurrency());
+        assertEquals(0, limiter.getTenantPolicy("quiet").getMaxConcurrency(), "未设置的租户使用默认策略");
+        System.out.println("✅ 租户并发上限: " + noisy);
+    }
+
+    @Test
+    public void testTokenBudgetBlocksUntilRefill() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD, 10, 1, 10, 100, 10_000);
+        TenantPolicy budget = policy("metered");
+        budget.setTokensPerMinute(600);
+        limiter.setTenantPolicy(budget);
+
+        limiter.acquire(KEY, tenant("metered"), scheduler).join().success();
+        // 透支5个token，按每秒10个token约0.5秒后恢复
+        limiter.recordTokens("metered", 605);
+        CompletableFuture<ConcurrencyLimiter.Permit> blocked = limiter.acquire(KEY, tenant("metered"), scheduler);
+        assertFalse(blocked.isDone(), "额度透支后排队");
+        assertTrue(limiter.acquire(KEY, tenant("other"), scheduler).isDone());
+
+        long start = System.nanoTime();
+        blocked.get(3, TimeUnit.SECONDS).success();
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waitedMillis >= 300, "额度恢复后才放行: " + waitedMillis + " ms");
+        assertEquals(605, stats(limiter, "metered").getTokens());
+        System.out.println("✅ token额度: 等待 " + waitedMillis + " ms 后放行");
+    }
+
+    @Test
+    public void testTenantFromRequestAndTokensRecorded() throws Exception {
+        ChatCompletionRequest request = new ChatCompletionRequest("gpt-4o",
+                Collections.singletonList(ChatMessage.user("你好")));
+        assertNull(Admission.tenantOf(request));
+        assertEquals(Admission.DEFAULT, Admission.of(request));
+        request.setUser("alice");
+        assertEquals("alice", Admission.of(request).getTenant());
+        request.setMetadata(Collections.singletonMap(Admission.TENANT_METADATA_KEY, "team-a"));
+        assertEquals("team-a", Admission.of(request).getTenant(), "metadata中的租户优先");
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] response = RESPONSE_JSON.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD);
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        config.setConcurrencyLimiter(limiter);
+        try (OpenAI client = new OpenAI(config)) {
+            client.createChatCompletion(request);
+            client.createChatCompletion(request);
+        } finally {
+            server.stop(0);
+        }
+        TenantStats team = stats(limiter, "team-a");
+        assertEquals(2, team.getGranted());
+        assertEquals(24, team.getTokens());
+        assertEquals(0, team.getInFlight());
+        System.out.println("✅ 租户用量: " + team);
+    }
+
+    @Test
+    public void testBedrockKeepsTenantMetadata() throws Exception {
+        ChatCompletionRequest request = new ChatCompletionRequest("anthropic.claude-3-haiku-20240307-v1:0",
+                Collections.singletonList(ChatMessage.user("你好")));
+        request.setMetadata(Collections.singletonMap(Admission.TENANT_METADATA_KEY, "team-b"));
+
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(ConcurrencyLimiter.Algorithm.AIMD);
+        BedrockConfig config = new BedrockConfig("us-east-1", "ak", "sk", "anthropic.claude-3-haiku-20240307-v1:0");
+        config.setConcurrencyLimiter(limiter);
+        try (BedrockService service = new BedrockService(config)) {
+            for (int i = 0; i < 2; i++) {
+                service.createChatCompletionAsync(request).cancel(true);
+                // 清理只在发出的副本上进行，再次使用同一个请求（或重试）时仍按metadata中的租户计
+                assertEquals("team-b", request.getMetadata().get(Admission.TENANT_METADATA_KEY));
+            }
+        }
+        assertEquals(2, stats(limiter, "team-b").getGranted());
+        System.out.println("✅ Bedrock保留租户metadata: " + stats(limiter, "team-b"));
+    }
+}
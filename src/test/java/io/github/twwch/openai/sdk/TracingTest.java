@@ -0,0 +1,132 @@
+package io.github.twwch.openai.sdk;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.tracing.InMemorySpanExporter;
+import io.github.twwch.openai.sdk.tracing.Scope;
+import io.github.twwch.openai.sdk.tracing.SdkTracer;
+import io.github.twwch.openai.sdk.tracing.Span;
+import io.github.twwch.openai.sdk.tracing.SpanContext;
+import io.github.twwch.openai.sdk.tracing.SpanData;
+import io.github.twwch.openai.sdk.tracing.SpanKind;
+import io.github.twwch.openai.sdk.tracing.SpanStatus;
+import io.github.twwch.openai.sdk.tracing.TraceAttributes;
+import io.github.twwch.openai.sdk.tracing.Tracer;
+import io.github.twwch.openai.sdk.tracing.Tracing;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试追踪Span模型、W3C traceparent传播以及聊天请求的Span层级
+ */
+public class TracingTest {
+
+    private static final String RESPONSE_JSON = "{"
+            + "\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"gpt-4o\","
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"你好\"},\"finish_reason\":\"stop\"}],"
+            + "\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":3,\"total_tokens\":15}"
+            + "}";
+
+    @Test
+    public void testTraceparentRoundTrip() {
+        SpanContext context = SpanContext.create("4bf92f3577b34da6a3ce929d0e0e4736", "00f067aa0ba902b7", true);
+        assertEquals("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01", context.toTraceparent());
+        assertEquals(context, SpanContext.fromTraceparent(context.toTraceparent()));
+
+        assertFalse(SpanContext.fromTraceparent("00-00000000000000000000000000000000-00f067aa0ba902b7-01").isValid());
+        assertFalse(SpanContext.fromTraceparent("garbage").isValid());
+        assertFalse(SpanContext.fromTraceparent(null).isValid());
+    }
+
+    @Test
+    public void testNoopTracerRecordsNothing() {
+        Span span = Tracer.noop().startSpan("chat", SpanKind.CLIENT);
+        assertFalse(span.isRecording());
+        assertFalse(span.getContext().isValid());
+        assertSame(span, span.startChild("child"));
+        assertFalse(Tracing.current().isRecording(), "没有当前Span时应返回no-op Span");
+    }
+
+    @Test
+    public void testChildSpansAndCurrentScope() {
+        InMemorySpanExporter exporter = new InMemorySpanExporter();
+        SdkTracer tracer = new SdkTracer(exporter);
+
+        Span root = tracer.startSpan("root", SpanKind.CLIENT);
+        try (Scope scope = root.makeCurrent()) {
+            Span child = Tracing.startChild("child");
+            child.addEvent("tick", Collections.singletonMap("n", 1));
+            child.end();
+            child.end(); // 重复结束应被忽略
+        }
+        root.recordException(new IllegalStateException("boom"));
+        root.setStatus(SpanStatus.OK); // ERROR不会被覆盖
+        root.end();
+
+        assertFalse(Tracing.current().isRecording(), "作用域关闭后应恢复");
+        assertEquals(2, exporter.getFinishedSpans().size());
+        SpanData rootData = exporter.find("root");
+        SpanData childData = exporter.find("child");
+        assertNull(rootData.getParentSpanId());
+        assertEquals(rootData.getSpanId(), childData.getParentSpanId());
+        assertEquals(rootData.getTraceId(), childData.getTraceId());
+        assertNotNull(childData.getEvent("tick"));
+        assertEquals(SpanStatus.ERROR, rootData.getStatus());
+        assertNotNull(rootData.getEvent("exception"));
+    }
+
+    @Test
+    public void testChatCompletionSpansAndPropagation() throws Exception {
+        AtomicReference<String> traceparent = new AtomicReference<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            traceparent.set(exchange.getRequestHeaders().getFirst("traceparent"));
+            byte[] body = RESPONSE_JSON.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        InMemorySpanExporter exporter = new InMemorySpanExporter();
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        config.setTracer(new SdkTracer(exporter));
+        config.setTraceContextPropagation(true);
+
+        try (OpenAI client = new OpenAI(config)) {
+            ChatCompletionRequest request = new ChatCompletionRequest();
+            request.setModel("gpt-4o");
+            request.setMessages(Collections.singletonList(ChatMessage.user("你好")));
+            ChatCompletionResponse response = client.createChatCompletion(request);
+            assertNotNull(response);
+        } finally {
+            server.stop(0);
+        }
+
+        SpanData chat = exporter.find(TraceAttributes.SPAN_CHAT);
+        SpanData http = exporter.find(TraceAttributes.SPAN_HTTP_REQUEST);
+        assertNotNull(chat);
+        assertNotNull(http);
+        assertEquals(chat.getSpanId(), http.getParentSpanId());
+        assertEquals("gpt-4o", chat.getAttribute(TraceAttributes.GEN_AI_REQUEST_MODEL));
+        assertEquals(12L, chat.getAttribute(TraceAttributes.GEN_AI_INPUT_TOKENS));
+        assertEquals(200L, http.getAttribute(TraceAttributes.HTTP_STATUS_CODE));
+        assertNotNull(http.getEvent(TraceAttributes.EVENT_CONNECTION_ACQUIRED));
+        assertNotNull(http.getEvent(TraceAttributes.EVENT_RESPONSE_HEADERS));
+
+        // 上游收到的traceparent应指向HTTP请求Span
+        assertEquals(http.getContext().toTraceparent(), traceparent.get());
+
+        System.out.println("✅ " + chat);
+        System.out.println("✅ " + http);
+    }
+}
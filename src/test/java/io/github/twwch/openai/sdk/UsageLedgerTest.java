@@ -0,0 +1,330 @@
+package io.github.twwch.openai.sdk;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.twwch.openai.sdk.exception.OpenAIException;
+import io.github.twwch.openai.sdk.metrics.MetricsRegistry;
+import io.github.twwch.openai.sdk.metrics.SdkMetrics;
+import io.github.twwch.openai.sdk.metrics.StreamMetrics;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionChunk;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionRequest;
+import io.github.twwch.openai.sdk.model.chat.ChatCompletionResponse;
+import io.github.twwch.openai.sdk.model.chat.ChatMessage;
+import io.github.twwch.openai.sdk.service.BedrockService;
+import io.github.twwch.openai.sdk.service.StreamHandle;
+import io.github.twwch.openai.sdk.usage.ModelPrice;
+import io.github.twwch.openai.sdk.usage.PriceTable;
+import io.github.twwch.openai.sdk.usage.UsageBudget;
+import io.github.twwch.openai.sdk.usage.UsageLedger;
+import io.github.twwch.openai.sdk.usage.UsageRecord;
+import io.github.twwch.openai.sdk.usage.UsageSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试用量账本的记账、计费、预算和导出
+ */
+public class UsageLedgerTest {
+
+    private static final String BEDROCK_MODEL = "us.anthropic.claude-3-5-haiku-20241022-v1:0";
+
+    private static final String RESPONSE_JSON = "{"
+            + "\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"gpt-4o\","
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"你好\"},\"finish_reason\":\"stop\"}],"
+            + "\"usage\":{\"prompt_tokens\":1000,\"completion_tokens\":100,\"total_tokens\":1100,"
+            + "\"prompt_tokens_details\":{\"cached_tokens\":400}}"
+            + "}";
+
+    @Test
+    public void testCostAndCacheAccounting() {
+        UsageLedger ledger = new UsageLedger();
+        ledger.setPriceTable(new PriceTable()
+                .put("gpt-4o", new ModelPrice(2.5, 10, 1.25, 0))
+                .put("anthropic.claude-3-5-haiku", ModelPrice.of(0.8, 4)));
+
+        // OpenAI: prompt_tokens包含缓存命中部分
+        ChatCompletionResponse.Usage openai = usage(1000, 100, 400, null);
+        ledger.record("alice", OpenAIException.Provider.OPENAI, "gpt-4o", openai);
+
+        // Bedrock: 输入token不包含缓存读写
+        ChatCompletionResponse.Usage bedrock = usage(200, 50, 1000, 500);
+        ledger.record(null, OpenAIException.Provider.BEDROCK, BEDROCK_MODEL, bedrock);
+
+        UsageSnapshot snapshot = ledger.snapshot();
+        UsageRecord alice = snapshot.find("alice", "gpt-4o");
+        assertEquals(600L, alice.getInputTokens());
+        assertEquals(400L, alice.getCacheReadTokens());
+        // 600*2.5 + 100*10 + 400*1.25 = 3000 / 1e6
+        assertEquals(0.003, alice.getCostUsd(), 1e-9);
+
+        UsageRecord fallback = snapshot.find(UsageLedger.DEFAULT_TENANT, BEDROCK_MODEL);
+        assertNotNull(fallback, "带区域前缀的模型ID应匹配到价格");
+        // 200*0.8 + 50*4 + 1000*0.08 + 500*1.0 = 940 / 1e6
+        assertEquals(0.00094, fallback.getCostUsd(), 1e-9);
+        assertEquals(0.00394, snapshot.getTotalCostUsd(), 1e-9);
+
+        String csv = snapshot.toCsv();
+        assertTrue(csv.startsWith("tenant,provider,model"));
+        assertTrue(csv.contains("alice,OPENAI,gpt-4o,1,600,100,400,0,"));
+        System.out.println("✅ 用量导出:\n" + csv);
+    }
+
+    @Test
+    public void testStreamUsageMergedIntoLedger() {
+        UsageLedger ledger = new UsageLedger();
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.setEnabled(false); // 指标关闭时账本仍需合并usage
+        StreamMetrics stream = SdkMetrics.startStream(registry, OpenAIException.Provider.BEDROCK, BEDROCK_MODEL,
+                SdkMetrics.ENDPOINT_INVOKE_MODEL_STREAM).withLedger(ledger, "bob");
+
+        ChatCompletionChunk start = new ChatCompletionChunk();
+        start.setUsage(usage(120, 0, 2048, null));
+        stream.onChunk(start);
+        ChatCompletionChunk delta = new ChatCompletionChunk();
+        delta.setUsage(usage(0, 7, null, null));
+        stream.onChunk(delta);
+        stream.finish(true);
+        stream.finish(true);
+
+        UsageRecord record = ledger.snapshot().find("bob", BEDROCK_MODEL);
+        assertEquals(1L, record.getRequests());
+        assertEquals(120L, record.getInputTokens());
+        assertEquals(7L, record.getOutputTokens());
+        assertEquals(2048L, record.getCacheReadTokens());
+    }
+
+    @Test
+    public void testBudgetThrottleAndReject() {
+        UsageLedger ledger = new UsageLedger();
+        UsageBudget budget = new UsageBudget("carol");
+        budget.setMaxTokens(1000);
+        budget.setThrottleRatio(0.5);
+        budget.setThrottleDelayMillis(50);
+        ledger.setBudget(budget);
+
+        ledger.checkBudget("carol");
+        ledger.record("carol", OpenAIException.Provider.OPENAI, "gpt-4o", usage(500, 100, null, null));
+
+        long start = System.nanoTime();
+        ledger.checkBudget("carol");
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 45, "超过限流比例应等待");
+        ledger.checkBudget("dave"); // 其他租户不受影响
+
+        ledger.record("carol", OpenAIException.Provider.OPENAI, "gpt-4o", usage(400, 0, null, null));
+        OpenAIException e = assertThrows(OpenAIException.class, () -> ledger.checkBudget("carol"));
+        assertEquals(429, e.getStatusCode());
+        assertEquals(UsageLedger.ERROR_TYPE_BUDGET_EXCEEDED, e.getErrorType());
+        System.out.println("✅ 预算拒绝: " + e.getMessage());
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        UsageLedger ledger = new UsageLedger();
+        int threads = 8;
+        int perThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            String tenant = "tenant-" + (t % 2);
+            executor.execute(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    ledger.record(tenant, OpenAIException.Provider.OPENAI, "gpt-4o", usage(3, 2, null, null));
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        UsageSnapshot snapshot = ledger.snapshot();
+        assertEquals(2, snapshot.getRecords().size());
+        assertEquals((long) threads * perThread * 5, snapshot.getTotalTokens());
+        assertEquals((long) threads / 2 * perThread * 5, ledger.getTenantTokens("tenant-0"));
+    }
+
+    @Test
+    public void testSyncCallRecorded() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            calls.incrementAndGet();
+            byte[] body = RESPONSE_JSON.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        UsageLedger ledger = new UsageLedger();
+        UsageBudget budget = new UsageBudget("erin");
+        budget.setMaxTokens(1100);
+        ledger.setBudget(budget);
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        config.setUsageLedger(ledger);
+
+        try (OpenAI client = new OpenAI(config)) {
+            ChatCompletionRequest request = new ChatCompletionRequest("gpt-4o",
+                    Collections.singletonList(ChatMessage.user("你好")));
+            request.setUser("erin");
+            client.createChatCompletion(request);
+
+            UsageRecord record = ledger.snapshot().find("erin", "gpt-4o");
+            assertEquals(600L, record.getInputTokens());
+            assertEquals(400L, record.getCacheReadTokens());
+            assertEquals(100L, record.getOutputTokens());
+
+            // 预算用尽后不再发出请求
+            assertThrows(OpenAIException.class, () -> client.createChatCompletion(request));
+            assertEquals(1, calls.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testAsyncThrottleDoesNotBlockCaller() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            byte[] body = RESPONSE_JSON.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        UsageLedger ledger = new UsageLedger();
+        UsageBudget budget = new UsageBudget("frank");
+        budget.setMaxTokens(10_000);
+        budget.setThrottleRatio(0.1);
+        budget.setThrottleDelayMillis(300);
+        ledger.setBudget(budget);
+        ledger.record("frank", OpenAIException.Provider.OPENAI, "gpt-4o", usage(2000, 0, null, null));
+        assertEquals(300, ledger.checkBudgetDelay("frank"));
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        config.setUsageLedger(ledger);
+
+        try (OpenAI client = new OpenAI(config)) {
+            ChatCompletionRequest request = new ChatCompletionRequest("gpt-4o",
+                    Collections.singletonList(ChatMessage.user("你好")));
+            request.setUser("frank");
+            long start = System.nanoTime();
+            CompletableFuture<ChatCompletionResponse> future = client.createChatCompletionAsync(request);
+            long returnedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(returnedMillis < 200, "限流等待不占用调用线程: " + returnedMillis + " ms");
+            assertFalse(future.isDone());
+            future.get(5, TimeUnit.SECONDS);
+            long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(totalMillis >= 280, "等待限流时间后才发出: " + totalMillis + " ms");
+            System.out.println("✅ 异步预算限流: 调用 " + returnedMillis + " ms 返回，" + totalMillis + " ms 完成");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testStreamThrottleDoesNotBlockCaller() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            requests.incrementAndGet();
+            byte[] body = ("data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1,"
+                    + "\"model\":\"gpt-4o\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"你好\"}}]}\n\n"
+                    + "data: [DONE]\n\n").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        UsageLedger ledger = new UsageLedger();
+        UsageBudget budget = new UsageBudget("heidi");
+        budget.setMaxTokens(10_000);
+        budget.setThrottleRatio(0.1);
+        budget.setThrottleDelayMillis(300);
+        ledger.setBudget(budget);
+        ledger.record("heidi", OpenAIException.Provider.OPENAI, "gpt-4o", usage(2000, 0, null, null));
+        OpenAIConfig config = new OpenAIConfig("test-key", "http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        config.setUsageLedger(ledger);
+
+        try (OpenAI client = new OpenAI(config)) {
+            ChatCompletionRequest request = new ChatCompletionRequest("gpt-4o",
+                    Collections.singletonList(ChatMessage.user("你好")));
+            request.setUser("heidi");
+            StringBuilder text = new StringBuilder();
+            long start = System.nanoTime();
+            StreamHandle handle = client.streamChatCompletion(request, chunk -> {
+                if (chunk.getChoices() != null && !chunk.getChoices().isEmpty()
+                        && chunk.getChoices().get(0).getDelta().getContent() != null) {
+                    text.append(chunk.getChoices().get(0).getDelta().getContent());
+                }
+            }, null, null);
+            long returnedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(returnedMillis < 200, "限流等待不占用调用线程: " + returnedMillis + " ms");
+            handle.get(5, TimeUnit.SECONDS);
+            long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(totalMillis >= 280, "等待限流时间后才发出: " + totalMillis + " ms");
+            assertEquals("你好", text.toString());
+            assertEquals(1, requests.get());
+
+            // 限流等待期间取消，不再发出请求
+            StreamHandle cancelled = client.streamChatCompletion(request, chunk -> { }, null, null);
+            assertTrue(cancelled.cancel(true));
+            Thread.sleep(500);
+            assertEquals(1, requests.get(), "取消后不发出请求");
+            System.out.println("✅ 流式预算限流: 调用 " + returnedMillis + " ms 返回，" + totalMillis + " ms 完成");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testBedrockBudgetRejected() throws Exception {
+        UsageLedger ledger = new UsageLedger();
+        UsageBudget budget = new UsageBudget("grace");
+        budget.setMaxTokens(1000);
+        ledger.setBudget(budget);
+        ledger.record("grace", OpenAIException.Provider.BEDROCK, BEDROCK_MODEL, usage(900, 200, null, null));
+        BedrockConfig config = new BedrockConfig("us-east-1", "ak", "sk", BEDROCK_MODEL);
+        config.setUsageLedger(ledger);
+
+        try (BedrockService service = new BedrockService(config)) {
+            ChatCompletionRequest request = new ChatCompletionRequest(BEDROCK_MODEL,
+                    Collections.singletonList(ChatMessage.user("你好")));
+            request.setUser("grace");
+            // 预算用尽时在发出请求前拒绝
+            ExecutionException async = assertThrows(ExecutionException.class,
+                    () -> service.createChatCompletionAsync(request).get(5, TimeUnit.SECONDS));
+            assertEquals(UsageLedger.ERROR_TYPE_BUDGET_EXCEEDED, ((OpenAIException) async.getCause()).getErrorType());
+            OpenAIException sync = assertThrows(OpenAIException.class, () -> service.createChatCompletion(request));
+            assertEquals(429, sync.getStatusCode());
+            OpenAIException stream = assertThrows(OpenAIException.class,
+                    () -> service.createChatCompletionStream(request, chunk -> { }, () -> { }, error -> { }));
+            assertEquals(UsageLedger.ERROR_TYPE_BUDGET_EXCEEDED, stream.getErrorType());
+            System.out.println("✅ Bedrock预算拒绝: " + stream.getMessage());
+        }
+    }
+
+    private static ChatCompletionResponse.Usage usage(int prompt, int completion, Integer cacheRead, Integer cacheWrite) {
+        ChatCompletionResponse.Usage usage = new ChatCompletionResponse.Usage();
+        usage.setPromptTokens(prompt);
+        usage.setCompletionTokens(completion);
+        usage.setTotalTokens(prompt + completion);
+        usage.setCacheReadInputTokens(cacheRead);
+        usage.setCacheCreationInputTokens(cacheWrite);
+        return usage;
+    }
+}